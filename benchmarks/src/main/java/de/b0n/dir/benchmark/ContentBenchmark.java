@@ -0,0 +1,125 @@
+package de.b0n.dir.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.*;
+
+import de.b0n.dir.processor.CompareContentStrategy;
+import de.b0n.dir.processor.ContentStrategy;
+import de.b0n.dir.processor.DuplicateContentFinder;
+import de.b0n.dir.processor.DuplicateContentFinderCallback;
+import de.b0n.dir.processor.DuplicateGroup;
+import de.b0n.dir.processor.DuplicateLengthFinder;
+import de.b0n.dir.processor.DuplicatePartialHashFinder;
+import de.b0n.dir.processor.HashAlgorithm;
+import de.b0n.dir.processor.HashContentStrategy;
+
+/**
+ * Misst den Inhaltsvergleich der Kandidatengruppen eines erzeugten Baums für
+ * die verschiedenen Verfahren, Dublettenanteile, Dateigrößen und
+ * Gruppengrößen. Das Durchsuchen erfolgt vorab und wird nicht gemessen.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContentBenchmark {
+	/**
+	 * Die verglichenen Verfahren.
+	 */
+	public enum Strategy {
+		COMPARE {
+			@Override
+			ContentStrategy create() {
+				return new CompareContentStrategy();
+			}
+		},
+		COMPARE_VIRTUAL_THREADS {
+			@Override
+			ContentStrategy create() {
+				return new CompareContentStrategy().withVirtualThreads(true);
+			}
+		},
+		COMPARE_ASYNCHRONOUS {
+			@Override
+			ContentStrategy create() {
+				return new CompareContentStrategy().withAsynchronousReads(16);
+			}
+		},
+		SHA_256 {
+			@Override
+			ContentStrategy create() {
+				return new HashContentStrategy(HashAlgorithm.SHA_256);
+			}
+		},
+		MURMUR3_128 {
+			@Override
+			ContentStrategy create() {
+				return new HashContentStrategy(HashAlgorithm.MURMUR3_128);
+			}
+		};
+
+		abstract ContentStrategy create();
+	}
+
+	private static final DuplicateContentFinderCallback IGNORE = new DuplicateContentFinderCallback() {};
+
+	@Param
+	public Strategy strategy;
+
+	@Param({ "0.1", "0.5", "0.9" })
+	public double duplicateRatio;
+
+	@Param({ "4096", "1048576" })
+	public int fileSize;
+
+	@Param({ "2", "16" })
+	public int groupSize;
+
+	@Param({ "true", "false" })
+	public boolean prefilter;
+
+	@Param({ "200" })
+	public int files;
+
+	@Param({ "42" })
+	public long seed;
+
+	private Path root;
+	private List<List<File>> candidates;
+	private ContentStrategy contentStrategy;
+
+	@Setup(Level.Trial)
+	public void generate() throws IOException {
+		root = new TreeGenerator(seed)
+				.withFiles(files)
+				.withFileSize(fileSize)
+				.withDuplicateRatio(duplicateRatio)
+				.withGroupSize(groupSize)
+				.generate(Files.createTempDirectory("dupfinder-content"));
+		candidates = DuplicateLengthFinder.getIndex(root).getCandidates().toList();
+		contentStrategy = strategy.create();
+	}
+
+	@TearDown(Level.Trial)
+	public void delete() throws IOException {
+		TreeGenerator.delete(root);
+	}
+
+	@Benchmark
+	public long compare() {
+		return candidates.stream()
+				.flatMap(group -> prefilter ? DuplicatePartialHashFinder.getResult(group, IGNORE) : Stream.of(group))
+				.flatMap(group -> DuplicateContentFinder.getGroups(group, IGNORE, contentStrategy))
+				.mapToLong(DuplicateGroup::getWaste)
+				.sum();
+	}
+}
@@ -0,0 +1,191 @@
+package de.b0n.dir.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Erzeugt reproduzierbare Verzeichnisbäume für Benchmarks. Bei gleichem Seed
+ * und gleichen Einstellungen entstehen stets dieselben Pfade mit demselben
+ * Inhalt.
+ *
+ * Ein Anteil der Dateien wird als Dubletten in Gruppen gleicher Kardinalität
+ * angelegt, die übrigen Dateien haben zufälligen Inhalt. Alle Dateien erhalten
+ * eine von wenigen Größen, sodass auch einzigartige Dateien in gemeinsamen
+ * Größengruppen landen und inhaltlich verglichen werden müssen. Die Dateien
+ * werden zufällig auf zwei Verzeichnisebenen verteilt.
+ */
+public final class TreeGenerator {
+	private final long seed;
+	private final int files;
+	private final int fileSize;
+	private final int sizeVariants;
+	private final double duplicateRatio;
+	private final int groupSize;
+	private final int filesPerDirectory;
+
+	/**
+	 * Erzeugt einen Generator für 1000 Dateien zu 4 KB in 4 Größen, davon die
+	 * Hälfte als Dublettenpaare, mit 50 Dateien je Verzeichnis.
+	 *
+	 * @param seed
+	 *            Startwert des Zufallsgenerators
+	 */
+	public TreeGenerator(long seed) {
+		this(seed, 1000, 4096, 4, 0.5, 2, 50);
+	}
+
+	private TreeGenerator(long seed, int files, int fileSize, int sizeVariants, double duplicateRatio, int groupSize,
+			int filesPerDirectory) {
+		if (files < 0) {
+			throw new IllegalArgumentException("files may not be negative.");
+		}
+		if (fileSize < 0) {
+			throw new IllegalArgumentException("fileSize may not be negative.");
+		}
+		if (sizeVariants < 1) {
+			throw new IllegalArgumentException("sizeVariants must be positive.");
+		}
+		if (duplicateRatio < 0.0 || duplicateRatio > 1.0) {
+			throw new IllegalArgumentException("duplicateRatio must be between 0 and 1.");
+		}
+		if (groupSize < 2) {
+			throw new IllegalArgumentException("groupSize must be at least 2.");
+		}
+		if (filesPerDirectory < 1) {
+			throw new IllegalArgumentException("filesPerDirectory must be positive.");
+		}
+		this.seed = seed;
+		this.files = files;
+		this.fileSize = fileSize;
+		this.sizeVariants = sizeVariants;
+		this.duplicateRatio = duplicateRatio;
+		this.groupSize = groupSize;
+		this.filesPerDirectory = filesPerDirectory;
+	}
+
+	/**
+	 * @param files
+	 *            Anzahl aller erzeugten Dateien
+	 * @return Geänderter Generator
+	 */
+	public TreeGenerator withFiles(int files) {
+		return new TreeGenerator(seed, files, fileSize, sizeVariants, duplicateRatio, groupSize, filesPerDirectory);
+	}
+
+	/**
+	 * @param fileSize
+	 *            Größe der kleinsten Dateien in Bytes; weitere Größen liegen je
+	 *            ein Byte darüber
+	 * @return Geänderter Generator
+	 */
+	public TreeGenerator withFileSize(int fileSize) {
+		return new TreeGenerator(seed, files, fileSize, sizeVariants, duplicateRatio, groupSize, filesPerDirectory);
+	}
+
+	/**
+	 * @param sizeVariants
+	 *            Anzahl unterschiedlicher Dateigrößen
+	 * @return Geänderter Generator
+	 */
+	public TreeGenerator withSizeVariants(int sizeVariants) {
+		return new TreeGenerator(seed, files, fileSize, sizeVariants, duplicateRatio, groupSize, filesPerDirectory);
+	}
+
+	/**
+	 * @param duplicateRatio
+	 *            Anteil der Dateien zwischen 0 und 1, die zu einer
+	 *            Dublettengruppe gehören
+	 * @return Geänderter Generator
+	 */
+	public TreeGenerator withDuplicateRatio(double duplicateRatio) {
+		return new TreeGenerator(seed, files, fileSize, sizeVariants, duplicateRatio, groupSize, filesPerDirectory);
+	}
+
+	/**
+	 * @param groupSize
+	 *            Anzahl der Dateien je Dublettengruppe, mindestens 2
+	 * @return Geänderter Generator
+	 */
+	public TreeGenerator withGroupSize(int groupSize) {
+		return new TreeGenerator(seed, files, fileSize, sizeVariants, duplicateRatio, groupSize, filesPerDirectory);
+	}
+
+	/**
+	 * @param filesPerDirectory
+	 *            Anzahl der Dateien je Verzeichnis
+	 * @return Geänderter Generator
+	 */
+	public TreeGenerator withFilesPerDirectory(int filesPerDirectory) {
+		return new TreeGenerator(seed, files, fileSize, sizeVariants, duplicateRatio, groupSize, filesPerDirectory);
+	}
+
+	/**
+	 * Legt den Baum im übergebenen, leeren oder nicht vorhandenen Verzeichnis an.
+	 *
+	 * @param root
+	 *            Wurzel des zu erzeugenden Baums
+	 * @return Wurzel des erzeugten Baums
+	 * @throws IOException
+	 *             Wenn eine Datei nicht geschrieben werden kann
+	 */
+	public Path generate(Path root) throws IOException {
+		final Random random = new Random(seed);
+		final List<Integer> slots = new ArrayList<>(files);
+		for (int slot = 0; slot < files; slot++) {
+			slots.add(slot);
+		}
+		Collections.shuffle(slots, random);
+
+		final int groups = (int) Math.round(files * duplicateRatio) / groupSize;
+		int next = 0;
+		for (int group = 0; group < groups; group++) {
+			final byte[] content = content(random);
+			for (int copy = 0; copy < groupSize; copy++) {
+				write(root, slots.get(next++), content);
+			}
+		}
+		while (next < files) {
+			write(root, slots.get(next++), content(random));
+		}
+		return root;
+	}
+
+	private byte[] content(Random random) {
+		final byte[] content = new byte[fileSize + random.nextInt(sizeVariants)];
+		random.nextBytes(content);
+		return content;
+	}
+
+	private void write(Path root, int slot, byte[] content) throws IOException {
+		final int directory = slot / filesPerDirectory;
+		final Path parent = root.resolve("d" + directory / filesPerDirectory).resolve("d" + directory);
+		Files.createDirectories(parent);
+		Files.write(parent.resolve("f" + slot + ".bin"), content);
+	}
+
+	/**
+	 * Löscht einen erzeugten Baum samt Wurzel.
+	 *
+	 * @param root
+	 *            Wurzel des zu löschenden Baums
+	 * @throws IOException
+	 *             Wenn ein Eintrag nicht gelöscht werden kann
+	 */
+	public static void delete(Path root) throws IOException {
+		if (!Files.exists(root)) {
+			return;
+		}
+		try (Stream<Path> paths = Files.walk(root)) {
+			for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+				Files.delete(path);
+			}
+		}
+	}
+}
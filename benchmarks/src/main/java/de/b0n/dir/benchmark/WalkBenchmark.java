@@ -0,0 +1,69 @@
+package de.b0n.dir.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import de.b0n.dir.processor.DuplicateLengthFinder;
+import de.b0n.dir.processor.SizeIndex;
+
+/**
+ * Misst das Durchsuchen eines erzeugten Baums und das Gruppieren nach
+ * Dateigröße, jeweils über den SizeIndex und über die klassische Map.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WalkBenchmark {
+	@Param({ "1000", "10000" })
+	public int files;
+
+	@Param({ "10", "200" })
+	public int filesPerDirectory;
+
+	@Param({ "42" })
+	public long seed;
+
+	private Path root;
+
+	@Setup(Level.Trial)
+	public void generate() throws IOException {
+		root = new TreeGenerator(seed)
+				.withFiles(files)
+				.withFileSize(1)
+				.withSizeVariants(Math.max(1, files / 4))
+				.withFilesPerDirectory(filesPerDirectory)
+				.generate(Files.createTempDirectory("dupfinder-walk"));
+	}
+
+	@TearDown(Level.Trial)
+	public void delete() throws IOException {
+		TreeGenerator.delete(root);
+	}
+
+	@Benchmark
+	public int walkIntoIndex() {
+		return DuplicateLengthFinder.getIndex(root).getFileCount();
+	}
+
+	@Benchmark
+	public int groupInIndex() {
+		final SizeIndex index = DuplicateLengthFinder.getIndex(root);
+		return index.getCandidateGroupCount();
+	}
+
+	@Benchmark
+	public int groupInMap() {
+		final Map<Long, List<File>> result = DuplicateLengthFinder.getResult(root.toFile());
+		return (int) result.values().stream().filter(group -> group.size() > 1).count();
+	}
+}
@@ -0,0 +1,411 @@
+package de.b0n.dir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import de.b0n.dir.processor.DeviceLimits;
+import de.b0n.dir.processor.DuplicateGroupWriter;
+import de.b0n.dir.processor.WalkOptions;
+
+/**
+ * Wertet die Kommandozeilenparameter der Konsolenanwendung aus. Optionen haben
+ * die Form --name=wert und stehen vor den Verzeichnissen. --include, --exclude
+ * --device-limit, --reference-tree und --manifest dürfen mehrfach angegeben
+ * werden.
+ */
+class ConsoleArguments {
+	static final String NO_PARAM = "Parameter <Verzeichnis> fehlt.";
+	static final String UNKNOWN_OPTION = "Unbekannte Option: ";
+	static final String MISSING_VALUE = "Option ohne Wert: ";
+	static final String INVALID_VALUE = "Ungültiger Wert für Option: ";
+	static final String REFERENCE_REQUIRED = "Optionen --reference-tree und --manifest erfordern --reference.";
+	static final String FORMAT_REQUIRED = "Option --output erfordert --format.";
+	static final String READ_MODE_EXCLUSIVE = "Optionen --virtual-threads und --async-reads können nicht kombiniert werden.";
+	static final String CACHE_EXCLUSIVE = "Option --cache kann nicht mit --virtual-threads, --async-reads oder --buffer-memory kombiniert werden.";
+	static final String WATCH_EXCLUSIVE = "Option --watch kann nur mit --include, --exclude, --min-size, --max-size, --follow-links und --same-filesystem kombiniert werden.";
+	static final String REFERENCE_EXCLUSIVE = "Option --reference kann nur mit --reference-tree, --manifest, --include, --exclude, --min-size, --max-size, --follow-links und --same-filesystem kombiniert werden.";
+
+	private static final String OPTION_PREFIX = "--";
+	private static final String CACHE = "cache";
+	private static final String PREFILTER = "prefilter";
+	private static final String FOLLOW_LINKS = "follow-links";
+	private static final String SAME_FILESYSTEM = "same-filesystem";
+	private static final String INCLUDE = "include";
+	private static final String EXCLUDE = "exclude";
+	private static final String MIN_SIZE = "min-size";
+	private static final String MAX_SIZE = "max-size";
+	private static final String WALK_THREADS = "walk-threads";
+	private static final String COMPARE_THREADS = "compare-threads";
+	private static final String DEVICE_LIMIT = "device-limit";
+	private static final String VIRTUAL_THREADS = "virtual-threads";
+	private static final String ASYNC_READS = "async-reads";
+	private static final String PROGRESS = "progress";
+	private static final String BUFFER_MEMORY = "buffer-memory";
+	private static final String TIME_LIMIT = "time-limit";
+	private static final String MAX_BYTES = "max-bytes";
+	private static final String MAX_FILES = "max-files";
+	private static final String CHECKPOINT = "checkpoint";
+	private static final String REFERENCE = "reference";
+	private static final String REFERENCE_TREE = "reference-tree";
+	private static final String MANIFEST = "manifest";
+	private static final String WATCH = "watch";
+	private static final String FORMAT = "format";
+	private static final String OUTPUT = "output";
+	private static final int DEFAULT_PROGRESS_SECONDS = 10;
+	/**
+	 * Optionen, die beim Abgleich mit dem Referenzbestand wirken
+	 */
+	private static final Set<String> REFERENCE_OPTIONS = Set.of(REFERENCE, REFERENCE_TREE, MANIFEST, FOLLOW_LINKS,
+			SAME_FILESYSTEM, INCLUDE, EXCLUDE, MIN_SIZE, MAX_SIZE);
+	/**
+	 * Optionen, die beim Überwachen wirken
+	 */
+	private static final Set<String> WATCH_OPTIONS = Set.of(WATCH, FOLLOW_LINKS, SAME_FILESYSTEM, INCLUDE, EXCLUDE,
+			MIN_SIZE, MAX_SIZE);
+
+	private final List<File> directories = new ArrayList<>();
+	private final Set<String> given = new HashSet<>();
+	private Path cache;
+	private Boolean prefilter;
+	private WalkOptions walkOptions = WalkOptions.DEFAULT;
+	private int walkThreads = Runtime.getRuntime().availableProcessors();
+	private int compareThreads = Runtime.getRuntime().availableProcessors();
+	private DeviceLimits deviceLimits;
+	private boolean virtualThreads;
+	private int asyncReads;
+	private int progressSeconds = DEFAULT_PROGRESS_SECONDS;
+	private int bufferMemory;
+	private int timeLimitSeconds;
+	private long maxBytes;
+	private long maxFiles;
+	private Path checkpoint;
+	private Path reference;
+	private final List<Path> referenceTrees = new ArrayList<>();
+	private final List<Path> manifests = new ArrayList<>();
+	private boolean watch;
+	private DuplicateGroupWriter.Format format;
+	private Path output;
+
+	private ConsoleArguments() {
+	}
+
+	/**
+	 * Wertet die übergebenen Parameter aus.
+	 *
+	 * @param args Parameter der Konsolenanwendung
+	 * @return Ausgewertete Parameter
+	 * @throws IllegalArgumentException Wenn die Parameter ungültig sind, mit einer für den Benutzer bestimmten Meldung
+	 */
+	static ConsoleArguments parse(String[] args) {
+		final ConsoleArguments arguments = new ConsoleArguments();
+		for (String arg : args) {
+			if (arg.startsWith(OPTION_PREFIX)) {
+				arguments.option(arg);
+			} else {
+				arguments.directories.add(new File(arg + File.separator));
+			}
+		}
+		if (arguments.directories.isEmpty()) {
+			throw new IllegalArgumentException(NO_PARAM);
+		}
+		if (arguments.reference == null && !(arguments.referenceTrees.isEmpty() && arguments.manifests.isEmpty())) {
+			throw new IllegalArgumentException(REFERENCE_REQUIRED);
+		}
+		if (arguments.output != null && arguments.format == null) {
+			throw new IllegalArgumentException(FORMAT_REQUIRED);
+		}
+		if (arguments.virtualThreads && arguments.asyncReads > 0) {
+			throw new IllegalArgumentException(READ_MODE_EXCLUSIVE);
+		}
+		if (arguments.cache != null && (arguments.virtualThreads || arguments.asyncReads > 0 || arguments.bufferMemory > 0)) {
+			throw new IllegalArgumentException(CACHE_EXCLUSIVE);
+		}
+		if (arguments.watch && !WATCH_OPTIONS.containsAll(arguments.given)) {
+			throw new IllegalArgumentException(WATCH_EXCLUSIVE);
+		}
+		if (arguments.reference != null && !REFERENCE_OPTIONS.containsAll(arguments.given)) {
+			throw new IllegalArgumentException(REFERENCE_EXCLUSIVE);
+		}
+		return arguments;
+	}
+
+	private void option(String arg) {
+		final int separator = arg.indexOf('=');
+		if (separator < 0 || separator == arg.length() - 1) {
+			throw new IllegalArgumentException(MISSING_VALUE + arg);
+		}
+		final String name = arg.substring(OPTION_PREFIX.length(), separator);
+		final String value = arg.substring(separator + 1);
+		given.add(name);
+		switch (name) {
+		case CACHE -> cache = Path.of(value);
+		case PREFILTER -> prefilter = parseBoolean(arg, value);
+		case FOLLOW_LINKS -> walkOptions = walkOptions.withFollowLinks(parseBoolean(arg, value));
+		case SAME_FILESYSTEM -> walkOptions = walkOptions.withSameFileStore(parseBoolean(arg, value));
+		case INCLUDE, EXCLUDE, MIN_SIZE, MAX_SIZE -> walkOptions = filterOption(arg, name, value);
+		case WALK_THREADS -> walkThreads = parsePositive(arg, value);
+		case COMPARE_THREADS -> compareThreads = parsePositive(arg, value);
+		case DEVICE_LIMIT -> deviceLimits = deviceLimit(arg, value);
+		case VIRTUAL_THREADS -> virtualThreads = parseBoolean(arg, value);
+		case ASYNC_READS -> asyncReads = parsePositive(arg, value);
+		case PROGRESS -> progressSeconds = parseNonNegative(arg, value);
+		case BUFFER_MEMORY -> bufferMemory = parsePositive(arg, value);
+		case TIME_LIMIT -> timeLimitSeconds = parsePositive(arg, value);
+		case MAX_BYTES -> maxBytes = parsePositiveLong(arg, value);
+		case MAX_FILES -> maxFiles = parsePositiveLong(arg, value);
+		case CHECKPOINT -> checkpoint = Path.of(value);
+		case REFERENCE -> reference = Path.of(value);
+		case REFERENCE_TREE -> referenceTrees.add(Path.of(value));
+		case MANIFEST -> manifests.add(Path.of(value));
+		case WATCH -> watch = parseBoolean(arg, value);
+		case FORMAT -> format = parseFormat(arg, value);
+		case OUTPUT -> output = Path.of(value);
+		default -> throw new IllegalArgumentException(UNKNOWN_OPTION + arg);
+		}
+	}
+
+	private WalkOptions filterOption(String arg, String name, String value) {
+		try {
+			return switch (name) {
+			case INCLUDE -> walkOptions.withInclude(value);
+			case EXCLUDE -> walkOptions.withExclude(value);
+			case MIN_SIZE -> walkOptions.withMinSize(Long.parseLong(value));
+			default -> walkOptions.withMaxSize(Long.parseLong(value));
+			};
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException(INVALID_VALUE + arg);
+		}
+	}
+
+	private static int parsePositive(String arg, String value) {
+		try {
+			final int threads = Integer.parseInt(value);
+			if (threads > 0) {
+				return threads;
+			}
+		} catch (NumberFormatException e) {
+			// Meldung wie bei ungültiger Anzahl
+		}
+		throw new IllegalArgumentException(INVALID_VALUE + arg);
+	}
+
+	private static long parsePositiveLong(String arg, String value) {
+		try {
+			final long count = Long.parseLong(value);
+			if (count > 0) {
+				return count;
+			}
+		} catch (NumberFormatException e) {
+			// Meldung wie bei ungültiger Anzahl
+		}
+		throw new IllegalArgumentException(INVALID_VALUE + arg);
+	}
+
+	private static int parseNonNegative(String arg, String value) {
+		return "0".equals(value) ? 0 : parsePositive(arg, value);
+	}
+
+	/**
+	 * Wertet --device-limit=anzahl für alle Geräte oder
+	 * --device-limit=pfad=anzahl für das Gerät des Pfads aus.
+	 */
+	private DeviceLimits deviceLimit(String arg, String value) {
+		final DeviceLimits current = deviceLimits == null ? new DeviceLimits() : deviceLimits;
+		final int separator = value.lastIndexOf('=');
+		try {
+			if (separator < 0) {
+				return current.withDefaultLimit(Integer.parseInt(value));
+			}
+			return current.withLimit(Path.of(value.substring(0, separator)), Integer.parseInt(value.substring(separator + 1)));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException(INVALID_VALUE + arg);
+		}
+	}
+
+	private static DuplicateGroupWriter.Format parseFormat(String arg, String value) {
+		return switch (value) {
+		case "summary" -> null;
+		case "jsonl" -> DuplicateGroupWriter.Format.JSON_LINES;
+		case "csv" -> DuplicateGroupWriter.Format.CSV;
+		case "nul" -> DuplicateGroupWriter.Format.NUL;
+		default -> throw new IllegalArgumentException(INVALID_VALUE + arg);
+		};
+	}
+
+	private static boolean parseBoolean(String arg, String value) {
+		return switch (value) {
+		case "true" -> true;
+		case "false" -> false;
+		default -> throw new IllegalArgumentException(INVALID_VALUE + arg);
+		};
+	}
+
+	/**
+	 * @return Zu durchsuchende Verzeichnisse in der angegebenen Reihenfolge
+	 */
+	List<File> getDirectories() {
+		return directories;
+	}
+
+	/**
+	 * @return Datei des HashCache oder null, wenn keiner verwendet werden soll
+	 */
+	Path getCache() {
+		return cache;
+	}
+
+	/**
+	 * @return true, wenn Dateien gleicher Größe vor dem vollständigen Vergleich
+	 *         anhand von Stichproben an Anfang und Ende aufgeteilt werden
+	 *         sollen. Ohne Angabe nur ohne --cache, da vom Vorfilter
+	 *         aussortierte Dateien nie gehasht und gespeichert würden und jeder
+	 *         weitere Lauf alle Kandidaten erneut öffnen müsste.
+	 */
+	boolean isPrefilter() {
+		return prefilter != null ? prefilter : cache == null;
+	}
+
+	/**
+	 * @return Einstellungen für das Durchsuchen des Verzeichnisses
+	 */
+	WalkOptions getWalkOptions() {
+		return walkOptions;
+	}
+
+	/**
+	 * @return Anzahl Threads für das Durchsuchen der Verzeichnisse
+	 */
+	int getWalkThreads() {
+		return walkThreads;
+	}
+
+	/**
+	 * @return Anzahl Threads für den Inhaltsvergleich
+	 */
+	int getCompareThreads() {
+		return compareThreads;
+	}
+
+	/**
+	 * @return Grenzen gleichzeitiger Lesevorgänge je Gerät oder null, wenn nicht
+	 *         begrenzt werden soll
+	 */
+	DeviceLimits getDeviceLimits() {
+		return deviceLimits;
+	}
+
+	/**
+	 * @return true, wenn Dateien beim Inhaltsvergleich auf virtuellen Threads
+	 *         gelesen werden sollen
+	 */
+	boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	/**
+	 * @return Gleichzeitig ausstehende asynchrone Lesevorgänge je Gruppe oder 0,
+	 *         wenn blockierend gelesen werden soll
+	 */
+	int getAsyncReads() {
+		return asyncReads;
+	}
+
+	/**
+	 * @return Abstand der Fortschrittsausgaben in Sekunden oder 0, wenn kein
+	 *         Fortschritt ausgegeben werden soll
+	 */
+	int getProgressSeconds() {
+		return progressSeconds;
+	}
+
+	/**
+	 * @return Obergrenze des Speichers für Lesepuffer in Megabyte oder 0 für
+	 *         die Standardgrenze
+	 */
+	int getBufferMemory() {
+		return bufferMemory;
+	}
+
+	/**
+	 * @return Laufzeit der Suche in Sekunden oder 0, wenn sie nicht begrenzt
+	 *         werden soll
+	 */
+	int getTimeLimitSeconds() {
+		return timeLimitSeconds;
+	}
+
+	/**
+	 * @return Obergrenze der beim Inhaltsvergleich gelesenen Bytes oder 0, wenn
+	 *         sie nicht begrenzt werden sollen
+	 */
+	long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * @return Obergrenze der beim Inhaltsvergleich geöffneten Dateien oder 0,
+	 *         wenn sie nicht begrenzt werden sollen
+	 */
+	long getMaxFiles() {
+		return maxFiles;
+	}
+
+	/**
+	 * @return Datei der Sicherungspunkte oder null, wenn keine angelegt werden
+	 *         sollen
+	 */
+	Path getCheckpoint() {
+		return checkpoint;
+	}
+
+	/**
+	 * @return Datei des Referenzbestands oder null, wenn nach Dubletten statt
+	 *         nach bereits vorhandenen Dateien gesucht werden soll
+	 */
+	Path getReference() {
+		return reference;
+	}
+
+	/**
+	 * @return In den Referenzbestand aufzunehmende Verzeichnisse
+	 */
+	List<Path> getReferenceTrees() {
+		return referenceTrees;
+	}
+
+	/**
+	 * @return In den Referenzbestand zu übernehmende Manifeste
+	 */
+	List<Path> getManifests() {
+		return manifests;
+	}
+
+	/**
+	 * @return true, wenn die Verzeichnisse nach der Suche überwacht und
+	 *         Änderungen der Dublettengruppen fortlaufend ausgegeben werden
+	 *         sollen
+	 */
+	boolean isWatch() {
+		return watch;
+	}
+
+	/**
+	 * @return Format, in dem jede Dublettengruppe ausgegeben wird, oder null,
+	 *         wenn nur die Summen ausgegeben werden sollen
+	 */
+	DuplicateGroupWriter.Format getFormat() {
+		return format;
+	}
+
+	/**
+	 * @return Datei für die Dublettengruppen oder null für die Ausgabe auf
+	 *         System.out
+	 */
+	Path getOutput() {
+		return output;
+	}
+}
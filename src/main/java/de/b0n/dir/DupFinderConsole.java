@@ -1,61 +1,474 @@
 package de.b0n.dir;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
 import java.util.Date;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
-import de.b0n.dir.processor.DuplicateContentFinder;
-import de.b0n.dir.processor.DuplicateLengthFinder;
+import de.b0n.dir.processor.BufferPool;
+import de.b0n.dir.processor.ContentHash;
+import de.b0n.dir.processor.CompareContentStrategy;
+import de.b0n.dir.processor.ContentStrategy;
+import de.b0n.dir.processor.DeviceLimits;
+import de.b0n.dir.processor.DuplicateContentFinderCallback;
+import de.b0n.dir.processor.DuplicateGroup;
+import de.b0n.dir.processor.DuplicateGroupSink;
+import de.b0n.dir.processor.DuplicateGroupWriter;
+import de.b0n.dir.processor.DuplicateLengthFinderCallback;
+import de.b0n.dir.processor.DuplicateWatcher;
+import de.b0n.dir.processor.DuplicateWatcherCallback;
+import de.b0n.dir.processor.HashAlgorithm;
+import de.b0n.dir.processor.HashCache;
+import de.b0n.dir.processor.HashContentStrategy;
+import de.b0n.dir.processor.PartialHashContentStrategy;
+import de.b0n.dir.processor.ReferenceIndex;
+import de.b0n.dir.processor.ScanBudget;
+import de.b0n.dir.processor.ScanCheckpoint;
+import de.b0n.dir.processor.ScanExecutor;
+import de.b0n.dir.processor.ScanMetrics;
+import de.b0n.dir.processor.ScanRoots;
+import de.b0n.dir.processor.SizeIndex;
+import de.b0n.dir.processor.WalkOptions;
 
 /**
- * Einfache Konsolenanwendung zur Ausgabe der gefundenen Dubletten in einem übergebenen Verzeichnis.
+ * Einfache Konsolenanwendung zur Ausgabe der gefundenen Dubletten in den übergebenen Verzeichnissen.
  * @author Claus
  *
  */
 class DupFinderConsole {
 
 	private static final String ERROR = "FEHLER: ";
-	private static final String USAGE = "\r\n Benutzung: DupFinder <Verzeichnis>\r\n<Verzeichnis> = Verzeichnis in dem rekursiv nach Duplikaten gesucht wird";
-	private static final String NO_PARAM = "Parameter <Verzeichnis> fehlt.";
+	private static final String USAGE = "\r\n Benutzung: DupFinder [Optionen] <Verzeichnis>...\r\n<Verzeichnis> = Verzeichnis in dem rekursiv nach Duplikaten gesucht wird, bei mehreren auch zwischen den Verzeichnissen"
+			+ "\r\n--cache=<Datei> = Hashwerte zwischen Läufen in <Datei> speichern und Inhalte per SHA-256 vergleichen"
+			+ "\r\n--prefilter=<true|false> = Dateien gleicher Größe vorab anhand von Anfang und Ende aufteilen, false spart die zusätzlichen Zugriffe etwa auf Bandlaufwerken (Standard: true, mit --cache false, damit jede Datei einmal vollständig gehasht und gespeichert wird)"
+			+ "\r\n--follow-links=<true|false> = Symbolischen Links folgen, Zyklen werden übersprungen (Standard: true)"
+			+ "\r\n--same-filesystem=<true|false> = Nur das Dateisystem des <Verzeichnis> durchsuchen (Standard: false)"
+			+ "\r\n--include=<Muster> = Nur Dateien aufnehmen, deren Name oder Pfad das Muster trifft (glob: oder regex:, mehrfach möglich)"
+			+ "\r\n--exclude=<Muster> = Dateien und Verzeichnisse auslassen, deren Name oder Pfad das Muster trifft (mehrfach möglich)"
+			+ "\r\n--min-size=<Bytes> = Nur Dateien ab dieser Größe aufnehmen"
+			+ "\r\n--max-size=<Bytes> = Nur Dateien bis zu dieser Größe aufnehmen"
+			+ "\r\n--walk-threads=<Anzahl> = Threads für das Durchsuchen der Verzeichnisse (Standard: Anzahl Prozessoren)"
+			+ "\r\n--compare-threads=<Anzahl> = Threads für den Inhaltsvergleich, größte Einsparung zuerst (Standard: Anzahl Prozessoren)"
+			+ "\r\n--device-limit=[<Pfad>=]<Anzahl> = Gleichzeitige Lesevorgänge auf dem Gerät von <Pfad> oder allen Geräten begrenzen (mehrfach möglich)"
+			+ "\r\n--virtual-threads=<true|false> = Dateien beim blockweisen Vergleich auf virtuellen Threads lesen, etwa für NFS (Standard: false, nicht mit --async-reads oder --cache kombinierbar)"
+			+ "\r\n--async-reads=<Anzahl> = Dateien beim blockweisen Vergleich asynchron lesen, mit höchstens <Anzahl> ausstehenden Lesevorgängen je Gruppe, nicht mit --virtual-threads oder --cache kombinierbar"
+			+ "\r\n--progress=<Sekunden> = Fortschritt mit geschätzter Restdauer alle <Sekunden> ausgeben, 0 schaltet die Ausgabe ab (Standard: 10)"
+			+ "\r\n--buffer-memory=<MB> = Obergrenze des Speichers für Lesepuffer beim blockweisen Vergleich (Standard: 256, nicht mit --cache kombinierbar)"
+			+ "\r\n--time-limit=<Sekunden> = Suche nach <Sekunden> beenden und bis dahin bestätigte Dubletten ausgeben"
+			+ "\r\n--max-bytes=<Bytes> = Suche beenden, sobald mehr als <Bytes> gelesen wurden"
+			+ "\r\n--max-files=<Anzahl> = Suche beenden, sobald mehr als <Anzahl> Dateien geöffnet wurden"
+			+ "\r\n--checkpoint=<Datei> = Fortschritt in <Datei> sichern und eine abgebrochene Suche daraus fortsetzen, nach vollständiger Suche wird <Datei> gelöscht"
+			+ "\r\n--reference=<Datei> = Statt nach Dubletten nach Dateien suchen, die im Referenzbestand in <Datei> bereits vorhanden sind, nur mit --reference-tree, --manifest, --include, --exclude, --min-size, --max-size, --follow-links und --same-filesystem kombinierbar"
+			+ "\r\n--reference-tree=<Verzeichnis> = <Verzeichnis> vorher in den Referenzbestand aufnehmen, unveränderte Dateien werden nicht erneut gelesen (mehrfach möglich)"
+			+ "\r\n--manifest=<Datei> = SHA-256-Hashwerte im Format von sha256sum aus <Datei> in den Referenzbestand übernehmen (mehrfach möglich)"
+			+ "\r\n--watch=<true|false> = Verzeichnisse nach der Suche überwachen und Änderungen der Dublettengruppen bis zum Abbruch ausgeben (Standard: false, nur mit --include, --exclude, --min-size, --max-size, --follow-links und --same-filesystem kombinierbar)"
+			+ "\r\n--format=<summary|jsonl|csv|nul> = Jede Dublettengruppe sofort als JSON Lines, CSV oder als flache Liste NUL-getrennter Pfade für xargs -0 ausgeben, Statusmeldungen dann auf System.err (Standard: summary)"
+			+ "\r\n--output=<Datei> = Dublettengruppen im gewählten --format in <Datei> statt auf System.out schreiben";
 	private static final String INVALID_DIRECTORY = "Parameter <Verzeichnis> ist kein Verzeichnis.";
 	private static final String UREADABLE_DIRECTORY = "Parameter <Verzeichnis> kann nicht gelesen werden.";
+	private static final String UNREADABLE_CACHE = "Option --cache kann nicht geöffnet werden: ";
+	private static final String UNREADABLE_CHECKPOINT = "Option --checkpoint kann nicht geöffnet werden: ";
+	private static final String INVALID_REFERENCE_TREE = "Option --reference-tree ist kein Verzeichnis: ";
+	private static final String UNREADABLE_REFERENCE = "Referenzbestand kann nicht gelesen oder geschrieben werden: ";
+	private static final String UNAVAILABLE_WATCH = "Verzeichnisse können nicht überwacht werden: ";
+	private static final String UNWRITABLE_OUTPUT = "Option --output kann nicht geschrieben werden: ";
 
 	/**
-	 * Sucht im übergebenen Verzeichnis nach Dubletten.
+	 * Sucht in den übergebenen Verzeichnissen nach Dubletten.
 	 *
-	 * @param args Erster Parameter muss ein gültiges Verzeichnis sein
+	 * @param args Optionen gefolgt von mindestens einem gültigen Verzeichnis
 	 */
 	public static void main(String[] args) {
-		if (args.length != 1) {
-			System.err.println(ERROR + NO_PARAM + USAGE);
+		final ConsoleArguments arguments;
+		try {
+			arguments = ConsoleArguments.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(ERROR + e.getMessage() + USAGE);
 			return;
 		}
 
-		File directory = new File(args[0] + File.separator);
+		for (File directory : arguments.getDirectories()) {
+			if (!directory.isDirectory()) {
+				System.err.println(ERROR + INVALID_DIRECTORY + USAGE);
+				return;
+			}
 
-		if (!directory.isDirectory()) {
-			System.err.println(ERROR + INVALID_DIRECTORY + USAGE);
+			if (!directory.canRead()) {
+				System.err.println(ERROR + UREADABLE_DIRECTORY + USAGE);
+				return;
+			}
+		}
+		final ScanRoots roots = new ScanRoots(arguments.getDirectories().stream().map(File::toPath).toList());
+		if (arguments.getReference() != null) {
+			findKnown(arguments, roots);
+			return;
+		}
+		if (arguments.isWatch()) {
+			watch(arguments, roots);
 			return;
 		}
 
-		if (!directory.canRead()) {
-			System.err.println(ERROR + UREADABLE_DIRECTORY + USAGE);
+		HashCache cache = null;
+		final ScanBudget budget = budget(arguments);
+		final ScanMetrics metrics = budget.getMetrics();
+		final DeviceLimits deviceLimits = arguments.getDeviceLimits();
+		CompareContentStrategy compareStrategy = new CompareContentStrategy()
+				.withBudget(budget)
+				.withVirtualThreads(arguments.isVirtualThreads())
+				.withAsynchronousReads(arguments.getAsyncReads());
+		if (arguments.getBufferMemory() > 0) {
+			compareStrategy = compareStrategy.withBufferPool(new BufferPool(arguments.getBufferMemory() * 1024L * 1024L));
+		}
+		ContentStrategy strategy = deviceLimits == null ? compareStrategy : compareStrategy.withDeviceLimits(deviceLimits);
+		if (arguments.getCache() != null) {
+			try {
+				cache = HashCache.open(arguments.getCache());
+			} catch (IOException e) {
+				System.err.println(ERROR + UNREADABLE_CACHE + e.getLocalizedMessage() + USAGE);
+				return;
+			}
+			final HashContentStrategy hashStrategy = new HashContentStrategy(HashAlgorithm.SHA_256).withCache(cache)
+					.withBudget(budget);
+			strategy = deviceLimits == null ? hashStrategy : hashStrategy.withDeviceLimits(deviceLimits);
+		}
+		if (arguments.isPrefilter()) {
+			strategy = new PartialHashContentStrategy(strategy).withBudget(budget);
+		}
+		DuplicateGroupWriter writer = null;
+		if (arguments.getFormat() != null) {
+			try {
+				writer = new DuplicateGroupWriter(arguments.getOutput() == null
+						? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+						: Files.newBufferedWriter(arguments.getOutput(), StandardCharsets.UTF_8), arguments.getFormat(), roots);
+			} catch (IOException e) {
+				System.err.println(ERROR + UNWRITABLE_OUTPUT + e.getLocalizedMessage() + USAGE);
+				close(cache);
+				return;
+			}
+		}
+		final PrintStream status = writer != null && arguments.getOutput() == null ? System.err : System.out;
+		ScanCheckpoint checkpoint = null;
+		if (arguments.getCheckpoint() != null) {
+			try {
+				checkpoint = ScanCheckpoint.open(arguments.getCheckpoint(), roots.getRoots(), arguments.getWalkOptions());
+			} catch (IOException e) {
+				System.err.println(ERROR + UNREADABLE_CHECKPOINT + e.getLocalizedMessage() + USAGE);
+				close(cache);
+				close(writer, arguments);
+				return;
+			}
+			if (checkpoint.getDirectoryCount() > 0) {
+				status.println("Resuming from checkpoint: " + checkpoint.getDirectoryCount() + " directories, "
+						+ checkpoint.getResolvedCount() + " groups");
+			}
+		}
+
+		final ScheduledExecutorService progress = startProgress(metrics, arguments.getProgressSeconds(), status);
+		final CountDownLatch finished = new CountDownLatch(1);
+		final Thread stop = stopOnShutdown(budget, finished);
+		boolean completed = false;
+		try (ScanExecutor executor = new ScanExecutor(arguments.getWalkThreads(), arguments.getCompareThreads(), budget)) {
+			find(roots, arguments.getWalkOptions(), strategy, executor, budget, checkpoint, writer, status);
+			completed = budget.getReason().isEmpty();
+		} finally {
+			finished.countDown();
+			try {
+				Runtime.getRuntime().removeShutdownHook(stop);
+			} catch (IllegalStateException e) {
+				// JVM wird bereits beendet, der Hook wartet auf die Ausgabe
+			}
+			if (progress != null) {
+				progress.shutdownNow();
+			}
+			close(cache);
+			close(writer, arguments);
+			if (checkpoint != null) {
+				try {
+					checkpoint.close();
+					if (completed) {
+						Files.deleteIfExists(arguments.getCheckpoint());
+					}
+				} catch (IOException e) {
+					System.err.println(ERROR + UNREADABLE_CHECKPOINT + e.getLocalizedMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Nimmt die angegebenen Verzeichnisse und Manifeste in den Referenzbestand
+	 * auf und gibt die Dateien der zu durchsuchenden Verzeichnisse aus, deren
+	 * Inhalt dort bereits vorhanden ist.
+	 */
+	private static void findKnown(ConsoleArguments arguments, ScanRoots roots) {
+		for (Path tree : arguments.getReferenceTrees()) {
+			if (!Files.isDirectory(tree)) {
+				System.err.println(ERROR + INVALID_REFERENCE_TREE + tree + USAGE);
+				return;
+			}
+		}
+		DateFormat timeInstance = SimpleDateFormat.getTimeInstance();
+		final DuplicateContentFinderCallback callback = new DuplicateContentFinderCallback() {};
+		try (ReferenceIndex reference = ReferenceIndex.open(arguments.getReference())) {
+			for (Path tree : arguments.getReferenceTrees()) {
+				System.out.println("Indexing reference " + tree + ": " + timeInstance.format(new Date()));
+				System.out.println("Hashed " + reference.add(tree, arguments.getWalkOptions(), callback) + " reference files");
+			}
+			for (Path manifest : arguments.getManifests()) {
+				System.out.println("Imported " + reference.importManifest(manifest) + " entries from " + manifest);
+			}
+			System.out.println("Begin finding known files in " + reference.size() + " reference files: "
+					+ timeInstance.format(new Date()));
+			final LongAdder known = new LongAdder();
+			final LongAdder knownSize = new LongAdder();
+			for (Path root : roots.getRoots()) {
+				reference.match(root, arguments.getWalkOptions(), callback).forEach(match -> {
+					System.out.println("Known: " + match.file() + " = " + match.references().get(0));
+					known.increment();
+					knownSize.add(match.length());
+				});
+			}
+			System.out.println("Known files: " + known.sum() + ", known size: " + knownSize.sum());
+			System.out.println("Program end: " + timeInstance.format(new Date()));
+		} catch (IOException e) {
+			System.err.println(ERROR + UNREADABLE_REFERENCE + e.getLocalizedMessage());
+		}
+	}
+
+	/**
+	 * Durchsucht die Verzeichnisse und gibt danach jede Änderung einer
+	 * Dublettengruppe aus, bis die JVM beendet wird.
+	 */
+	private static void watch(ConsoleArguments arguments, ScanRoots roots) {
+		DateFormat timeInstance = SimpleDateFormat.getTimeInstance();
+		System.out.println("Begin watching: " + timeInstance.format(new Date()));
+		final DuplicateWatcherCallback callback = new DuplicateWatcherCallback() {
+			@Override
+			public void groupCreated(DuplicateGroup group) {
+				System.out.println("Group created: " + describe(group));
+			}
+
+			@Override
+			public void groupChanged(DuplicateGroup group) {
+				System.out.println("Group changed: " + describe(group));
+			}
+
+			@Override
+			public void groupRemoved(ContentHash identity) {
+				System.out.println("Group removed: " + identity);
+			}
+		};
+		try (DuplicateWatcher watcher = DuplicateWatcher.open(roots.getRoots(), arguments.getWalkOptions(), callback)) {
+			System.out.println("Watching " + watcher.getDirectoryCount() + " directories with "
+					+ watcher.getGroups().size() + " groups");
+			while (watcher.processEvents(Duration.ofMinutes(1))) {
+				// Änderungen werden vom Callback ausgegeben
+			}
+		} catch (IOException e) {
+			System.err.println(ERROR + UNAVAILABLE_WATCH + e.getLocalizedMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static String describe(DuplicateGroup group) {
+		return group.getIdentity().map(ContentHash::toString).orElse("") + ", " + group.getFiles().size() + " files of "
+				+ group.getLength() + " bytes";
+	}
+
+	/**
+	 * Beschreibt eine Gruppe mit je einer Zeile für jede Datei und ihre
+	 * Wurzel, als ein Text, damit sich Gruppen aus mehreren Threads nicht
+	 * vermischen.
+	 */
+	private static String describe(DuplicateGroup group, ScanRoots roots) {
+		final StringBuilder lines = new StringBuilder("Duplicate group: ").append(describe(group))
+				.append(System.lineSeparator());
+		roots.byRoot(group).forEach((root, files) -> files.forEach(file -> lines.append("  ").append(root)
+				.append(": ").append(file).append(System.lineSeparator())));
+		return lines.toString();
+	}
+
+	/**
+	 * Schreibt die gepufferten Gruppen. Eine Datei wird geschlossen, System.out
+	 * bleibt offen.
+	 */
+	private static void close(DuplicateGroupWriter writer, ConsoleArguments arguments) {
+		if (writer == null) {
 			return;
 		}
+		try {
+			if (arguments.getOutput() == null) {
+				writer.flush();
+			} else {
+				writer.close();
+			}
+		} catch (IOException e) {
+			System.err.println(ERROR + UNWRITABLE_OUTPUT + e.getLocalizedMessage());
+		}
+	}
 
+	private static void close(HashCache cache) {
+		if (cache != null) {
+			try {
+				cache.close();
+			} catch (IOException e) {
+				System.err.println(ERROR + UNREADABLE_CACHE + e.getLocalizedMessage());
+			}
+		}
+	}
+
+	/**
+	 * Erzeugt das Budget der Suche aus den Optionen.
+	 */
+	private static ScanBudget budget(ConsoleArguments arguments) {
+		ScanBudget budget = new ScanBudget(new ScanMetrics());
+		if (arguments.getTimeLimitSeconds() > 0) {
+			budget = budget.withTimeLimit(Duration.ofSeconds(arguments.getTimeLimitSeconds()));
+		}
+		if (arguments.getMaxBytes() > 0) {
+			budget = budget.withMaxBytesRead(arguments.getMaxBytes());
+		}
+		if (arguments.getMaxFiles() > 0) {
+			budget = budget.withMaxFilesOpened(arguments.getMaxFiles());
+		}
+		return budget;
+	}
+
+	/**
+	 * Bricht die Suche ab, wenn die JVM etwa per Strg+C beendet wird, und
+	 * wartet, bis die bis dahin bestätigten Dubletten ausgegeben sind.
+	 *
+	 * @return Registrierter Shutdown-Hook
+	 */
+	private static Thread stopOnShutdown(ScanBudget budget, CountDownLatch finished) {
+		final Thread stop = new Thread(() -> {
+			budget.cancel();
+			try {
+				finished.await(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, "DupFinder stop");
+		Runtime.getRuntime().addShutdownHook(stop);
+		return stop;
+	}
+
+	private static void find(ScanRoots roots, WalkOptions options, ContentStrategy strategy, ScanExecutor executor,
+			ScanBudget budget, ScanCheckpoint checkpoint, DuplicateGroupWriter writer, PrintStream status) {
 		DateFormat timeInstance = SimpleDateFormat.getTimeInstance();
-		System.out.println("Begin finding lengths: " + timeInstance.format(new Date()));
-		Map<Long, List<File>> cluster = DuplicateLengthFinder.getResult(directory);
-
-		System.out.println("Begin finding duplicates: " + timeInstance.format(new Date()));
-		System.out.println("Duplicate size: " + cluster.values().parallelStream()
-				.filter(list -> list.size() != 1)
-				.flatMap(DuplicateContentFinder::getResult)
-				.mapToLong(files -> (files.size() - 1) * files.get(0).length())
+		status.println("Begin finding lengths: " + timeInstance.format(new Date()));
+		final LongAdder unwalked = new LongAdder();
+		final DuplicateLengthFinderCallback callback = new DuplicateLengthFinderCallback() {
+			@Override
+			public void skippedSubtree(String path, SkipReason reason) {
+				if (reason == SkipReason.BUDGET) {
+					unwalked.increment();
+				}
+			}
+		};
+		final List<Path> directories = roots.getRoots();
+		SizeIndex index = checkpoint == null ? executor.getIndex(directories, callback, options)
+				: executor.getIndex(directories, callback, options, checkpoint);
+		final ScanMetrics.Snapshot walked = executor.getMetrics().snapshot();
+		status.println("Walked " + walked.directoriesVisited() + " directories, " + walked.filesVisited() + " files in "
+				+ format(walked.walkTime()) + " (" + walked.filesPerSecond() + " files/s)");
+
+		status.println("Begin finding duplicates: " + timeInstance.format(new Date()));
+		final LongAdder waste = new LongAdder();
+		final LongAdder crossRootWaste = new LongAdder();
+		final LongAdder unresolved = new LongAdder();
+		final DuplicateGroupSink sink = new DuplicateGroupSink() {
+			@Override
+			public boolean accept(DuplicateGroup group) {
+				waste.add(group.getWaste());
+				if (directories.size() > 1 && roots.isCrossRoot(group)) {
+					crossRootWaste.add(group.getWaste());
+				}
+				if (writer == null && directories.size() > 1) {
+					status.print(describe(group, roots));
+				}
+				return writer == null || writer.accept(group);
+			}
+
+			@Override
+			public void unresolvedFile(File unresolvedFile) {
+				unresolved.increment();
+			}
+		};
+		executor.publish(index, strategy, sink, checkpoint);
+		final ScanMetrics.Snapshot compared = executor.getMetrics().snapshot();
+		status.println("Compared " + compared.groupsResolved() + " groups, read " + compared.bytesRead() + " bytes from "
+				+ compared.filesOpened() + " opened files in " + compared.comparisonRounds() + " rounds and "
+				+ format(compared.compareTime()) + " (" + compared.bytesPerSecond() + " bytes/s)");
+		status.println("Duplicate size: " + waste.sum());
+		if (directories.size() > 1) {
+			status.println("Duplicate size across roots: " + crossRootWaste.sum());
+		}
+		status.println("Hard-linked size: " + index.getHardLinks()
+				.mapToLong(links -> (links.size() - 1) * links.get(0).length())
 				.sum());
-		System.out.println("Program end: " + timeInstance.format(new Date()));
+		budget.getReason().ifPresent(reason -> status.println("Stopped early (" + reason + "): "
+				+ unwalked.sum() + " directories not walked, " + compared.groupsInterrupted() + " groups interrupted, "
+				+ unresolved.sum() + " files unresolved"));
+		status.println("Program end: " + timeInstance.format(new Date()));
+	}
+
+	/**
+	 * Gibt den Stand der Suche periodisch aus, bis der zurückgelieferte
+	 * Executor beendet wird.
+	 *
+	 * @return Executor der Ausgabe oder null, wenn keine erfolgen soll
+	 */
+	private static ScheduledExecutorService startProgress(ScanMetrics metrics, int seconds, PrintStream status) {
+		if (seconds == 0) {
+			return null;
+		}
+		final ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "DupFinder progress");
+			thread.setDaemon(true);
+			return thread;
+		});
+		progress.scheduleAtFixedRate(() -> {
+			final String line = progress(metrics.snapshot());
+			if (line != null) {
+				status.println(line);
+			}
+		}, seconds, seconds, TimeUnit.SECONDS);
+		return progress;
+	}
+
+	/**
+	 * @return Zeile mit dem Stand der laufenden Phase oder null außerhalb einer
+	 *         Phase
+	 */
+	static String progress(ScanMetrics.Snapshot snapshot) {
+		return switch (snapshot.phase()) {
+		case WALK -> "Progress: walking, " + snapshot.directoriesVisited() + " directories, "
+				+ snapshot.filesVisited() + " files (" + snapshot.filesPerSecond() + " files/s)";
+		case COMPARE -> "Progress: comparing, " + snapshot.groupsResolved() + "/"
+				+ (snapshot.groupsResolved() + snapshot.groupsPending()) + " groups, "
+				+ snapshot.bytesRead() + " bytes read (" + snapshot.bytesPerSecond() + " bytes/s), "
+				+ snapshot.openFiles() + " open files, " + snapshot.comparisonRounds() + " rounds, ETA "
+				+ snapshot.estimatedRemaining().map(DupFinderConsole::format).orElse("unknown");
+		default -> null;
+		};
+	}
+
+	private static String format(Duration duration) {
+		return String.format("%d:%02d:%02d", duration.toHours(), duration.toMinutesPart(), duration.toSecondsPart());
 	}
 }
\ No newline at end of file
@@ -0,0 +1,206 @@
+package de.b0n.dir.processor;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Binäres Log, an das Einträge nur angehängt werden. Gemeinsame Grundlage von
+ * HashCache, ReferenceIndex und ScanCheckpoint.
+ *
+ * Das Log beginnt mit einer Kennung und einer Version, gefolgt von einem
+ * optionalen, vom Nutzer geschriebenen Kopf. Jeder Eintrag beginnt mit einem
+ * Byte, das seine Art bestimmt. Beim Einlesen wird ein durch einen Abbruch
+ * unvollständiger letzter Eintrag verworfen. Neu geschrieben wird über eine
+ * temporäre Datei, die erst nach dem vollständigen Schreiben das Log ersetzt.
+ */
+final class AppendLog implements Closeable {
+	/**
+	 * Das Log wird beim Öffnen verdichtet, wenn es mehr als so viele Einträge
+	 * je gültigem Eintrag enthält.
+	 */
+	static final int COMPACTION_FACTOR = 2;
+
+	/**
+	 * Schreibt den Kopf oder Einträge des Logs.
+	 */
+	@FunctionalInterface
+	interface Writer {
+		void writeTo(DataOutputStream target) throws IOException;
+	}
+
+	/**
+	 * Prüft den Kopf des Logs.
+	 */
+	@FunctionalInterface
+	interface HeaderReader {
+		/**
+		 * @throws IOException
+		 *             Wenn das Log nicht zu seinem Nutzer passt
+		 */
+		void check(DataInputStream input) throws IOException;
+	}
+
+	/**
+	 * Liest einen Eintrag nach dessen erstem Byte.
+	 */
+	@FunctionalInterface
+	interface RecordReader {
+		/**
+		 * @param type
+		 *            Erstes Byte des Eintrags
+		 * @return false, wenn die Art des Eintrags unbekannt ist und das Log
+		 *         ab hier verworfen wird
+		 */
+		boolean read(int type, DataInputStream input) throws IOException;
+	}
+
+	private final Path log;
+	private final int magic;
+	private final int version;
+	private final String description;
+	private DataOutputStream output;
+
+	/**
+	 * @param log
+	 *            Datei des Logs
+	 * @param magic
+	 *            Kennung am Anfang des Logs
+	 * @param version
+	 *            Version des Formats
+	 * @param description
+	 *            Bezeichnung für Fehlermeldungen, etwa "hash cache"
+	 */
+	AppendLog(Path log, int magic, int version, String description) {
+		this.log = log;
+		this.magic = magic;
+		this.version = version;
+		this.description = description;
+	}
+
+	/**
+	 * @return true, wenn ein Log mit so vielen Einträgen bei so vielen
+	 *         gültigen Einträgen neu geschrieben werden sollte
+	 */
+	static boolean needsRewrite(long records, long valid) {
+		return records <= 0L || records > COMPACTION_FACTOR * valid;
+	}
+
+	/**
+	 * Liest das Log ein.
+	 *
+	 * @param header
+	 *            Prüft den Kopf nach Kennung und Version
+	 * @param reader
+	 *            Liest die einzelnen Einträge
+	 * @return Anzahl gelesener Einträge, 0 wenn das Log fehlt, oder -1, wenn
+	 *         das Log mit einem unvollständigen oder unbekannten Eintrag endet
+	 *         und neu geschrieben werden muss
+	 * @throws IOException
+	 *             Wenn das Log nicht gelesen werden kann oder nicht zu seinem
+	 *             Nutzer passt
+	 */
+	long load(HeaderReader header, RecordReader reader) throws IOException {
+		if (!Files.exists(log)) {
+			return 0L;
+		}
+		long records = 0L;
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(log)))) {
+			if (input.readInt() != magic || input.readInt() != version) {
+				throw new IOException("Not a " + description + ": " + log);
+			}
+			header.check(input);
+			int type;
+			while ((type = input.read()) >= 0) {
+				if (!reader.read(type, input)) {
+					return -1L;
+				}
+				records++;
+			}
+		} catch (EOFException e) {
+			return -1L;
+		}
+		return records;
+	}
+
+	/**
+	 * Schreibt das Log über eine temporäre Datei neu.
+	 *
+	 * @param header
+	 *            Schreibt den Kopf nach Kennung und Version
+	 * @param records
+	 *            Schreibt alle gültigen Einträge
+	 */
+	void rewrite(Writer header, Writer records) throws IOException {
+		final Path temporary = log.resolveSibling(log.getFileName() + ".tmp");
+		try (DataOutputStream rewritten = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+			rewritten.writeInt(magic);
+			rewritten.writeInt(version);
+			header.writeTo(rewritten);
+			records.writeTo(rewritten);
+		}
+		Files.move(temporary, log, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Öffnet das Log zum Anhängen.
+	 */
+	synchronized void openForAppend() throws IOException {
+		output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(log.toFile(), true)));
+	}
+
+	/**
+	 * Serialisiert einen Eintrag vollständig, damit etwa ein nicht
+	 * darstellbarer Pfad das Log nicht beschädigt.
+	 *
+	 * @return Serialisierter Eintrag
+	 * @throws IOException
+	 *             Wenn der Eintrag nicht serialisiert werden kann
+	 */
+	static byte[] serialize(Writer record) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		record.writeTo(new DataOutputStream(bytes));
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Hängt einen serialisierten Eintrag an das Log an.
+	 *
+	 * @throws IllegalStateException
+	 *             Wenn das Log bereits geschlossen ist
+	 */
+	synchronized void append(byte[] record) throws IOException {
+		if (output == null) {
+			throw new IllegalStateException("The " + description + " is already closed.");
+		}
+		output.write(record);
+	}
+
+	/**
+	 * @return true, solange das Log zum Anhängen geöffnet ist
+	 */
+	synchronized boolean isOpen() {
+		return output != null;
+	}
+
+	/**
+	 * Schreibt alle angehängten Einträge auf die Platte.
+	 */
+	synchronized void flush() throws IOException {
+		if (output != null) {
+			output.flush();
+		}
+	}
+
+	/**
+	 * Schreibt alle angehängten Einträge und schließt das Log.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (output != null) {
+			output.close();
+			output = null;
+		}
+	}
+}
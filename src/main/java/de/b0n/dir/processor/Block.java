@@ -0,0 +1,108 @@
+package de.b0n.dir.processor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Kapselt einen aus einer Datei gelesenen Block und dient beim blockweisen
+ * Inhaltsvergleich als Schlüssel der Gruppierung. Zwei Blöcke sind gleich, wenn
+ * ihr Inhalt Byte für Byte übereinstimmt. Der Vergleich erfolgt über
+ * {@link ByteBuffer#equals(Object)} und damit über den vektorisierten
+ * Mismatch-Vergleich des JDK.
+ *
+ * Der Inhalt ist nur bis zum nächsten Lesevorgang des zugehörigen
+ * {@link FileReader} gültig, da dessen Puffer wiederverwendet wird.
+ */
+final class Block {
+	/**
+	 * Datei wurde zuende gelesen
+	 */
+	static final Block FINISHED = new Block();
+	/**
+	 * Beim Lesen der Datei ist ein Fehler aufgetreten
+	 */
+	static final Block FAILING = new Block();
+
+	private final ByteBuffer content;
+	private final int hash;
+
+	private Block() {
+		this.content = null;
+		this.hash = System.identityHashCode(this);
+	}
+
+	/**
+	 * Erzeugt einen Block über dem verbleibenden Inhalt des übergebenen Puffers.
+	 *
+	 * @param content Gelesener Inhalt, darf nicht leer sein
+	 */
+	Block(ByteBuffer content) {
+		if (content == null) {
+			throw new IllegalArgumentException("content may not be null.");
+		}
+		this.content = content;
+		this.hash = hash(content);
+	}
+
+	/**
+	 * Berechnet den Hash über den gesamten Inhalt in 8-Byte-Schritten, damit die
+	 * Gruppierung auch bei Blöcken im Megabyte-Bereich nicht zum Flaschenhals wird.
+	 */
+	private static int hash(ByteBuffer content) {
+		final ByteBuffer view = content.slice().order(ByteOrder.LITTLE_ENDIAN);
+		final int length = view.remaining();
+		long h = length;
+		int i = 0;
+		for (; i + Long.BYTES <= length; i += Long.BYTES) {
+			h = h * 0x9E3779B97F4A7C15L + view.getLong(i);
+		}
+		for (; i < length; i++) {
+			h = h * 31 + view.get(i);
+		}
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * Kopiert den Inhalt aus dem Puffer des FileReaders, sodass der Block auch
+	 * nach dem nächsten Lesevorgang oder der Rückgabe eines geliehenen Puffers
+	 * gültig bleibt.
+	 *
+	 * @return Block mit eigenem Inhalt, FINISHED und FAILING unverändert
+	 */
+	Block detach() {
+		if (content == null) {
+			return this;
+		}
+		final ByteBuffer copy = ByteBuffer.allocate(content.remaining());
+		copy.put(content.duplicate()).flip();
+		return new Block(copy);
+	}
+
+	/**
+	 * @return Anzahl der Bytes im Block
+	 */
+	int length() {
+		return content == null ? 0 : content.remaining();
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof Block other) || content == null || other.content == null) {
+			return false;
+		}
+		try {
+			return hash == other.hash && content.equals(other.content);
+		} catch (InternalError e) {
+			// Abgebildete Datei wurde inzwischen gekürzt, ihr Inhalt ist nicht mehr gleich
+			return false;
+		}
+	}
+}
@@ -0,0 +1,313 @@
+package de.b0n.dir.processor;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wiederverwendbare Lesepuffer für den blockweisen Inhaltsvergleich mit einer
+ * festen Obergrenze des belegten Speichers. Die Obergrenze gilt für geliehene
+ * und zur Wiederverwendung vorgehaltene Puffer zusammen.
+ *
+ * Eine Vergleichsrunde reserviert den Speicher für alle ihre Dateien auf
+ * einmal und gibt ihn nach dem Gruppieren vollständig zurück. Die Blockgröße
+ * einer Runde richtet sich nach der Anzahl gleichzeitig lesender Dateien und
+ * wird bis {@value #MIN_BLOCK_SIZE} Bytes halbiert, solange der freie
+ * Speicher nicht reicht. Passen die Dateien einer Gruppe auch damit nicht in
+ * die Obergrenze, wird weiter bis auf ein Byte je Datei verkleinert. Eine
+ * Runde mit mehr Dateien als Bytes in der Obergrenze teilt der Aufrufer in
+ * Teilrunden auf.
+ *
+ * Die Obergrenze wird nie überschritten: Ist der Speicher auch mit der
+ * kleinsten Blockgröße nicht frei, wartet die Runde auf das Ende anderer
+ * Runden. Gewartet wird per {@link ForkJoinPool#managedBlock}, sodass der
+ * ForkJoinPool für die Wartezeit Ersatzthreads starten kann. Die Lesevorgänge
+ * einer Runde laufen als Teilaufgaben ihres eigenen parallelen Streams, ein
+ * auf sie wartender Thread übernimmt daher keine fremde Runde, solange seine
+ * Reservierung besteht. Vorgehaltene Puffer behalten ihren Anteil an der
+ * Obergrenze und werden verworfen, bevor eine Runde ihre Blockgröße
+ * verkleinert oder wartet.
+ */
+public final class BufferPool {
+	/**
+	 * Standardobergrenze des belegten Speichers
+	 */
+	public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+	/**
+	 * Kleinste Blockgröße bei Konkurrenz um den Speicher und Einheit der
+	 * Reservierung
+	 */
+	static final int MIN_BLOCK_SIZE = 512;
+	/**
+	 * Abstand, in dem eine wartende Runde vorgehaltene Puffer verwirft
+	 */
+	private static final long EVICT_INTERVAL_MILLIS = 10L;
+
+	private final long maxBytes;
+	private final boolean direct;
+	private final Semaphore capacity;
+	private final AtomicInteger activeReaders = new AtomicInteger();
+	private final AtomicLong cachedBytes = new AtomicLong();
+	private final AtomicLong leasedBytes = new AtomicLong();
+	private final AtomicLong peakBytes = new AtomicLong();
+	private final Map<Integer, Queue<ByteBuffer>> cached = new ConcurrentHashMap<>();
+
+	/**
+	 * Erzeugt einen Pool mit Heap-Puffern.
+	 *
+	 * @param maxBytes
+	 *            Obergrenze des belegten Speichers in Bytes
+	 */
+	public BufferPool(long maxBytes) {
+		this(maxBytes, false);
+	}
+
+	/**
+	 * Erzeugt einen Pool mit Heap- oder Direct-Puffern.
+	 *
+	 * @param maxBytes
+	 *            Obergrenze des belegten Speichers in Bytes, mindestens
+	 *            {@value #MIN_BLOCK_SIZE}
+	 * @param direct
+	 *            true für Direct-Puffer außerhalb des Heaps
+	 */
+	public BufferPool(long maxBytes, boolean direct) {
+		if (maxBytes < MIN_BLOCK_SIZE) {
+			throw new IllegalArgumentException("maxBytes must be at least " + MIN_BLOCK_SIZE + ".");
+		}
+		final int units = (int) Math.min(Integer.MAX_VALUE, maxBytes / MIN_BLOCK_SIZE);
+		this.maxBytes = (long) units * MIN_BLOCK_SIZE;
+		this.direct = direct;
+		this.capacity = new Semaphore(units);
+	}
+
+	/**
+	 * @return Obergrenze des belegten Speichers in Bytes
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * @return true, wenn Direct-Puffer verwendet werden
+	 */
+	public boolean isDirect() {
+		return direct;
+	}
+
+	/**
+	 * Reserviert Speicher für eine Runde. Die gewünschte Blockgröße wird durch
+	 * Halbieren verkleinert, bis die Dateien der Runde und alle bereits lesenden
+	 * Dateien gemeinsam in das Budget passen und der Speicher frei ist. Ist er
+	 * auch mit der kleinsten Blockgröße nicht frei, wird auf das Ende anderer
+	 * Runden gewartet.
+	 *
+	 * @param desired
+	 *            Gewünschte Blockgröße, eine Zweierpotenz
+	 * @param readers
+	 *            Anzahl der Dateien der Runde, die einen Puffer benötigen,
+	 *            höchstens {@link #getMaxBytes()}
+	 * @return Reservierung, die nach dem Gruppieren zu schließen ist
+	 */
+	Reservation reserve(int desired, int readers) {
+		if (readers > maxBytes) {
+			throw new IllegalArgumentException("readers may not exceed maxBytes.");
+		}
+		final int floor = floor(readers);
+		final long share = maxBytes / Math.max(1L, (long) readers + activeReaders.get());
+		int blockSize = desired;
+		while (blockSize > floor && blockSize > share) {
+			blockSize >>= 1;
+		}
+		int permits = permits(readers, blockSize);
+		boolean acquired = tryAcquire(permits);
+		while (!acquired && blockSize > floor) {
+			blockSize >>= 1;
+			permits = permits(readers, blockSize);
+			acquired = tryAcquire(permits);
+		}
+		if (!acquired) {
+			await(permits);
+		}
+		activeReaders.addAndGet(readers);
+		return new Reservation(readers, blockSize, permits);
+	}
+
+	/**
+	 * @return Kleinste Blockgröße einer Runde: {@value #MIN_BLOCK_SIZE} Bytes
+	 *         oder die größte Zweierpotenz, mit der alle Dateien der Runde in
+	 *         die Obergrenze passen
+	 */
+	private int floor(int readers) {
+		final long fitting = maxBytes / Math.max(1, readers);
+		return fitting >= MIN_BLOCK_SIZE ? MIN_BLOCK_SIZE : Integer.highestOneBit((int) fitting);
+	}
+
+	private int permits(int readers, int blockSize) {
+		return (int) Math.ceilDiv((long) readers * blockSize, MIN_BLOCK_SIZE);
+	}
+
+	private boolean tryAcquire(int permits) {
+		return capacity.tryAcquire(permits) || evictCached(permits) && capacity.tryAcquire(permits);
+	}
+
+	/**
+	 * Wartet auf freien Speicher, ohne dem ForkJoinPool dabei einen Thread zu
+	 * entziehen. Zwischenzeitlich vorgehaltene Puffer werden in kurzen
+	 * Abständen verworfen, damit sie den Speicher nicht dauerhaft binden.
+	 */
+	private void await(int permits) {
+		final boolean[] interrupted = new boolean[1];
+		try {
+			ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+				private boolean acquired;
+
+				@Override
+				public boolean block() {
+					try {
+						acquired = acquired || capacity.tryAcquire(permits, EVICT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+					} catch (InterruptedException e) {
+						// ohne Reservierung wird nicht gelesen, daher wird weiter gewartet
+						interrupted[0] = true;
+					}
+					return acquired;
+				}
+
+				@Override
+				public boolean isReleasable() {
+					acquired = acquired || tryAcquire(permits);
+					return acquired;
+				}
+			});
+		} catch (InterruptedException e) {
+			interrupted[0] = true;
+		}
+		if (interrupted[0]) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return Höchster bisher gleichzeitig geliehener und vorgehaltener
+	 *         Speicher in Bytes
+	 */
+	long getPeakBytes() {
+		return peakBytes.get();
+	}
+
+	/**
+	 * Verwirft vorgehaltene Puffer und gibt ihren Speicher frei, bis so viele
+	 * Einheiten frei sind oder keine Puffer mehr vorgehalten werden.
+	 *
+	 * @return true, wenn Puffer verworfen wurden
+	 */
+	private boolean evictCached(int permits) {
+		boolean evicted = false;
+		for (Queue<ByteBuffer> queue : cached.values()) {
+			while (capacity.availablePermits() < permits) {
+				final ByteBuffer buffer = queue.poll();
+				if (buffer == null) {
+					break;
+				}
+				cachedBytes.addAndGet(-buffer.capacity());
+				capacity.release(buffer.capacity() / MIN_BLOCK_SIZE);
+				evicted = true;
+			}
+		}
+		return evicted;
+	}
+
+	private ByteBuffer take(int size) {
+		final Queue<ByteBuffer> queue = cached.get(size);
+		final ByteBuffer reused = queue == null ? null : queue.poll();
+		if (reused != null) {
+			// die Reservierung der Runde deckt den Puffer bereits ab
+			cachedBytes.addAndGet(-size);
+			capacity.release(size / MIN_BLOCK_SIZE);
+		}
+		peakBytes.accumulateAndGet(leasedBytes.addAndGet(size) + cachedBytes.get(), Math::max);
+		if (reused != null) {
+			return reused.clear();
+		}
+		return direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+	}
+
+	/**
+	 * Hält einen zurückgegebenen Puffer zur Wiederverwendung vor. Er behält
+	 * dabei seine Einheiten der Reservierung.
+	 *
+	 * @param available
+	 *            Noch nicht an vorgehaltene Puffer übergebene Einheiten der
+	 *            Reservierung
+	 * @return Anzahl der vom Puffer weiter belegten Einheiten
+	 */
+	private int giveBack(ByteBuffer buffer, int available) {
+		final int size = buffer.capacity();
+		if (size < MIN_BLOCK_SIZE || size / MIN_BLOCK_SIZE > available) {
+			leasedBytes.addAndGet(-size);
+			return 0;
+		}
+		cachedBytes.addAndGet(size);
+		leasedBytes.addAndGet(-size);
+		cached.computeIfAbsent(size, key -> new ConcurrentLinkedQueue<>()).add(buffer);
+		return size / MIN_BLOCK_SIZE;
+	}
+
+	/**
+	 * Für eine Runde reservierter Speicher. Jede Datei der Runde leiht sich
+	 * daraus einen Puffer der Blockgröße. Beim Schließen werden alle Puffer zur
+	 * Wiederverwendung zurückgegeben.
+	 */
+	final class Reservation implements AutoCloseable {
+		private final int readers;
+		private final int blockSize;
+		private final int permits;
+		private final List<ByteBuffer> leased = new ArrayList<>();
+
+		private Reservation(int readers, int blockSize, int permits) {
+			this.readers = readers;
+			this.blockSize = blockSize;
+			this.permits = permits;
+		}
+
+		/**
+		 * @return Einheitliche Blockgröße der Runde
+		 */
+		int getBlockSize() {
+			return blockSize;
+		}
+
+		/**
+		 * @return Geleerter Puffer mit der Blockgröße der Runde
+		 */
+		ByteBuffer buffer() {
+			final ByteBuffer buffer = take(blockSize);
+			synchronized (leased) {
+				leased.add(buffer);
+			}
+			return buffer;
+		}
+
+		@Override
+		public void close() {
+			int retained = 0;
+			synchronized (leased) {
+				for (ByteBuffer buffer : leased) {
+					retained += giveBack(buffer, permits - retained);
+				}
+				leased.clear();
+			}
+			activeReaders.addAndGet(-readers);
+			capacity.release(permits - retained);
+		}
+	}
+}
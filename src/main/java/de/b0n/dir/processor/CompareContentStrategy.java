@@ -0,0 +1,421 @@
+package de.b0n.dir.processor;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.groupingByConcurrent;
+
+/**
+ * Vergleicht die Dateien einer Gruppe im Gleichschritt blockweise und
+ * gruppiert sie nach dem Inhalt des jeweiligen Blocks. Die Blockgröße wächst
+ * von Runde zu Runde, solange keine Unterschiede auftreten. Das Ergebnis ist
+ * exakt. Die Anzahl gleichzeitig geöffneter Dateien ist durch ein
+ * OpenFileBudget begrenzt, auch wenn eine Gruppe deutlich mehr Dateien enthält.
+ * Große Dateien werden in den Speicher abgebildet und ohne Kopie auf dem Heap
+ * verglichen.
+ *
+ * Mit DeviceLimits wird die Anzahl gleichzeitiger Lesevorgänge je Gerät
+ * begrenzt und jede Gruppe je Gerät in der Reihenfolge von Gerät und Inode
+ * gelesen, auch wenn mehrere Lesevorgänge gleichzeitig laufen. Die Grenzen
+ * gelten für gelesene Blöcke; abgebildete Fenster werden vom Betriebssystem
+ * bei Zugriff geladen.
+ *
+ * Mit virtuellen Threads liest jede Datei einer Runde auf einem eigenen
+ * virtuellen Thread, statt einen Thread des ForkJoinPools zu blockieren. So
+ * können auf Speicher mit hoher Latenz wie NFS weit mehr Lesevorgänge
+ * gleichzeitig ausstehen, als Prozessoren vorhanden sind. Nach oben begrenzen
+ * dann nur noch OpenFileBudget und DeviceLimits.
+ *
+ * Alternativ liest die Strategie asynchron über AsynchronousFileChannel: Je
+ * Runde und Gruppe bleibt eine einstellbare Anzahl Lesevorgänge gleichzeitig
+ * ausstehend, ohne dass dafür je ein Thread wartet. Virtuelle Threads und
+ * asynchrones Lesen schließen sich gegenseitig aus, der Versuch, beide
+ * einzuschalten, wird abgewiesen.
+ *
+ * Gelesen wird in Puffer aus einem BufferPool, der den Speicher aller
+ * gleichzeitig laufenden Runden begrenzt. Jede Runde leiht sich die Puffer
+ * ihrer Dateien und gibt sie nach dem Gruppieren zurück. Lesen viele Dateien
+ * gleichzeitig, wird die Blockgröße entsprechend verkleinert, bei Bedarf wird
+ * auf freien Speicher gewartet. Hat eine Gruppe mehr Dateien als der Pool
+ * Bytes, wird die Runde in Teilrunden mit je einem Byte je Datei gelesen.
+ *
+ * Mit einem ScanBudget wird vor jeder Runde geprüft, ob die Suche abgebrochen
+ * wurde oder eine Grenze erreicht ist. Die Dateien der Gruppe werden dann
+ * geschlossen und dem Callback als nicht entschieden gemeldet.
+ */
+public class CompareContentStrategy implements ContentStrategy {
+	/**
+	 * Größe des ersten gelesenen Blocks. Unterschiede zeigen sich meist früh in
+	 * der Datei, daher wird zunächst nur wenig gelesen.
+	 */
+	static final int MIN_BLOCK_SIZE = 4 * 1024;
+	/**
+	 * Obergrenze der Blockgröße, bis zu der nach jeder Vergleichsrunde ohne
+	 * Unterschied vergrößert wird.
+	 */
+	static final int MAX_BLOCK_SIZE = 1024 * 1024;
+	private static final int BLOCK_GROWTH = 16;
+	/**
+	 * Dateigröße, ab der Dateien standardmäßig in den Speicher abgebildet werden
+	 */
+	public static final long DEFAULT_MAP_THRESHOLD = 64L * 1024 * 1024;
+
+	private final OpenFileBudget budget;
+	private final long mapThreshold;
+	private final DeviceLimits deviceLimits;
+	private final boolean virtualThreads;
+	private final int readsInFlight;
+	private final ScanMetrics metrics;
+	private final BufferPool bufferPool;
+	private final ScanBudget scanBudget;
+
+	/**
+	 * Erzeugt die Strategie mit einem Budget von
+	 * {@link OpenFileBudget#DEFAULT_MAX_OPEN_FILES} geöffneten Dateien.
+	 */
+	public CompareContentStrategy() {
+		this(new OpenFileBudget(OpenFileBudget.DEFAULT_MAX_OPEN_FILES));
+	}
+
+	/**
+	 * Erzeugt die Strategie mit dem übergebenen Budget geöffneter Dateien. Das
+	 * Budget kann zwischen mehreren Strategien geteilt werden.
+	 *
+	 * @param budget
+	 *            Budget gleichzeitig geöffneter Dateien
+	 */
+	public CompareContentStrategy(OpenFileBudget budget) {
+		this(budget, DEFAULT_MAP_THRESHOLD, null, false, 0, null, new BufferPool(BufferPool.DEFAULT_MAX_BYTES), null);
+	}
+
+	private CompareContentStrategy(OpenFileBudget budget, long mapThreshold, DeviceLimits deviceLimits,
+			boolean virtualThreads, int readsInFlight, ScanMetrics metrics, BufferPool bufferPool,
+			ScanBudget scanBudget) {
+		if (budget == null) {
+			throw new IllegalArgumentException("budget may not be null.");
+		}
+		if (mapThreshold < 0) {
+			throw new IllegalArgumentException("mapThreshold may not be negative.");
+		}
+		this.budget = budget;
+		this.mapThreshold = mapThreshold;
+		this.deviceLimits = deviceLimits;
+		this.virtualThreads = virtualThreads;
+		this.readsInFlight = readsInFlight;
+		this.metrics = metrics;
+		this.bufferPool = bufferPool;
+		this.scanBudget = scanBudget;
+	}
+
+	/**
+	 * Liefert eine Strategie, die Dateien ab der übergebenen Größe in den
+	 * Speicher abbildet, statt sie über einen Heap-Puffer zu lesen.
+	 *
+	 * @param mapThreshold
+	 *            Dateigröße in Bytes, ab der abgebildet wird; Long.MAX_VALUE
+	 *            deaktiviert das Abbilden
+	 * @return Strategie mit geändertem Schwellwert und gleichem Budget
+	 */
+	public CompareContentStrategy withMapThreshold(long mapThreshold) {
+		return new CompareContentStrategy(budget, mapThreshold, deviceLimits, virtualThreads, readsInFlight, metrics, bufferPool, scanBudget);
+	}
+
+	/**
+	 * Liefert eine Strategie, die gleichzeitige Lesevorgänge je Gerät begrenzt
+	 * und die Dateien jeder Gruppe nach Gerät und Inode geordnet liest.
+	 *
+	 * @param deviceLimits
+	 *            Grenzen je Gerät, können zwischen Strategien geteilt werden
+	 * @return Strategie mit geänderten Grenzen, gleichem Budget und Schwellwert
+	 */
+	public CompareContentStrategy withDeviceLimits(DeviceLimits deviceLimits) {
+		if (deviceLimits == null) {
+			throw new IllegalArgumentException("deviceLimits may not be null.");
+		}
+		return new CompareContentStrategy(budget, mapThreshold, deviceLimits, virtualThreads, readsInFlight, metrics, bufferPool, scanBudget);
+	}
+
+	/**
+	 * Liefert eine Strategie, die die Blöcke jeder Runde auf virtuellen Threads
+	 * liest.
+	 *
+	 * @param virtualThreads
+	 *            true, um je Datei und Runde einen virtuellen Thread zu
+	 *            verwenden
+	 * @return Strategie mit geändertem Modus und sonst gleichen Einstellungen
+	 * @throws IllegalArgumentException
+	 *             Wenn virtuelle Threads eingeschaltet werden, während
+	 *             asynchron gelesen wird
+	 */
+	public CompareContentStrategy withVirtualThreads(boolean virtualThreads) {
+		if (virtualThreads && readsInFlight > 0) {
+			throw new IllegalArgumentException("virtualThreads may not be combined with asynchronous reads.");
+		}
+		return new CompareContentStrategy(budget, mapThreshold, deviceLimits, virtualThreads, readsInFlight, metrics, bufferPool, scanBudget);
+	}
+
+	/**
+	 * Liefert eine Strategie, die die Blöcke jeder Runde asynchron liest.
+	 *
+	 * @param readsInFlight
+	 *            Gleichzeitig ausstehende Lesevorgänge je Gruppe, mindestens 1;
+	 *            0 schaltet asynchrones Lesen ab
+	 * @return Strategie mit geändertem Modus und sonst gleichen Einstellungen
+	 * @throws IllegalArgumentException
+	 *             Wenn asynchrones Lesen eingeschaltet wird, während auf
+	 *             virtuellen Threads gelesen wird
+	 */
+	public CompareContentStrategy withAsynchronousReads(int readsInFlight) {
+		if (readsInFlight < 0) {
+			throw new IllegalArgumentException("readsInFlight may not be negative.");
+		}
+		if (readsInFlight > 0 && virtualThreads) {
+			throw new IllegalArgumentException("readsInFlight may not be combined with virtual threads.");
+		}
+		return new CompareContentStrategy(budget, mapThreshold, deviceLimits, virtualThreads, readsInFlight, metrics, bufferPool, scanBudget);
+	}
+
+	/**
+	 * Liefert eine Strategie, die geöffnete Dateien, gelesene Bytes und
+	 * Vergleichsrunden in den übergebenen Zählern erfasst.
+	 *
+	 * @param metrics
+	 *            Zähler der Suche
+	 * @return Strategie mit geänderten Zählern und sonst gleichen Einstellungen
+	 */
+	public CompareContentStrategy withMetrics(ScanMetrics metrics) {
+		if (metrics == null) {
+			throw new IllegalArgumentException("metrics may not be null.");
+		}
+		return new CompareContentStrategy(budget, mapThreshold, deviceLimits, virtualThreads, readsInFlight, metrics, bufferPool, scanBudget);
+	}
+
+	/**
+	 * Liefert eine Strategie, die in Puffer aus dem übergebenen Pool liest.
+	 *
+	 * @param bufferPool
+	 *            Pool der Lesepuffer, kann zwischen Strategien geteilt werden
+	 * @return Strategie mit geändertem Pool und sonst gleichen Einstellungen
+	 */
+	public CompareContentStrategy withBufferPool(BufferPool bufferPool) {
+		if (bufferPool == null) {
+			throw new IllegalArgumentException("bufferPool may not be null.");
+		}
+		return new CompareContentStrategy(budget, mapThreshold, deviceLimits, virtualThreads, readsInFlight, metrics, bufferPool, scanBudget);
+	}
+
+	/**
+	 * Liefert eine Strategie, die vor jeder Vergleichsrunde das übergebene
+	 * Budget prüft. Geöffnete Dateien, gelesene Bytes und Vergleichsrunden
+	 * werden in den ScanMetrics des Budgets erfasst.
+	 *
+	 * @param scanBudget
+	 *            Budget der Suche
+	 * @return Strategie mit geändertem Budget und Zählern und sonst gleichen
+	 *         Einstellungen
+	 */
+	public CompareContentStrategy withBudget(ScanBudget scanBudget) {
+		if (scanBudget == null) {
+			throw new IllegalArgumentException("scanBudget may not be null.");
+		}
+		return new CompareContentStrategy(budget, mapThreshold, deviceLimits, virtualThreads, readsInFlight, scanBudget.getMetrics(), bufferPool, scanBudget);
+	}
+
+	private Stream<DuplicateGroup> streamDuplicateFilesList(List<FileReader> pack, int blockSize, DuplicateContentFinderCallback callback) {
+		Map<Block, List<FileReader>> dubletteCandidates;
+		int length = blockSize;
+		do {
+			if (scanBudget != null && scanBudget.isExhausted()) {
+				pack.stream()
+						.map(FileReader::clear)
+						.forEach(callback::unresolvedFile);
+				return Stream.empty();
+			}
+			final int currentLength = length;
+			dubletteCandidates = readRound(pack, currentLength);
+			length = Math.min(length * BLOCK_GROWTH, MAX_BLOCK_SIZE);
+		} while (dubletteCandidates.size() == 1
+				&& !dubletteCandidates.containsKey(Block.FINISHED)
+				&& !dubletteCandidates.containsKey(Block.FAILING));
+
+		final int nextLength = length;
+		return dubletteCandidates.entrySet().parallelStream()
+						.filter(failedFiles(callback))
+						.filter(uniqueFiles(callback))
+						.flatMap(entry -> {
+							if (entry.getKey() == Block.FINISHED) {
+								final long fileLength = entry.getValue().get(0).getPosition();
+								return Stream.of(new DuplicateGroup(fileLength,
+										entry.getValue().stream()
+											.map(FileReader::clear)
+											.toList(),
+										null));
+							} else {
+								return streamDuplicateFilesList(ordered(entry.getValue()), nextLength, callback);
+							}
+						});
+	}
+
+	/**
+	 * Liest den nächsten Block jeder Datei und gruppiert die Dateien nach diesem.
+	 * Die Blockgröße wird dabei gegebenenfalls an das Budget des BufferPools
+	 * angepasst, für alle Dateien der Runde gleich.
+	 */
+	private Map<Block, List<FileReader>> readRound(List<FileReader> pack, int desiredLength) {
+		if (metrics != null) {
+			metrics.comparisonRound();
+		}
+		final int buffered = (int) pack.stream().filter(reader -> !reader.isMapped()).count();
+		if (buffered > bufferPool.getMaxBytes()) {
+			return readInSlices(pack);
+		}
+		try (BufferPool.Reservation reservation = bufferPool.reserve(desiredLength, buffered)) {
+			return read(pack, reservation.getBlockSize(), reservation);
+		}
+	}
+
+	/**
+	 * Liest eine Runde mit mehr Dateien, als der BufferPool Bytes hat, in
+	 * Teilrunden mit einem Byte je Datei. Die Blöcke einer Teilrunde werden
+	 * kopiert, bevor ihre Puffer an den Pool zurückgehen.
+	 */
+	private Map<Block, List<FileReader>> readInSlices(List<FileReader> pack) {
+		final Map<Block, List<FileReader>> groups = new LinkedHashMap<>();
+		int from = 0;
+		while (from < pack.size()) {
+			int to = from;
+			int buffered = 0;
+			while (to < pack.size() && (buffered < bufferPool.getMaxBytes() || pack.get(to).isMapped())) {
+				if (!pack.get(to).isMapped()) {
+					buffered++;
+				}
+				to++;
+			}
+			try (BufferPool.Reservation reservation = bufferPool.reserve(1, buffered)) {
+				read(pack.subList(from, to), 1, reservation).forEach((block, readers) -> groups
+						.computeIfAbsent(block.detach(), key -> new ArrayList<>())
+						.addAll(readers));
+			}
+			from = to;
+		}
+		return groups;
+	}
+
+	/**
+	 * Liest den nächsten Block jeder Datei in die Puffer der Reservierung.
+	 */
+	private Map<Block, List<FileReader>> read(List<FileReader> pack, int length, BufferPool.Reservation reservation) {
+		if (readsInFlight > 0) {
+			return readAsynchronously(pack, length, reservation);
+		}
+		if (deviceLimits != null) {
+			return readInOrder(pack, length, reservation);
+		}
+		if (!virtualThreads) {
+			return pack.parallelStream()
+					.collect(groupingByConcurrent(reader -> reader.read(length, bufferFor(reader, reservation))));
+		}
+		final List<Future<Block>> blocks;
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			blocks = pack.stream()
+					.map(reader -> executor.submit(() -> reader.read(length, bufferFor(reader, reservation))))
+					.toList();
+		}
+		return group(pack, blocks.stream().map(Future::resultNow).toList());
+	}
+
+	/**
+	 * Liest die nach Gerät und Inode geordneten Dateien je Gerät in dieser
+	 * Reihenfolge, mit virtuellen Threads oder im ForkJoinPool.
+	 */
+	private Map<Block, List<FileReader>> readInOrder(List<FileReader> pack, int length,
+			BufferPool.Reservation reservation) {
+		final Function<FileReader, Block> read = reader -> reader.read(length, bufferFor(reader, reservation));
+		if (!virtualThreads) {
+			return group(pack, deviceLimits.inOrder(pack, FileReader::getLocation, read, null));
+		}
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			return group(pack, deviceLimits.inOrder(pack, FileReader::getLocation, read, executor));
+		}
+	}
+
+	private static ByteBuffer bufferFor(FileReader reader, BufferPool.Reservation reservation) {
+		return reader.isMapped() ? null : reservation.buffer();
+	}
+
+	/**
+	 * Stößt die Lesevorgänge in Reihenfolge an, wobei höchstens readsInFlight
+	 * gleichzeitig ausstehen, und gruppiert nach Eintreffen aller Blöcke.
+	 */
+	private Map<Block, List<FileReader>> readAsynchronously(List<FileReader> pack, int length,
+			BufferPool.Reservation reservation) {
+		final Semaphore inFlight = new Semaphore(readsInFlight);
+		final List<CompletableFuture<Block>> blocks = new ArrayList<>(pack.size());
+		for (FileReader reader : pack) {
+			inFlight.acquireUninterruptibly();
+			blocks.add(reader.readAsync(length, bufferFor(reader, reservation))
+					.whenComplete((block, exception) -> inFlight.release()));
+		}
+		return group(pack, blocks.stream().map(CompletableFuture::join).toList());
+	}
+
+	private static Map<Block, List<FileReader>> group(List<FileReader> pack, List<Block> blocks) {
+		final Map<Block, List<FileReader>> groups = new LinkedHashMap<>();
+		for (int i = 0; i < pack.size(); i++) {
+			groups.computeIfAbsent(blocks.get(i), block -> new ArrayList<>()).add(pack.get(i));
+		}
+		return groups;
+	}
+
+	/**
+	 * Stellt nach dem Gruppieren die Lesereihenfolge nach Gerät und Inode
+	 * wieder her.
+	 */
+	private List<FileReader> ordered(List<FileReader> readers) {
+		if (deviceLimits == null) {
+			return readers;
+		}
+		final List<FileReader> ordered = new ArrayList<>(readers);
+		ordered.sort(FileReader.LOCALITY);
+		return ordered;
+	}
+
+	private static Predicate<Map.Entry<Block, List<FileReader>>> failedFiles(DuplicateContentFinderCallback callback) {
+		return entry -> {
+			if (entry.getKey() == Block.FAILING) {
+				entry.getValue().stream()
+						.map(FileReader::clear)
+						.forEach(callback::failedFile);
+				return false;
+			}
+			return true;
+		};
+	}
+
+	private static Predicate<Map.Entry<Block, List<FileReader>>> uniqueFiles(DuplicateContentFinderCallback callback) {
+		return entry -> {
+			if (entry.getValue().size() == 1) {
+				entry.getValue().stream()
+						.map(FileReader::clear)
+						.forEach(callback::uniqueFile);
+				return false;
+			}
+			return true;
+		};
+	}
+
+	@Override
+	public Stream<DuplicateGroup> getResult(Collection<File> input, DuplicateContentFinderCallback callback) {
+		final List<FileReader> pack = FileReader.pack(input, budget, mapThreshold, deviceLimits, metrics);
+		return streamDuplicateFilesList(pack, MIN_BLOCK_SIZE, callback);
+	}
+}
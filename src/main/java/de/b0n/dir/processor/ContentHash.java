@@ -0,0 +1,86 @@
+package de.b0n.dir.processor;
+
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * Hashwert über den vollständigen Inhalt einer Datei. Zwei Hashwerte sind
+ * gleich, wenn sie mit demselben Verfahren berechnet wurden und
+ * übereinstimmen.
+ */
+public final class ContentHash {
+	private final HashAlgorithm algorithm;
+	private final byte[] value;
+
+	/**
+	 * Erzeugt einen Hashwert.
+	 *
+	 * @param algorithm
+	 *            Verfahren, mit dem der Hashwert berechnet wurde
+	 * @param value
+	 *            Hashwert
+	 */
+	public ContentHash(HashAlgorithm algorithm, byte[] value) {
+		if (algorithm == null) {
+			throw new IllegalArgumentException("algorithm may not be null.");
+		}
+		if (value == null) {
+			throw new IllegalArgumentException("value may not be null.");
+		}
+		this.algorithm = algorithm;
+		this.value = value.clone();
+	}
+
+	/**
+	 * Liest einen hexadezimal kodierten Hashwert ein.
+	 *
+	 * @param algorithm
+	 *            Verfahren, mit dem der Hashwert berechnet wurde
+	 * @param hex
+	 *            Hexadezimal kodierter Hashwert
+	 * @return Hashwert
+	 */
+	public static ContentHash parse(HashAlgorithm algorithm, String hex) {
+		if (hex == null) {
+			throw new IllegalArgumentException("hex may not be null.");
+		}
+		return new ContentHash(algorithm, HexFormat.of().parseHex(hex));
+	}
+
+	/**
+	 * @return Verfahren, mit dem der Hashwert berechnet wurde
+	 */
+	public HashAlgorithm getAlgorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * @return Kopie des Hashwerts
+	 */
+	public byte[] getValue() {
+		return value.clone();
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * algorithm.hashCode() + Arrays.hashCode(value);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		return obj instanceof ContentHash other
+				&& algorithm == other.algorithm
+				&& Arrays.equals(value, other.value);
+	}
+
+	/**
+	 * @return Hexadezimal kodierter Hashwert
+	 */
+	@Override
+	public String toString() {
+		return HexFormat.of().formatHex(value);
+	}
+}
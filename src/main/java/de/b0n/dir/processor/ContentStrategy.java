@@ -0,0 +1,26 @@
+package de.b0n.dir.processor;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.stream.Stream;
+
+/**
+ * Verfahren, mit dem der DuplicateContentFinder die inhaltliche Gleichheit von
+ * Dateien feststellt.
+ */
+public interface ContentStrategy {
+
+	/**
+	 * Gruppiert die übergebenen Dateien nach ihrem Inhalt. Einzigartige und nicht
+	 * lesbare Dateien werden nicht zurückgeliefert, sondern dem Callback gemeldet.
+	 *
+	 * @param input
+	 *            Mindestens zwei Dateien, welche auf inhaltliche Gleichheit
+	 *            geprüft werden sollen
+	 * @param callback
+	 *            Callback, um über die Ergebnisse der Dublettensuche informiert zu
+	 *            werden
+	 * @return Bestätigte Dublettengruppen, jeweils sobald sie feststehen
+	 */
+	Stream<DuplicateGroup> getResult(Collection<File> input, DuplicateContentFinderCallback callback);
+}
@@ -0,0 +1,199 @@
+package de.b0n.dir.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Begrenzt die gleichzeitigen Lesevorgänge je Gerät beim Inhaltsvergleich. So
+ * kann eine Festplatte mit ein bis zwei gleichzeitigen Zugriffen möglichst
+ * sequentiell gelesen werden, während eine SSD im selben Lauf mit vielen
+ * parallelen Zugriffen ausgelastet wird.
+ *
+ * Das Gerät einer Datei wird unter Unix über die Attribute dev und ino in
+ * einem einzigen Zugriff ermittelt. Die Inode dient zusätzlich als Schlüssel,
+ * um die Dateien eines Geräts in einer möglichst nah an der physischen Lage
+ * liegenden Reihenfolge zu lesen. Diese Reihenfolge hält
+ * {@link #inOrder(List, Function, Function, Executor)} ein, indem je Gerät eine
+ * geordnete Warteschlange von höchstens so vielen Arbeitern abgearbeitet wird,
+ * wie das Gerät gleichzeitige Lesevorgänge erlaubt.
+ */
+public final class DeviceLimits {
+	private static final String UNIX_LOCATION = "unix:dev,ino";
+
+	/**
+	 * Lage einer Datei: Gerät, Inode und die Lesevorgänge des Geräts
+	 * begrenzende Semaphore.
+	 */
+	record Location(long device, long inode, Semaphore permits) {}
+
+	/**
+	 * Ordnet Dateien nach Gerät, dann nach Inode und zuletzt nach Pfad.
+	 */
+	static final Comparator<Map.Entry<File, Location>> LOCALITY = Comparator
+			.<Map.Entry<File, Location>>comparingLong(entry -> entry.getValue().device())
+			.thenComparingLong(entry -> entry.getValue().inode())
+			.thenComparing(Map.Entry::getKey);
+
+	private final int defaultLimit;
+	private final Map<Long, Integer> limits;
+	private final Map<Long, Semaphore> permits = new ConcurrentHashMap<>();
+
+	/**
+	 * Erzeugt Grenzen ohne Beschränkung für nicht eigens konfigurierte Geräte.
+	 */
+	public DeviceLimits() {
+		this(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Erzeugt Grenzen mit der übergebenen Anzahl gleichzeitiger Lesevorgänge
+	 * für nicht eigens konfigurierte Geräte.
+	 *
+	 * @param defaultLimit
+	 *            Gleichzeitige Lesevorgänge je Gerät, mindestens 1
+	 */
+	public DeviceLimits(int defaultLimit) {
+		this(defaultLimit, Map.of());
+	}
+
+	private DeviceLimits(int defaultLimit, Map<Long, Integer> limits) {
+		if (defaultLimit < 1) {
+			throw new IllegalArgumentException("defaultLimit must be positive.");
+		}
+		this.defaultLimit = defaultLimit;
+		this.limits = limits;
+	}
+
+	/**
+	 * Liefert Grenzen mit geänderter Anzahl gleichzeitiger Lesevorgänge für nicht
+	 * eigens konfigurierte Geräte.
+	 *
+	 * @param defaultLimit
+	 *            Gleichzeitige Lesevorgänge je Gerät, mindestens 1
+	 * @return Geänderte Grenzen
+	 */
+	public DeviceLimits withDefaultLimit(int defaultLimit) {
+		return new DeviceLimits(defaultLimit, limits);
+	}
+
+	/**
+	 * Liefert Grenzen mit einer eigenen Anzahl gleichzeitiger Lesevorgänge für
+	 * das Gerät, auf dem der übergebene Pfad liegt.
+	 *
+	 * @param path
+	 *            Beliebiger Pfad auf dem Gerät, etwa dessen Einhängepunkt
+	 * @param limit
+	 *            Gleichzeitige Lesevorgänge auf diesem Gerät, mindestens 1
+	 * @return Geänderte Grenzen
+	 */
+	public DeviceLimits withLimit(Path path, int limit) {
+		if (path == null) {
+			throw new IllegalArgumentException("path may not be null.");
+		}
+		if (limit < 1) {
+			throw new IllegalArgumentException("limit must be positive.");
+		}
+		final long device;
+		try {
+			device = ((Number) Files.getAttribute(path, "unix:dev")).longValue();
+		} catch (IOException | UnsupportedOperationException e) {
+			throw new IllegalArgumentException("device of path can not be determined: " + path, e);
+		}
+		final Map<Long, Integer> changed = new HashMap<>(limits);
+		changed.put(device, limit);
+		return new DeviceLimits(defaultLimit, Map.copyOf(changed));
+	}
+
+	/**
+	 * @return Gleichzeitige Lesevorgänge für nicht eigens konfigurierte Geräte
+	 */
+	public int getDefaultLimit() {
+		return defaultLimit;
+	}
+
+	/**
+	 * Wendet die Aufgabe auf alle Elemente an und hält dabei je Gerät die
+	 * Reihenfolge der Liste ein: Je Gerät entnehmen höchstens so viele Arbeiter,
+	 * wie dessen Grenze gleichzeitige Lesevorgänge erlaubt, das jeweils nächste
+	 * Element einer geordneten Warteschlange. Bei einer Grenze von 1 wird ein
+	 * Gerät damit streng in der Reihenfolge der Liste gelesen, unabhängig
+	 * davon, in welcher Reihenfolge Threads eine Freigabe erhalten. Geräte
+	 * werden untereinander parallel abgearbeitet.
+	 *
+	 * @param ordered
+	 *            Nach {@link #LOCALITY} geordnete Elemente
+	 * @param locationOf
+	 *            Liefert die Lage eines Elements
+	 * @param task
+	 *            Aufgabe je Element, etwa ein Lesevorgang
+	 * @param executor
+	 *            Führt die Arbeiter aus, null für den ForkJoinPool
+	 * @return Ergebnisse der Aufgabe in der Reihenfolge der Elemente
+	 */
+	<T, R> List<R> inOrder(List<T> ordered, Function<T, Location> locationOf, Function<T, R> task, Executor executor) {
+		final Map<Long, Queue<Integer>> queues = new LinkedHashMap<>();
+		for (int i = 0; i < ordered.size(); i++) {
+			queues.computeIfAbsent(locationOf.apply(ordered.get(i)).device(), device -> new ConcurrentLinkedQueue<>())
+					.add(i);
+		}
+		final AtomicReferenceArray<R> results = new AtomicReferenceArray<>(ordered.size());
+		final List<Runnable> workers = new ArrayList<>();
+		queues.forEach((device, queue) -> {
+			final int count = Math.min(limits.getOrDefault(device, defaultLimit), queue.size());
+			for (int i = 0; i < count; i++) {
+				workers.add(() -> {
+					for (Integer next = queue.poll(); next != null; next = queue.poll()) {
+						results.set(next, task.apply(ordered.get(next)));
+					}
+				});
+			}
+		});
+		if (executor == null) {
+			workers.parallelStream().forEach(Runnable::run);
+		} else {
+			CompletableFuture.allOf(workers.stream()
+					.map(worker -> CompletableFuture.runAsync(worker, executor))
+					.toArray(CompletableFuture[]::new)).join();
+		}
+		final List<R> list = new ArrayList<>(ordered.size());
+		for (int i = 0; i < ordered.size(); i++) {
+			list.add(results.get(i));
+		}
+		return list;
+	}
+
+	/**
+	 * Ermittelt die Lage einer Datei. Ist sie nicht bestimmbar, etwa außerhalb
+	 * von Unix oder bei einer nicht lesbaren Datei, wird die Datei wie ein
+	 * eigenes, unbekanntes Gerät mit der Standardgrenze behandelt.
+	 */
+	Location locate(File file) {
+		long device = -1L;
+		long inode = 0L;
+		try {
+			final Map<String, Object> attributes = Files.readAttributes(file.toPath(), UNIX_LOCATION);
+			device = ((Number) attributes.get("dev")).longValue();
+			inode = ((Number) attributes.get("ino")).longValue();
+		} catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+			// Unbekanntes Gerät
+		}
+		return new Location(device, inode, permits.computeIfAbsent(device,
+				key -> new Semaphore(limits.getOrDefault(key, defaultLimit))));
+	}
+}
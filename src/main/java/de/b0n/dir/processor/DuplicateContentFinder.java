@@ -2,71 +2,15 @@ package de.b0n.dir.processor;
 
 import java.io.File;
 import java.util.*;
-import java.util.function.Predicate;
 import java.util.stream.Stream;
 
-import static java.util.stream.Collectors.groupingByConcurrent;
-
 /**
- * Sucht von gegeben Dateigruppen inhaltliche Duplikate.
+ * Sucht von gegeben Dateigruppen inhaltliche Duplikate. Das Verfahren zur
+ * Feststellung der inhaltlichen Gleichheit ist über eine ContentStrategy
+ * wählbar, standardmäßig werden die Dateien blockweise verglichen.
  */
 public class DuplicateContentFinder {
-
-	private static Stream<List<File>> streamDuplicateFilesList(List<FileReader> pack, DuplicateContentFinderCallback callback) {
-		if (pack.size() == 1) {
-			return Stream.of(
-					pack.stream()
-						.map(FileReader::clear)
-						.toList());
-		}
-
-		Map<Integer, List<FileReader>> dubletteCandidates = Map.of(0, pack);
-		while (dubletteCandidates.size() == 1
-				&& !dubletteCandidates.containsKey(FileReader.FINISHED)
-				&& !dubletteCandidates.containsKey(FileReader.FAILING)) {
-			dubletteCandidates = dubletteCandidates.values().parallelStream()
-					.flatMap(List::parallelStream)
-					.collect(groupingByConcurrent(FileReader::read));
-		}
-
-		return dubletteCandidates.entrySet().parallelStream()
-						.filter(failedFiles(callback))
-						.filter(uniqueFiles(callback))
-						.flatMap(entry -> {
-							if (entry.getKey() == FileReader.FINISHED) {
-								return Stream.of(
-										entry.getValue().stream()
-											.map(FileReader::clear)
-											.toList());
-							} else {
-								return streamDuplicateFilesList(entry.getValue(), callback);
-							}
-						});
-	}
-
-	private static Predicate<Map.Entry<Integer, List<FileReader>>> failedFiles(DuplicateContentFinderCallback callback) {
-		return entry -> {
-			if (entry.getKey() == FileReader.FAILING) {
-				entry.getValue().stream()
-						.map(FileReader::clear)
-						.forEach(callback::failedFile);
-				return false;
-			}
-			return true;
-		};
-	}
-
-	private static Predicate<Map.Entry<Integer, List<FileReader>>> uniqueFiles(DuplicateContentFinderCallback callback) {
-		return entry -> {
-			if (entry.getValue().size() == 1) {
-				entry.getValue().stream()
-						.map(FileReader::clear)
-						.forEach(callback::uniqueFile);
-				return false;
-			}
-			return true;
-		};
-	}
+	private static final ContentStrategy DEFAULT_STRATEGY = new CompareContentStrategy();
 
 	/**
 	 * Ermittelt anhand der optional nach Dateigröße vorgruppierten Files
@@ -93,6 +37,42 @@ public class DuplicateContentFinder {
 	 *            werden
 	 */
 	public static Stream<List<File>> getResult(final Collection<File> input, final DuplicateContentFinderCallback callback) {
+		return getResult(input, callback, DEFAULT_STRATEGY);
+	}
+
+	/**
+	 * Ermittelt anhand der optional nach Dateigröße vorgruppierten Files
+	 * inhaltliche Dubletten mit dem übergebenen Verfahren.
+	 *
+	 * @param input
+	 *            Dateigruppen, welche auf inhaltliche Gleichheit geprüft werden
+	 *            sollen
+	 * @param callback
+	 *            Callback, um über die Ergebnisse der Dublettensuche informiert zu
+	 *            werden
+	 * @param strategy
+	 *            Verfahren zur Feststellung der inhaltlichen Gleichheit
+	 */
+	public static Stream<List<File>> getResult(final Collection<File> input, final DuplicateContentFinderCallback callback, final ContentStrategy strategy) {
+		return getGroups(input, callback, strategy).map(DuplicateGroup::getFiles);
+	}
+
+	/**
+	 * Ermittelt anhand der optional nach Dateigröße vorgruppierten Files
+	 * inhaltliche Dubletten mit dem übergebenen Verfahren, einschließlich Größe
+	 * und gegebenenfalls Hash jeder Gruppe.
+	 *
+	 * @param input
+	 *            Dateigruppen, welche auf inhaltliche Gleichheit geprüft werden
+	 *            sollen
+	 * @param callback
+	 *            Callback, um über die Ergebnisse der Dublettensuche informiert zu
+	 *            werden
+	 * @param strategy
+	 *            Verfahren zur Feststellung der inhaltlichen Gleichheit
+	 * @return Bestätigte Dublettengruppen
+	 */
+	public static Stream<DuplicateGroup> getGroups(final Collection<File> input, final DuplicateContentFinderCallback callback, final ContentStrategy strategy) {
 		if (input == null) {
 			throw new IllegalArgumentException("input may not be null.");
 		}
@@ -102,7 +82,47 @@ public class DuplicateContentFinder {
 		if (callback == null) {
 			throw new IllegalArgumentException("callback may not be null.");
 		}
+		if (strategy == null) {
+			throw new IllegalArgumentException("strategy may not be null.");
+		}
+
+		if (input.size() == 1) {
+			input.forEach(callback::uniqueFile);
+			return Stream.empty();
+		}
+		return strategy.getResult(input, callback);
+	}
+
+	/**
+	 * Ermittelt für alle übergebenen Kandidatengruppen die inhaltlichen Dubletten
+	 * und übergibt jede Gruppe dem Empfänger, sobald sie feststeht. Die
+	 * Kandidatengruppen werden parallel verarbeitet. Die Methode kehrt zurück,
+	 * wenn alle Gruppen verarbeitet sind oder der Empfänger die Suche beendet.
+	 *
+	 * @param candidates
+	 *            Gruppen von Dateien gleicher Größe, etwa aus
+	 *            {@link SizeIndex#getCandidates()}
+	 * @param strategy
+	 *            Verfahren zur Feststellung der inhaltlichen Gleichheit
+	 * @param sink
+	 *            Empfänger der bestätigten Dublettengruppen
+	 * @return true, wenn alle Kandidaten verarbeitet wurden, false bei
+	 *         vorzeitigem Abbruch durch den Empfänger
+	 */
+	public static boolean publish(final Stream<? extends Collection<File>> candidates, final ContentStrategy strategy, final DuplicateGroupSink sink) {
+		if (candidates == null) {
+			throw new IllegalArgumentException("candidates may not be null.");
+		}
+		if (strategy == null) {
+			throw new IllegalArgumentException("strategy may not be null.");
+		}
+		if (sink == null) {
+			throw new IllegalArgumentException("sink may not be null.");
+		}
 
-		return streamDuplicateFilesList(FileReader.pack(input), callback);
+		return candidates.parallel()
+				.filter(files -> !files.isEmpty())
+				.flatMap(files -> getGroups(files, sink, strategy))
+				.allMatch(sink::accept);
 	}
-}
\ No newline at end of file
+}
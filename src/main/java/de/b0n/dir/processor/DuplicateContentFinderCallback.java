@@ -21,4 +21,11 @@ public interface DuplicateContentFinderCallback {
 	 * @param uniqueFile File ohne Duplikat
 	 */
 	default void uniqueFile(File uniqueFile) {}
+
+	/**
+	 * Wird aufgerufen, wenn eine Datei wegen eines erschöpften ScanBudget nicht
+	 * mehr abschließend verglichen wurde
+	 * @param unresolvedFile File, dessen Dubletten nicht feststehen
+	 */
+	default void unresolvedFile(File unresolvedFile) {}
 }
@@ -0,0 +1,69 @@
+package de.b0n.dir.processor;
+
+import java.io.File;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Gruppe von Dateien mit bestätigt gleichem Inhalt.
+ */
+public final class DuplicateGroup {
+	private final long length;
+	private final List<File> files;
+	private final ContentHash identity;
+
+	/**
+	 * Erzeugt eine Dublettengruppe.
+	 *
+	 * @param length
+	 *            Größe jeder Datei der Gruppe in Bytes
+	 * @param files
+	 *            Mindestens zwei Dateien gleichen Inhalts
+	 * @param identity
+	 *            Hash des gemeinsamen Inhalts oder null, wenn das Verfahren
+	 *            keinen Hash berechnet
+	 */
+	public DuplicateGroup(long length, List<File> files, ContentHash identity) {
+		if (length < 0) {
+			throw new IllegalArgumentException("length may not be negative.");
+		}
+		if (files == null) {
+			throw new IllegalArgumentException("files may not be null.");
+		}
+		if (files.size() < 2) {
+			throw new IllegalArgumentException("files must contain at least two files.");
+		}
+		this.length = length;
+		this.files = List.copyOf(files);
+		this.identity = identity;
+	}
+
+	/**
+	 * @return Größe jeder Datei der Gruppe in Bytes
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * @return Dateien gleichen Inhalts
+	 */
+	public List<File> getFiles() {
+		return files;
+	}
+
+	/**
+	 * @return Hash des gemeinsamen Inhalts, sofern das Verfahren einen berechnet
+	 */
+	public Optional<ContentHash> getIdentity() {
+		return Optional.ofNullable(identity);
+	}
+
+	/**
+	 * @return Durch die Dubletten belegter Speicher, also die Größe aller
+	 *         Dateien bis auf eine
+	 */
+	public long getWaste() {
+		return length * (files.size() - 1);
+	}
+}
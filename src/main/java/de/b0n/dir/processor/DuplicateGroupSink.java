@@ -0,0 +1,81 @@
+package de.b0n.dir.processor;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Empfängt jede Dublettengruppe, sobald ihr letzter Block verglichen wurde,
+ * statt erst nach Abschluss der gesamten Suche.
+ *
+ * {@link #accept(DuplicateGroup)} wird direkt aus den suchenden Threads
+ * aufgerufen. Ein Empfänger, der dort blockiert, bremst damit die Suche aus;
+ * so kann ein langsamer Abnehmer die Suche nicht überholen lassen. Liefert er
+ * false, wird die Suche vorzeitig beendet.
+ */
+public interface DuplicateGroupSink extends DuplicateContentFinderCallback {
+
+	/**
+	 * Wird aufgerufen, sobald eine Dublettengruppe bestätigt wurde. Kann
+	 * gleichzeitig aus mehreren Threads aufgerufen werden.
+	 *
+	 * @param group
+	 *            Bestätigte Dublettengruppe
+	 * @return true, wenn weitere Gruppen gesucht werden sollen
+	 */
+	boolean accept(DuplicateGroup group);
+
+	/**
+	 * Begrenzt die an den Empfänger weitergereichten Gruppen. Sobald die Anzahl
+	 * der Gruppen oder der durch Dubletten belegte Speicher die Grenze erreicht,
+	 * wird die Suche beendet. Darüber hinaus gefundene Gruppen werden nicht mehr
+	 * weitergereicht.
+	 *
+	 * @param sink
+	 *            Eigentlicher Empfänger
+	 * @param maxGroups
+	 *            Maximale Anzahl an Gruppen
+	 * @param maxWaste
+	 *            Maximal durch Dubletten belegter Speicher in Bytes
+	 * @return Begrenzter Empfänger
+	 */
+	static DuplicateGroupSink limit(DuplicateGroupSink sink, long maxGroups, long maxWaste) {
+		if (sink == null) {
+			throw new IllegalArgumentException("sink may not be null.");
+		}
+		if (maxGroups <= 0) {
+			throw new IllegalArgumentException("maxGroups must be positive.");
+		}
+		if (maxWaste <= 0) {
+			throw new IllegalArgumentException("maxWaste must be positive.");
+		}
+		final AtomicLong groups = new AtomicLong();
+		final AtomicLong waste = new AtomicLong();
+		return new DuplicateGroupSink() {
+			@Override
+			public boolean accept(DuplicateGroup group) {
+				final long previousWaste = waste.getAndAdd(group.getWaste());
+				if (groups.getAndIncrement() >= maxGroups || previousWaste >= maxWaste) {
+					return false;
+				}
+				return sink.accept(group)
+						&& groups.get() < maxGroups
+						&& previousWaste + group.getWaste() < maxWaste;
+			}
+
+			@Override
+			public void failedFile(File failedFile) {
+				sink.failedFile(failedFile);
+			}
+
+			@Override
+			public void uniqueFile(File uniqueFile) {
+				sink.uniqueFile(uniqueFile);
+			}
+
+			@Override
+			public void unresolvedFile(File unresolvedFile) {
+				sink.unresolvedFile(unresolvedFile);
+			}
+		};
+	}
+}
@@ -0,0 +1,248 @@
+package de.b0n.dir.processor;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+
+/**
+ * Schreibt jede bestätigte Dublettengruppe sofort in einem maschinenlesbaren
+ * Format, sodass nachgelagerte Werkzeuge die Gruppen verarbeiten können,
+ * während die Suche noch läuft, und das Ergebnis nie vollständig im Speicher
+ * liegt.
+ *
+ * Geschrieben wird über einen BufferedWriter, Gruppen aus mehreren Threads
+ * werden nacheinander und nie ineinander verschachtelt geschrieben. Schlägt
+ * das Schreiben fehl, wird die Suche beendet und der Fehler beim Schließen
+ * geworfen.
+ */
+public final class DuplicateGroupWriter implements DuplicateGroupSink, Closeable {
+	/**
+	 * Ausgabeformate.
+	 */
+	public enum Format {
+		/**
+		 * Ein JSON-Objekt je Gruppe und Zeile mit den Feldern files, length,
+		 * hash, paths und roots, wobei roots je Pfad dessen Wurzel oder null
+		 * enthält
+		 */
+		JSON_LINES,
+		/**
+		 * Eine Zeile je Datei mit den Spalten group, files, length, hash, root
+		 * und path nach RFC 4180, mit Kopfzeile
+		 */
+		CSV,
+		/**
+		 * Flache Liste der Pfade aller Gruppen, jeder mit NUL abgeschlossen,
+		 * etwa für xargs -0. Die Zugehörigkeit zu Gruppen geht dabei verloren,
+		 * dafür dienen JSON_LINES und CSV.
+		 */
+		NUL
+	}
+
+	private final BufferedWriter writer;
+	private final Format format;
+	private final ScanRoots roots;
+	private long groups;
+	private IOException failure;
+
+	/**
+	 * Erzeugt einen Empfänger, der in den übergebenen Writer schreibt.
+	 *
+	 * @param writer
+	 *            Ziel der Ausgabe, wird beim Schließen geschlossen
+	 * @param format
+	 *            Ausgabeformat
+	 */
+	public DuplicateGroupWriter(Writer writer, Format format) {
+		this(writer, format, null);
+	}
+
+	/**
+	 * Erzeugt einen Empfänger, der jede Datei mit ihrer Wurzel schreibt.
+	 *
+	 * @param writer
+	 *            Ziel der Ausgabe, wird beim Schließen geschlossen
+	 * @param format
+	 *            Ausgabeformat
+	 * @param roots
+	 *            Wurzeln der Suche oder null, wenn die Wurzel leer bleibt
+	 */
+	public DuplicateGroupWriter(Writer writer, Format format, ScanRoots roots) {
+		if (writer == null) {
+			throw new IllegalArgumentException("writer may not be null.");
+		}
+		if (format == null) {
+			throw new IllegalArgumentException("format may not be null.");
+		}
+		this.writer = writer instanceof BufferedWriter buffered ? buffered : new BufferedWriter(writer);
+		this.format = format;
+		this.roots = roots;
+	}
+
+	@Override
+	public synchronized boolean accept(DuplicateGroup group) {
+		if (failure != null) {
+			return false;
+		}
+		try {
+			switch (format) {
+			case JSON_LINES -> writeJson(group);
+			case CSV -> writeCsv(group);
+			case NUL -> writeNul(group);
+			}
+			groups++;
+			return true;
+		} catch (IOException e) {
+			failure = e;
+			return false;
+		}
+	}
+
+	private void writeJson(DuplicateGroup group) throws IOException {
+		writer.write("{\"files\":");
+		writer.write(Integer.toString(group.getFiles().size()));
+		writer.write(",\"length\":");
+		writer.write(Long.toString(group.getLength()));
+		writer.write(",\"hash\":");
+		if (group.getIdentity().isPresent()) {
+			writer.write('"');
+			writer.write(group.getIdentity().get().toString());
+			writer.write('"');
+		} else {
+			writer.write("null");
+		}
+		writer.write(",\"paths\":[");
+		boolean first = true;
+		for (File file : group.getFiles()) {
+			if (!first) {
+				writer.write(',');
+			}
+			first = false;
+			writeJsonString(file.getPath());
+		}
+		writer.write("],\"roots\":[");
+		first = true;
+		for (File file : group.getFiles()) {
+			if (!first) {
+				writer.write(',');
+			}
+			first = false;
+			final String root = rootOf(file);
+			if (root == null) {
+				writer.write("null");
+			} else {
+				writeJsonString(root);
+			}
+		}
+		writer.write("]}\n");
+	}
+
+	/**
+	 * @return Wurzel der Datei oder null, wenn keine Wurzeln bekannt sind oder
+	 *         die Datei unter keiner liegt
+	 */
+	private String rootOf(File file) {
+		return roots == null ? null : roots.rootOf(file).map(Path::toString).orElse(null);
+	}
+
+	private void writeJsonString(String value) throws IOException {
+		writer.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			switch (c) {
+			case '"' -> writer.write("\\\"");
+			case '\\' -> writer.write("\\\\");
+			case '\n' -> writer.write("\\n");
+			case '\r' -> writer.write("\\r");
+			case '\t' -> writer.write("\\t");
+			default -> {
+				if (c < 0x20) {
+					writer.write(String.format("\\u%04x", (int) c));
+				} else {
+					writer.write(c);
+				}
+			}
+			}
+		}
+		writer.write('"');
+	}
+
+	private void writeCsv(DuplicateGroup group) throws IOException {
+		if (groups == 0) {
+			writer.write("group,files,length,hash,root,path\r\n");
+		}
+		final String prefix = (groups + 1) + "," + group.getFiles().size() + "," + group.getLength() + ","
+				+ group.getIdentity().map(ContentHash::toString).orElse("") + ",";
+		for (File file : group.getFiles()) {
+			writer.write(prefix);
+			final String root = rootOf(file);
+			if (root != null) {
+				writeCsvField(root);
+			}
+			writer.write(',');
+			writeCsvField(file.getPath());
+			writer.write("\r\n");
+		}
+	}
+
+	private void writeCsvField(String value) throws IOException {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+			writer.write(value);
+			return;
+		}
+		writer.write('"');
+		writer.write(value.replace("\"", "\"\""));
+		writer.write('"');
+	}
+
+	private void writeNul(DuplicateGroup group) throws IOException {
+		for (File file : group.getFiles()) {
+			writer.write(file.getPath());
+			writer.write('\0');
+		}
+	}
+
+	/**
+	 * @return Anzahl der geschriebenen Gruppen
+	 */
+	public synchronized long getGroupCount() {
+		return groups;
+	}
+
+	/**
+	 * Schreibt alle gepufferten Gruppen, ohne das Ziel zu schließen, etwa bei
+	 * Ausgabe auf System.out.
+	 *
+	 * @throws IOException
+	 *             Wenn das Schreiben fehlgeschlagen ist
+	 */
+	public synchronized void flush() throws IOException {
+		if (failure != null) {
+			throw failure;
+		}
+		writer.flush();
+	}
+
+	/**
+	 * Schreibt alle gepufferten Gruppen und schließt das Ziel.
+	 *
+	 * @throws IOException
+	 *             Wenn das Schreiben fehlgeschlagen ist
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			writer.close();
+		} catch (IOException e) {
+			if (failure == null) {
+				failure = e;
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+}
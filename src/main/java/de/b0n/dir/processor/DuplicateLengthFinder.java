@@ -1,41 +1,525 @@
 package de.b0n.dir.processor;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
-import java.util.stream.Stream;
 
-import static java.util.stream.Collectors.*;
+import de.b0n.dir.processor.DuplicateLengthFinderCallback.SkipReason;
 
 /**
  * Sucht in einem gegebenen Verzeichnis und dessen Unterverzeichnissen nach
- * Dateien und sortiert diese nach Dateigröße.
+ * Dateien und sortiert diese nach Dateigröße. Die Attribute jedes Eintrags
+ * werden dabei genau einmal gelesen und Typ sowie Größe daraus übernommen.
+ * Ein- und Ausschlussmuster sowie Größengrenzen der WalkOptions werden schon
+ * beim Durchsuchen angewandt, ausgeschlossene Verzeichnisse werden nicht
+ * gelesen. Die gefundenen Dateien werden zusammen mit Gerät und Inode aus
+ * demselben Lesezugriff in einem SizeIndex gesammelt, der Hardlinks auf
+ * dieselbe physische Datei zusammenfasst.
+ *
+ * Mit einem ScanBudget wird vor jedem Verzeichnis geprüft, ob die Suche
+ * abgebrochen wurde oder eine Grenze erreicht ist. Nicht mehr durchsuchte
+ * Verzeichnisse werden dem Callback als übersprungen gemeldet, der Index
+ * enthält die bis dahin gefundenen Dateien.
+ *
+ * Mit einem ScanCheckpoint wird jedes vollständig gelesene Verzeichnis
+ * festgehalten. Beim Fortsetzen werden festgehaltene Verzeichnisse nicht
+ * erneut gelesen, sondern aus dem ScanCheckpoint übernommen, sofern sich die
+ * Änderungszeit des Verzeichnisses und Größe, Änderungszeit und Identität
+ * seiner Dateien nicht geändert haben.
+ *
+ * Mehrere Startverzeichnisse werden nacheinander in denselben SizeIndex
+ * durchsucht. Jedes Verzeichnis wird anhand seines fileKey nur einmal gelesen,
+ * sodass verschachtelte oder doppelt angegebene Startverzeichnisse und
+ * Bind-Mounts keine Datei mehrfach aufnehmen.
  */
 public class DuplicateLengthFinder {
-	private static Stream<File> handleDirectory(File directory, DuplicateLengthFinderCallback callback) {
-		callback.enteredNewDirectory(directory);
-		try {
-			return Arrays.stream(Optional.ofNullable(directory.list())
-							.orElseThrow(() -> new IllegalStateException(directory.getAbsolutePath())))
-					.parallel()
-					.map(toFileOf(directory))
-					.flatMap(file -> {
-						if (file.isDirectory()) {
-							return handleDirectory(file, callback);
-						} else if (file.isFile()) {
-							return Stream.of(file);
-						}
-						callback.unidentifiedFileObject(file.getAbsolutePath());
-						return Stream.empty();
-					});
-		} catch (IllegalStateException ise) {
-			callback.unreadableDirectory(ise.getMessage());
+	private static final LinkOption[] FOLLOW_LINKS = {};
+	private static final LinkOption[] NO_FOLLOW_LINKS = { LinkOption.NOFOLLOW_LINKS };
+	private static final String UNIX_ATTRIBUTES = "unix:isRegularFile,isDirectory,isSymbolicLink,size,lastModifiedTime,fileKey,dev,ino";
+
+	/**
+	 * Attribute eines Eintrags aus einem einzigen Lesezugriff. Gerät und Inode
+	 * liefert nur ein Unix-Dateisystem, sonst ist das Gerät
+	 * {@link SizeIndex#NO_DEVICE}.
+	 */
+	record Attributes(boolean isRegularFile, boolean isDirectory, boolean isSymbolicLink, long size,
+			FileTime lastModifiedTime, Object fileKey, long device, long inode) {}
+
+	private record Entry(Path path, Attributes attributes) {}
+
+	private record Walk(SizeIndex index, DuplicateLengthFinderCallback callback, WalkOptions options,
+			WalkOptions.Filter filter, Object device, ScanMetrics metrics, ScanBudget budget,
+			ScanCheckpoint checkpoint, Map<Object, Path> visited) {}
+
+	/**
+	 * Kette der fileKeys aller Verzeichnisse vom Startverzeichnis bis zum
+	 * aktuellen Verzeichnis zur Erkennung von Zyklen.
+	 */
+	private record Ancestor(Object fileKey, Ancestor parent) {
+		boolean contains(Object key) {
+			for (Ancestor ancestor = this; ancestor != null; ancestor = ancestor.parent()) {
+				if (key.equals(ancestor.fileKey())) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	private static void handleDirectory(Path directory, Attributes attributes, Ancestor ancestors, Walk walk) {
+		final DuplicateLengthFinderCallback callback = walk.callback();
+		if (walk.budget() != null && walk.budget().isExhausted()) {
+			callback.skippedSubtree(directory.toString(), SkipReason.BUDGET);
+			return;
+		}
+		if (walk.visited().putIfAbsent(ancestors.fileKey() != null ? ancestors.fileKey() : directory, directory) != null) {
+			callback.skippedSubtree(directory.toString(), SkipReason.ALREADY_WALKED);
+			return;
+		}
+		callback.enteredNewDirectory(directory.toFile());
+		walk.metrics().directoryVisited();
+		final ScanCheckpoint.WalkedDirectory walked = walk.checkpoint() == null ? null
+				: walk.checkpoint().getDirectory(directory);
+		if (walked != null) {
+			if (isUnchanged(directory, attributes, walked, walk)) {
+				resumeDirectory(directory, walked, ancestors, walk);
+				return;
+			}
+			walk.checkpoint().invalidate(directory);
+		}
+		final List<Path> paths = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+			stream.forEach(paths::add);
+		} catch (IOException | DirectoryIteratorException e) {
+			callback.unreadableDirectory(directory.toString());
+			return;
+		}
+
+		final LinkOption[] linkOptions = walk.options().isFollowLinks() ? FOLLOW_LINKS : NO_FOLLOW_LINKS;
+		final List<Entry> entries = paths.parallelStream()
+				.map(path -> {
+					try {
+						return new Entry(path, readAttributes(path, linkOptions));
+					} catch (IOException e) {
+						callback.unidentifiedFileObject(path.toString());
+						return null;
+					}
+				})
+				.filter(Objects::nonNull)
+				.toList();
+
+		final List<ScanCheckpoint.WalkedFile> walkedFiles = new ArrayList<>();
+		for (Entry entry : entries) {
+			if (entry.attributes().isRegularFile()) {
+				if (!walk.filter().acceptsFile(entry.path(), entry.attributes().size())) {
+					continue;
+				}
+				walkedFiles.add(new ScanCheckpoint.WalkedFile(entry.path().getFileName().toString(),
+						entry.attributes().size(), modifiedOf(entry.attributes()), entry.attributes().device(),
+						entry.attributes().inode()));
+				walk.metrics().fileVisited();
+			} else if (entry.attributes().isSymbolicLink()) {
+				callback.skippedSubtree(entry.path().toString(), SkipReason.SYMBOLIC_LINK);
+			} else if (!entry.attributes().isDirectory()) {
+				callback.unidentifiedFileObject(entry.path().toString());
+			}
+		}
+		walk.index().addDirectory(directory, walkedFiles);
+
+		final List<Entry> subdirectories = entries.parallelStream()
+				.filter(entry -> entry.attributes().isDirectory())
+				.filter(entry -> walk.filter().acceptsDirectory(entry.path()))
+				.filter(entry -> isAccepted(entry, ancestors, walk))
+				.toList();
+		if (walk.checkpoint() != null) {
+			walk.checkpoint().walked(directory, modifiedOf(attributes), walkedFiles, subdirectories.stream()
+					.map(entry -> entry.path().getFileName().toString())
+					.toList());
+		}
+		subdirectories.parallelStream()
+				.forEach(entry -> handleDirectory(entry.path(), entry.attributes(),
+						new Ancestor(entry.attributes().fileKey(), ancestors), walk));
+	}
+
+	/**
+	 * Prüft, ob ein festgehaltenes Verzeichnis noch dem aktuellen Stand
+	 * entspricht: Die Änderungszeit des Verzeichnisses erfasst hinzugefügte und
+	 * entfernte Einträge, Größe, Änderungszeit und Identität jeder Datei deren
+	 * Veränderung.
+	 */
+	private static boolean isUnchanged(Path directory, Attributes attributes, ScanCheckpoint.WalkedDirectory walked,
+			Walk walk) {
+		if (modifiedOf(attributes) != walked.modified()) {
+			return false;
+		}
+		final LinkOption[] linkOptions = walk.options().isFollowLinks() ? FOLLOW_LINKS : NO_FOLLOW_LINKS;
+		return walked.files().parallelStream().allMatch(file -> {
+			try {
+				final Attributes current = readAttributes(directory.resolve(file.name()), linkOptions);
+				return current.isRegularFile() && current.size() == file.size()
+						&& modifiedOf(current) == file.modified() && current.device() == file.device()
+						&& current.inode() == file.inode();
+			} catch (IOException e) {
+				return false;
+			}
+		});
+	}
+
+	private static long modifiedOf(Attributes attributes) {
+		return attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Übernimmt ein festgehaltenes Verzeichnis aus dem ScanCheckpoint, ohne es
+	 * zu lesen. Von den Unterverzeichnissen werden nur die Attribute zur
+	 * Erkennung von Zyklen gelesen.
+	 */
+	private static void resumeDirectory(Path directory, ScanCheckpoint.WalkedDirectory walked, Ancestor ancestors, Walk walk) {
+		walk.index().addDirectory(directory, walked.files());
+		walked.files().forEach(file -> walk.metrics().fileVisited());
+
+		final LinkOption[] linkOptions = walk.options().isFollowLinks() ? FOLLOW_LINKS : NO_FOLLOW_LINKS;
+		walked.subdirectories().parallelStream()
+				.map(directory::resolve)
+				.map(path -> {
+					try {
+						return new Entry(path, readAttributes(path, linkOptions));
+					} catch (IOException e) {
+						walk.callback().unreadableDirectory(path.toString());
+						return null;
+					}
+				})
+				.filter(Objects::nonNull)
+				.filter(entry -> entry.attributes().isDirectory())
+				.filter(entry -> isAccepted(entry, ancestors, walk))
+				.forEach(entry -> handleDirectory(entry.path(), entry.attributes(),
+						new Ancestor(entry.attributes().fileKey(), ancestors), walk));
+	}
+
+	private static boolean isAccepted(Entry entry, Ancestor ancestors, Walk walk) {
+		final Object fileKey = entry.attributes().fileKey();
+		if (fileKey != null && ancestors.contains(fileKey)) {
+			walk.callback().skippedSubtree(entry.path().toString(), SkipReason.CYCLE);
+			return false;
+		}
+		if (walk.device() != null) {
+			final Object device;
+			try {
+				device = deviceOf(entry.path(), entry.attributes());
+			} catch (IOException e) {
+				walk.callback().unreadableDirectory(entry.path().toString());
+				return false;
+			}
+			if (!walk.device().equals(device)) {
+				walk.callback().skippedSubtree(entry.path().toString(), SkipReason.OTHER_FILE_STORE);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Ermittelt das Dateisystem eines Verzeichnisses. Unter Unix genügt dazu die
+	 * bereits gelesene Gerätenummer, ohne die Liste der Einhängepunkte zu lesen.
+	 */
+	private static Object deviceOf(Path directory, Attributes attributes) throws IOException {
+		if (attributes.device() != SizeIndex.NO_DEVICE) {
+			return attributes.device();
+		}
+		return Files.getFileStore(directory);
+	}
+
+	/**
+	 * Liest die Attribute eines Eintrags mit einem einzigen Zugriff. Unter Unix
+	 * werden Gerät und Inode in derselben Abfrage gelesen, sodass Hardlinks
+	 * später ohne erneutes Lesen erkannt werden.
+	 *
+	 * @param path
+	 *            Zu lesender Eintrag
+	 * @param options
+	 *            Angabe, ob symbolischen Links gefolgt wird
+	 * @return Attribute des Eintrags
+	 * @throws IOException
+	 *             Wenn die Attribute nicht gelesen werden können
+	 */
+	static Attributes readAttributes(Path path, LinkOption... options) throws IOException {
+		if (path.getFileSystem().supportedFileAttributeViews().contains("unix")) {
+			final Map<String, Object> unix = Files.readAttributes(path, UNIX_ATTRIBUTES, options);
+			return new Attributes((Boolean) unix.get("isRegularFile"), (Boolean) unix.get("isDirectory"),
+					(Boolean) unix.get("isSymbolicLink"), (Long) unix.get("size"), (FileTime) unix.get("lastModifiedTime"),
+					unix.get("fileKey"), (Long) unix.get("dev"), (Long) unix.get("ino"));
 		}
-		return Stream.empty();
+		final BasicFileAttributes basic = Files.readAttributes(path, BasicFileAttributes.class, options);
+		return new Attributes(basic.isRegularFile(), basic.isDirectory(), basic.isSymbolicLink(), basic.size(),
+				basic.lastModifiedTime(), basic.fileKey(), SizeIndex.NO_DEVICE, 0L);
 	}
 
-	private static Function<String, File> toFileOf(File directory) {
-		return fileName -> new File(directory.getAbsolutePath() + System.getProperty("file.separator") + fileName);
+	/**
+	 * Einstiegsmethode zum Durchsuchen eines Verzeichnisses nach Dateien gleicher
+	 * Größe in einen speichersparenden Index.
+	 *
+	 * @param directory
+	 *            Zu durchsuchendes Verzeichnis
+	 * @return Index der gefundenen Dateien nach Dateigröße
+	 */
+	public static SizeIndex getIndex(final Path directory) {
+		return getIndex(directory, new DuplicateLengthFinderCallback() {});
+	}
+
+	/**
+	 * Einstiegsmethode zum Durchsuchen eines Verzeichnisses nach Dateien gleicher
+	 * Größe in einen speichersparenden Index.
+	 *
+	 * @param directory
+	 *            Zu durchsuchendes Verzeichnis
+	 * @param callback
+	 *            Ruft den Callback bei jedem neu betretenen Verzeichnis auf
+	 * @return Index der gefundenen Dateien nach Dateigröße
+	 */
+	public static SizeIndex getIndex(final Path directory, DuplicateLengthFinderCallback callback) {
+		return getIndex(directory, callback, WalkOptions.DEFAULT);
+	}
+
+	/**
+	 * Einstiegsmethode zum Durchsuchen eines Verzeichnisses nach Dateien gleicher
+	 * Größe in einen speichersparenden Index.
+	 *
+	 * @param directory
+	 *            Zu durchsuchendes Verzeichnis
+	 * @param callback
+	 *            Ruft den Callback bei jedem neu betretenen Verzeichnis und
+	 *            jedem übersprungenen Teilbaum auf
+	 * @param options
+	 *            Einstellungen für das Durchsuchen
+	 * @return Index der gefundenen Dateien nach Dateigröße
+	 */
+	public static SizeIndex getIndex(final Path directory, DuplicateLengthFinderCallback callback, WalkOptions options) {
+		return getIndex(directory, callback, options, new ScanMetrics());
+	}
+
+	/**
+	 * Einstiegsmethode zum Durchsuchen eines Verzeichnisses nach Dateien gleicher
+	 * Größe in einen speichersparenden Index, wobei betretene Verzeichnisse und
+	 * aufgenommene Dateien laufend gezählt werden.
+	 *
+	 * @param directory
+	 *            Zu durchsuchendes Verzeichnis
+	 * @param callback
+	 *            Ruft den Callback bei jedem neu betretenen Verzeichnis und
+	 *            jedem übersprungenen Teilbaum auf
+	 * @param options
+	 *            Einstellungen für das Durchsuchen
+	 * @param metrics
+	 *            Zähler der Suche, können während des Durchsuchens gelesen
+	 *            werden
+	 * @return Index der gefundenen Dateien nach Dateigröße
+	 */
+	public static SizeIndex getIndex(final Path directory, DuplicateLengthFinderCallback callback, WalkOptions options,
+			ScanMetrics metrics) {
+		if (metrics == null) {
+			throw new IllegalArgumentException("metrics may not be null.");
+		}
+		return getIndex(directory, callback, options, metrics, null, null);
+	}
+
+	/**
+	 * Einstiegsmethode zum Durchsuchen eines Verzeichnisses nach Dateien gleicher
+	 * Größe in einen speichersparenden Index, die abgebrochen oder durch
+	 * Grenzen beschränkt werden kann. Gezählt wird in den ScanMetrics des
+	 * Budgets.
+	 *
+	 * @param directory
+	 *            Zu durchsuchendes Verzeichnis
+	 * @param callback
+	 *            Ruft den Callback bei jedem neu betretenen Verzeichnis und
+	 *            jedem übersprungenen Teilbaum auf, auch wenn das Budget
+	 *            erschöpft ist
+	 * @param options
+	 *            Einstellungen für das Durchsuchen
+	 * @param budget
+	 *            Budget der Suche
+	 * @return Index der bis zur Erschöpfung des Budgets gefundenen Dateien nach
+	 *         Dateigröße
+	 */
+	public static SizeIndex getIndex(final Path directory, DuplicateLengthFinderCallback callback, WalkOptions options,
+			ScanBudget budget) {
+		if (budget == null) {
+			throw new IllegalArgumentException("budget may not be null.");
+		}
+		return getIndex(directory, callback, options, budget.getMetrics(), budget, null);
+	}
+
+	/**
+	 * Durchsucht ein Verzeichnis mit optionalem Budget und optionalen
+	 * Sicherungspunkten.
+	 *
+	 * @param budget
+	 *            Budget der Suche oder null
+	 * @param checkpoint
+	 *            Sicherungspunkte, aus denen fortgesetzt und in denen jedes
+	 *            gelesene Verzeichnis festgehalten wird, oder null
+	 */
+	static SizeIndex getIndex(final Path directory, DuplicateLengthFinderCallback callback, WalkOptions options,
+			ScanMetrics metrics, ScanBudget budget, ScanCheckpoint checkpoint) {
+		if (directory == null) {
+			throw new IllegalArgumentException("directory may not be null.");
+		}
+		return getIndex(List.of(directory), callback, options, metrics, budget, checkpoint);
+	}
+
+	/**
+	 * Einstiegsmethode zum Durchsuchen mehrerer Verzeichnisse nach Dateien
+	 * gleicher Größe in einen gemeinsamen Index. Verzeichnisse, die über mehrere
+	 * Startverzeichnisse erreichbar sind, werden nur einmal durchsucht und beim
+	 * zweiten Erreichen als übersprungen gemeldet.
+	 *
+	 * @param directories
+	 *            Zu durchsuchende Verzeichnisse, mindestens eines
+	 * @param callback
+	 *            Ruft den Callback bei jedem neu betretenen Verzeichnis und
+	 *            jedem übersprungenen Teilbaum auf
+	 * @param options
+	 *            Einstellungen für das Durchsuchen, gelten für jedes
+	 *            Startverzeichnis
+	 * @return Index der gefundenen Dateien aller Verzeichnisse nach Dateigröße
+	 */
+	public static SizeIndex getIndex(final Collection<Path> directories, DuplicateLengthFinderCallback callback,
+			WalkOptions options) {
+		return getIndex(directories, callback, options, new ScanMetrics(), null, null);
+	}
+
+	/**
+	 * Einstiegsmethode zum Durchsuchen mehrerer Verzeichnisse nach Dateien
+	 * gleicher Größe in einen gemeinsamen Index, die abgebrochen oder durch
+	 * Grenzen beschränkt werden kann. Gezählt wird in den ScanMetrics des
+	 * Budgets.
+	 *
+	 * @param directories
+	 *            Zu durchsuchende Verzeichnisse, mindestens eines
+	 * @param callback
+	 *            Ruft den Callback bei jedem neu betretenen Verzeichnis und
+	 *            jedem übersprungenen Teilbaum auf
+	 * @param options
+	 *            Einstellungen für das Durchsuchen, gelten für jedes
+	 *            Startverzeichnis
+	 * @param budget
+	 *            Budget der Suche
+	 * @return Index der bis zur Erschöpfung des Budgets gefundenen Dateien nach
+	 *         Dateigröße
+	 */
+	public static SizeIndex getIndex(final Collection<Path> directories, DuplicateLengthFinderCallback callback,
+			WalkOptions options, ScanBudget budget) {
+		if (budget == null) {
+			throw new IllegalArgumentException("budget may not be null.");
+		}
+		return getIndex(directories, callback, options, budget.getMetrics(), budget, null);
+	}
+
+	/**
+	 * Durchsucht mehrere Verzeichnisse mit optionalem Budget und optionalen
+	 * Sicherungspunkten nacheinander in einen gemeinsamen Index.
+	 *
+	 * @param budget
+	 *            Budget der Suche oder null
+	 * @param checkpoint
+	 *            Sicherungspunkte, aus denen fortgesetzt und in denen jedes
+	 *            gelesene Verzeichnis festgehalten wird, oder null
+	 */
+	static SizeIndex getIndex(final Collection<Path> directories, DuplicateLengthFinderCallback callback,
+			WalkOptions options, ScanMetrics metrics, ScanBudget budget, ScanCheckpoint checkpoint) {
+		return getIndex(directories, callback, options, metrics, budget, checkpoint, new ConcurrentHashMap<>());
+	}
+
+	/**
+	 * Durchsucht mehrere Verzeichnisse und überspringt dabei Verzeichnisse, die
+	 * bereits in den übergebenen betretenen Verzeichnissen enthalten sind, etwa
+	 * über die gesamte Laufzeit eines DuplicateWatcher.
+	 *
+	 * @param visited
+	 *            fileKey oder ersatzweise Pfad aller betretenen Verzeichnisse
+	 *            mit ihrem Pfad, wird um die neu betretenen ergänzt
+	 */
+	static SizeIndex getIndex(final Collection<Path> directories, DuplicateLengthFinderCallback callback,
+			WalkOptions options, ScanMetrics metrics, ScanBudget budget, ScanCheckpoint checkpoint,
+			Map<Object, Path> visited) {
+		if (directories == null) {
+			throw new IllegalArgumentException("directories may not be null.");
+		}
+		if (directories.isEmpty()) {
+			throw new IllegalArgumentException("directories may not be empty.");
+		}
+		if (callback == null) {
+			throw new IllegalArgumentException("callback may not be null.");
+		}
+		if (options == null) {
+			throw new IllegalArgumentException("options may not be null.");
+		}
+		if (metrics == null) {
+			throw new IllegalArgumentException("metrics may not be null.");
+		}
+		for (Path directory : directories) {
+			if (directory == null) {
+				throw new IllegalArgumentException("directory may not be null.");
+			}
+			if (!Files.exists(directory)) {
+				throw new IllegalArgumentException("directory must exist.");
+			}
+			if (!Files.isDirectory(directory)) {
+				throw new IllegalArgumentException("directory must be a valid directory.");
+			}
+		}
+
+		final SizeIndex index = new SizeIndex();
+		for (Path directory : directories) {
+			final Path root = directory.toAbsolutePath();
+			walk(root, new Walk(index, callback, options, options.filter(root), null, metrics, budget, checkpoint, visited));
+		}
+		return index;
+	}
+
+	/**
+	 * Durchsucht ein Verzeichnis unterhalb eines Startverzeichnisses mit dessen
+	 * Filtern, etwa ein neu angelegtes Verzeichnis im DuplicateWatcher.
+	 *
+	 * @param filter
+	 *            Filter des Startverzeichnisses, relativ zu dem Muster gelten
+	 * @param visited
+	 *            Bereits betretene Verzeichnisse, die übersprungen werden, wird
+	 *            um die neu betretenen ergänzt
+	 */
+	static SizeIndex getIndex(final Path directory, WalkOptions.Filter filter, DuplicateLengthFinderCallback callback,
+			WalkOptions options, Map<Object, Path> visited) {
+		final SizeIndex index = new SizeIndex();
+		walk(directory.toAbsolutePath(), new Walk(index, callback, options, filter, null, new ScanMetrics(), null, null,
+				visited));
+		return index;
+	}
+
+	/**
+	 * Durchsucht ein Startverzeichnis mit den Einstellungen des Durchlaufs.
+	 * Gerät und fileKey des Startverzeichnisses werden hier gelesen.
+	 */
+	private static void walk(Path root, Walk walk) {
+		final Attributes attributes;
+		final Object device;
+		try {
+			attributes = readAttributes(root);
+			device = walk.options().isSameFileStore() ? deviceOf(root, attributes) : null;
+		} catch (IOException e) {
+			throw new IllegalArgumentException("directory must be readable.", e);
+		}
+		handleDirectory(root, attributes, new Ancestor(attributes.fileKey(), null), new Walk(walk.index(), walk.callback(), walk.options(),
+				walk.filter(), device, walk.metrics(), walk.budget(), walk.checkpoint(), walk.visited()));
 	}
 
 	/**
@@ -64,16 +548,60 @@ public class DuplicateLengthFinder {
 		if (directory == null) {
 			throw new IllegalArgumentException("directory may not be null.");
 		}
-		if (callback == null) {
-			throw new IllegalArgumentException("callback may not be null.");
-		}
-		if (!directory.exists()) {
-			throw new IllegalArgumentException("directory must exist.");
-		}
-		if (!directory.isDirectory()) {
-			throw new IllegalArgumentException("directory must be a valid directory.");
-		}
+		return getIndex(directory.toPath(), callback).toMap(Path::toFile);
+	}
+
+	/**
+	 * Einstiegsmethode zum Durchsuchen eines Verzeichnisses nach Dateien gleicher
+	 * Größe.
+	 *
+	 * @param directory
+	 *            Zu durchsuchendes Verzeichnis
+	 * @return Liefert ein Cluster nach Dateigröße strukturierten Listen zurück, in
+	 *         denen die gefundenen Pfade abgelegt sind
+	 */
+	public static Map<Long, List<Path>> getResult(final Path directory) {
+		return getResult(directory, new DuplicateLengthFinderCallback() {});
+	}
+
+	/**
+	 * Einstiegsmethode zum Durchsuchen eines Verzeichnisses nach Dateien gleicher
+	 * Größe.
+	 *
+	 * @param directory
+	 *            Zu durchsuchendes Verzeichnis
+	 * @param callback
+	 *            Ruft den Callback bei jedem neu betretenen Verzeichnis auf
+	 */
+	public static Map<Long, List<Path>> getResult(final Path directory, DuplicateLengthFinderCallback callback) {
+		return getIndex(directory, callback).toMap(Function.identity());
+	}
 
-		return handleDirectory(directory, callback).collect(groupingBy(File::length, toList()));
+	/**
+	 * Einstiegsmethode zum Durchsuchen eines Verzeichnisses nach Dateien gleicher
+	 * Größe.
+	 *
+	 * @param directory
+	 *            Zu durchsuchendes Verzeichnis
+	 * @param callback
+	 *            Ruft den Callback bei jedem neu betretenen Verzeichnis auf
+	 * @param options
+	 *            Einstellungen für das Durchsuchen, etwa Filter und Größengrenzen
+	 */
+	public static Map<Long, List<Path>> getResult(final Path directory, DuplicateLengthFinderCallback callback, WalkOptions options) {
+		return getIndex(directory, callback, options).toMap(Function.identity());
+	}
+
+	/**
+	 * Einstiegsmethode zum Durchsuchen mehrerer Verzeichnisse nach Dateien
+	 * gleicher Größe.
+	 *
+	 * @param directories
+	 *            Zu durchsuchende Verzeichnisse, mindestens eines
+	 * @param callback
+	 *            Ruft den Callback bei jedem neu betretenen Verzeichnis auf
+	 */
+	public static Map<Long, List<Path>> getResult(final Collection<Path> directories, DuplicateLengthFinderCallback callback) {
+		return getIndex(directories, callback, WalkOptions.DEFAULT).toMap(Function.identity());
 	}
 }
@@ -27,4 +27,28 @@ public interface DuplicateLengthFinderCallback {
 	 * @param file Unklassifiziertes Dateiobjekt
 	 */
 	default void unidentifiedFileObject(String file) {}
+
+	/**
+	 * Wird aufgerufen, wenn ein Verzeichnis oder symbolischer Link gemäß den
+	 * WalkOptions nicht durchsucht wird.
+	 * @param path Übersprungener Pfad
+	 * @param reason Grund für das Überspringen
+	 */
+	default void skippedSubtree(String path, SkipReason reason) {}
+
+	/**
+	 * Gründe, aus denen ein Teilbaum nicht durchsucht wird.
+	 */
+	enum SkipReason {
+		/** Symbolischer Link, dem nicht gefolgt wird */
+		SYMBOLIC_LINK,
+		/** Verzeichnis, das bereits auf dem Weg vom Startverzeichnis liegt */
+		CYCLE,
+		/** Verzeichnis auf einem anderen Dateisystem als das Startverzeichnis */
+		OTHER_FILE_STORE,
+		/** Verzeichnis, das wegen eines erschöpften ScanBudget nicht mehr durchsucht wird */
+		BUDGET,
+		/** Verzeichnis, das über ein anderes Startverzeichnis oder einen Bind-Mount bereits durchsucht wird */
+		ALREADY_WALKED
+	}
 }
@@ -0,0 +1,195 @@
+package de.b0n.dir.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import static java.util.stream.Collectors.groupingByConcurrent;
+
+/**
+ * Vorstufe zum DuplicateContentFinder: Teilt Gruppen gleich großer Dateien
+ * anhand einer Prüfsumme über Anfang und Ende jeder Datei auf. Nur Dateien,
+ * deren Stichproben übereinstimmen, müssen anschließend vollständig verglichen
+ * werden. Dateien, die nicht größer als beide Stichproben zusammen sind, werden
+ * unverändert durchgereicht, da der vollständige Vergleich sie ohnehin komplett
+ * liest.
+ *
+ * Mit einem ScanBudget wird vor jeder Datei geprüft, ob die Suche abgebrochen
+ * wurde oder eine Grenze erreicht ist. Nicht mehr gelesene Dateien werden als
+ * nicht entschieden gemeldet, ebenso Dateien, deren Stichprobe dann nur
+ * scheinbar einzigartig ist. Geöffnete Dateien und gelesene Bytes werden in
+ * den übergebenen ScanMetrics erfasst.
+ */
+public class DuplicatePartialHashFinder {
+	/**
+	 * Standardgröße der Stichprobe am Anfang und am Ende einer Datei
+	 */
+	public static final int DEFAULT_SAMPLE_SIZE = 16 * 1024;
+
+	private static final Sample FAILING = new Sample(-1L, 0L, 0L);
+	private static final Sample UNRESOLVED = new Sample(-2L, 0L, 0L);
+
+	private record Sample(long length, long head, long tail) {}
+
+	private static Sample sample(File file, int sampleSize, ScanMetrics metrics, ScanBudget budget) {
+		if (budget != null && budget.isExhausted()) {
+			return UNRESOLVED;
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (metrics != null) {
+				metrics.fileOpened();
+			}
+			try {
+				final long length = channel.size();
+				final ByteBuffer buffer = ByteBuffer.allocate(sampleSize);
+				final long head = checksum(channel, buffer, 0L, metrics);
+				final long tail = checksum(channel, buffer, Math.max(0L, length - sampleSize), metrics);
+				return new Sample(length, head, tail);
+			} finally {
+				if (metrics != null) {
+					metrics.fileClosed();
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			return FAILING;
+		}
+	}
+
+	private static long checksum(FileChannel channel, ByteBuffer buffer, long position, ScanMetrics metrics) throws IOException {
+		buffer.clear();
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				break;
+			}
+		}
+		if (metrics != null) {
+			metrics.read(buffer.position());
+		}
+		buffer.flip();
+		final CRC32C crc = new CRC32C();
+		crc.update(buffer);
+		return crc.getValue();
+	}
+
+	private static Predicate<Map.Entry<Sample, List<File>>> failedFiles(DuplicateContentFinderCallback callback) {
+		return entry -> {
+			if (entry.getKey() == FAILING) {
+				entry.getValue().forEach(callback::failedFile);
+				return false;
+			}
+			return true;
+		};
+	}
+
+	/**
+	 * Meldet Dateien mit einzigartiger Stichprobe. Wurden andere Dateien der
+	 * Gruppe wegen des Budgets nicht gelesen, steht ihre Einzigartigkeit nicht
+	 * fest.
+	 */
+	private static Predicate<Map.Entry<Sample, List<File>>> uniqueFiles(DuplicateContentFinderCallback callback,
+			boolean unresolved) {
+		return entry -> {
+			if (entry.getValue().size() == 1) {
+				entry.getValue().forEach(unresolved ? callback::unresolvedFile : callback::uniqueFile);
+				return false;
+			}
+			return true;
+		};
+	}
+
+	/**
+	 * Teilt die übergebene Dateigruppe anhand von Stichproben der Standardgröße
+	 * auf.
+	 *
+	 * @param input
+	 *            Dateigruppe, welche auf mögliche inhaltliche Gleichheit geprüft
+	 *            werden soll
+	 * @return Gruppen von Kandidaten für den vollständigen Inhaltsvergleich
+	 */
+	public static Stream<List<File>> getResult(final Collection<File> input) {
+		return getResult(input, new DuplicateContentFinderCallback() {});
+	}
+
+	/**
+	 * Teilt die übergebene Dateigruppe anhand von Stichproben der Standardgröße
+	 * auf.
+	 *
+	 * @param input
+	 *            Dateigruppe, welche auf mögliche inhaltliche Gleichheit geprüft
+	 *            werden soll
+	 * @param callback
+	 *            Callback, um über bereits als einzigartig erkannte oder nicht
+	 *            lesbare Dateien informiert zu werden
+	 * @return Gruppen von Kandidaten für den vollständigen Inhaltsvergleich
+	 */
+	public static Stream<List<File>> getResult(final Collection<File> input, final DuplicateContentFinderCallback callback) {
+		return getResult(input, DEFAULT_SAMPLE_SIZE, callback);
+	}
+
+	/**
+	 * Teilt die übergebene Dateigruppe anhand von Stichproben über die ersten und
+	 * letzten sampleSize Bytes jeder Datei auf.
+	 *
+	 * @param input
+	 *            Dateigruppe, welche auf mögliche inhaltliche Gleichheit geprüft
+	 *            werden soll
+	 * @param sampleSize
+	 *            Größe der Stichprobe am Anfang und am Ende jeder Datei in Bytes
+	 * @param callback
+	 *            Callback, um über bereits als einzigartig erkannte oder nicht
+	 *            lesbare Dateien informiert zu werden
+	 * @return Gruppen von Kandidaten für den vollständigen Inhaltsvergleich
+	 */
+	public static Stream<List<File>> getResult(final Collection<File> input, final int sampleSize, final DuplicateContentFinderCallback callback) {
+		return getResult(input, sampleSize, callback, null, null);
+	}
+
+	/**
+	 * Teilt die übergebene Dateigruppe anhand von Stichproben auf und prüft vor
+	 * jeder Datei das Budget.
+	 *
+	 * @param metrics
+	 *            Zähler für geöffnete Dateien und gelesene Bytes oder null
+	 * @param budget
+	 *            Budget der Suche oder null
+	 */
+	static Stream<List<File>> getResult(final Collection<File> input, final int sampleSize,
+			final DuplicateContentFinderCallback callback, final ScanMetrics metrics, final ScanBudget budget) {
+		if (input == null) {
+			throw new IllegalArgumentException("input may not be null.");
+		}
+		if (input.isEmpty()) {
+			throw new IllegalArgumentException("input may not be empty.");
+		}
+		if (sampleSize <= 0) {
+			throw new IllegalArgumentException("sampleSize must be positive.");
+		}
+		if (callback == null) {
+			throw new IllegalArgumentException("callback may not be null.");
+		}
+
+		if (input.size() == 1) {
+			input.forEach(callback::uniqueFile);
+			return Stream.empty();
+		}
+		if (input.stream().allMatch(file -> file.length() <= 2L * sampleSize)) {
+			return Stream.of(List.copyOf(input));
+		}
+
+		final Map<Sample, List<File>> samples = input.parallelStream()
+				.collect(groupingByConcurrent(file -> sample(file, sampleSize, metrics, budget)));
+		final List<File> unresolved = samples.getOrDefault(UNRESOLVED, List.of());
+		unresolved.forEach(callback::unresolvedFile);
+		return samples.entrySet().parallelStream()
+				.filter(entry -> !entry.getKey().equals(UNRESOLVED))
+				.filter(failedFiles(callback))
+				.filter(uniqueFiles(callback, !unresolved.isEmpty()))
+				.map(Map.Entry::getValue);
+	}
+}
@@ -0,0 +1,481 @@
+package de.b0n.dir.processor;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hält die Dublettengruppen unterhalb eines oder mehrerer Verzeichnisse
+ * fortlaufend aktuell. Nach einem ersten vollständigen Durchsuchen werden nur
+ * noch die vom WatchService gemeldeten Änderungen verarbeitet: Angelegte oder
+ * geänderte Dateien werden neu gehasht, gelöschte aus dem Index entfernt und
+ * neue Verzeichnisse durchsucht und überwacht. Jede sich daraus ergebende
+ * Änderung einer Dublettengruppe wird dem Callback gemeldet.
+ *
+ * Wie beim DuplicateLengthFinder werden nur Dateien gehasht, deren Größe
+ * mindestens zweimal vorkommt. Erhält eine bisher einzelne Datei eine Datei
+ * gleicher Größe zur Seite, wird sie dabei nachträglich gehasht. Eine Datei
+ * mit unveränderter Größe und Änderungszeit wird nicht erneut gelesen.
+ *
+ * Wie im SizeIndex werden Hardlinks auf dieselbe physische Datei anhand von
+ * Gerät und Inode zusammengefasst: Je physischer Datei wird nur ein Pfad
+ * gehasht, eine Dublettengruppe enthält jede physische Datei nur einmal, und
+ * die Hardlinks selbst liefert {@link #getHardLinks()}.
+ *
+ * Betretene Verzeichnisse werden über die gesamte Laufzeit festgehalten, sodass
+ * später angelegte Verzeichnisse, die etwa per symbolischem Link oder
+ * Bind-Mount auf ein bereits durchsuchtes Verzeichnis verweisen, nicht erneut
+ * aufgenommen werden.
+ *
+ * Verliert der WatchService Ereignisse, wird vollständig neu durchsucht, wobei
+ * unveränderte Dateien ihren Hash behalten.
+ */
+public final class DuplicateWatcher implements Closeable {
+	/**
+	 * Hashverfahren, mit dem Dateien gleicher Größe verglichen werden
+	 */
+	public static final HashAlgorithm ALGORITHM = HashAlgorithm.SHA_256;
+
+	private record Hashed(long size, long modified, ContentHash hash) {}
+
+	private final ScanRoots roots;
+	private final WalkOptions options;
+	private final DuplicateWatcherCallback callback;
+	private final Map<Path, WalkOptions.Filter> filters = new HashMap<>();
+	private final WatchService watchService;
+	private final Map<WatchKey, Path> keys = new ConcurrentHashMap<>();
+	private final Set<Path> watched = ConcurrentHashMap.newKeySet();
+	private final Map<Object, Path> visited = new ConcurrentHashMap<>();
+	private final Map<Path, Long> sizes = new HashMap<>();
+	private final Map<Path, SizeIndex.Identity> identities = new HashMap<>();
+	private final Map<Long, Set<Path>> bySize = new HashMap<>();
+	private final Map<Path, Hashed> hashes = new HashMap<>();
+	private final Map<ContentHash, Set<Path>> byHash = new HashMap<>();
+
+	private DuplicateWatcher(ScanRoots roots, WalkOptions options, DuplicateWatcherCallback callback,
+			WatchService watchService) {
+		this.roots = roots;
+		this.options = options;
+		this.callback = callback;
+		this.watchService = watchService;
+		for (Path root : roots.getRoots()) {
+			filters.put(root, options.filter(root));
+		}
+	}
+
+	/**
+	 * Durchsucht die Verzeichnisse, meldet die gefundenen Gruppen und beginnt
+	 * mit der Überwachung. Änderungen werden erst mit
+	 * {@link #processEvents(Duration)} verarbeitet.
+	 *
+	 * @param directories
+	 *            Zu überwachende Verzeichnisse, mindestens eines
+	 * @param options
+	 *            Einstellungen für das Durchsuchen
+	 * @param callback
+	 *            Empfänger der Änderungen der Dublettengruppen
+	 * @return Überwachung, die nach Gebrauch zu schließen ist
+	 * @throws IOException
+	 *             Wenn der WatchService nicht verfügbar ist
+	 */
+	public static DuplicateWatcher open(Collection<Path> directories, WalkOptions options,
+			DuplicateWatcherCallback callback) throws IOException {
+		if (options == null) {
+			throw new IllegalArgumentException("options may not be null.");
+		}
+		if (callback == null) {
+			throw new IllegalArgumentException("callback may not be null.");
+		}
+		final ScanRoots roots = new ScanRoots(directories);
+		final DuplicateWatcher watcher = new DuplicateWatcher(roots, options, callback,
+				roots.getRoots().get(0).getFileSystem().newWatchService());
+		try {
+			watcher.scan(Map.of());
+		} catch (RuntimeException e) {
+			watcher.close();
+			throw e;
+		}
+		return watcher;
+	}
+
+	/**
+	 * Wartet auf Änderungen im Dateisystem und verarbeitet alle bis dahin
+	 * angefallenen auf einmal.
+	 *
+	 * @param timeout
+	 *            Höchste Wartezeit auf die erste Änderung
+	 * @return false, wenn die Überwachung geschlossen wurde
+	 * @throws InterruptedException
+	 *             Wenn der Thread beim Warten unterbrochen wird
+	 */
+	public boolean processEvents(Duration timeout) throws InterruptedException {
+		if (timeout == null) {
+			throw new IllegalArgumentException("timeout may not be null.");
+		}
+		final Set<Path> changed = new LinkedHashSet<>();
+		boolean overflow = false;
+		try {
+			WatchKey key = watchService.poll(timeout.toNanos(), TimeUnit.NANOSECONDS);
+			if (key == null) {
+				return true;
+			}
+			do {
+				final Path directory = keys.get(key);
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						overflow = true;
+					} else if (directory != null) {
+						changed.add(directory.resolve((Path) event.context()));
+					}
+				}
+				if (!key.reset() && directory != null) {
+					keys.remove(key);
+					watched.remove(directory);
+					changed.add(directory);
+				}
+			} while ((key = watchService.poll()) != null);
+		} catch (ClosedWatchServiceException e) {
+			return false;
+		}
+		synchronized (this) {
+			if (overflow) {
+				scan(Map.copyOf(hashes));
+			} else {
+				update(changed);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Durchsucht alle Verzeichnisse vollständig und meldet die Unterschiede zu
+	 * den bisherigen Gruppen.
+	 *
+	 * @param known
+	 *            Bisherige Hashes, die für unveränderte Dateien übernommen
+	 *            werden
+	 */
+	private synchronized void scan(Map<Path, Hashed> known) {
+		final Map<ContentHash, List<Path>> before = new HashMap<>();
+		byHash.forEach((hash, files) -> before.put(hash, physical(files)));
+		visited.clear();
+		sizes.clear();
+		identities.clear();
+		bySize.clear();
+		hashes.clear();
+		byHash.clear();
+
+		DuplicateLengthFinder.getIndex(roots.getRoots(), registering(), options, new ScanMetrics(), null, null, visited)
+				.files()
+				.forEach(file -> {
+					sizes.put(file.path(), file.size());
+					if (file.identity() != null) {
+						identities.put(file.path(), file.identity());
+					}
+					bySize.computeIfAbsent(file.size(), size -> new HashSet<>()).add(file.path());
+				});
+		final Map<Path, Hashed> computed = new ConcurrentHashMap<>();
+		bySize.entrySet().parallelStream()
+				.filter(entry -> physical(entry.getValue()).size() > 1)
+				.forEach(entry -> computed.putAll(hashPhysical(entry.getValue(), entry.getKey(), known)));
+		computed.forEach((file, hashed) -> {
+			hashes.put(file, hashed);
+			byHash.computeIfAbsent(hashed.hash(), hash -> new HashSet<>()).add(file);
+		});
+
+		final Set<ContentHash> touched = new HashSet<>(before.keySet());
+		touched.addAll(byHash.keySet());
+		publish(before, touched);
+	}
+
+	/**
+	 * Übernimmt die geänderten Pfade in den Index und meldet die betroffenen
+	 * Gruppen.
+	 */
+	private void update(Set<Path> changed) {
+		final Map<ContentHash, List<Path>> before = new HashMap<>();
+		for (Path path : changed) {
+			final Hashed known = hashes.get(path);
+			remove(path, before);
+			add(path, known, before);
+		}
+		publish(before, before.keySet());
+	}
+
+	private void remove(Path path, Map<ContentHash, List<Path>> before) {
+		if (sizes.containsKey(path)) {
+			removeFile(path, before);
+			return;
+		}
+		if (Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+			return;
+		}
+		for (Path file : List.copyOf(sizes.keySet())) {
+			if (file.startsWith(path)) {
+				removeFile(file, before);
+			}
+		}
+		keys.entrySet().removeIf(entry -> {
+			if (!entry.getValue().startsWith(path)) {
+				return false;
+			}
+			entry.getKey().cancel();
+			watched.remove(entry.getValue());
+			return true;
+		});
+		visited.values().removeIf(directory -> directory.startsWith(path));
+	}
+
+	private void removeFile(Path file, Map<ContentHash, List<Path>> before) {
+		final long size = sizes.remove(file);
+		final Set<Path> sameSize = bySize.get(size);
+		sameSize.remove(file);
+		if (sameSize.isEmpty()) {
+			bySize.remove(size);
+		}
+		final Hashed hashed = hashes.remove(file);
+		if (hashed != null) {
+			touch(hashed.hash(), before);
+		}
+		identities.remove(file);
+		if (hashed != null) {
+			final Set<Path> sameHash = byHash.get(hashed.hash());
+			sameHash.remove(file);
+			if (sameHash.isEmpty()) {
+				byHash.remove(hashed.hash());
+			}
+		}
+	}
+
+	private void add(Path path, Hashed known, Map<ContentHash, List<Path>> before) {
+		final WalkOptions.Filter filter = roots.rootOf(path.toFile()).map(filters::get).orElse(null);
+		if (filter == null) {
+			return;
+		}
+		final DuplicateLengthFinder.Attributes attributes;
+		try {
+			attributes = options.isFollowLinks() ? DuplicateLengthFinder.readAttributes(path)
+					: DuplicateLengthFinder.readAttributes(path, LinkOption.NOFOLLOW_LINKS);
+		} catch (IOException e) {
+			return;
+		}
+		if (attributes.isDirectory()) {
+			if (!watched.contains(path) && filter.acceptsDirectory(path)) {
+				DuplicateLengthFinder.getIndex(path, filter, registering(), options, visited).files()
+						.forEach(file -> addFile(file.path(), file.size(), file.identity(), null, before));
+			}
+		} else if (attributes.isRegularFile() && filter.acceptsFile(path, attributes.size())) {
+			addFile(path, attributes.size(), SizeIndex.Identity.of(attributes.device(), attributes.inode()), known,
+					before);
+		}
+	}
+
+	/**
+	 * Nimmt eine Datei auf und hasht sie, sobald ihre Größe bei mindestens
+	 * zwei physischen Dateien vorkommt, zusammen mit den bisher ungehashten
+	 * Dateien dieser Größe. Ein Hardlink übernimmt den Hash eines bereits
+	 * gehashten Pfads derselben Datei.
+	 */
+	private void addFile(Path file, long size, SizeIndex.Identity identity, Hashed known,
+			Map<ContentHash, List<Path>> before) {
+		sizes.put(file, size);
+		if (identity != null) {
+			identities.put(file, identity);
+		}
+		final Set<Path> sameSize = bySize.computeIfAbsent(size, key -> new HashSet<>());
+		sameSize.add(file);
+		if (physical(sameSize).size() < 2) {
+			return;
+		}
+		final Map<Object, Hashed> linked = new HashMap<>();
+		for (Path member : sameSize) {
+			if (hashes.containsKey(member)) {
+				linked.put(identityOf(member), hashes.get(member));
+			}
+		}
+		final List<Path> unhashed = new ArrayList<>();
+		for (Path member : sameSize) {
+			if (hashes.containsKey(member)) {
+				continue;
+			}
+			final Hashed link = linked.get(identityOf(member));
+			if (link != null) {
+				put(member, link, before);
+			} else {
+				unhashed.add(member);
+			}
+		}
+		final Map<Path, Hashed> previous = known == null ? Map.of() : Map.of(file, known);
+		hashPhysical(unhashed, size, previous).forEach((member, hashed) -> put(member, hashed, before));
+	}
+
+	private void put(Path file, Hashed hashed, Map<ContentHash, List<Path>> before) {
+		hashes.put(file, hashed);
+		touch(hashed.hash(), before);
+		byHash.computeIfAbsent(hashed.hash(), hash -> new HashSet<>()).add(file);
+	}
+
+	/**
+	 * Hasht je physischer Datei nur einen ihrer Pfade und übernimmt den Hash für
+	 * alle Hardlinks auf dieselbe Datei.
+	 *
+	 * @param known
+	 *            Bisherige Hashes, die für unveränderte Dateien übernommen
+	 *            werden
+	 * @return Hashes aller lesbaren Pfade
+	 */
+	private Map<Path, Hashed> hashPhysical(Collection<Path> files, long size, Map<Path, Hashed> known) {
+		final Map<Object, List<Path>> links = new LinkedHashMap<>();
+		for (Path file : files.stream().sorted().toList()) {
+			links.computeIfAbsent(identityOf(file), identity -> new ArrayList<>()).add(file);
+		}
+		final Map<Path, Hashed> result = new HashMap<>();
+		for (List<Path> paths : links.values()) {
+			final Hashed hashed = hash(paths.get(0), size, known.get(paths.get(0)));
+			if (hashed != null) {
+				paths.forEach(path -> result.put(path, hashed));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return Identität der physischen Datei oder ersatzweise der Pfad, wenn
+	 *         das Dateisystem keine liefert
+	 */
+	private Object identityOf(Path file) {
+		final SizeIndex.Identity identity = identities.get(file);
+		return identity != null ? identity : file;
+	}
+
+	/**
+	 * Fasst Pfade nach physischer Datei zusammen.
+	 *
+	 * @return Je physischer Datei der erste ihrer Pfade, geordnet
+	 */
+	private List<Path> physical(Collection<Path> files) {
+		final Set<Object> seen = new HashSet<>();
+		return files.stream()
+				.sorted()
+				.filter(file -> seen.add(identityOf(file)))
+				.toList();
+	}
+
+	/**
+	 * Hält die physischen Dateien einer Gruppe vor ihrer ersten Änderung fest.
+	 */
+	private void touch(ContentHash hash, Map<ContentHash, List<Path>> before) {
+		before.computeIfAbsent(hash, key -> physical(byHash.getOrDefault(key, Set.of())));
+	}
+
+	/**
+	 * Hasht eine Datei, sofern sie seit dem bekannten Hash verändert wurde.
+	 *
+	 * @return Hash der Datei oder null, wenn sie nicht gelesen werden kann
+	 */
+	private Hashed hash(Path file, long size, Hashed known) {
+		try {
+			final long modified = Files.getLastModifiedTime(file).to(TimeUnit.NANOSECONDS);
+			if (known != null && known.size() == size && known.modified() == modified) {
+				return known;
+			}
+			return new Hashed(size, modified, ALGORITHM.hash(file.toFile()));
+		} catch (IOException e) {
+			callback.failedFile(file.toFile());
+			return null;
+		}
+	}
+
+	private void publish(Map<ContentHash, List<Path>> before, Set<ContentHash> touched) {
+		for (ContentHash hash : touched) {
+			final List<Path> previous = before.getOrDefault(hash, List.of());
+			final List<Path> current = physical(byHash.getOrDefault(hash, Set.of()));
+			if (current.size() < 2) {
+				if (previous.size() >= 2) {
+					callback.groupRemoved(hash);
+				}
+			} else if (previous.size() < 2) {
+				callback.groupCreated(group(hash, current));
+			} else if (!previous.equals(current)) {
+				callback.groupChanged(group(hash, current));
+			}
+		}
+	}
+
+	/**
+	 * @param files
+	 *            Geordnete physische Dateien der Gruppe
+	 */
+	private DuplicateGroup group(ContentHash hash, List<Path> files) {
+		return new DuplicateGroup(sizes.get(files.get(0)), files.stream().map(Path::toFile).toList(), hash);
+	}
+
+	/**
+	 * Überwacht jedes beim Durchsuchen betretene Verzeichnis.
+	 */
+	private DuplicateLengthFinderCallback registering() {
+		return new DuplicateLengthFinderCallback() {
+			@Override
+			public void enteredNewDirectory(File directory) {
+				final Path path = directory.toPath();
+				if (!watched.add(path)) {
+					return;
+				}
+				try {
+					keys.put(path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+							StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), path);
+				} catch (IOException | ClosedWatchServiceException e) {
+					watched.remove(path);
+				}
+			}
+		};
+	}
+
+	/**
+	 * @return Aktuelle Dublettengruppen
+	 */
+	public synchronized List<DuplicateGroup> getGroups() {
+		return byHash.entrySet().stream()
+				.map(entry -> Map.entry(entry.getKey(), physical(entry.getValue())))
+				.filter(entry -> entry.getValue().size() > 1)
+				.map(entry -> group(entry.getKey(), entry.getValue()))
+				.toList();
+	}
+
+	/**
+	 * Liefert die Gruppen von Pfaden, die als Hardlinks auf dieselbe physische
+	 * Datei verweisen. Diese belegen keinen zusätzlichen Speicher und sind
+	 * daher nicht Teil der Dublettengruppen.
+	 *
+	 * @return Je physischer Datei mit mehreren Hardlinks alle ihre Pfade,
+	 *         geordnet
+	 */
+	public synchronized List<List<File>> getHardLinks() {
+		final Map<SizeIndex.Identity, List<Path>> links = new HashMap<>();
+		identities.forEach((file, identity) -> links.computeIfAbsent(identity, key -> new ArrayList<>()).add(file));
+		return links.values().stream()
+				.filter(paths -> paths.size() > 1)
+				.map(paths -> paths.stream().sorted().map(Path::toFile).toList())
+				.toList();
+	}
+
+	/**
+	 * @return Anzahl der überwachten Verzeichnisse
+	 */
+	public int getDirectoryCount() {
+		return watched.size();
+	}
+
+	/**
+	 * Beendet die Überwachung.
+	 */
+	@Override
+	public void close() throws IOException {
+		watchService.close();
+	}
+}
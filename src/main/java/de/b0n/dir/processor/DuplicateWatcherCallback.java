@@ -0,0 +1,37 @@
+package de.b0n.dir.processor;
+
+import java.io.File;
+
+/**
+ * Meldet die Änderungen der Dublettengruppen, die der DuplicateWatcher aus
+ * den Änderungen im Dateisystem ableitet. Eine Gruppe wird über den Hash ihres
+ * gemeinsamen Inhalts identifiziert.
+ */
+public interface DuplicateWatcherCallback {
+
+	/**
+	 * Wird aufgerufen, sobald mindestens zwei Dateien gleichen Inhalts bekannt
+	 * sind, auch für jede beim ersten Durchsuchen gefundene Gruppe
+	 * @param group Neue Dublettengruppe
+	 */
+	default void groupCreated(DuplicateGroup group) {}
+
+	/**
+	 * Wird aufgerufen, wenn einer bestehenden Gruppe Dateien hinzugefügt oder
+	 * entnommen wurden und sie weiterhin mindestens zwei Dateien enthält
+	 * @param group Dublettengruppe mit ihren aktuellen Dateien
+	 */
+	default void groupChanged(DuplicateGroup group) {}
+
+	/**
+	 * Wird aufgerufen, wenn von einer Gruppe höchstens eine Datei übrig ist
+	 * @param identity Hash des Inhalts der aufgelösten Gruppe
+	 */
+	default void groupRemoved(ContentHash identity) {}
+
+	/**
+	 * Wird aufgerufen, sobald ein Fehler beim Lesen der Datei erkannt wurde
+	 * @param failedFile File mit Zugriffsfehler
+	 */
+	default void failedFile(File failedFile) {}
+}
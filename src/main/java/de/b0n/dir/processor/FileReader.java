@@ -4,14 +4,39 @@ import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import static java.util.stream.Collectors.toList;
 
 /**
  * Kapselt ein File und stellt darauf eine read()-Operation zur Verfügung. Dient
  * zum effizienten Teilen der Files bei unterschieden in den Streams und
  * gleichzeitigem Halten des Stream-Zustands. Die Datei wird lazy geöffnet.
+ *
+ * Beim blockweisen Lesen wird die Position in der Datei gespeichert. Ist ein
+ * OpenFileBudget erschöpft, wird die Datei nur für den einzelnen Lesevorgang
+ * geöffnet und anschließend ab der gespeicherten Position fortgesetzt.
+ * Dateien ab einer konfigurierbaren Größe werden fensterweise in den Speicher
+ * abgebildet, sodass der Vergleich ohne Kopie direkt auf dem Page-Cache
+ * arbeitet. Zum Abbilden eines Fensters wird die Datei nur kurz geöffnet.
+ * Ein Fenster wird freigegeben, sobald das nächste abgebildet oder der
+ * FileReader geschlossen wird. Wird die Datei während des Lesens gekürzt,
+ * liefert der Zugriff auf das Fenster statt eines Absturzes einen Fehler.
+ * Blockweise kann in einen aus einem BufferPool geliehenen Puffer gelesen
+ * werden, statt je FileReader einen eigenen Puffer zu halten.
  */
 class FileReader {
 	/**
@@ -22,9 +47,45 @@ class FileReader {
 	 * Beim Lesen der Datei ist ein Fehler aufgetreten
 	 */
 	public static final int FAILING = -2;
+	/**
+	 * Schwellwert, mit dem keine Datei in den Speicher abgebildet wird
+	 */
+	static final long NO_MAPPING = Long.MAX_VALUE;
+	/**
+	 * Größe eines in den Speicher abgebildeten Fensters
+	 */
+	static final int WINDOW_SIZE = 64 * 1024 * 1024;
+	/**
+	 * Gibt ein abgebildetes Fenster sofort frei, statt bis zur Garbage
+	 * Collection Adressraum und Page-Cache zu belegen, oder null, wenn
+	 * sun.misc.Unsafe nicht verfügbar ist
+	 */
+	private static final MethodHandle UNMAP = unmapHandle();
+
+	/**
+	 * Ordnet nach Gerät und Inode gepackte FileStreams wieder in ihre
+	 * ursprüngliche Reihenfolge, ohne die Datei erneut zu befragen.
+	 */
+	static final Comparator<FileReader> LOCALITY = Comparator
+			.<FileReader>comparingLong(reader -> reader.location.device())
+			.thenComparingLong(reader -> reader.location.inode())
+			.thenComparing(reader -> reader.file);
 
 	private final File file;
+	private final OpenFileBudget budget;
+	private final long mapThreshold;
+	private final DeviceLimits.Location location;
+	private final ScanMetrics metrics;
 	private BufferedInputStream stream;
+	private FileChannel channel;
+	private AsynchronousFileChannel asyncChannel;
+	private boolean retained;
+	private ByteBuffer buffer;
+	private boolean pooled;
+	private long position;
+	private long length = -1L;
+	private MappedByteBuffer window;
+	private long windowStart;
 
 	/**
 	 * Packt die Collection von Dateien in jeweils in einen FileStream,
@@ -35,7 +96,77 @@ class FileReader {
 	 * @return Queue mit FileStreams
 	 */
 	public static List<FileReader> pack(Collection<File> files) {
-		return files.parallelStream().map(FileReader::new).collect(toList());
+		return pack(files, null, NO_MAPPING);
+	}
+
+	/**
+	 * Packt die Collection von Dateien in jeweils in einen FileStream,
+	 * zusammengefasst in einer Liste. Alle FileStreams teilen sich das
+	 * übergebene Budget geöffneter Dateien.
+	 *
+	 * @param files
+	 *            In FileStreams zu kapselnde Files
+	 * @param budget
+	 *            Budget geöffneter Dateien, null für unbegrenzt
+	 * @param mapThreshold
+	 *            Dateigröße, ab der eine Datei in den Speicher abgebildet wird
+	 * @return Queue mit FileStreams
+	 */
+	public static List<FileReader> pack(Collection<File> files, OpenFileBudget budget, long mapThreshold) {
+		return files.parallelStream().map(file -> new FileReader(file, budget, mapThreshold)).collect(toList());
+	}
+
+	/**
+	 * Packt die Collection von Dateien in jeweils in einen FileStream und ordnet
+	 * sie nach Gerät und Inode. Jeder FileStream liest nur mit einer Freigabe
+	 * seines Geräts.
+	 *
+	 * @param files
+	 *            In FileStreams zu kapselnde Files
+	 * @param budget
+	 *            Budget geöffneter Dateien, null für unbegrenzt
+	 * @param mapThreshold
+	 *            Dateigröße, ab der eine Datei in den Speicher abgebildet wird
+	 * @param limits
+	 *            Grenzen gleichzeitiger Lesevorgänge je Gerät
+	 * @return Nach Lage geordnete Liste mit FileStreams
+	 */
+	static List<FileReader> pack(Collection<File> files, OpenFileBudget budget, long mapThreshold, DeviceLimits limits) {
+		return pack(files, budget, mapThreshold, limits, null);
+	}
+
+	/**
+	 * Packt die Collection von Dateien in jeweils in einen FileStream, der
+	 * geöffnete Dateien und gelesene Bytes in den übergebenen Zählern erfasst.
+	 * Mit Grenzen je Gerät wird wie bei
+	 * {@link #pack(Collection, OpenFileBudget, long, DeviceLimits)} nach Gerät
+	 * und Inode geordnet.
+	 *
+	 * @param files
+	 *            In FileStreams zu kapselnde Files
+	 * @param budget
+	 *            Budget geöffneter Dateien, null für unbegrenzt
+	 * @param mapThreshold
+	 *            Dateigröße, ab der eine Datei in den Speicher abgebildet wird
+	 * @param limits
+	 *            Grenzen gleichzeitiger Lesevorgänge je Gerät, null für
+	 *            unbegrenzt
+	 * @param metrics
+	 *            Zähler der Suche, null wenn nicht gezählt werden soll
+	 * @return Liste mit FileStreams
+	 */
+	static List<FileReader> pack(Collection<File> files, OpenFileBudget budget, long mapThreshold, DeviceLimits limits,
+			ScanMetrics metrics) {
+		if (limits == null) {
+			return files.parallelStream()
+					.map(file -> new FileReader(file, budget, mapThreshold, null, metrics))
+					.collect(toList());
+		}
+		return files.parallelStream()
+				.map(file -> Map.entry(file, limits.locate(file)))
+				.sorted(DeviceLimits.LOCALITY)
+				.map(entry -> new FileReader(entry.getKey(), budget, mapThreshold, entry.getValue(), metrics))
+				.collect(toList());
 	}
 
 	/**
@@ -45,10 +176,46 @@ class FileReader {
 	 * @param file File, dessen Stream bearbeitet werden soll
 	 */
 	public FileReader(File file) {
+		this(file, (OpenFileBudget) null);
+	}
+
+	/**
+	 * Erzeugt das Objekt. Der Stream zum Auslesen wird lazy erst bei Bedarf
+	 * geöffnet und belegt dabei das übergebene Budget.
+	 *
+	 * @param file File, dessen Stream bearbeitet werden soll
+	 * @param budget Budget geöffneter Dateien, null für unbegrenzt
+	 */
+	public FileReader(File file, OpenFileBudget budget) {
+		this(file, budget, NO_MAPPING);
+	}
+
+	/**
+	 * Erzeugt das Objekt. Der Stream zum Auslesen wird lazy erst bei Bedarf
+	 * geöffnet und belegt dabei das übergebene Budget. Ab der übergebenen
+	 * Dateigröße wird die Datei in den Speicher abgebildet.
+	 *
+	 * @param file File, dessen Stream bearbeitet werden soll
+	 * @param budget Budget geöffneter Dateien, null für unbegrenzt
+	 * @param mapThreshold Dateigröße, ab der die Datei in den Speicher abgebildet wird
+	 */
+	public FileReader(File file, OpenFileBudget budget, long mapThreshold) {
+		this(file, budget, mapThreshold, null, null);
+	}
+
+	private FileReader(File file, OpenFileBudget budget, long mapThreshold, DeviceLimits.Location location,
+			ScanMetrics metrics) {
 		if (file == null) {
 			throw new IllegalArgumentException("File may not be null.");
 		}
+		if (mapThreshold < 0) {
+			throw new IllegalArgumentException("mapThreshold may not be negative.");
+		}
 		this.file = file;
+		this.budget = budget;
+		this.mapThreshold = mapThreshold;
+		this.location = location;
+		this.metrics = metrics;
 	}
 
 	/**
@@ -66,9 +233,27 @@ class FileReader {
 			throw new IllegalArgumentException("Stream may not be null.");
 		}
 		this.file = file;
+		this.budget = null;
+		this.mapThreshold = NO_MAPPING;
+		this.location = null;
+		this.metrics = null;
 		this.stream = stream;
 	}
 
+	/**
+	 * @return Lage der Datei oder null ohne Grenzen je Gerät
+	 */
+	DeviceLimits.Location getLocation() {
+		return location;
+	}
+
+	/**
+	 * @return Anzahl der bisher per {@link #read(int)} gelesenen Bytes
+	 */
+	long getPosition() {
+		return position;
+	}
+
 	/**
 	 * Schließt den Stream im Adapter und liefert das File.
 	 * 
@@ -84,16 +269,34 @@ class FileReader {
 	 * 
 	 */
 	private void close() {
-		if (stream == null) {
-			return;
-		}
-
 		try {
-			stream.close();
+			if (stream != null || channel != null || asyncChannel != null) {
+				closed();
+			}
+			if (stream != null) {
+				stream.close();
+			}
+			if (channel != null) {
+				channel.close();
+			}
+			if (asyncChannel != null) {
+				asyncChannel.close();
+			}
 		} catch (IOException e) {
 			throw new IllegalStateException("Could not close Stream. Nothing to do about that, clearing FileStream.");
 		} finally {
 			stream = null;
+			channel = null;
+			asyncChannel = null;
+			buffer = null;
+			pooled = false;
+			position = 0L;
+			length = -1L;
+			unmap();
+			if (retained) {
+				retained = false;
+				budget.releaseRetained();
+			}
 		}
 	}
 
@@ -106,6 +309,7 @@ class FileReader {
 		try {
 			if (stream == null) {
 				stream = new BufferedInputStream(new FileInputStream(file));
+				opened();
 			}
 			return stream.read();
 		} catch (IOException | IllegalStateException e) {
@@ -113,4 +317,384 @@ class FileReader {
 			return FAILING;
 		}
 	}
+
+	/**
+	 * Liefert den nächsten Block aus der Datei zur Inhaltsanalyse. Der Block wird
+	 * vollständig gefüllt, solange das Dateiende nicht erreicht ist, sodass
+	 * gleiche Dateien stets gleiche Blöcke liefern. Der Puffer des Blocks wird
+	 * beim nächsten Aufruf wiederverwendet.
+	 *
+	 * @param length
+	 *            Maximale Anzahl zu lesender Bytes
+	 * @return Gelesener Block, {@link Block#FINISHED} am Dateiende oder
+	 *         {@link Block#FAILING} im Fehlerfall
+	 */
+	public Block read(int length) {
+		return read(length, null);
+	}
+
+	/**
+	 * Liefert wie {@link #read(int)} den nächsten Block, liest aber in den
+	 * übergebenen, aus einem BufferPool geliehenen Puffer. Der Block ist nur
+	 * gültig, bis der Puffer an den Pool zurückgegeben wird.
+	 *
+	 * @param length
+	 *            Maximale Anzahl zu lesender Bytes
+	 * @param leased
+	 *            Puffer mit mindestens length Bytes Kapazität oder null für
+	 *            einen eigenen Puffer
+	 * @return Gelesener Block, {@link Block#FINISHED} am Dateiende oder
+	 *         {@link Block#FAILING} im Fehlerfall
+	 */
+	Block read(int length, ByteBuffer leased) {
+		if (length <= 0) {
+			throw new IllegalArgumentException("length must be positive.");
+		}
+		try {
+			if (isMapped()) {
+				return readMapped(length);
+			}
+			useBuffer(length, leased, false);
+			if (channel == null && (budget == null || budget.tryRetain())) {
+				retained = budget != null;
+				channel = open();
+			}
+			if (location != null) {
+				location.permits().acquire();
+			}
+			try {
+				if (channel != null) {
+					readFully(channel);
+				} else {
+					readTransient();
+				}
+			} finally {
+				if (location != null) {
+					location.permits().release();
+				}
+			}
+			buffer.flip();
+			if (!buffer.hasRemaining()) {
+				return Block.FINISHED;
+			}
+			position += buffer.remaining();
+			bytesRead(buffer.remaining());
+			return new Block(buffer.slice());
+		} catch (IOException | IllegalStateException e) {
+			close();
+			return Block.FAILING;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			close();
+			return Block.FAILING;
+		}
+	}
+
+	/**
+	 * Liest den nächsten Block asynchron. Das Ergebnis entspricht
+	 * {@link #read(int)}, der aufrufende Thread wartet aber nicht auf das Lesen:
+	 * Der Block wird von einem CompletionHandler vervollständigt, der bei
+	 * unvollständig gefülltem Puffer selbst weiterliest. Gelesen wird in einen
+	 * Direct-Buffer, der bis zum nächsten Aufruf wiederverwendet wird. Das
+	 * Budget wird wie beim blockierenden Lesen belegt, ein kurzer Zugriff
+	 * schließt die Datei erst nach Abschluss des Lesevorgangs.
+	 *
+	 * @param length
+	 *            Maximale Anzahl zu lesender Bytes
+	 * @return Wird mit dem gelesenen Block, {@link Block#FINISHED} am Dateiende
+	 *         oder {@link Block#FAILING} im Fehlerfall abgeschlossen
+	 */
+	CompletableFuture<Block> readAsync(int length) {
+		return readAsync(length, null);
+	}
+
+	/**
+	 * Liest wie {@link #readAsync(int)} den nächsten Block asynchron, aber in
+	 * den übergebenen, aus einem BufferPool geliehenen Puffer.
+	 *
+	 * @param length
+	 *            Maximale Anzahl zu lesender Bytes
+	 * @param leased
+	 *            Puffer mit mindestens length Bytes Kapazität oder null für
+	 *            einen eigenen Direct-Buffer
+	 * @return Wird mit dem gelesenen Block, {@link Block#FINISHED} am Dateiende
+	 *         oder {@link Block#FAILING} im Fehlerfall abgeschlossen
+	 */
+	CompletableFuture<Block> readAsync(int length, ByteBuffer leased) {
+		if (length <= 0) {
+			throw new IllegalArgumentException("length must be positive.");
+		}
+		final CompletableFuture<Block> result = new CompletableFuture<>();
+		try {
+			if (isMapped()) {
+				result.complete(readMapped(length));
+				return result;
+			}
+			useBuffer(length, leased, true);
+			if (asyncChannel == null && (budget == null || budget.tryRetain())) {
+				retained = budget != null;
+				asyncChannel = AsynchronousFileChannel.open(file.toPath(), StandardOpenOption.READ);
+				opened();
+			}
+			if (location != null) {
+				location.permits().acquire();
+			}
+			final AsynchronousFileChannel source;
+			try {
+				source = asyncChannel != null ? asyncChannel : openTransientAsync();
+			} catch (IOException | InterruptedException | RuntimeException e) {
+				if (location != null) {
+					location.permits().release();
+				}
+				throw e;
+			}
+			final AsyncBlockHandler handler = new AsyncBlockHandler(source, source != asyncChannel);
+			try {
+				source.read(buffer, position, result, handler);
+			} catch (RuntimeException e) {
+				handler.failed(e, result);
+			}
+		} catch (IOException | RuntimeException e) {
+			close();
+			result.complete(Block.FAILING);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			close();
+			result.complete(Block.FAILING);
+		}
+		return result;
+	}
+
+	/**
+	 * @return true, wenn die Datei in den Speicher abgebildet und daher ohne
+	 *         Puffer gelesen wird; false auch, wenn die Größe nicht bestimmbar
+	 *         ist, sodass der Fehler erst beim Lesen gemeldet wird
+	 */
+	boolean isMapped() {
+		if (length < 0L) {
+			try {
+				length = file.length();
+			} catch (RuntimeException e) {
+				return false;
+			}
+		}
+		return length > 0L && length >= mapThreshold;
+	}
+
+	/**
+	 * Wählt den Puffer des nächsten Lesevorgangs: den geliehenen oder einen
+	 * eigenen, der wiederverwendet wird, solange er groß genug ist. Ein zuvor
+	 * geliehener Puffer gehört wieder dem Pool und wird nie wiederverwendet.
+	 */
+	private void useBuffer(int length, ByteBuffer leased, boolean direct) {
+		if (leased != null) {
+			buffer = leased;
+			pooled = true;
+		} else if (buffer == null || pooled || buffer.capacity() < length || (direct && !buffer.isDirect())) {
+			buffer = direct ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+			pooled = false;
+		}
+		buffer.clear().limit(length);
+	}
+
+	private AsynchronousFileChannel openTransientAsync() throws IOException, InterruptedException {
+		budget.acquireTransient();
+		try {
+			final AsynchronousFileChannel transientChannel = AsynchronousFileChannel.open(file.toPath(), StandardOpenOption.READ);
+			opened();
+			return transientChannel;
+		} catch (IOException | RuntimeException e) {
+			budget.releaseTransient();
+			throw e;
+		}
+	}
+
+	/**
+	 * Liest weiter, bis der Puffer gefüllt oder das Dateiende erreicht ist, und
+	 * gibt danach Gerätefreigabe und gegebenenfalls den kurzen Zugriff zurück.
+	 */
+	private final class AsyncBlockHandler implements CompletionHandler<Integer, CompletableFuture<Block>> {
+		private final AsynchronousFileChannel source;
+		private final boolean transientRead;
+
+		private AsyncBlockHandler(AsynchronousFileChannel source, boolean transientRead) {
+			this.source = source;
+			this.transientRead = transientRead;
+		}
+
+		@Override
+		public void completed(Integer read, CompletableFuture<Block> result) {
+			if (read >= 0 && buffer.hasRemaining()) {
+				try {
+					source.read(buffer, position + buffer.position(), result, this);
+					return;
+				} catch (RuntimeException e) {
+					failed(e, result);
+					return;
+				}
+			}
+			release();
+			buffer.flip();
+			if (!buffer.hasRemaining()) {
+				result.complete(Block.FINISHED);
+				return;
+			}
+			position += buffer.remaining();
+			bytesRead(buffer.remaining());
+			result.complete(new Block(buffer.slice()));
+		}
+
+		@Override
+		public void failed(Throwable exception, CompletableFuture<Block> result) {
+			release();
+			close();
+			result.complete(Block.FAILING);
+		}
+
+		private void release() {
+			if (location != null) {
+				location.permits().release();
+			}
+			if (transientRead) {
+				try {
+					source.close();
+				} catch (IOException e) {
+					// Nur gelesen, nichts zu verlieren
+				} finally {
+					closed();
+					budget.releaseTransient();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Liefert den nächsten Block als Ausschnitt des abgebildeten Fensters. Ein
+	 * neues Fenster wird ab der aktuellen Position abgebildet, sobald der Block
+	 * nicht mehr vollständig im bisherigen Fenster liegt. Der Block wird dabei
+	 * bereits vollständig gelesen, sodass ein Zugriff hinter das Ende einer
+	 * inzwischen gekürzten Datei hier als IOException gemeldet wird.
+	 */
+	private Block readMapped(int length) throws IOException, InterruptedException {
+		final long remaining = this.length - position;
+		if (remaining <= 0L) {
+			return Block.FINISHED;
+		}
+		final int blockLength = (int) Math.min(length, remaining);
+		if (window == null || position + blockLength > windowStart + window.capacity()) {
+			unmap();
+			window = map(Math.min(Math.max(WINDOW_SIZE, blockLength), remaining));
+			windowStart = position;
+		}
+		final Block block;
+		try {
+			block = new Block(window.slice((int) (position - windowStart), blockLength));
+		} catch (InternalError e) {
+			throw new IOException("File was truncated while mapped: " + file, e);
+		}
+		position += blockLength;
+		bytesRead(blockLength);
+		return block;
+	}
+
+	/**
+	 * Gibt das abgebildete Fenster frei. Blöcke aus dem Fenster dürfen danach
+	 * nicht mehr verwendet werden, was der Gültigkeit eines Blocks bis zum
+	 * nächsten Lesevorgang entspricht.
+	 */
+	private void unmap() {
+		final MappedByteBuffer mapped = window;
+		window = null;
+		if (mapped == null || UNMAP == null) {
+			return;
+		}
+		try {
+			UNMAP.invokeExact((ByteBuffer) mapped);
+		} catch (Throwable e) {
+			// Das Fenster wird dann von der Garbage Collection freigegeben
+		}
+	}
+
+	private static MethodHandle unmapHandle() {
+		try {
+			final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			return MethodHandles.lookup()
+					.findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+					.bindTo(theUnsafe.get(null));
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	private MappedByteBuffer map(long size) throws IOException, InterruptedException {
+		if (budget != null) {
+			budget.acquireTransient();
+		}
+		try (FileChannel mapChannel = open()) {
+			try {
+				return mapChannel.map(FileChannel.MapMode.READ_ONLY, position, size);
+			} finally {
+				closed();
+			}
+		} finally {
+			if (budget != null) {
+				budget.releaseTransient();
+			}
+		}
+	}
+
+	/**
+	 * Öffnet die Datei und zählt sie als geöffnet. Der Aufrufer zählt sie
+	 * beim Schließen per {@link #closed()} wieder ab.
+	 */
+	private FileChannel open() throws IOException {
+		final FileChannel opened = new FileInputStream(file).getChannel();
+		opened();
+		return opened;
+	}
+
+	private void opened() {
+		if (metrics != null) {
+			metrics.fileOpened();
+		}
+	}
+
+	private void closed() {
+		if (metrics != null) {
+			metrics.fileClosed();
+		}
+	}
+
+	private void bytesRead(long bytes) {
+		if (metrics != null) {
+			metrics.read(bytes);
+		}
+	}
+
+	/**
+	 * Öffnet die Datei nur für diesen Lesevorgang und setzt an der gespeicherten
+	 * Position fort.
+	 */
+	private void readTransient() throws IOException, InterruptedException {
+		budget.acquireTransient();
+		try (FileChannel transientChannel = open()) {
+			try {
+				readFully(transientChannel);
+			} finally {
+				closed();
+			}
+		} finally {
+			budget.releaseTransient();
+		}
+	}
+
+	private void readFully(FileChannel source) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (source.read(buffer, position + buffer.position()) < 0) {
+				break;
+			}
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,85 @@
+package de.b0n.dir.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Hashverfahren, mit denen Dateiinhalte als Ganzes identifiziert werden
+ * können.
+ */
+public enum HashAlgorithm {
+	/**
+	 * Kryptographischer Hash aus dem JDK, praktisch kollisionsfrei
+	 */
+	SHA_256 {
+		@Override
+		MessageDigest newDigest() {
+			try {
+				return MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException("SHA-256 is not supported by this JVM.", e);
+			}
+		}
+	},
+	/**
+	 * Schneller, nicht kryptographischer 128-Bit-Hash
+	 */
+	MURMUR3_128 {
+		@Override
+		MessageDigest newDigest() {
+			return new Murmur3Digest();
+		}
+	};
+
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	/**
+	 * @return Neue, nicht threadsichere Instanz des Hashverfahrens
+	 */
+	abstract MessageDigest newDigest();
+
+	/**
+	 * Liest die Datei vollständig und sequentiell und berechnet den Hash über
+	 * ihren Inhalt.
+	 *
+	 * @param file
+	 *            Zu hashende Datei
+	 * @return Hash des Dateiinhalts
+	 * @throws IOException
+	 *             Wenn die Datei nicht gelesen werden kann
+	 */
+	public ContentHash hash(File file) throws IOException {
+		if (file == null) {
+			throw new IllegalArgumentException("file may not be null.");
+		}
+		final MessageDigest digest = newDigest();
+		final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			while (channel.read(buffer) >= 0) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		}
+		return new ContentHash(this, digest.digest());
+	}
+
+	/**
+	 * Berechnet den Hash über den übergebenen Inhalt.
+	 *
+	 * @param content
+	 *            Zu hashender Inhalt
+	 * @return Hash des Inhalts
+	 */
+	public ContentHash hash(byte[] content) {
+		if (content == null) {
+			throw new IllegalArgumentException("content may not be null.");
+		}
+		return new ContentHash(this, newDigest().digest(content));
+	}
+}
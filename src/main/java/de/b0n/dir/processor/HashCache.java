@@ -0,0 +1,223 @@
+package de.b0n.dir.processor;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dauerhafter Speicher für Hashwerte von Dateiinhalten über mehrere Läufe
+ * hinweg. Je Pfad und Hashverfahren wird ein Hashwert gespeichert. Er gilt nur,
+ * solange Gerät, Inode, Größe und Änderungszeit der Datei unverändert sind;
+ * jede Änderung führt zu einer erneuten Berechnung, deren Ergebnis den
+ * bisherigen Eintrag ersetzt.
+ *
+ * Die Einträge werden als binäres {@link AppendLog} nur angehängt. Beim Öffnen wird das Log
+ * vollständig eingelesen, ein durch einen Abbruch unvollständiger letzter
+ * Eintrag wird verworfen. Enthält das Log deutlich mehr Einträge als gültige
+ * Schlüssel, wird es dabei verdichtet. Beim Verdichten werden auch die
+ * Einträge gelöschter, verschobener oder veränderter Dateien verworfen.
+ */
+public final class HashCache implements Closeable {
+	private static final int MAGIC = 0x44464843;
+	private static final int VERSION = 1;
+
+	private record Key(HashAlgorithm algorithm, String path) {}
+
+	/**
+	 * Stand der Datei, zu dem ein Hashwert berechnet wurde
+	 */
+	private record Stamp(long device, long inode, long size, long modified) {}
+
+	private record Cached(Stamp stamp, ContentHash hash) {}
+
+	private final AppendLog log;
+	private final Map<Key, Cached> entries = new ConcurrentHashMap<>();
+
+	private HashCache(Path log) {
+		this.log = new AppendLog(log, MAGIC, VERSION, "hash cache");
+	}
+
+	/**
+	 * Öffnet den Speicher in der übergebenen Datei oder legt ihn neu an.
+	 *
+	 * @param log
+	 *            Datei des Speichers
+	 * @return Geöffneter Speicher
+	 * @throws IOException
+	 *             Wenn die Datei nicht gelesen oder geschrieben werden kann
+	 */
+	public static HashCache open(Path log) throws IOException {
+		if (log == null) {
+			throw new IllegalArgumentException("log may not be null.");
+		}
+		final HashCache cache = new HashCache(log);
+		final long records = cache.load();
+		if (AppendLog.needsRewrite(records, cache.entries.size())) {
+			cache.rewrite();
+		}
+		cache.log.openForAppend();
+		return cache;
+	}
+
+	/**
+	 * Liest das Log ein.
+	 *
+	 * @return Anzahl gelesener Einträge oder -1, wenn das Log mit einem
+	 *         unvollständigen Eintrag endet und neu geschrieben werden muss
+	 */
+	private long load() throws IOException {
+		return log.load(input -> {}, (ordinal, input) -> {
+			if (ordinal >= HashAlgorithm.values().length) {
+				return false;
+			}
+			final HashAlgorithm algorithm = HashAlgorithm.values()[ordinal];
+			final Stamp stamp = new Stamp(input.readLong(), input.readLong(), input.readLong(), input.readLong());
+			final Key key = new Key(algorithm, input.readUTF());
+			final byte[] value = new byte[input.readUnsignedByte()];
+			input.readFully(value);
+			entries.put(key, new Cached(stamp, new ContentHash(algorithm, value)));
+			return true;
+		});
+	}
+
+	/**
+	 * Schreibt das Log neu und verwirft dabei die Einträge, deren Datei nicht
+	 * mehr mit dem gespeicherten Stand übereinstimmt.
+	 */
+	private void rewrite() throws IOException {
+		entries.entrySet().parallelStream()
+				.filter(entry -> !entry.getValue().stamp().equals(stampOrNull(entry.getKey().path())))
+				.map(Map.Entry::getKey)
+				.toList()
+				.forEach(entries::remove);
+		log.rewrite(header -> {}, rewritten -> {
+			for (Map.Entry<Key, Cached> entry : entries.entrySet()) {
+				write(rewritten, entry.getKey(), entry.getValue());
+			}
+		});
+	}
+
+	private static void write(DataOutputStream target, Key key, Cached cached) throws IOException {
+		final byte[] value = cached.hash().getValue();
+		target.writeByte(key.algorithm().ordinal());
+		target.writeLong(cached.stamp().device());
+		target.writeLong(cached.stamp().inode());
+		target.writeLong(cached.stamp().size());
+		target.writeLong(cached.stamp().modified());
+		target.writeUTF(key.path());
+		target.writeByte(value.length);
+		target.write(value);
+	}
+
+	private static Stamp stampOf(Path path) throws IOException {
+		try {
+			final Map<String, Object> attributes = Files.readAttributes(path, "unix:dev,ino,size,lastModifiedTime");
+			return new Stamp(
+					((Number) attributes.get("dev")).longValue(),
+					((Number) attributes.get("ino")).longValue(),
+					((Number) attributes.get("size")).longValue(),
+					((FileTime) attributes.get("lastModifiedTime")).to(TimeUnit.NANOSECONDS));
+		} catch (UnsupportedOperationException | IllegalArgumentException e) {
+			final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			return new Stamp(0L, 0L, attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+		}
+	}
+
+	private static Stamp stampOrNull(String path) {
+		try {
+			return stampOf(Path.of(path));
+		} catch (IOException | InvalidPathException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Prüft ohne die Datei zu öffnen, ob für sie ein gültiger Hashwert
+	 * gespeichert ist.
+	 *
+	 * @return true, wenn ein Hashwert zum aktuellen Stand der Datei vorliegt
+	 */
+	boolean contains(File file, HashAlgorithm algorithm) {
+		final Cached cached = entries.get(new Key(algorithm, file.getAbsolutePath()));
+		return cached != null && cached.stamp().equals(stampOrNull(file.getAbsolutePath()));
+	}
+
+	/**
+	 * Liefert den gespeicherten Hashwert der Datei oder berechnet ihn, sofern die
+	 * Datei seit dem letzten Lauf verändert wurde oder unbekannt ist. Ein neu
+	 * berechneter Hashwert wird nur gespeichert, wenn sich die Datei während der
+	 * Berechnung nicht verändert hat.
+	 *
+	 * @param file
+	 *            Zu hashende Datei
+	 * @param algorithm
+	 *            Zu verwendendes Hashverfahren
+	 * @return Hashwert des Dateiinhalts
+	 * @throws IOException
+	 *             Wenn die Datei nicht gelesen werden kann
+	 */
+	public ContentHash computeIfAbsent(File file, HashAlgorithm algorithm) throws IOException {
+		return computeIfAbsent(file, algorithm, null);
+	}
+
+	/**
+	 * Wie {@link #computeIfAbsent(File, HashAlgorithm)}, zählt dabei aber nur
+	 * tatsächlich gelesene Dateien in den übergebenen Zählern.
+	 */
+	ContentHash computeIfAbsent(File file, HashAlgorithm algorithm, ScanMetrics metrics) throws IOException {
+		if (file == null) {
+			throw new IllegalArgumentException("file may not be null.");
+		}
+		if (algorithm == null) {
+			throw new IllegalArgumentException("algorithm may not be null.");
+		}
+		final Key key = new Key(algorithm, file.getAbsolutePath());
+		final Stamp stamp = stampOf(file.toPath());
+		final Cached cached = entries.get(key);
+		if (cached != null && cached.stamp().equals(stamp)) {
+			return cached.hash();
+		}
+		final ContentHash hash = metrics == null ? algorithm.hash(file) : metrics.hash(file, algorithm);
+		if (stamp.equals(stampOf(file.toPath()))) {
+			final Cached computed = new Cached(stamp, hash);
+			entries.put(key, computed);
+			append(key, computed);
+		}
+		return hash;
+	}
+
+	/**
+	 * Hängt einen Eintrag an das Log an. Der Eintrag wird zunächst vollständig
+	 * serialisiert, damit ein nicht darstellbarer Pfad das Log nicht beschädigt.
+	 */
+	private void append(Key key, Cached cached) throws IOException {
+		final byte[] record;
+		try {
+			record = AppendLog.serialize(target -> write(target, key, cached));
+		} catch (UTFDataFormatException e) {
+			return;
+		}
+		log.append(record);
+	}
+
+	/**
+	 * @return Anzahl der gespeicherten Hashwerte
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Schreibt alle angehängten Einträge und schließt das Log.
+	 */
+	@Override
+	public void close() throws IOException {
+		log.close();
+	}
+}
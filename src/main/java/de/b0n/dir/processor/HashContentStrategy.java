@@ -0,0 +1,221 @@
+package de.b0n.dir.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Berechnet für jede Datei unabhängig von den anderen Dateien der Gruppe einen
+ * Hash über den vollständigen Inhalt und gruppiert nach diesem. Jede Datei wird
+ * dabei genau einmal sequentiell gelesen und sofort wieder geschlossen, was die
+ * Lokalität der Zugriffe gegenüber dem Vergleich im Gleichschritt deutlich
+ * verbessert. Im Gegenzug wird ein vernachlässigbares Kollisionsrisiko des
+ * gewählten Hashverfahrens in Kauf genommen.
+ *
+ * Mit einem HashCache werden unveränderte Dateien aus früheren Läufen nicht
+ * erneut gelesen. Mit DeviceLimits werden die Dateien nach Gerät und Inode
+ * geordnet, je Gerät in dieser Reihenfolge und nur begrenzt viele gleichzeitig
+ * gelesen.
+ *
+ * Mit einem ScanBudget wird vor jeder Datei geprüft, ob die Suche abgebrochen
+ * wurde oder eine Grenze erreicht ist. Nicht mehr gehashte Dateien werden dem
+ * Callback als nicht entschieden gemeldet, ebenso Dateien ohne gleichen Hash
+ * unter den gehashten, da ihre Dublette unter den übrigen sein kann.
+ */
+public class HashContentStrategy implements ContentStrategy {
+	/**
+	 * Platzhalter für Dateien, die wegen des erschöpften Budgets nicht gehasht
+	 * wurden
+	 */
+	private static final Optional<ContentHash> UNRESOLVED = Optional.of(new ContentHash(HashAlgorithm.SHA_256, new byte[0]));
+
+	private final HashAlgorithm algorithm;
+	private final HashCache cache;
+	private final DeviceLimits deviceLimits;
+	private final ScanMetrics metrics;
+	private final ScanBudget budget;
+
+	/**
+	 * Erzeugt die Strategie mit dem übergebenen Hashverfahren.
+	 *
+	 * @param algorithm
+	 *            Zu verwendendes Hashverfahren
+	 */
+	public HashContentStrategy(HashAlgorithm algorithm) {
+		this(algorithm, null, null, null, null);
+	}
+
+	private HashContentStrategy(HashAlgorithm algorithm, HashCache cache, DeviceLimits deviceLimits, ScanMetrics metrics,
+			ScanBudget budget) {
+		if (algorithm == null) {
+			throw new IllegalArgumentException("algorithm may not be null.");
+		}
+		this.algorithm = algorithm;
+		this.cache = cache;
+		this.deviceLimits = deviceLimits;
+		this.metrics = metrics;
+		this.budget = budget;
+	}
+
+	/**
+	 * Liefert eine Strategie, die Hashwerte vor dem Lesen einer Datei im
+	 * übergebenen Speicher nachschlägt und neu berechnete dort ablegt.
+	 *
+	 * @param cache
+	 *            Dauerhafter Speicher für Hashwerte
+	 * @return Strategie mit gleichem Hashverfahren und Speicher
+	 */
+	public HashContentStrategy withCache(HashCache cache) {
+		if (cache == null) {
+			throw new IllegalArgumentException("cache may not be null.");
+		}
+		return new HashContentStrategy(algorithm, cache, deviceLimits, metrics, budget);
+	}
+
+	/**
+	 * Liefert eine Strategie, die gleichzeitige Lesevorgänge je Gerät begrenzt
+	 * und die Dateien jeder Gruppe nach Gerät und Inode geordnet liest.
+	 *
+	 * @param deviceLimits
+	 *            Grenzen je Gerät, können zwischen Strategien geteilt werden
+	 * @return Strategie mit gleichem Hashverfahren und Speicher
+	 */
+	public HashContentStrategy withDeviceLimits(DeviceLimits deviceLimits) {
+		if (deviceLimits == null) {
+			throw new IllegalArgumentException("deviceLimits may not be null.");
+		}
+		return new HashContentStrategy(algorithm, cache, deviceLimits, metrics, budget);
+	}
+
+	/**
+	 * Liefert eine Strategie, die gehashte Dateien und gelesene Bytes in den
+	 * übergebenen Zählern erfasst. Aus dem HashCache gelieferte Werte werden
+	 * nicht gezählt.
+	 *
+	 * @param metrics
+	 *            Zähler der Suche
+	 * @return Strategie mit gleichem Hashverfahren und Speicher
+	 */
+	public HashContentStrategy withMetrics(ScanMetrics metrics) {
+		if (metrics == null) {
+			throw new IllegalArgumentException("metrics may not be null.");
+		}
+		return new HashContentStrategy(algorithm, cache, deviceLimits, metrics, budget);
+	}
+
+	/**
+	 * Liefert eine Strategie, die vor jeder Datei das übergebene Budget prüft.
+	 * Gehashte Dateien und gelesene Bytes werden in den ScanMetrics des Budgets
+	 * erfasst.
+	 *
+	 * @param budget
+	 *            Budget der Suche
+	 * @return Strategie mit gleichem Hashverfahren und Speicher
+	 */
+	public HashContentStrategy withBudget(ScanBudget budget) {
+		if (budget == null) {
+			throw new IllegalArgumentException("budget may not be null.");
+		}
+		return new HashContentStrategy(algorithm, cache, deviceLimits, budget.getMetrics(), budget);
+	}
+
+	/**
+	 * @return Verwendetes Hashverfahren
+	 */
+	public HashAlgorithm getAlgorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * Berechnet den Hash über den Inhalt der Datei.
+	 *
+	 * @param file
+	 *            Zu hashende Datei
+	 * @return Hash des Dateiinhalts oder leer, wenn die Datei nicht gelesen
+	 *         werden kann
+	 */
+	public Optional<ContentHash> hash(File file) {
+		try {
+			if (cache == null) {
+				return Optional.of(metrics == null ? algorithm.hash(file) : metrics.hash(file, algorithm));
+			}
+			return Optional.of(cache.computeIfAbsent(file, algorithm, metrics));
+		} catch (IOException | RuntimeException e) {
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * @return true, wenn der Hashwert der Datei ohne Lesen aus dem HashCache
+	 *         geliefert wird
+	 */
+	boolean isCached(File file) {
+		return cache != null && cache.contains(file, algorithm);
+	}
+
+	/**
+	 * Hasht die Datei, solange das Budget nicht erschöpft ist.
+	 */
+	private Optional<ContentHash> hashWithinBudget(File file) {
+		if (budget != null && budget.isExhausted()) {
+			return UNRESOLVED;
+		}
+		return hash(file);
+	}
+
+	private Optional<ContentHash> hash(File file, DeviceLimits.Location location) {
+		if (budget != null && budget.isExhausted()) {
+			return UNRESOLVED;
+		}
+		try {
+			location.permits().acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return Optional.empty();
+		}
+		try {
+			return hash(file);
+		} finally {
+			location.permits().release();
+		}
+	}
+
+	@Override
+	public Stream<DuplicateGroup> getResult(Collection<File> input, DuplicateContentFinderCallback callback) {
+		final Map<ContentHash, List<File>> groups = new HashMap<>();
+		final List<File> unresolved = new ArrayList<>();
+		final Stream<Map.Entry<File, Optional<ContentHash>>> hashes = deviceLimits == null
+				? input.parallelStream().map(file -> Map.entry(file, hashWithinBudget(file)))
+				: deviceLimits.inOrder(input.parallelStream()
+						.map(file -> Map.entry(file, deviceLimits.locate(file)))
+						.sorted(DeviceLimits.LOCALITY)
+						.toList(), Map.Entry::getValue,
+						entry -> Map.entry(entry.getKey(), hash(entry.getKey(), entry.getValue())), null).stream();
+		hashes.toList()
+				.forEach(entry -> {
+					if (entry.getValue() == UNRESOLVED) {
+						unresolved.add(entry.getKey());
+					} else if (entry.getValue().isEmpty()) {
+						callback.failedFile(entry.getKey());
+					} else {
+						groups.computeIfAbsent(entry.getValue().get(), hash -> new ArrayList<>()).add(entry.getKey());
+					}
+				});
+
+		unresolved.forEach(callback::unresolvedFile);
+		return groups.entrySet().stream()
+				.filter(entry -> {
+					if (entry.getValue().size() == 1) {
+						if (unresolved.isEmpty()) {
+							callback.uniqueFile(entry.getValue().get(0));
+						} else {
+							callback.unresolvedFile(entry.getValue().get(0));
+						}
+						return false;
+					}
+					return true;
+				})
+				.map(entry -> new DuplicateGroup(entry.getValue().get(0).length(), entry.getValue(), entry.getKey()));
+	}
+}
@@ -0,0 +1,144 @@
+package de.b0n.dir.processor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+
+/**
+ * Streamende Implementierung von MurmurHash3 in der 128-Bit-Variante für
+ * x64 mit Seed 0. Nicht kryptographisch, aber deutlich schneller als SHA-256
+ * und für den Vergleich von Dateiinhalten ausreichend kollisionsarm. Die
+ * Ausgabe entspricht der Byte-Reihenfolge verbreiteter Implementierungen (h1,
+ * h2 jeweils Little Endian).
+ */
+final class Murmur3Digest extends MessageDigest {
+	private static final int BLOCK_LENGTH = 16;
+	private static final long C1 = 0x87c37b91114253d5L;
+	private static final long C2 = 0x4cf5ad432745937fL;
+
+	private final ByteBuffer pending = ByteBuffer.allocate(BLOCK_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+	private long h1;
+	private long h2;
+	private long length;
+
+	Murmur3Digest() {
+		super("MurmurHash3-128");
+	}
+
+	@Override
+	protected int engineGetDigestLength() {
+		return BLOCK_LENGTH;
+	}
+
+	@Override
+	protected void engineUpdate(byte input) {
+		pending.put(input);
+		length++;
+		if (!pending.hasRemaining()) {
+			processPending();
+		}
+	}
+
+	@Override
+	protected void engineUpdate(byte[] input, int offset, int len) {
+		final ByteBuffer source = ByteBuffer.wrap(input, offset, len).order(ByteOrder.LITTLE_ENDIAN);
+		length += len;
+		if (pending.position() > 0) {
+			while (source.hasRemaining() && pending.hasRemaining()) {
+				pending.put(source.get());
+			}
+			if (pending.hasRemaining()) {
+				return;
+			}
+			processPending();
+		}
+		while (source.remaining() >= BLOCK_LENGTH) {
+			mixBlock(source.getLong(), source.getLong());
+		}
+		pending.put(source);
+	}
+
+	private void processPending() {
+		pending.flip();
+		mixBlock(pending.getLong(), pending.getLong());
+		pending.clear();
+	}
+
+	private void mixBlock(long k1, long k2) {
+		h1 ^= mixK1(k1);
+		h1 = Long.rotateLeft(h1, 27);
+		h1 += h2;
+		h1 = h1 * 5 + 0x52dce729;
+
+		h2 ^= mixK2(k2);
+		h2 = Long.rotateLeft(h2, 31);
+		h2 += h1;
+		h2 = h2 * 5 + 0x38495ab5;
+	}
+
+	private static long mixK1(long k1) {
+		k1 *= C1;
+		k1 = Long.rotateLeft(k1, 31);
+		k1 *= C2;
+		return k1;
+	}
+
+	private static long mixK2(long k2) {
+		k2 *= C2;
+		k2 = Long.rotateLeft(k2, 33);
+		k2 *= C1;
+		return k2;
+	}
+
+	private static long fmix(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+
+	@Override
+	protected byte[] engineDigest() {
+		final int tail = pending.position();
+		long k1 = 0;
+		long k2 = 0;
+		for (int i = tail - 1; i >= 8; i--) {
+			k2 ^= (pending.get(i) & 0xffL) << ((i - 8) * 8);
+		}
+		for (int i = Math.min(tail, 8) - 1; i >= 0; i--) {
+			k1 ^= (pending.get(i) & 0xffL) << (i * 8);
+		}
+		if (tail > 8) {
+			h2 ^= mixK2(k2);
+		}
+		if (tail > 0) {
+			h1 ^= mixK1(k1);
+		}
+
+		h1 ^= length;
+		h2 ^= length;
+		h1 += h2;
+		h2 += h1;
+		h1 = fmix(h1);
+		h2 = fmix(h2);
+		h1 += h2;
+		h2 += h1;
+
+		final byte[] digest = ByteBuffer.allocate(BLOCK_LENGTH).order(ByteOrder.LITTLE_ENDIAN)
+				.putLong(h1)
+				.putLong(h2)
+				.array();
+		engineReset();
+		return digest;
+	}
+
+	@Override
+	protected void engineReset() {
+		pending.clear();
+		h1 = 0;
+		h2 = 0;
+		length = 0;
+	}
+}
@@ -0,0 +1,83 @@
+package de.b0n.dir.processor;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Begrenzt die Anzahl gleichzeitig geöffneter Dateien beim Inhaltsvergleich.
+ *
+ * Ein Teil des Budgets kann von FileReadern dauerhaft gehalten werden, bis ihre
+ * Gruppe aufgelöst ist. Der Rest ist für FileReader reserviert, die kein
+ * dauerhaftes Handle mehr bekommen haben: Sie öffnen ihre Datei nur für einen
+ * einzelnen Lesevorgang ab der gespeicherten Position und schließen sie sofort
+ * wieder. Da diese kurzen Zugriffe ihre Handles stets zeitnah zurückgeben,
+ * kann eine große Gruppe nicht an ihren eigenen, dauerhaft gehaltenen Handles
+ * verhungern.
+ */
+public final class OpenFileBudget {
+	/**
+	 * Standardbudget, das unter den üblichen Limits der Betriebssysteme bleibt
+	 */
+	public static final int DEFAULT_MAX_OPEN_FILES = 512;
+
+	private final int maxOpenFiles;
+	private final Semaphore retained;
+	private final Semaphore transientReads;
+
+	/**
+	 * Erzeugt ein Budget für die übergebene Anzahl gleichzeitig geöffneter
+	 * Dateien.
+	 *
+	 * @param maxOpenFiles
+	 *            Maximal gleichzeitig geöffnete Dateien, mindestens 2
+	 */
+	public OpenFileBudget(int maxOpenFiles) {
+		if (maxOpenFiles < 2) {
+			throw new IllegalArgumentException("maxOpenFiles must be at least 2.");
+		}
+		final int reserved = Math.max(1, Math.min(maxOpenFiles / 2, Runtime.getRuntime().availableProcessors()));
+		this.maxOpenFiles = maxOpenFiles;
+		this.retained = new Semaphore(maxOpenFiles - reserved);
+		this.transientReads = new Semaphore(reserved);
+	}
+
+	/**
+	 * @return Maximal gleichzeitig geöffnete Dateien
+	 */
+	public int getMaxOpenFiles() {
+		return maxOpenFiles;
+	}
+
+	/**
+	 * Versucht, ein dauerhaft gehaltenes Handle zu reservieren. Blockiert nie.
+	 *
+	 * @return true, wenn das Handle bis zur Freigabe gehalten werden darf
+	 */
+	boolean tryRetain() {
+		return retained.tryAcquire();
+	}
+
+	/**
+	 * Gibt ein dauerhaft gehaltenes Handle frei.
+	 */
+	void releaseRetained() {
+		retained.release();
+	}
+
+	/**
+	 * Reserviert ein Handle für einen einzelnen Lesevorgang und wartet dazu
+	 * gegebenenfalls auf die Freigabe eines anderen kurzen Zugriffs.
+	 *
+	 * @throws InterruptedException
+	 *             Wenn der wartende Thread unterbrochen wurde
+	 */
+	void acquireTransient() throws InterruptedException {
+		transientReads.acquire();
+	}
+
+	/**
+	 * Gibt ein Handle eines einzelnen Lesevorgangs frei.
+	 */
+	void releaseTransient() {
+		transientReads.release();
+	}
+}
@@ -0,0 +1,122 @@
+package de.b0n.dir.processor;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.stream.Stream;
+
+/**
+ * Optionale Vorstufe vor einem anderen Verfahren: Teilt die Dateien zunächst
+ * per {@link DuplicatePartialHashFinder} anhand von Stichproben am Anfang und
+ * Ende jeder Datei auf und übergibt nur Gruppen mit übereinstimmenden
+ * Stichproben an das eigentliche Verfahren.
+ *
+ * Die Vorstufe spart Lesevorgänge, wenn viele gleich große Dateien sich schon
+ * am Anfang oder Ende unterscheiden. Auf Datenträgern, bei denen die
+ * zusätzlichen Zugriffe auf das Dateiende teurer sind als das vollständige
+ * Lesen, wird das eigentliche Verfahren ohne diese Vorstufe verwendet.
+ *
+ * Liegt vor einem HashContentStrategy mit HashCache für eine Datei der Gruppe
+ * bereits ein gültiger Hashwert vor, wird die Gruppe ohne Stichproben direkt
+ * an das eigentliche Verfahren übergeben. Die gespeicherten Dateien werden so
+ * gar nicht geöffnet, die übrigen nur einmal vollständig gelesen.
+ *
+ * Wie die übrigen Verfahren prüft die Vorstufe mit einem ScanBudget vor jeder
+ * Datei, ob die Suche abgebrochen wurde, und zählt geöffnete Dateien und
+ * gelesene Bytes in den ScanMetrics.
+ */
+public class PartialHashContentStrategy implements ContentStrategy {
+	private final ContentStrategy strategy;
+	private final int sampleSize;
+	private final ScanMetrics metrics;
+	private final ScanBudget budget;
+
+	/**
+	 * Erzeugt die Vorstufe mit Stichproben der Größe
+	 * {@link DuplicatePartialHashFinder#DEFAULT_SAMPLE_SIZE}.
+	 *
+	 * @param strategy
+	 *            Verfahren für den vollständigen Vergleich der übrigen Dateien
+	 */
+	public PartialHashContentStrategy(ContentStrategy strategy) {
+		this(strategy, DuplicatePartialHashFinder.DEFAULT_SAMPLE_SIZE, null, null);
+	}
+
+	private PartialHashContentStrategy(ContentStrategy strategy, int sampleSize, ScanMetrics metrics, ScanBudget budget) {
+		if (strategy == null) {
+			throw new IllegalArgumentException("strategy may not be null.");
+		}
+		if (sampleSize <= 0) {
+			throw new IllegalArgumentException("sampleSize must be positive.");
+		}
+		this.strategy = strategy;
+		this.sampleSize = sampleSize;
+		this.metrics = metrics;
+		this.budget = budget;
+	}
+
+	/**
+	 * Liefert eine Vorstufe mit geänderter Größe der Stichproben.
+	 *
+	 * @param sampleSize
+	 *            Größe der Stichprobe am Anfang und am Ende jeder Datei in
+	 *            Bytes
+	 * @return Vorstufe mit geänderter Stichprobengröße vor demselben Verfahren
+	 */
+	public PartialHashContentStrategy withSampleSize(int sampleSize) {
+		return new PartialHashContentStrategy(strategy, sampleSize, metrics, budget);
+	}
+
+	/**
+	 * Liefert eine Vorstufe, die geöffnete Dateien und gelesene Bytes in den
+	 * übergebenen Zählern erfasst.
+	 *
+	 * @param metrics
+	 *            Zähler der Suche
+	 * @return Vorstufe mit geänderten Zählern vor demselben Verfahren
+	 */
+	public PartialHashContentStrategy withMetrics(ScanMetrics metrics) {
+		if (metrics == null) {
+			throw new IllegalArgumentException("metrics may not be null.");
+		}
+		return new PartialHashContentStrategy(strategy, sampleSize, metrics, budget);
+	}
+
+	/**
+	 * Liefert eine Vorstufe, die vor jeder Datei das übergebene Budget prüft.
+	 * Geöffnete Dateien und gelesene Bytes werden in den ScanMetrics des
+	 * Budgets erfasst.
+	 *
+	 * @param budget
+	 *            Budget der Suche
+	 * @return Vorstufe mit geändertem Budget vor demselben Verfahren
+	 */
+	public PartialHashContentStrategy withBudget(ScanBudget budget) {
+		if (budget == null) {
+			throw new IllegalArgumentException("budget may not be null.");
+		}
+		return new PartialHashContentStrategy(strategy, sampleSize, budget.getMetrics(), budget);
+	}
+
+	/**
+	 * @return Verfahren für den vollständigen Vergleich
+	 */
+	public ContentStrategy getStrategy() {
+		return strategy;
+	}
+
+	/**
+	 * @return Größe der Stichprobe am Anfang und am Ende jeder Datei in Bytes
+	 */
+	public int getSampleSize() {
+		return sampleSize;
+	}
+
+	@Override
+	public Stream<DuplicateGroup> getResult(Collection<File> input, DuplicateContentFinderCallback callback) {
+		if (strategy instanceof HashContentStrategy hashing && input.stream().anyMatch(hashing::isCached)) {
+			return DuplicateContentFinder.getGroups(input, callback, strategy);
+		}
+		return DuplicatePartialHashFinder.getResult(input, sampleSize, callback, metrics, budget)
+				.flatMap(files -> DuplicateContentFinder.getGroups(files, callback, strategy));
+	}
+}
@@ -0,0 +1,381 @@
+package de.b0n.dir.processor;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Dauerhafter Index von Größe und SHA-256-Hash der Dateien eines
+ * Referenzbestands, etwa eines Archivs. Mit ihm lässt sich feststellen, welche
+ * Dateien eines Zielverzeichnisses im Referenzbestand bereits vorhanden sind,
+ * ohne den Referenzbestand erneut zu lesen. Von den Zieldateien werden nur
+ * diejenigen gelesen, deren Größe im Referenzbestand vorkommt.
+ *
+ * Der Index wird aus Verzeichnissen aufgebaut oder aus Manifesten im Format
+ * von sha256sum übernommen. Beim erneuten Aufnehmen eines Verzeichnisses
+ * werden nur Dateien gehasht, deren Größe oder Änderungszeit sich geändert
+ * hat; nicht mehr vorhandene Dateien werden entfernt. Aus Manifesten
+ * übernommene Einträge, deren Datei nicht vorliegt, haben keine bekannte
+ * Größe. Solange solche Einträge bestehen, muss jede Zieldatei gehasht werden.
+ *
+ * Die Einträge werden wie beim HashCache als binäres Log nur angehängt und
+ * beim Öffnen verdichtet, wenn es deutlich mehr Einträge als gültige Dateien
+ * enthält.
+ */
+public final class ReferenceIndex implements Closeable {
+	/**
+	 * Hashverfahren aller Einträge, passend zu Manifesten von sha256sum
+	 */
+	public static final HashAlgorithm ALGORITHM = HashAlgorithm.SHA_256;
+	/**
+	 * Größe oder Änderungszeit eines Eintrags ist nicht bekannt
+	 */
+	static final long UNKNOWN = -1L;
+
+	private static final int MAGIC = 0x44465249;
+	private static final int VERSION = 1;
+	private static final int ENTRY = 1;
+	private static final int REMOVED = 2;
+	private static final int SHA_256_HEX_LENGTH = 64;
+
+	private record Entry(long size, long modified, ContentHash hash) {}
+
+	/**
+	 * Zieldatei, deren Inhalt im Referenzbestand vorhanden ist.
+	 *
+	 * @param file
+	 *            Zieldatei
+	 * @param length
+	 *            Größe der Zieldatei
+	 * @param hash
+	 *            SHA-256-Hash des Inhalts
+	 * @param references
+	 *            Pfade der Dateien gleichen Inhalts im Referenzbestand
+	 */
+	public record Match(File file, long length, ContentHash hash, List<String> references) {}
+
+	private final AppendLog log;
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	private ReferenceIndex(Path log) {
+		this.log = new AppendLog(log, MAGIC, VERSION, "reference index");
+	}
+
+	/**
+	 * Öffnet den Index in der übergebenen Datei oder legt ihn neu an.
+	 *
+	 * @param log
+	 *            Datei des Index
+	 * @return Geöffneter Index
+	 * @throws IOException
+	 *             Wenn die Datei nicht gelesen oder geschrieben werden kann
+	 */
+	public static ReferenceIndex open(Path log) throws IOException {
+		if (log == null) {
+			throw new IllegalArgumentException("log may not be null.");
+		}
+		final ReferenceIndex index = new ReferenceIndex(log);
+		final long records = index.load();
+		if (AppendLog.needsRewrite(records, index.entries.size())) {
+			index.rewrite();
+		}
+		index.log.openForAppend();
+		return index;
+	}
+
+	/**
+	 * Liest das Log ein.
+	 *
+	 * @return Anzahl gelesener Einträge oder -1, wenn das Log mit einem
+	 *         unvollständigen Eintrag endet und neu geschrieben werden muss
+	 */
+	private long load() throws IOException {
+		return log.load(input -> {}, (type, input) -> {
+			switch (type) {
+			case ENTRY -> {
+				final String path = input.readUTF();
+				final long size = input.readLong();
+				final long modified = input.readLong();
+				final byte[] value = new byte[input.readUnsignedByte()];
+				input.readFully(value);
+				entries.put(path, new Entry(size, modified, new ContentHash(ALGORITHM, value)));
+			}
+			case REMOVED -> entries.remove(input.readUTF());
+			default -> {
+				return false;
+			}
+			}
+			return true;
+		});
+	}
+
+	private void rewrite() throws IOException {
+		log.rewrite(header -> {}, rewritten -> {
+			for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+				writeEntry(rewritten, entry.getKey(), entry.getValue());
+			}
+		});
+	}
+
+	private static void writeEntry(DataOutputStream target, String path, Entry entry) throws IOException {
+		final byte[] value = entry.hash().getValue();
+		target.writeByte(ENTRY);
+		target.writeUTF(path);
+		target.writeLong(entry.size());
+		target.writeLong(entry.modified());
+		target.writeByte(value.length);
+		target.write(value);
+	}
+
+	/**
+	 * Nimmt alle Dateien eines Verzeichnisses und seiner Unterverzeichnisse in
+	 * den Index auf.
+	 *
+	 * @param root
+	 *            Verzeichnis des Referenzbestands
+	 * @return Anzahl der neu gehashten Dateien
+	 * @throws IOException
+	 *             Wenn der Index nicht geschrieben werden kann
+	 */
+	public int add(Path root) throws IOException {
+		return add(root, WalkOptions.DEFAULT, new DuplicateContentFinderCallback() {});
+	}
+
+	/**
+	 * Nimmt alle Dateien eines Verzeichnisses und seiner Unterverzeichnisse in
+	 * den Index auf. Unveränderte Dateien werden nicht erneut gelesen, Einträge
+	 * unter dem Verzeichnis, deren Datei nicht mehr gefunden wird, werden
+	 * entfernt.
+	 *
+	 * @param root
+	 *            Verzeichnis des Referenzbestands
+	 * @param options
+	 *            Einstellungen für das Durchsuchen
+	 * @param callback
+	 *            Wird für jede nicht lesbare Datei aufgerufen
+	 * @return Anzahl der neu gehashten Dateien
+	 * @throws IOException
+	 *             Wenn der Index nicht geschrieben werden kann
+	 */
+	public int add(Path root, WalkOptions options, DuplicateContentFinderCallback callback) throws IOException {
+		if (callback == null) {
+			throw new IllegalArgumentException("callback may not be null.");
+		}
+		final List<Path> files = DuplicateLengthFinder.getIndex(root, new DuplicateLengthFinderCallback() {}, options)
+				.toMap(Function.identity()).values().stream()
+				.flatMap(List::stream)
+				.toList();
+		final Set<String> found = ConcurrentHashMap.newKeySet();
+		final AtomicInteger hashed = new AtomicInteger();
+		final List<IOException> failures = Collections.synchronizedList(new ArrayList<>());
+		files.parallelStream().forEach(path -> {
+			final String key = path.toAbsolutePath().toString();
+			found.add(key);
+			try {
+				final long size = Files.size(path);
+				final long modified = Files.getLastModifiedTime(path).to(TimeUnit.NANOSECONDS);
+				final Entry known = entries.get(key);
+				if (known != null && known.size() == size && known.modified() == modified) {
+					return;
+				}
+				final Entry entry = new Entry(size, modified, ALGORITHM.hash(path.toFile()));
+				if (modified != Files.getLastModifiedTime(path).to(TimeUnit.NANOSECONDS)) {
+					return;
+				}
+				try {
+					put(key, entry);
+				} catch (IOException e) {
+					failures.add(e);
+				}
+				hashed.incrementAndGet();
+			} catch (IOException e) {
+				callback.failedFile(path.toFile());
+			}
+		});
+		if (!failures.isEmpty()) {
+			throw failures.get(0);
+		}
+		final Path absoluteRoot = root.toAbsolutePath();
+		for (Map.Entry<String, Entry> entry : List.copyOf(entries.entrySet())) {
+			if (entry.getValue().modified() != UNKNOWN && !found.contains(entry.getKey())
+					&& Path.of(entry.getKey()).startsWith(absoluteRoot)) {
+				remove(entry.getKey());
+			}
+		}
+		return hashed.get();
+	}
+
+	/**
+	 * Übernimmt die Einträge eines Manifests im Format von sha256sum, also je
+	 * Zeile den hexadezimalen Hash, ein Leerzeichen, ein Leerzeichen oder einen
+	 * Stern und den Pfad. Relative Pfade gelten relativ zum Verzeichnis des
+	 * Manifests. Liegt die Datei vor, wird ihre Größe übernommen, gelesen wird
+	 * sie nicht.
+	 *
+	 * @param manifest
+	 *            Manifest mit SHA-256-Hashwerten
+	 * @return Anzahl der übernommenen Einträge
+	 * @throws IOException
+	 *             Wenn das Manifest nicht gelesen werden kann, eine Zeile nicht
+	 *             dem Format entspricht oder der Index nicht geschrieben werden
+	 *             kann
+	 */
+	public int importManifest(Path manifest) throws IOException {
+		if (manifest == null) {
+			throw new IllegalArgumentException("manifest may not be null.");
+		}
+		final Path base = manifest.toAbsolutePath().getParent();
+		int imported = 0;
+		int number = 0;
+		try (BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				number++;
+				if (line.isBlank()) {
+					continue;
+				}
+				final boolean escaped = line.startsWith("\\");
+				final String content = escaped ? line.substring(1) : line;
+				if (content.length() < SHA_256_HEX_LENGTH + 3 || content.charAt(SHA_256_HEX_LENGTH) != ' '
+						|| (content.charAt(SHA_256_HEX_LENGTH + 1) != ' ' && content.charAt(SHA_256_HEX_LENGTH + 1) != '*')) {
+					throw new IOException("Invalid manifest line " + number + ": " + manifest);
+				}
+				final ContentHash hash;
+				try {
+					hash = ContentHash.parse(ALGORITHM, content.substring(0, SHA_256_HEX_LENGTH));
+				} catch (IllegalArgumentException e) {
+					throw new IOException("Invalid manifest line " + number + ": " + manifest, e);
+				}
+				final String name = content.substring(SHA_256_HEX_LENGTH + 2);
+				final Path path = base.resolve(escaped ? unescape(name) : name).normalize();
+				final long size = Files.isRegularFile(path) ? Files.size(path) : UNKNOWN;
+				put(path.toString(), new Entry(size, UNKNOWN, hash));
+				imported++;
+			}
+		}
+		return imported;
+	}
+
+	/**
+	 * Hebt die Maskierung von sha256sum für Pfade mit Backslash oder
+	 * Zeilenumbruch auf.
+	 */
+	private static String unescape(String name) {
+		final StringBuilder result = new StringBuilder(name.length());
+		for (int i = 0; i < name.length(); i++) {
+			final char c = name.charAt(i);
+			if (c == '\\' && i + 1 < name.length()) {
+				final char next = name.charAt(++i);
+				result.append(next == 'n' ? '\n' : next);
+			} else {
+				result.append(c);
+			}
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Sucht die Dateien eines Zielverzeichnisses im Referenzbestand. Gelesen
+	 * werden nur Zieldateien, deren Größe im Referenzbestand vorkommt. Eine
+	 * Zieldatei, die selbst zum Referenzbestand gehört, wird nicht mit sich
+	 * selbst gefunden.
+	 *
+	 * @param target
+	 *            Zu prüfendes Verzeichnis
+	 * @param options
+	 *            Einstellungen für das Durchsuchen
+	 * @param callback
+	 *            Wird für jede nicht im Referenzbestand vorhandene und jede
+	 *            nicht lesbare Zieldatei aufgerufen
+	 * @return Zieldateien mit vorhandenem Inhalt, gehasht erst beim
+	 *         Verarbeiten des jeweiligen Stream-Elements
+	 */
+	public Stream<Match> match(Path target, WalkOptions options, DuplicateContentFinderCallback callback) {
+		if (callback == null) {
+			throw new IllegalArgumentException("callback may not be null.");
+		}
+		final Map<ContentHash, List<String>> byHash = new HashMap<>();
+		final Set<Long> sizes = new HashSet<>();
+		boolean unknownSize = false;
+		for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+			byHash.computeIfAbsent(entry.getValue().hash(), hash -> new ArrayList<>()).add(entry.getKey());
+			sizes.add(entry.getValue().size());
+			unknownSize |= entry.getValue().size() == UNKNOWN;
+		}
+		final boolean hashAll = unknownSize;
+		return DuplicateLengthFinder.getIndex(target, new DuplicateLengthFinderCallback() {}, options)
+				.toMap(Path::toFile).entrySet().stream()
+				.flatMap(bySize -> {
+					if (hashAll || sizes.contains(bySize.getKey())) {
+						return bySize.getValue().stream()
+								.map(file -> match(file, bySize.getKey(), byHash, callback))
+								.filter(Objects::nonNull);
+					}
+					bySize.getValue().forEach(callback::uniqueFile);
+					return Stream.empty();
+				});
+	}
+
+	private static Match match(File file, long length, Map<ContentHash, List<String>> byHash,
+			DuplicateContentFinderCallback callback) {
+		final ContentHash hash;
+		try {
+			hash = ALGORITHM.hash(file);
+		} catch (IOException e) {
+			callback.failedFile(file);
+			return null;
+		}
+		final String self = file.getAbsolutePath();
+		final List<String> references = byHash.getOrDefault(hash, List.of()).stream()
+				.filter(reference -> !reference.equals(self))
+				.sorted()
+				.toList();
+		if (references.isEmpty()) {
+			callback.uniqueFile(file);
+			return null;
+		}
+		return new Match(file, length, hash, references);
+	}
+
+	private void put(String path, Entry entry) throws IOException {
+		final byte[] record;
+		try {
+			record = AppendLog.serialize(target -> writeEntry(target, path, entry));
+		} catch (UTFDataFormatException e) {
+			return;
+		}
+		entries.put(path, entry);
+		log.append(record);
+	}
+
+	private void remove(String path) throws IOException {
+		final byte[] record = AppendLog.serialize(target -> {
+			target.writeByte(REMOVED);
+			target.writeUTF(path);
+		});
+		entries.remove(path);
+		log.append(record);
+	}
+
+	/**
+	 * @return Anzahl der Dateien im Referenzbestand
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Schreibt alle angehängten Einträge und schließt das Log.
+	 */
+	@Override
+	public void close() throws IOException {
+		log.close();
+	}
+}
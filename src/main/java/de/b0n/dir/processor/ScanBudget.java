@@ -0,0 +1,168 @@
+package de.b0n.dir.processor;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Abbruchmöglichkeit und optionale Grenzen für Laufzeit, gelesene Bytes und
+ * geöffnete Dateien einer Dublettensuche. DuplicateLengthFinder, die
+ * ContentStrategies und der ScanExecutor prüfen das Budget an sicheren
+ * Stellen: vor jedem Verzeichnis, vor jeder Vergleichsrunde, vor jeder zu
+ * hashenden Datei und vor jeder Kandidatengruppe. Ist es erschöpft, liefert
+ * die Suche die bis dahin bestätigten Gruppen und meldet alle nicht mehr
+ * entschiedenen Dateien und nicht mehr durchsuchten Verzeichnisse.
+ *
+ * Gelesene Bytes und geöffnete Dateien werden den ScanMetrics des Budgets
+ * entnommen. Die Laufzeit zählt ab Erzeugung des Budgets. Die mit den
+ * with-Methoden abgeleiteten Budgets teilen sich Beginn und Abbruch mit dem
+ * ursprünglichen Budget; ist eines erschöpft, sind es alle.
+ */
+public final class ScanBudget {
+	/**
+	 * Gründe, aus denen das Budget erschöpft ist.
+	 */
+	public enum Reason {
+		/** Abbruch per {@link ScanBudget#cancel()} */
+		CANCELLED,
+		/** Laufzeit überschritten */
+		TIME,
+		/** Gelesene Bytes überschritten */
+		BYTES_READ,
+		/** Geöffnete Dateien überschritten */
+		FILES_OPENED
+	}
+
+	private final ScanMetrics metrics;
+	private final long started;
+	private final AtomicReference<Reason> reason;
+	private final Duration timeLimit;
+	private final long maxBytesRead;
+	private final long maxFilesOpened;
+
+	/**
+	 * Erzeugt ein Budget ohne Grenzen, das nur per {@link #cancel()} erschöpft
+	 * wird.
+	 *
+	 * @param metrics
+	 *            Zähler der Suche, denen gelesene Bytes und geöffnete Dateien
+	 *            entnommen werden
+	 */
+	public ScanBudget(ScanMetrics metrics) {
+		this(metrics, System.nanoTime(), new AtomicReference<>(), null, Long.MAX_VALUE, Long.MAX_VALUE);
+	}
+
+	private ScanBudget(ScanMetrics metrics, long started, AtomicReference<Reason> reason, Duration timeLimit,
+			long maxBytesRead, long maxFilesOpened) {
+		if (metrics == null) {
+			throw new IllegalArgumentException("metrics may not be null.");
+		}
+		this.metrics = metrics;
+		this.started = started;
+		this.reason = reason;
+		this.timeLimit = timeLimit;
+		this.maxBytesRead = maxBytesRead;
+		this.maxFilesOpened = maxFilesOpened;
+	}
+
+	/**
+	 * Liefert ein Budget, das nach der übergebenen Laufzeit erschöpft ist.
+	 *
+	 * @param timeLimit
+	 *            Laufzeit ab Erzeugung des ursprünglichen Budgets
+	 * @return Budget mit geänderter Laufzeit und sonst gleichen Grenzen
+	 */
+	public ScanBudget withTimeLimit(Duration timeLimit) {
+		if (timeLimit == null) {
+			throw new IllegalArgumentException("timeLimit may not be null.");
+		}
+		if (timeLimit.isNegative()) {
+			throw new IllegalArgumentException("timeLimit may not be negative.");
+		}
+		return new ScanBudget(metrics, started, reason, timeLimit, maxBytesRead, maxFilesOpened);
+	}
+
+	/**
+	 * Liefert ein Budget, das erschöpft ist, sobald mehr als die übergebene
+	 * Anzahl Bytes gelesen wurde.
+	 *
+	 * @param maxBytesRead
+	 *            Obergrenze der gelesenen Bytes, mindestens 1
+	 * @return Budget mit geänderter Grenze und sonst gleichen Grenzen
+	 */
+	public ScanBudget withMaxBytesRead(long maxBytesRead) {
+		if (maxBytesRead <= 0) {
+			throw new IllegalArgumentException("maxBytesRead must be positive.");
+		}
+		return new ScanBudget(metrics, started, reason, timeLimit, maxBytesRead, maxFilesOpened);
+	}
+
+	/**
+	 * Liefert ein Budget, das erschöpft ist, sobald mehr als die übergebene
+	 * Anzahl Dateien geöffnet wurde.
+	 *
+	 * @param maxFilesOpened
+	 *            Obergrenze der geöffneten Dateien, mindestens 1
+	 * @return Budget mit geänderter Grenze und sonst gleichen Grenzen
+	 */
+	public ScanBudget withMaxFilesOpened(long maxFilesOpened) {
+		if (maxFilesOpened <= 0) {
+			throw new IllegalArgumentException("maxFilesOpened must be positive.");
+		}
+		return new ScanBudget(metrics, started, reason, timeLimit, maxBytesRead, maxFilesOpened);
+	}
+
+	/**
+	 * @return Zähler der Suche
+	 */
+	public ScanMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Bricht die Suche beim Erreichen der nächsten sicheren Stelle ab. Kann aus
+	 * jedem Thread aufgerufen werden.
+	 */
+	public void cancel() {
+		reason.compareAndSet(null, Reason.CANCELLED);
+	}
+
+	/**
+	 * Prüft das Budget. Einmal erschöpft, bleibt es erschöpft.
+	 *
+	 * @return true, wenn die Suche abgebrochen oder eine Grenze überschritten
+	 *         wurde
+	 */
+	public boolean isExhausted() {
+		if (reason.get() != null) {
+			return true;
+		}
+		final Reason exceeded = exceeded();
+		if (exceeded == null) {
+			return false;
+		}
+		reason.compareAndSet(null, exceeded);
+		return true;
+	}
+
+	private Reason exceeded() {
+		if (timeLimit != null && System.nanoTime() - started >= timeLimit.toNanos()) {
+			return Reason.TIME;
+		}
+		if (metrics.getBytesRead() > maxBytesRead) {
+			return Reason.BYTES_READ;
+		}
+		if (metrics.getFilesOpened() > maxFilesOpened) {
+			return Reason.FILES_OPENED;
+		}
+		return null;
+	}
+
+	/**
+	 * @return Grund der Erschöpfung oder leer, solange das Budget bei der
+	 *         letzten Prüfung nicht erschöpft war
+	 */
+	public Optional<Reason> getReason() {
+		return Optional.ofNullable(reason.get());
+	}
+}
@@ -0,0 +1,593 @@
+package de.b0n.dir.processor;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Sicherungspunkte einer lang laufenden Dublettensuche, aus denen eine
+ * abgebrochene Suche fortgesetzt werden kann. Festgehalten werden jedes
+ * vollständig gelesene Verzeichnis mit seinen aufgenommenen Dateien und den
+ * zu durchsuchenden Unterverzeichnissen sowie jede vollständig verglichene
+ * Kandidatengruppe mit ihren Dublettengruppen.
+ *
+ * Beim Fortsetzen liest der DuplicateLengthFinder festgehaltene Verzeichnisse
+ * nicht erneut, sondern übernimmt ihre Dateien in den SizeIndex und ermittelt
+ * für die Unterverzeichnisse nur deren fileKey zur Erkennung von Zyklen. Die
+ * noch nicht festgehaltenen Unterverzeichnisse bilden die Front, an der das
+ * Durchsuchen weitergeht. Der ScanExecutor vergleicht eine Kandidatengruppe
+ * nicht erneut, wenn sie aus denselben Pfaden besteht wie eine festgehaltene,
+ * sondern liefert deren Ergebnis.
+ *
+ * Zu jedem Verzeichnis und jeder Datei werden Größe und Änderungszeit
+ * festgehalten und vor dem Übernehmen erneut gelesen. Weicht eine davon ab,
+ * wird der Eintrag verworfen und das Verzeichnis erneut gelesen oder die
+ * Gruppe erneut verglichen. Die WalkOptions der Suche stehen im Kopf des Logs,
+ * ein Log mit anderen WalkOptions wird wie eines mit anderen
+ * Startverzeichnissen abgelehnt.
+ *
+ * Die Einträge werden wie beim HashCache als binäres {@link AppendLog} nur
+ * angehängt und spätestens nach dem eingestellten Intervall auf die Platte
+ * geschrieben, auch wenn danach keine Einträge mehr folgen. Ein durch einen
+ * Abbruch unvollständiger letzter Eintrag wird beim Öffnen verworfen, ein Log
+ * mit deutlich mehr Einträgen als gültigen wird dabei verdichtet.
+ */
+public final class ScanCheckpoint implements Closeable {
+	/**
+	 * Standardintervall, nach dem angehängte Einträge spätestens geschrieben
+	 * werden
+	 */
+	public static final Duration DEFAULT_INTERVAL = Duration.ofSeconds(30);
+
+	private static final int MAGIC = 0x44464350;
+	private static final int VERSION = 3;
+	private static final int DIRECTORY = 1;
+	private static final int RESOLVED = 2;
+	private static final int NO_IDENTITY = 0xff;
+
+	/**
+	 * Aufgenommene Datei eines festgehaltenen Verzeichnisses.
+	 *
+	 * @param name
+	 *            Dateiname innerhalb des Verzeichnisses
+	 * @param size
+	 *            Dateigröße
+	 * @param modified
+	 *            Änderungszeit in Nanosekunden
+	 * @param device
+	 *            Gerätenummer der Datei oder {@link SizeIndex#NO_DEVICE}
+	 * @param inode
+	 *            Inode der Datei auf dem Gerät
+	 */
+	record WalkedFile(String name, long size, long modified, long device, long inode) {}
+
+	/**
+	 * Festgehaltenes Verzeichnis.
+	 *
+	 * @param modified
+	 *            Änderungszeit des Verzeichnisses in Nanosekunden
+	 * @param files
+	 *            Aufgenommene Dateien
+	 * @param subdirectories
+	 *            Namen der zu durchsuchenden Unterverzeichnisse
+	 */
+	record WalkedDirectory(long modified, List<WalkedFile> files, List<String> subdirectories) {}
+
+	/**
+	 * Datei einer Kandidatengruppe mit Größe und Änderungszeit beim Vergleich.
+	 *
+	 * @param path
+	 *            Absoluter Pfad der Datei
+	 * @param size
+	 *            Dateigröße
+	 * @param modified
+	 *            Änderungszeit in Nanosekunden
+	 */
+	record Member(String path, long size, long modified) {}
+
+	private record Resolved(List<Member> members, List<DuplicateGroup> groups) {}
+
+	private final Path file;
+	private final AppendLog log;
+	private final String root;
+	private final String options;
+	private final long interval;
+	private final Map<String, WalkedDirectory> directories = new ConcurrentHashMap<>();
+	private final Map<ContentHash, Resolved> resolved = new ConcurrentHashMap<>();
+	private ScheduledExecutorService flusher;
+	private long flushed = System.nanoTime();
+
+	private ScanCheckpoint(Path log, String root, WalkOptions options, Duration interval) {
+		this.file = log;
+		this.log = new AppendLog(log, MAGIC, VERSION, "scan checkpoint");
+		this.root = root;
+		this.options = options.toString();
+		this.interval = interval.toNanos();
+	}
+
+	/**
+	 * Öffnet die Sicherungspunkte in der übergebenen Datei oder legt sie neu
+	 * an, mit dem Standardintervall.
+	 *
+	 * @param log
+	 *            Datei der Sicherungspunkte
+	 * @param root
+	 *            Startverzeichnis der Suche
+	 * @return Geöffnete Sicherungspunkte
+	 * @throws IOException
+	 *             Wenn die Datei nicht gelesen oder geschrieben werden kann
+	 *             oder zu einem anderen Startverzeichnis gehört
+	 */
+	public static ScanCheckpoint open(Path log, Path root) throws IOException {
+		return open(log, root, DEFAULT_INTERVAL);
+	}
+
+	/**
+	 * Öffnet die Sicherungspunkte in der übergebenen Datei oder legt sie neu
+	 * an.
+	 *
+	 * @param log
+	 *            Datei der Sicherungspunkte
+	 * @param root
+	 *            Startverzeichnis der Suche
+	 * @param interval
+	 *            Zeit, nach der angehängte Einträge spätestens geschrieben
+	 *            werden
+	 * @return Geöffnete Sicherungspunkte
+	 * @throws IOException
+	 *             Wenn die Datei nicht gelesen oder geschrieben werden kann
+	 *             oder zu einem anderen Startverzeichnis gehört
+	 */
+	public static ScanCheckpoint open(Path log, Path root, Duration interval) throws IOException {
+		if (root == null) {
+			throw new IllegalArgumentException("root may not be null.");
+		}
+		return open(log, List.of(root), interval);
+	}
+
+	/**
+	 * Öffnet die Sicherungspunkte einer Suche über mehrere Startverzeichnisse
+	 * oder legt sie neu an, mit dem Standardintervall.
+	 *
+	 * @param log
+	 *            Datei der Sicherungspunkte
+	 * @param roots
+	 *            Startverzeichnisse der Suche in der Reihenfolge der Suche
+	 * @return Geöffnete Sicherungspunkte
+	 * @throws IOException
+	 *             Wenn die Datei nicht gelesen oder geschrieben werden kann
+	 *             oder zu anderen Startverzeichnissen gehört
+	 */
+	public static ScanCheckpoint open(Path log, Collection<Path> roots) throws IOException {
+		return open(log, roots, DEFAULT_INTERVAL);
+	}
+
+	/**
+	 * Öffnet die Sicherungspunkte einer Suche über mehrere Startverzeichnisse
+	 * oder legt sie neu an.
+	 *
+	 * @param log
+	 *            Datei der Sicherungspunkte
+	 * @param roots
+	 *            Startverzeichnisse der Suche in der Reihenfolge der Suche
+	 * @param interval
+	 *            Zeit, nach der angehängte Einträge spätestens geschrieben
+	 *            werden
+	 * @return Geöffnete Sicherungspunkte
+	 * @throws IOException
+	 *             Wenn die Datei nicht gelesen oder geschrieben werden kann
+	 *             oder zu anderen Startverzeichnissen gehört
+	 */
+	public static ScanCheckpoint open(Path log, Collection<Path> roots, Duration interval) throws IOException {
+		return open(log, roots, WalkOptions.DEFAULT, interval);
+	}
+
+	/**
+	 * Öffnet die Sicherungspunkte einer Suche über mehrere Startverzeichnisse
+	 * mit den übergebenen WalkOptions oder legt sie neu an, mit dem
+	 * Standardintervall.
+	 *
+	 * @param log
+	 *            Datei der Sicherungspunkte
+	 * @param roots
+	 *            Startverzeichnisse der Suche in der Reihenfolge der Suche
+	 * @param options
+	 *            Einstellungen für das Durchsuchen
+	 * @return Geöffnete Sicherungspunkte
+	 * @throws IOException
+	 *             Wenn die Datei nicht gelesen oder geschrieben werden kann
+	 *             oder zu anderen Startverzeichnissen oder WalkOptions gehört
+	 */
+	public static ScanCheckpoint open(Path log, Collection<Path> roots, WalkOptions options) throws IOException {
+		return open(log, roots, options, DEFAULT_INTERVAL);
+	}
+
+	/**
+	 * Öffnet die Sicherungspunkte einer Suche über mehrere Startverzeichnisse
+	 * mit den übergebenen WalkOptions oder legt sie neu an.
+	 *
+	 * @param log
+	 *            Datei der Sicherungspunkte
+	 * @param roots
+	 *            Startverzeichnisse der Suche in der Reihenfolge der Suche
+	 * @param options
+	 *            Einstellungen für das Durchsuchen
+	 * @param interval
+	 *            Zeit, nach der angehängte Einträge spätestens geschrieben
+	 *            werden
+	 * @return Geöffnete Sicherungspunkte
+	 * @throws IOException
+	 *             Wenn die Datei nicht gelesen oder geschrieben werden kann
+	 *             oder zu anderen Startverzeichnissen oder WalkOptions gehört
+	 */
+	public static ScanCheckpoint open(Path log, Collection<Path> roots, WalkOptions options, Duration interval)
+			throws IOException {
+		if (log == null) {
+			throw new IllegalArgumentException("log may not be null.");
+		}
+		if (roots == null || roots.isEmpty()) {
+			throw new IllegalArgumentException("roots may not be null or empty.");
+		}
+		if (roots.stream().anyMatch(Objects::isNull)) {
+			throw new IllegalArgumentException("root may not be null.");
+		}
+		if (options == null) {
+			throw new IllegalArgumentException("options may not be null.");
+		}
+		if (interval == null || interval.isNegative()) {
+			throw new IllegalArgumentException("interval may not be null or negative.");
+		}
+		final String root = roots.stream()
+				.map(path -> path.toAbsolutePath().toString())
+				.collect(Collectors.joining(File.pathSeparator));
+		final ScanCheckpoint checkpoint = new ScanCheckpoint(log, root, options, interval);
+		final long records = checkpoint.load();
+		if (AppendLog.needsRewrite(records, checkpoint.directories.size() + (long) checkpoint.resolved.size())) {
+			checkpoint.rewrite();
+		}
+		checkpoint.log.openForAppend();
+		if (!interval.isZero()) {
+			checkpoint.startFlusher();
+		}
+		return checkpoint;
+	}
+
+	/**
+	 * Schreibt angehängte Einträge auch dann nach dem Intervall, wenn danach
+	 * kein weiterer Eintrag mehr angehängt wird.
+	 */
+	private void startFlusher() {
+		flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "DupFinder checkpoint");
+			thread.setDaemon(true);
+			return thread;
+		});
+		flusher.scheduleWithFixedDelay(() -> {
+			synchronized (this) {
+				if (log.isOpen() && System.nanoTime() - flushed >= interval) {
+					try {
+						flush();
+					} catch (IOException e) {
+						// Einträge fehlen beim Fortsetzen und werden erneut ermittelt
+					}
+				}
+			}
+		}, interval, interval, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Liest das Log ein.
+	 *
+	 * @return Anzahl gelesener Einträge, 0 wenn das Log fehlt, oder -1, wenn
+	 *         es mit einem unvollständigen Eintrag endet und neu geschrieben
+	 *         werden muss
+	 */
+	private long load() throws IOException {
+		return log.load(input -> {
+			final String loggedRoot = input.readUTF();
+			if (!root.equals(loggedRoot)) {
+				throw new IOException("Checkpoint belongs to " + loggedRoot + ": " + file);
+			}
+			final String loggedOptions = input.readUTF();
+			if (!options.equals(loggedOptions)) {
+				throw new IOException("Checkpoint was written with other walk options " + loggedOptions + ": " + file);
+			}
+		}, (type, input) -> {
+			switch (type) {
+			case DIRECTORY -> readDirectory(input);
+			case RESOLVED -> readResolved(input);
+			default -> {
+				return false;
+			}
+			}
+			return true;
+		});
+	}
+
+	private void readDirectory(DataInputStream input) throws IOException {
+		final String directory = input.readUTF();
+		final long modified = input.readLong();
+		final List<WalkedFile> files = new ArrayList<>();
+		for (int i = input.readInt(); i > 0; i--) {
+			files.add(new WalkedFile(input.readUTF(), input.readLong(), input.readLong(), input.readLong(),
+					input.readLong()));
+		}
+		final List<String> subdirectories = new ArrayList<>();
+		for (int i = input.readInt(); i > 0; i--) {
+			subdirectories.add(input.readUTF());
+		}
+		directories.put(directory, new WalkedDirectory(modified, files, subdirectories));
+	}
+
+	private void readResolved(DataInputStream input) throws IOException {
+		final ContentHash candidates = new ContentHash(HashAlgorithm.MURMUR3_128, readBytes(input));
+		final List<Member> members = new ArrayList<>();
+		for (int i = input.readInt(); i > 0; i--) {
+			members.add(new Member(input.readUTF(), input.readLong(), input.readLong()));
+		}
+		final List<DuplicateGroup> groups = new ArrayList<>();
+		for (int i = input.readInt(); i > 0; i--) {
+			final long length = input.readLong();
+			final int ordinal = input.readUnsignedByte();
+			final ContentHash identity;
+			if (ordinal == NO_IDENTITY) {
+				identity = null;
+			} else if (ordinal < HashAlgorithm.values().length) {
+				identity = new ContentHash(HashAlgorithm.values()[ordinal], readBytes(input));
+			} else {
+				throw new EOFException();
+			}
+			final List<File> files = new ArrayList<>();
+			for (int j = input.readInt(); j > 0; j--) {
+				files.add(new File(input.readUTF()));
+			}
+			groups.add(new DuplicateGroup(length, files, identity));
+		}
+		resolved.put(candidates, new Resolved(List.copyOf(members), List.copyOf(groups)));
+	}
+
+	private static byte[] readBytes(DataInputStream input) throws IOException {
+		final byte[] value = new byte[input.readUnsignedByte()];
+		input.readFully(value);
+		return value;
+	}
+
+	private void rewrite() throws IOException {
+		log.rewrite(header -> {
+			header.writeUTF(root);
+			header.writeUTF(options);
+		}, rewritten -> {
+			for (Map.Entry<String, WalkedDirectory> entry : directories.entrySet()) {
+				writeDirectory(rewritten, entry.getKey(), entry.getValue());
+			}
+			for (Map.Entry<ContentHash, Resolved> entry : resolved.entrySet()) {
+				writeResolved(rewritten, entry.getKey(), entry.getValue());
+			}
+		});
+	}
+
+	private static void writeDirectory(DataOutputStream target, String directory, WalkedDirectory walked) throws IOException {
+		target.writeByte(DIRECTORY);
+		target.writeUTF(directory);
+		target.writeLong(walked.modified());
+		target.writeInt(walked.files().size());
+		for (WalkedFile file : walked.files()) {
+			target.writeUTF(file.name());
+			target.writeLong(file.size());
+			target.writeLong(file.modified());
+			target.writeLong(file.device());
+			target.writeLong(file.inode());
+		}
+		target.writeInt(walked.subdirectories().size());
+		for (String subdirectory : walked.subdirectories()) {
+			target.writeUTF(subdirectory);
+		}
+	}
+
+	private static void writeResolved(DataOutputStream target, ContentHash candidates, Resolved entry) throws IOException {
+		target.writeByte(RESOLVED);
+		writeBytes(target, candidates.getValue());
+		target.writeInt(entry.members().size());
+		for (Member member : entry.members()) {
+			target.writeUTF(member.path());
+			target.writeLong(member.size());
+			target.writeLong(member.modified());
+		}
+		target.writeInt(entry.groups().size());
+		for (DuplicateGroup group : entry.groups()) {
+			target.writeLong(group.getLength());
+			if (group.getIdentity().isPresent()) {
+				target.writeByte(group.getIdentity().get().getAlgorithm().ordinal());
+				writeBytes(target, group.getIdentity().get().getValue());
+			} else {
+				target.writeByte(NO_IDENTITY);
+			}
+			target.writeInt(group.getFiles().size());
+			for (File file : group.getFiles()) {
+				target.writeUTF(file.getPath());
+			}
+		}
+	}
+
+	private static void writeBytes(DataOutputStream target, byte[] value) throws IOException {
+		target.writeByte(value.length);
+		target.write(value);
+	}
+
+	/**
+	 * Berechnet den Schlüssel einer Kandidatengruppe aus den nach Pfad
+	 * geordneten Mitgliedern.
+	 */
+	private static ContentHash candidatesOf(List<Member> members) {
+		final ByteArrayOutputStream paths = new ByteArrayOutputStream();
+		for (Member member : members) {
+			paths.writeBytes(member.path().getBytes(StandardCharsets.UTF_8));
+			paths.write(0);
+		}
+		return HashAlgorithm.MURMUR3_128.hash(paths.toByteArray());
+	}
+
+	/**
+	 * Liest Größe und Änderungszeit der Dateien einer Kandidatengruppe.
+	 *
+	 * @param candidates
+	 *            Kandidatengruppe
+	 * @return Nach Pfad geordnete Mitglieder oder leer, wenn eine Datei nicht
+	 *         gelesen werden kann
+	 */
+	static Optional<List<Member>> membersOf(Collection<File> candidates) {
+		final List<Member> members = new ArrayList<>(candidates.size());
+		for (File candidate : candidates) {
+			final String path = candidate.getAbsolutePath();
+			try {
+				final BasicFileAttributes attributes = Files.readAttributes(Path.of(path), BasicFileAttributes.class);
+				members.add(new Member(path, attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS)));
+			} catch (IOException | InvalidPathException e) {
+				return Optional.empty();
+			}
+		}
+		members.sort(Comparator.comparing(Member::path));
+		return Optional.of(List.copyOf(members));
+	}
+
+	/**
+	 * @param directory
+	 *            Absoluter Pfad eines Verzeichnisses
+	 * @return Festgehaltenes Verzeichnis oder null, wenn es noch nicht
+	 *         vollständig gelesen wurde
+	 */
+	WalkedDirectory getDirectory(Path directory) {
+		return directories.get(directory.toString());
+	}
+
+	/**
+	 * Verwirft ein festgehaltenes Verzeichnis, das sich seit dem Festhalten
+	 * verändert hat. Nach dem erneuten Lesen wird es wieder festgehalten.
+	 */
+	void invalidate(Path directory) {
+		directories.remove(directory.toString());
+	}
+
+	/**
+	 * Hält ein vollständig gelesenes Verzeichnis fest.
+	 */
+	void walked(Path directory, long modified, List<WalkedFile> files, List<String> subdirectories) {
+		final WalkedDirectory walked = new WalkedDirectory(modified, List.copyOf(files), List.copyOf(subdirectories));
+		if (directories.putIfAbsent(directory.toString(), walked) == null) {
+			append(target -> writeDirectory(target, directory.toString(), walked));
+		}
+	}
+
+	/**
+	 * Liefert das festgehaltene Ergebnis einer Kandidatengruppe. Weicht Größe
+	 * oder Änderungszeit eines Mitglieds ab, wird es verworfen.
+	 *
+	 * @param members
+	 *            Mitglieder der Kandidatengruppe aus {@link #membersOf(Collection)}
+	 * @return Dublettengruppen der festgehaltenen Kandidatengruppe mit denselben
+	 *         unveränderten Dateien oder leer, wenn sie noch nicht vollständig
+	 *         verglichen wurde
+	 */
+	Optional<List<DuplicateGroup>> getResolved(List<Member> members) {
+		final ContentHash key = candidatesOf(members);
+		final Resolved entry = resolved.get(key);
+		if (entry == null) {
+			return Optional.empty();
+		}
+		if (!entry.members().equals(members)) {
+			resolved.remove(key, entry);
+			return Optional.empty();
+		}
+		return Optional.of(entry.groups());
+	}
+
+	/**
+	 * Hält eine vollständig verglichene Kandidatengruppe fest.
+	 *
+	 * @param members
+	 *            Mitglieder der Kandidatengruppe, gelesen vor dem Vergleich
+	 * @param groups
+	 *            Gefundene Dublettengruppen
+	 */
+	void resolved(List<Member> members, List<DuplicateGroup> groups) {
+		final ContentHash key = candidatesOf(members);
+		final Resolved entry = new Resolved(List.copyOf(members), List.copyOf(groups));
+		if (resolved.putIfAbsent(key, entry) == null) {
+			append(target -> writeResolved(target, key, entry));
+		}
+	}
+
+	/**
+	 * Hängt einen Eintrag an das Log an. Der Eintrag wird zunächst vollständig
+	 * serialisiert, damit ein nicht darstellbarer Pfad das Log nicht
+	 * beschädigt. Schreibfehler beenden die Suche nicht, der Eintrag wird dann
+	 * beim Fortsetzen erneut ermittelt.
+	 */
+	private void append(AppendLog.Writer entry) {
+		final byte[] record;
+		try {
+			record = AppendLog.serialize(entry);
+		} catch (IOException e) {
+			return;
+		}
+		synchronized (this) {
+			try {
+				log.append(record);
+				if (System.nanoTime() - flushed >= interval) {
+					flush();
+				}
+			} catch (IOException e) {
+				// Eintrag fehlt beim Fortsetzen und wird erneut ermittelt
+			}
+		}
+	}
+
+	/**
+	 * @return Anzahl der festgehaltenen Verzeichnisse
+	 */
+	public int getDirectoryCount() {
+		return directories.size();
+	}
+
+	/**
+	 * @return Anzahl der festgehaltenen Kandidatengruppen
+	 */
+	public int getResolvedCount() {
+		return resolved.size();
+	}
+
+	/**
+	 * Schreibt alle angehängten Einträge auf die Platte.
+	 *
+	 * @throws IOException
+	 *             Wenn die Datei nicht geschrieben werden kann
+	 */
+	public synchronized void flush() throws IOException {
+		if (log.isOpen()) {
+			log.flush();
+			flushed = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Schreibt alle angehängten Einträge und schließt das Log.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (flusher != null) {
+			flusher.shutdownNow();
+			flusher = null;
+		}
+		log.close();
+	}
+}
@@ -0,0 +1,114 @@
+package de.b0n.dir.processor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR-Ereignisse der ScanMetrics. Jede Phase wird als Ereignis mit Dauer
+ * aufgezeichnet, der Stand aller laufenden Suchen wird periodisch als eigenes
+ * Ereignis veröffentlicht. Ohne laufende Aufzeichnung entstehen keine Kosten
+ * über das Erzeugen der Ereignisobjekte hinaus.
+ */
+final class ScanEvents {
+	/**
+	 * Laufende Suchen. Schwach referenziert, damit eine nicht beendete Suche
+	 * nicht dauerhaft gehalten wird.
+	 */
+	private static final Set<ScanMetrics> ACTIVE = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+	static {
+		FlightRecorder.addPeriodicEvent(ProgressEvent.class, ScanEvents::emitProgress);
+	}
+
+	@Name("de.b0n.dir.ScanPhase")
+	@Label("Scan Phase")
+	@Category("DupFinder")
+	@StackTrace(false)
+	static final class PhaseEvent extends Event {
+		@Label("Phase")
+		String phase;
+		@Label("Directories Visited")
+		long directories;
+		@Label("Files Visited")
+		long files;
+		@Label("Bytes Read")
+		@DataAmount
+		long bytesRead;
+		@Label("Groups Resolved")
+		long groups;
+	}
+
+	@Name("de.b0n.dir.ScanProgress")
+	@Label("Scan Progress")
+	@Category("DupFinder")
+	@Period("1 s")
+	@StackTrace(false)
+	static final class ProgressEvent extends Event {
+		@Label("Phase")
+		String phase;
+		@Label("Directories Visited")
+		long directories;
+		@Label("Files Visited")
+		long files;
+		@Label("Bytes Read")
+		@DataAmount
+		long bytesRead;
+		@Label("Files Opened")
+		long filesOpened;
+		@Label("Open Files")
+		long openFiles;
+		@Label("Comparison Rounds")
+		long rounds;
+		@Label("Groups Resolved")
+		long groupsResolved;
+		@Label("Groups Interrupted")
+		long groupsInterrupted;
+		@Label("Groups Pending")
+		long groupsPending;
+	}
+
+	private ScanEvents() {
+	}
+
+	static void register(ScanMetrics metrics) {
+		ACTIVE.add(metrics);
+	}
+
+	static void unregister(ScanMetrics metrics) {
+		ACTIVE.remove(metrics);
+	}
+
+	private static void emitProgress() {
+		final List<ScanMetrics> active;
+		synchronized (ACTIVE) {
+			active = new ArrayList<>(ACTIVE);
+		}
+		for (ScanMetrics metrics : active) {
+			final ScanMetrics.Snapshot snapshot = metrics.snapshot();
+			final ProgressEvent event = new ProgressEvent();
+			event.phase = snapshot.phase().name();
+			event.directories = snapshot.directoriesVisited();
+			event.files = snapshot.filesVisited();
+			event.bytesRead = snapshot.bytesRead();
+			event.filesOpened = snapshot.filesOpened();
+			event.openFiles = snapshot.openFiles();
+			event.rounds = snapshot.comparisonRounds();
+			event.groupsResolved = snapshot.groupsResolved();
+			event.groupsInterrupted = snapshot.groupsInterrupted();
+			event.groupsPending = snapshot.groupsPending();
+			event.commit();
+		}
+	}
+}
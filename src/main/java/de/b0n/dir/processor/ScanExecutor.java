@@ -0,0 +1,512 @@
+package de.b0n.dir.processor;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Eigene Threads für die beiden Phasen einer Dublettensuche, getrennt vom
+ * gemeinsamen ForkJoinPool. Die parallelen Streams der Finder laufen innerhalb
+ * des Pools der jeweiligen Phase, sodass deren Parallelität einstellbar ist
+ * und blockierendes Lesen keine fremden Aufgaben im gemeinsamen Pool aufhält.
+ *
+ * Im Inhaltsvergleich holt sich jeder Thread die jeweils nächste
+ * Kandidatengruppe aus einem SizeIndex oder einem geordneten Stream. Aus dem
+ * SizeIndex werden die Gruppen nach Größe und Anzahl aus dem Index geordnet,
+ * sodass die Gruppen mit dem größten möglichen Platzgewinn zuerst bearbeitet
+ * werden und die Dateien einer Gruppe erst bei ihrem Beginn entstehen.
+ *
+ * Beide Phasen füllen die ScanMetrics des Executors, deren Stand während der
+ * Suche gelesen werden kann. Für Zähler beim Lesen der Dateien muss die
+ * ContentStrategy dieselben ScanMetrics erhalten.
+ *
+ * Mit einem ScanBudget prüft der Executor das Budget vor jedem Verzeichnis und
+ * vor jeder Kandidatengruppe. Nicht mehr begonnene Gruppen werden dem
+ * Empfänger als nicht entschieden gemeldet. Um auch innerhalb einer Gruppe
+ * abzubrechen, muss die ContentStrategy dasselbe Budget erhalten.
+ *
+ * Mit einem ScanCheckpoint werden gelesene Verzeichnisse und vollständig
+ * verglichene Kandidatengruppen festgehalten, sodass eine abgebrochene Suche
+ * ohne erneutes Lesen fortgesetzt werden kann.
+ */
+public final class ScanExecutor implements AutoCloseable {
+	private final ForkJoinPool walkPool;
+	private final ForkJoinPool comparePool;
+	private final int compareThreads;
+	private final ScanMetrics metrics;
+	private final ScanBudget budget;
+
+	/**
+	 * Erzeugt einen Executor mit je einem Thread pro Prozessor für beide
+	 * Phasen.
+	 */
+	public ScanExecutor() {
+		this(Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Erzeugt einen Executor mit der übergebenen Anzahl Threads je Phase.
+	 *
+	 * @param walkThreads
+	 *            Threads für das Durchsuchen der Verzeichnisse
+	 * @param compareThreads
+	 *            Threads für den Inhaltsvergleich
+	 */
+	public ScanExecutor(int walkThreads, int compareThreads) {
+		this(walkThreads, compareThreads, new ScanMetrics());
+	}
+
+	/**
+	 * Erzeugt einen Executor mit der übergebenen Anzahl Threads je Phase, der
+	 * den Fortschritt in den übergebenen Zählern erfasst.
+	 *
+	 * @param walkThreads
+	 *            Threads für das Durchsuchen der Verzeichnisse
+	 * @param compareThreads
+	 *            Threads für den Inhaltsvergleich
+	 * @param metrics
+	 *            Zähler der Suche
+	 */
+	public ScanExecutor(int walkThreads, int compareThreads, ScanMetrics metrics) {
+		this(walkThreads, compareThreads, metrics, null);
+	}
+
+	/**
+	 * Erzeugt einen Executor mit der übergebenen Anzahl Threads je Phase, der
+	 * das übergebene Budget prüft und den Fortschritt in dessen Zählern
+	 * erfasst.
+	 *
+	 * @param walkThreads
+	 *            Threads für das Durchsuchen der Verzeichnisse
+	 * @param compareThreads
+	 *            Threads für den Inhaltsvergleich
+	 * @param budget
+	 *            Budget der Suche
+	 */
+	public ScanExecutor(int walkThreads, int compareThreads, ScanBudget budget) {
+		this(walkThreads, compareThreads, metricsOf(budget), budget);
+	}
+
+	private static ScanMetrics metricsOf(ScanBudget budget) {
+		if (budget == null) {
+			throw new IllegalArgumentException("budget may not be null.");
+		}
+		return budget.getMetrics();
+	}
+
+	private ScanExecutor(int walkThreads, int compareThreads, ScanMetrics metrics, ScanBudget budget) {
+		if (walkThreads < 1) {
+			throw new IllegalArgumentException("walkThreads must be positive.");
+		}
+		if (compareThreads < 1) {
+			throw new IllegalArgumentException("compareThreads must be positive.");
+		}
+		if (metrics == null) {
+			throw new IllegalArgumentException("metrics may not be null.");
+		}
+		this.walkPool = new ForkJoinPool(walkThreads);
+		this.comparePool = new ForkJoinPool(compareThreads);
+		this.compareThreads = compareThreads;
+		this.metrics = metrics;
+		this.budget = budget;
+	}
+
+	/**
+	 * @return Zähler der Suche
+	 */
+	public ScanMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Durchsucht ein Verzeichnis mit den Threads der ersten Phase.
+	 *
+	 * @param directory
+	 *            Zu durchsuchendes Verzeichnis
+	 * @param callback
+	 *            Ruft den Callback bei jedem neu betretenen Verzeichnis und
+	 *            jedem übersprungenen Teilbaum auf
+	 * @param options
+	 *            Einstellungen für das Durchsuchen
+	 * @return Index der gefundenen Dateien nach Dateigröße
+	 * @see DuplicateLengthFinder#getIndex(Path, DuplicateLengthFinderCallback,
+	 *      WalkOptions)
+	 */
+	public SizeIndex getIndex(Path directory, DuplicateLengthFinderCallback callback, WalkOptions options) {
+		if (directory == null) {
+			throw new IllegalArgumentException("directory may not be null.");
+		}
+		return index(List.of(directory), callback, options, null);
+	}
+
+	/**
+	 * Durchsucht mehrere Verzeichnisse nacheinander mit den Threads der ersten
+	 * Phase in einen gemeinsamen Index. Über mehrere Startverzeichnisse
+	 * erreichbare Verzeichnisse werden nur einmal durchsucht.
+	 *
+	 * @param directories
+	 *            Zu durchsuchende Verzeichnisse, mindestens eines
+	 * @param callback
+	 *            Ruft den Callback bei jedem neu betretenen Verzeichnis und
+	 *            jedem übersprungenen Teilbaum auf
+	 * @param options
+	 *            Einstellungen für das Durchsuchen
+	 * @return Index der gefundenen Dateien aller Verzeichnisse nach Dateigröße
+	 * @see DuplicateLengthFinder#getIndex(Collection,
+	 *      DuplicateLengthFinderCallback, WalkOptions)
+	 */
+	public SizeIndex getIndex(Collection<Path> directories, DuplicateLengthFinderCallback callback, WalkOptions options) {
+		return index(directories, callback, options, null);
+	}
+
+	/**
+	 * Durchsucht ein Verzeichnis mit den Threads der ersten Phase und hält
+	 * jedes vollständig gelesene Verzeichnis in den Sicherungspunkten fest.
+	 * Bereits festgehaltene Verzeichnisse werden nicht erneut gelesen.
+	 *
+	 * @param directory
+	 *            Zu durchsuchendes Verzeichnis
+	 * @param callback
+	 *            Ruft den Callback bei jedem neu betretenen Verzeichnis und
+	 *            jedem übersprungenen Teilbaum auf
+	 * @param options
+	 *            Einstellungen für das Durchsuchen, dieselben wie beim
+	 *            Festhalten
+	 * @param checkpoint
+	 *            Sicherungspunkte der Suche
+	 * @return Index der gefundenen Dateien nach Dateigröße
+	 */
+	public SizeIndex getIndex(Path directory, DuplicateLengthFinderCallback callback, WalkOptions options,
+			ScanCheckpoint checkpoint) {
+		if (directory == null) {
+			throw new IllegalArgumentException("directory may not be null.");
+		}
+		return getIndex(List.of(directory), callback, options, checkpoint);
+	}
+
+	/**
+	 * Durchsucht mehrere Verzeichnisse nacheinander mit den Threads der ersten
+	 * Phase in einen gemeinsamen Index und hält jedes vollständig gelesene
+	 * Verzeichnis in den Sicherungspunkten fest.
+	 *
+	 * @param directories
+	 *            Zu durchsuchende Verzeichnisse, mindestens eines
+	 * @param callback
+	 *            Ruft den Callback bei jedem neu betretenen Verzeichnis und
+	 *            jedem übersprungenen Teilbaum auf
+	 * @param options
+	 *            Einstellungen für das Durchsuchen, dieselben wie beim
+	 *            Festhalten
+	 * @param checkpoint
+	 *            Sicherungspunkte der Suche
+	 * @return Index der gefundenen Dateien aller Verzeichnisse nach Dateigröße
+	 */
+	public SizeIndex getIndex(Collection<Path> directories, DuplicateLengthFinderCallback callback, WalkOptions options,
+			ScanCheckpoint checkpoint) {
+		if (checkpoint == null) {
+			throw new IllegalArgumentException("checkpoint may not be null.");
+		}
+		return index(directories, callback, options, checkpoint);
+	}
+
+	private SizeIndex index(Collection<Path> directories, DuplicateLengthFinderCallback callback, WalkOptions options,
+			ScanCheckpoint checkpoint) {
+		metrics.start(ScanMetrics.Phase.WALK);
+		try {
+			return walkPool.invoke(ForkJoinTask.adapt(
+					() -> DuplicateLengthFinder.getIndex(directories, callback, options, metrics, budget, checkpoint)));
+		} finally {
+			metrics.finish(ScanMetrics.Phase.WALK);
+		}
+	}
+
+	/**
+	 * Sucht mit den Threads der zweiten Phase in allen Kandidatengruppen nach
+	 * inhaltlichen Dubletten. Jede Gruppe wird mit dem übergebenen Verfahren
+	 * verglichen, dem etwa per {@link PartialHashContentStrategy} eine
+	 * Vorstufe vorangestellt werden kann. Die Gruppen werden in der
+	 * Reihenfolge des Streams begonnen. Der Stream wird vorab vollständig
+	 * gelesen, damit die Gesamtgröße aller Gruppen für die Schätzung der
+	 * Restdauer bekannt ist; für einen SizeIndex vermeidet das
+	 * {@link #publish(SizeIndex, ContentStrategy, DuplicateGroupSink)}. Ist
+	 * das Budget des Executors erschöpft, werden die
+	 * Dateien aller nicht mehr begonnenen Gruppen dem Empfänger als nicht
+	 * entschieden gemeldet.
+	 *
+	 * @param candidates
+	 *            Gruppen von Dateien gleicher Größe in der gewünschten
+	 *            Reihenfolge
+	 * @param strategy
+	 *            Verfahren zur Feststellung der inhaltlichen Gleichheit
+	 * @param sink
+	 *            Empfänger der bestätigten Dublettengruppen
+	 * @return true, wenn alle Kandidaten verarbeitet wurden, false bei
+	 *         vorzeitigem Abbruch durch den Empfänger oder das Budget
+	 * @see DuplicateContentFinder#publish(Stream, ContentStrategy,
+	 *      DuplicateGroupSink)
+	 */
+	public boolean publish(Stream<? extends Collection<File>> candidates, ContentStrategy strategy,
+			DuplicateGroupSink sink) {
+		return publish(candidates, strategy, sink, null);
+	}
+
+	/**
+	 * Sucht wie {@link #publish(Stream, ContentStrategy, DuplicateGroupSink)}
+	 * nach inhaltlichen Dubletten und hält jede vollständig verglichene
+	 * Kandidatengruppe in den Sicherungspunkten fest. Für bereits festgehaltene
+	 * Kandidatengruppen mit denselben Pfaden werden die gespeicherten
+	 * Dublettengruppen ohne erneutes Lesen an den Empfänger übergeben.
+	 *
+	 * @param candidates
+	 *            Gruppen von Dateien gleicher Größe in der gewünschten
+	 *            Reihenfolge
+	 * @param strategy
+	 *            Verfahren zur Feststellung der inhaltlichen Gleichheit
+	 * @param sink
+	 *            Empfänger der bestätigten Dublettengruppen
+	 * @param checkpoint
+	 *            Sicherungspunkte der Suche
+	 * @return true, wenn alle Kandidaten verarbeitet wurden, false bei
+	 *         vorzeitigem Abbruch durch den Empfänger oder das Budget
+	 */
+	public boolean publish(Stream<? extends Collection<File>> candidates, ContentStrategy strategy,
+			DuplicateGroupSink sink, ScanCheckpoint checkpoint) {
+		if (candidates == null) {
+			throw new IllegalArgumentException("candidates may not be null.");
+		}
+		final List<? extends Collection<File>> groups = candidates.sequential().toList();
+		return publish(groups, ScanExecutor::sizeOf, Function.identity(), strategy, sink, checkpoint);
+	}
+
+	/**
+	 * Sucht mit den Threads der zweiten Phase in allen Gruppen gleich großer
+	 * Dateien des Index nach inhaltlichen Dubletten, die Gruppen mit dem
+	 * größten möglichen Platzgewinn zuerst. Reihenfolge und Gesamtgröße
+	 * ergeben sich aus Größe und Anzahl im Index, ohne Dateien zu lesen. Die
+	 * Dateien einer Gruppe werden erst erzeugt, wenn ein Thread sie beginnt.
+	 *
+	 * @param index
+	 *            Index der gefundenen Dateien
+	 * @param strategy
+	 *            Verfahren zur Feststellung der inhaltlichen Gleichheit
+	 * @param sink
+	 *            Empfänger der bestätigten Dublettengruppen
+	 * @return true, wenn alle Kandidaten verarbeitet wurden, false bei
+	 *         vorzeitigem Abbruch durch den Empfänger oder das Budget
+	 */
+	public boolean publish(SizeIndex index, ContentStrategy strategy, DuplicateGroupSink sink) {
+		return publish(index, strategy, sink, null);
+	}
+
+	/**
+	 * Sucht wie {@link #publish(SizeIndex, ContentStrategy, DuplicateGroupSink)}
+	 * nach inhaltlichen Dubletten und hält jede vollständig verglichene
+	 * Kandidatengruppe in den Sicherungspunkten fest.
+	 *
+	 * @param index
+	 *            Index der gefundenen Dateien
+	 * @param strategy
+	 *            Verfahren zur Feststellung der inhaltlichen Gleichheit
+	 * @param sink
+	 *            Empfänger der bestätigten Dublettengruppen
+	 * @param checkpoint
+	 *            Sicherungspunkte der Suche oder null
+	 * @return true, wenn alle Kandidaten verarbeitet wurden, false bei
+	 *         vorzeitigem Abbruch durch den Empfänger oder das Budget
+	 */
+	public boolean publish(SizeIndex index, ContentStrategy strategy, DuplicateGroupSink sink,
+			ScanCheckpoint checkpoint) {
+		if (index == null) {
+			throw new IllegalArgumentException("index may not be null.");
+		}
+		return publish(index.getGroupsByWaste(), SizeIndex.Group::bytes, index::filesOf, strategy, sink, checkpoint);
+	}
+
+	/**
+	 * Verteilt die Gruppen in ihrer Reihenfolge auf die Threads der zweiten
+	 * Phase. Die Dateien einer Gruppe werden erst beim Beginn ihres Vergleichs
+	 * oder beim Melden als nicht entschieden abgerufen.
+	 */
+	private <T> boolean publish(List<T> groups, ToLongFunction<T> bytes, Function<T, ? extends Collection<File>> files,
+			ContentStrategy strategy, DuplicateGroupSink sink, ScanCheckpoint checkpoint) {
+		if (strategy == null) {
+			throw new IllegalArgumentException("strategy may not be null.");
+		}
+		if (sink == null) {
+			throw new IllegalArgumentException("sink may not be null.");
+		}
+
+		final long[] sizes = groups.stream().mapToLong(bytes).toArray();
+		Arrays.stream(sizes).forEach(metrics::groupQueued);
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicBoolean running = new AtomicBoolean(true);
+		metrics.start(ScanMetrics.Phase.COMPARE);
+		final List<ForkJoinTask<?>> workers = IntStream.range(0, compareThreads)
+				.<ForkJoinTask<?>>mapToObj(worker -> comparePool.submit(() -> {
+					while (running.get()) {
+						if (budget != null && budget.isExhausted()) {
+							running.set(false);
+							return;
+						}
+						final int current = next.getAndIncrement();
+						if (current >= groups.size()) {
+							return;
+						}
+						final Collection<File> group = files.apply(groups.get(current));
+						final InterruptionSink tracking = new InterruptionSink(sink);
+						if (!group.isEmpty() && !compare(group, strategy, tracking, checkpoint)) {
+							running.set(false);
+						}
+						if (tracking.interrupted) {
+							metrics.groupInterrupted();
+						} else {
+							metrics.groupResolved(sizes[current]);
+						}
+					}
+				}))
+				.toList();
+		try {
+			workers.forEach(ForkJoinTask::join);
+		} finally {
+			metrics.finish(ScanMetrics.Phase.COMPARE);
+		}
+		if (budget != null && budget.isExhausted()) {
+			for (int current = next.get(); current < groups.size(); current++) {
+				files.apply(groups.get(current)).forEach(sink::unresolvedFile);
+			}
+			return false;
+		}
+		return running.get();
+	}
+
+	private static long sizeOf(Collection<File> group) {
+		return group.isEmpty() ? 0L : group.size() * group.iterator().next().length();
+	}
+
+	/**
+	 * Vergleicht eine Kandidatengruppe oder übernimmt ihr Ergebnis aus den
+	 * Sicherungspunkten. Größe und Änderungszeit der Dateien werden vor dem
+	 * Vergleich gelesen, ein abweichendes Ergebnis wird nicht übernommen.
+	 * Festgehalten wird sie nur, wenn alle ihre Dateien gelesen und entschieden
+	 * wurden und der Empfänger die Suche nicht beendet hat.
+	 */
+	private static boolean compare(Collection<File> group, ContentStrategy strategy, DuplicateGroupSink sink,
+			ScanCheckpoint checkpoint) {
+		if (checkpoint == null) {
+			return compare(group, strategy, sink);
+		}
+		final Optional<List<ScanCheckpoint.Member>> members = ScanCheckpoint.membersOf(group);
+		if (members.isEmpty()) {
+			return compare(group, strategy, sink);
+		}
+		final Optional<List<DuplicateGroup>> resolved = checkpoint.getResolved(members.get());
+		if (resolved.isPresent()) {
+			return resolved.get().stream().allMatch(sink::accept);
+		}
+		final RecordingSink recording = new RecordingSink(sink);
+		final boolean complete = compare(group, strategy, recording);
+		if (complete && !recording.incomplete) {
+			checkpoint.resolved(members.get(), List.copyOf(recording.groups));
+		}
+		return complete;
+	}
+
+	private static boolean compare(Collection<File> group, ContentStrategy strategy, DuplicateGroupSink sink) {
+		return DuplicateContentFinder.getGroups(group, sink, strategy).allMatch(sink::accept);
+	}
+
+	/**
+	 * Reicht alles an den eigentlichen Empfänger weiter und merkt sich die
+	 * Dublettengruppen einer Kandidatengruppe sowie, ob Dateien nicht gelesen
+	 * oder nicht entschieden wurden.
+	 */
+	private static final class RecordingSink implements DuplicateGroupSink {
+		private final DuplicateGroupSink sink;
+		private final Queue<DuplicateGroup> groups = new ConcurrentLinkedQueue<>();
+		private volatile boolean incomplete;
+
+		private RecordingSink(DuplicateGroupSink sink) {
+			this.sink = sink;
+		}
+
+		@Override
+		public boolean accept(DuplicateGroup group) {
+			groups.add(group);
+			return sink.accept(group);
+		}
+
+		@Override
+		public void failedFile(File failedFile) {
+			incomplete = true;
+			sink.failedFile(failedFile);
+		}
+
+		@Override
+		public void uniqueFile(File uniqueFile) {
+			sink.uniqueFile(uniqueFile);
+		}
+
+		@Override
+		public void unresolvedFile(File unresolvedFile) {
+			incomplete = true;
+			sink.unresolvedFile(unresolvedFile);
+		}
+	}
+
+	/**
+	 * Reicht alles an den eigentlichen Empfänger weiter und merkt sich, ob
+	 * Dateien einer Kandidatengruppe wegen des Budgets oder eines Abbruchs
+	 * nicht entschieden wurden.
+	 */
+	private static final class InterruptionSink implements DuplicateGroupSink {
+		private final DuplicateGroupSink sink;
+		private volatile boolean interrupted;
+
+		private InterruptionSink(DuplicateGroupSink sink) {
+			this.sink = sink;
+		}
+
+		@Override
+		public boolean accept(DuplicateGroup group) {
+			return sink.accept(group);
+		}
+
+		@Override
+		public void failedFile(File failedFile) {
+			sink.failedFile(failedFile);
+		}
+
+		@Override
+		public void uniqueFile(File uniqueFile) {
+			sink.uniqueFile(uniqueFile);
+		}
+
+		@Override
+		public void unresolvedFile(File unresolvedFile) {
+			interrupted = true;
+			sink.unresolvedFile(unresolvedFile);
+		}
+	}
+
+	/**
+	 * Beendet die Threads beider Phasen.
+	 */
+	@Override
+	public void close() {
+		walkPool.shutdown();
+		comparePool.shutdown();
+	}
+}
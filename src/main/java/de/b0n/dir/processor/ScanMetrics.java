@@ -0,0 +1,252 @@
+package de.b0n.dir.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Zähler einer Dublettensuche, die von DuplicateLengthFinder, den
+ * ContentStrategies und dem ScanExecutor gefüllt werden. Alle Werte können
+ * während der laufenden Suche per {@link #snapshot()} gelesen werden, etwa um
+ * zu erkennen, ob eine lange Suche noch Verzeichnisse durchsucht, Dateien
+ * liest oder hängt.
+ *
+ * Beginn und Ende jeder Phase werden zusätzlich als JFR-Ereignis
+ * aufgezeichnet, solange die Suche läuft wird der aktuelle Stand periodisch
+ * als JFR-Ereignis veröffentlicht.
+ */
+public final class ScanMetrics {
+	/**
+	 * Phasen einer Dublettensuche.
+	 */
+	public enum Phase {
+		/** Noch nicht begonnen */
+		IDLE,
+		/** Durchsuchen der Verzeichnisse */
+		WALK,
+		/** Inhaltsvergleich der Kandidatengruppen */
+		COMPARE,
+		/** Beendet */
+		FINISHED
+	}
+
+	/**
+	 * Stand der Zähler zu einem Zeitpunkt.
+	 *
+	 * @param phase
+	 *            Aktuelle Phase
+	 * @param directoriesVisited
+	 *            Betretene Verzeichnisse
+	 * @param filesVisited
+	 *            In den Index aufgenommene Dateien
+	 * @param bytesRead
+	 *            Beim Inhaltsvergleich gelesene Bytes
+	 * @param filesOpened
+	 *            Beim Inhaltsvergleich geöffnete Dateien
+	 * @param openFiles
+	 *            Derzeit geöffnete Dateien
+	 * @param comparisonRounds
+	 *            Vergleichsrunden im Gleichschritt
+	 * @param groupsResolved
+	 *            Vollständig verglichene Kandidatengruppen
+	 * @param groupsInterrupted
+	 *            Kandidatengruppen, deren Vergleich wegen des Budgets oder
+	 *            eines Abbruchs nicht beendet wurde
+	 * @param groupsPending
+	 *            Noch offene Kandidatengruppen
+	 * @param candidateBytes
+	 *            Gesamtgröße aller Kandidatengruppen in Bytes
+	 * @param resolvedBytes
+	 *            Gesamtgröße der abgeschlossenen Kandidatengruppen in Bytes
+	 * @param walkTime
+	 *            Bisherige Dauer des Durchsuchens
+	 * @param compareTime
+	 *            Bisherige Dauer des Inhaltsvergleichs
+	 */
+	public record Snapshot(Phase phase, long directoriesVisited, long filesVisited, long bytesRead,
+			long filesOpened, long openFiles, long comparisonRounds, long groupsResolved, long groupsInterrupted,
+			long groupsPending,
+			long candidateBytes, long resolvedBytes, Duration walkTime, Duration compareTime) {
+
+		/**
+		 * @return In den Index aufgenommene Dateien je Sekunde des Durchsuchens
+		 */
+		public long filesPerSecond() {
+			return perSecond(filesVisited, walkTime);
+		}
+
+		/**
+		 * @return Gelesene Bytes je Sekunde des Inhaltsvergleichs
+		 */
+		public long bytesPerSecond() {
+			return perSecond(bytesRead, compareTime);
+		}
+
+		/**
+		 * Schätzt die verbleibende Dauer des Inhaltsvergleichs aus dem Anteil
+		 * der abgeschlossenen an der Gesamtgröße aller Kandidatengruppen.
+		 *
+		 * @return Geschätzte Restdauer oder leer, solange der Vergleich nicht
+		 *         begonnen oder noch keine Gruppe abgeschlossen hat
+		 */
+		public Optional<Duration> estimatedRemaining() {
+			if (phase == Phase.FINISHED) {
+				return Optional.of(Duration.ZERO);
+			}
+			if (phase != Phase.COMPARE || resolvedBytes == 0L) {
+				return Optional.empty();
+			}
+			final double remaining = (double) (candidateBytes - resolvedBytes) / resolvedBytes;
+			return Optional.of(Duration.ofNanos((long) (compareTime.toNanos() * remaining)));
+		}
+
+		private static long perSecond(long count, Duration time) {
+			final long nanos = time.toNanos();
+			return nanos == 0L ? 0L : (long) (count * 1_000_000_000.0 / nanos);
+		}
+	}
+
+	private final LongAdder directoriesVisited = new LongAdder();
+	private final LongAdder filesVisited = new LongAdder();
+	private final LongAdder bytesRead = new LongAdder();
+	private final LongAdder filesOpened = new LongAdder();
+	private final LongAdder openFiles = new LongAdder();
+	private final LongAdder comparisonRounds = new LongAdder();
+	private final LongAdder groupsResolved = new LongAdder();
+	private final LongAdder groupsInterrupted = new LongAdder();
+	private final LongAdder groupsQueued = new LongAdder();
+	private final LongAdder candidateBytes = new LongAdder();
+	private final LongAdder resolvedBytes = new LongAdder();
+	private final Map<Phase, Long> started = new EnumMap<>(Phase.class);
+	private final Map<Phase, Long> finished = new EnumMap<>(Phase.class);
+	private final Map<Phase, ScanEvents.PhaseEvent> events = new EnumMap<>(Phase.class);
+	private volatile Phase phase = Phase.IDLE;
+
+	/**
+	 * @return Aktueller Stand aller Zähler
+	 */
+	public Snapshot snapshot() {
+		final long resolved = groupsResolved.sum();
+		final long interrupted = groupsInterrupted.sum();
+		return new Snapshot(phase, directoriesVisited.sum(), filesVisited.sum(), bytesRead.sum(),
+				filesOpened.sum(), openFiles.sum(), comparisonRounds.sum(), resolved, interrupted,
+				Math.max(0L, groupsQueued.sum() - resolved - interrupted), candidateBytes.sum(), resolvedBytes.sum(),
+				elapsed(Phase.WALK), elapsed(Phase.COMPARE));
+	}
+
+	/**
+	 * @return Aktuelle Phase
+	 */
+	public Phase getPhase() {
+		return phase;
+	}
+
+	/**
+	 * @param phase
+	 *            Abgefragte Phase
+	 * @return Bisherige Dauer der Phase, {@link Duration#ZERO} vor ihrem Beginn
+	 */
+	public synchronized Duration elapsed(Phase phase) {
+		final Long start = started.get(phase);
+		if (start == null) {
+			return Duration.ZERO;
+		}
+		final Long end = finished.get(phase);
+		return Duration.ofNanos((end == null ? System.nanoTime() : end) - start);
+	}
+
+	synchronized void start(Phase phase) {
+		this.phase = phase;
+		started.put(phase, System.nanoTime());
+		finished.remove(phase);
+		final ScanEvents.PhaseEvent event = new ScanEvents.PhaseEvent();
+		event.phase = phase.name();
+		event.begin();
+		events.put(phase, event);
+		ScanEvents.register(this);
+	}
+
+	synchronized void finish(Phase phase) {
+		finished.put(phase, System.nanoTime());
+		final ScanEvents.PhaseEvent event = events.remove(phase);
+		if (event != null) {
+			event.end();
+			if (event.shouldCommit()) {
+				event.directories = directoriesVisited.sum();
+				event.files = filesVisited.sum();
+				event.bytesRead = bytesRead.sum();
+				event.groups = groupsResolved.sum();
+				event.commit();
+			}
+		}
+		if (phase == Phase.COMPARE) {
+			this.phase = Phase.FINISHED;
+			ScanEvents.unregister(this);
+		}
+	}
+
+	/**
+	 * Hasht eine Datei und zählt sie als geöffnet und vollständig gelesen.
+	 */
+	ContentHash hash(File file, HashAlgorithm algorithm) throws IOException {
+		fileOpened();
+		try {
+			final ContentHash hash = algorithm.hash(file);
+			bytesRead.add(file.length());
+			return hash;
+		} finally {
+			fileClosed();
+		}
+	}
+
+	long getBytesRead() {
+		return bytesRead.sum();
+	}
+
+	long getFilesOpened() {
+		return filesOpened.sum();
+	}
+
+	void directoryVisited() {
+		directoriesVisited.increment();
+	}
+
+	void fileVisited() {
+		filesVisited.increment();
+	}
+
+	void read(long bytes) {
+		bytesRead.add(bytes);
+	}
+
+	void fileOpened() {
+		filesOpened.increment();
+		openFiles.increment();
+	}
+
+	void fileClosed() {
+		openFiles.decrement();
+	}
+
+	void comparisonRound() {
+		comparisonRounds.increment();
+	}
+
+	void groupQueued(long bytes) {
+		groupsQueued.increment();
+		candidateBytes.add(bytes);
+	}
+
+	void groupResolved(long bytes) {
+		groupsResolved.increment();
+		resolvedBytes.add(bytes);
+	}
+
+	void groupInterrupted() {
+		groupsInterrupted.increment();
+	}
+}
@@ -0,0 +1,99 @@
+package de.b0n.dir.processor;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Startverzeichnisse einer Suche über mehrere Wurzeln. Jede gefundene Datei
+ * wird der Wurzel zugeordnet, unter deren Pfad sie liegt; bei verschachtelten
+ * Wurzeln der innersten. So lässt sich erkennen, ob eine Dublettengruppe
+ * Dateien verschiedener Wurzeln, etwa verschiedener Laufwerke, enthält.
+ *
+ * Überschneidungen der Wurzeln erkennt der DuplicateLengthFinder beim
+ * Durchsuchen: Jedes Verzeichnis wird anhand seines fileKey nur einmal
+ * gelesen, auch wenn es über eine verschachtelte Wurzel oder einen Bind-Mount
+ * mehrfach erreichbar ist.
+ */
+public final class ScanRoots {
+	private final List<Path> roots;
+	private final List<Path> bySpecificity;
+
+	/**
+	 * Erzeugt die Wurzeln einer Suche.
+	 *
+	 * @param roots
+	 *            Mindestens ein Startverzeichnis, Duplikate werden entfernt
+	 */
+	public ScanRoots(Collection<Path> roots) {
+		if (roots == null) {
+			throw new IllegalArgumentException("roots may not be null.");
+		}
+		if (roots.isEmpty()) {
+			throw new IllegalArgumentException("roots may not be empty.");
+		}
+		final Set<Path> absolute = new LinkedHashSet<>();
+		for (Path root : roots) {
+			if (root == null) {
+				throw new IllegalArgumentException("roots may not contain null.");
+			}
+			absolute.add(root.toAbsolutePath());
+		}
+		this.roots = List.copyOf(absolute);
+		this.bySpecificity = this.roots.stream()
+				.sorted(Comparator.comparingInt(Path::getNameCount).reversed())
+				.toList();
+	}
+
+	/**
+	 * @return Absolute Pfade der Wurzeln in der übergebenen Reihenfolge
+	 */
+	public List<Path> getRoots() {
+		return roots;
+	}
+
+	/**
+	 * Ermittelt die Wurzel einer Datei.
+	 *
+	 * @param file
+	 *            Gefundene Datei
+	 * @return Innerste Wurzel, unter der die Datei liegt, oder leer, wenn sie
+	 *         unter keiner Wurzel liegt
+	 */
+	public Optional<Path> rootOf(File file) {
+		if (file == null) {
+			throw new IllegalArgumentException("file may not be null.");
+		}
+		final Path path = file.toPath().toAbsolutePath();
+		return bySpecificity.stream()
+				.filter(path::startsWith)
+				.findFirst();
+	}
+
+	/**
+	 * Teilt die Dateien einer Dublettengruppe nach ihren Wurzeln auf.
+	 *
+	 * @param group
+	 *            Dublettengruppe
+	 * @return Dateien der Gruppe je Wurzel in der Reihenfolge der Wurzeln
+	 */
+	public Map<Path, List<File>> byRoot(DuplicateGroup group) {
+		if (group == null) {
+			throw new IllegalArgumentException("group may not be null.");
+		}
+		final Map<Path, List<File>> byRoot = new TreeMap<>(Comparator.comparingInt(roots::indexOf));
+		for (File file : group.getFiles()) {
+			rootOf(file).ifPresent(root -> byRoot.computeIfAbsent(root, key -> new ArrayList<>()).add(file));
+		}
+		return byRoot;
+	}
+
+	/**
+	 * @param group
+	 *            Dublettengruppe
+	 * @return true, wenn die Gruppe Dateien aus mehr als einer Wurzel enthält
+	 */
+	public boolean isCrossRoot(DuplicateGroup group) {
+		return byRoot(group).size() > 1;
+	}
+}
@@ -0,0 +1,505 @@
+package de.b0n.dir.processor;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Speichersparender Index der beim Durchsuchen gefundenen Dateien nach
+ * Dateigröße. Statt eines File-Objekts pro Datei werden nur die Größe als
+ * primitiver long, ein Verweis auf die Tabelle der Elternverzeichnisse und der
+ * Dateiname als UTF-8 in einem gemeinsamen Speicherblock abgelegt. File- und
+ * Path-Objekte entstehen erst beim Abruf einer Gruppe.
+ *
+ * Mehrere Hardlinks auf dieselbe physische Datei werden zusammengefasst: Je
+ * Datei werden Gerät und Inode aus dem Durchsuchen als zwei long neben der
+ * Größe abgelegt, sodass beim Gruppieren keine Datei erneut gelesen werden
+ * muss. Die Kandidaten enthalten jede physische Datei nur einmal, die
+ * Hardlinks selbst liefert {@link #getHardLinks()}.
+ *
+ * Der Index wird während des Durchsuchens befüllt und ist dabei threadsicher.
+ * Die Gruppierung nach Größe wird beim ersten Abruf einmalig berechnet, danach
+ * dürfen keine Dateien mehr hinzugefügt werden.
+ */
+public final class SizeIndex {
+	private static final int CHUNK_SIZE = 1 << 20;
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/**
+	 * Gerätenummer von Dateien, deren Dateisystem weder Gerät noch Inode
+	 * liefert. Solche Dateien werden nie als Hardlinks zusammengefasst.
+	 */
+	static final long NO_DEVICE = Long.MIN_VALUE;
+
+	/**
+	 * Identität einer physischen Datei aus Gerät und Inode.
+	 *
+	 * @param device
+	 *            Gerätenummer
+	 * @param inode
+	 *            Inode auf dem Gerät
+	 */
+	record Identity(long device, long inode) {
+		/**
+		 * @return Identität oder null, wenn das Dateisystem kein Gerät liefert
+		 */
+		static Identity of(long device, long inode) {
+			return device == NO_DEVICE ? null : new Identity(device, inode);
+		}
+	}
+
+	/**
+	 * Datei des Index mit Größe und Identität.
+	 *
+	 * @param path
+	 *            Pfad der Datei
+	 * @param size
+	 *            Dateigröße
+	 * @param identity
+	 *            Identität der physischen Datei oder null, wenn unbekannt
+	 */
+	record IndexedFile(Path path, long size, Identity identity) {}
+
+	/**
+	 * Gruppe gleich großer Dateien, ohne deren Pfade zu erzeugen. Die Dateien
+	 * liefert {@link SizeIndex#filesOf(Group)} erst bei Bedarf.
+	 *
+	 * @param index
+	 *            Nummer der Gruppe im SizeIndex
+	 * @param size
+	 *            Dateigröße
+	 * @param count
+	 *            Anzahl der Pfade, bevor Hardlinks zusammengefasst werden
+	 */
+	record Group(int index, long size, int count) {
+		/**
+		 * @return Möglicher Platzgewinn Größe × (Anzahl − 1)
+		 */
+		long waste() {
+			return size * (count - 1);
+		}
+
+		/**
+		 * @return Gesamtgröße aller Pfade der Gruppe
+		 */
+		long bytes() {
+			return size * count;
+		}
+	}
+
+	private final List<Path> directories = new ArrayList<>();
+	private final List<byte[]> nameChunks = new ArrayList<>();
+	private int chunkPosition = CHUNK_SIZE;
+
+	private int count;
+	private long[] sizes = new long[INITIAL_CAPACITY];
+	private int[] parents = new int[INITIAL_CAPACITY];
+	private long[] nameOffsets = new long[INITIAL_CAPACITY];
+	private long[] devices = new long[INITIAL_CAPACITY];
+	private long[] inodes = new long[INITIAL_CAPACITY];
+
+	private int[] groupStarts;
+	private int[] groupMembers;
+
+	/**
+	 * Nimmt ein Verzeichnis in die Verzeichnistabelle auf.
+	 *
+	 * @param directory
+	 *            Absoluter Pfad des Verzeichnisses
+	 * @return Nummer des Verzeichnisses für {@link #add(int, String, long)}
+	 */
+	synchronized int addDirectory(Path directory) {
+		checkOpen();
+		directories.add(directory);
+		return directories.size() - 1;
+	}
+
+	/**
+	 * Nimmt ein Verzeichnis mit seinen Dateien in einem Schritt auf, sodass der
+	 * Index je Verzeichnis nur einmal gesperrt wird.
+	 *
+	 * @param directory
+	 *            Absoluter Pfad des Verzeichnisses
+	 * @param files
+	 *            Aufgenommene Dateien des Verzeichnisses
+	 */
+	synchronized void addDirectory(Path directory, List<ScanCheckpoint.WalkedFile> files) {
+		final int id = addDirectory(directory);
+		for (ScanCheckpoint.WalkedFile file : files) {
+			add(id, file.name(), file.size(), file.device(), file.inode());
+		}
+	}
+
+	/**
+	 * Nimmt eine Datei in den Index auf.
+	 *
+	 * @param directory
+	 *            Nummer des Elternverzeichnisses
+	 * @param name
+	 *            Dateiname innerhalb des Elternverzeichnisses
+	 * @param size
+	 *            Dateigröße
+	 */
+	void add(int directory, String name, long size) {
+		add(directory, name, size, NO_DEVICE, 0L);
+	}
+
+	/**
+	 * Nimmt eine Datei mit ihrer Identität im Dateisystem in den Index auf.
+	 *
+	 * @param directory
+	 *            Nummer des Elternverzeichnisses
+	 * @param name
+	 *            Dateiname innerhalb des Elternverzeichnisses
+	 * @param size
+	 *            Dateigröße
+	 * @param device
+	 *            Gerätenummer der Datei oder {@link #NO_DEVICE}, wenn das
+	 *            Dateisystem keine liefert
+	 * @param inode
+	 *            Inode der Datei auf dem Gerät
+	 */
+	synchronized void add(int directory, String name, long size, long device, long inode) {
+		checkOpen();
+		if (count == sizes.length) {
+			final int capacity = count * 2;
+			sizes = Arrays.copyOf(sizes, capacity);
+			parents = Arrays.copyOf(parents, capacity);
+			nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+			devices = Arrays.copyOf(devices, capacity);
+			inodes = Arrays.copyOf(inodes, capacity);
+		}
+		sizes[count] = size;
+		parents[count] = directory;
+		nameOffsets[count] = storeName(name.getBytes(StandardCharsets.UTF_8));
+		devices[count] = device;
+		inodes[count] = inode;
+		count++;
+	}
+
+	private void checkOpen() {
+		if (groupStarts != null) {
+			throw new IllegalStateException("SizeIndex is already grouped.");
+		}
+	}
+
+	/**
+	 * Legt den Namen mit vorangestellter Länge in zwei Bytes ab. Ein Name wird
+	 * nie über zwei Speicherblöcke verteilt.
+	 */
+	private long storeName(byte[] name) {
+		final int required = name.length + 2;
+		if (chunkPosition + required > CHUNK_SIZE) {
+			nameChunks.add(new byte[Math.max(CHUNK_SIZE, required)]);
+			chunkPosition = 0;
+		}
+		final byte[] chunk = nameChunks.get(nameChunks.size() - 1);
+		final long offset = (long) (nameChunks.size() - 1) * CHUNK_SIZE + chunkPosition;
+		chunk[chunkPosition] = (byte) (name.length >>> 8);
+		chunk[chunkPosition + 1] = (byte) name.length;
+		System.arraycopy(name, 0, chunk, chunkPosition + 2, name.length);
+		chunkPosition += required;
+		return offset;
+	}
+
+	private String name(int entry) {
+		final byte[] chunk = nameChunks.get((int) (nameOffsets[entry] / CHUNK_SIZE));
+		final int position = (int) (nameOffsets[entry] % CHUNK_SIZE);
+		final int length = ((chunk[position] & 0xff) << 8) | (chunk[position + 1] & 0xff);
+		return new String(chunk, position + 2, length, StandardCharsets.UTF_8);
+	}
+
+	private Path path(int entry) {
+		return directories.get(parents[entry]).resolve(name(entry));
+	}
+
+	/**
+	 * @return Anzahl der Dateien im Index
+	 */
+	public synchronized int getFileCount() {
+		return count;
+	}
+
+	/**
+	 * @return Anzahl der durchsuchten Verzeichnisse
+	 */
+	public synchronized int getDirectoryCount() {
+		return directories.size();
+	}
+
+	/**
+	 * @return Anzahl der Gruppen mit mindestens zwei Dateien gleicher Größe,
+	 *         bevor Hardlinks zusammengefasst werden
+	 */
+	public int getCandidateGroupCount() {
+		group();
+		return groupStarts.length - 1;
+	}
+
+	/**
+	 * Liefert die Gruppen von mindestens zwei physischen Dateien gleicher Größe.
+	 * Von mehreren Hardlinks auf dieselbe Datei ist nur einer enthalten. Die
+	 * File-Objekte einer Gruppe werden erst beim Verarbeiten des jeweiligen
+	 * Stream-Elements erzeugt.
+	 *
+	 * @return Dateigruppen als Kandidaten für den DuplicateContentFinder
+	 */
+	public Stream<List<File>> getCandidates() {
+		return getCandidates(Path::toFile);
+	}
+
+	/**
+	 * Liefert die Gruppen von mindestens zwei physischen Dateien gleicher Größe.
+	 * Von mehreren Hardlinks auf dieselbe Datei ist nur einer enthalten. Die
+	 * Path-Objekte einer Gruppe werden erst beim Verarbeiten des jeweiligen
+	 * Stream-Elements erzeugt.
+	 *
+	 * @return Pfadgruppen gleicher Größe
+	 */
+	public Stream<List<Path>> getCandidatePaths() {
+		return getCandidates(Function.identity());
+	}
+
+	/**
+	 * Liefert die Gruppen wie {@link #getCandidates()}, geordnet nach dem
+	 * möglichen Platzgewinn Größe × (Anzahl − 1), größter zuerst. Hardlinks
+	 * werden für die Reihenfolge noch nicht zusammengefasst.
+	 *
+	 * @return Geordnete Dateigruppen als Kandidaten für den
+	 *         DuplicateContentFinder
+	 */
+	public Stream<List<File>> getCandidatesByWaste() {
+		return getGroupsByWaste().stream()
+				.map(this::filesOf)
+				.filter(files -> !files.isEmpty());
+	}
+
+	/**
+	 * Liefert die Gruppen gleich großer Dateien geordnet nach dem möglichen
+	 * Platzgewinn, größter zuerst. Größe und Anzahl stammen aus dem Index,
+	 * Pfade werden dabei nicht erzeugt und keine Datei wird gelesen.
+	 *
+	 * @return Geordnete Beschreibungen der Gruppen
+	 */
+	List<Group> getGroupsByWaste() {
+		group();
+		final List<Group> groups = new ArrayList<>(groupStarts.length - 1);
+		for (int group = 0; group < groupStarts.length - 1; group++) {
+			groups.add(new Group(group, sizes[groupMembers[groupStarts[group]]],
+					groupStarts[group + 1] - groupStarts[group]));
+		}
+		groups.sort(Comparator.comparingLong(Group::waste).reversed());
+		return groups;
+	}
+
+	/**
+	 * Erzeugt die Dateien einer Gruppe, von mehreren Hardlinks auf dieselbe
+	 * Datei nur einen.
+	 *
+	 * @param group
+	 *            Gruppe aus {@link #getGroupsByWaste()}
+	 * @return Physische Dateien der Gruppe oder leer, wenn weniger als zwei
+	 *         verbleiben
+	 */
+	List<File> filesOf(Group group) {
+		final List<List<Path>> physicalFiles = physicalFiles(group.index());
+		if (physicalFiles.size() < 2) {
+			return List.of();
+		}
+		final List<File> files = new ArrayList<>(physicalFiles.size());
+		for (List<Path> links : physicalFiles) {
+			files.add(links.get(0).toFile());
+		}
+		return files;
+	}
+
+	private <T> Stream<List<T>> getCandidates(Function<Path, T> mapper) {
+		group();
+		return getCandidates(IntStream.range(0, groupStarts.length - 1), mapper);
+	}
+
+	private <T> Stream<List<T>> getCandidates(IntStream groups, Function<Path, T> mapper) {
+		return groups
+				.mapToObj(this::physicalFiles)
+				.filter(physicalFiles -> physicalFiles.size() > 1)
+				.map(physicalFiles -> {
+					final List<T> files = new ArrayList<>(physicalFiles.size());
+					for (List<Path> links : physicalFiles) {
+						files.add(mapper.apply(links.get(0)));
+					}
+					return files;
+				});
+	}
+
+	/**
+	 * Liefert die Gruppen von Pfaden, die als Hardlinks auf dieselbe physische
+	 * Datei verweisen. Diese sind bereits dedupliziert und belegen keinen
+	 * zusätzlichen Speicher.
+	 *
+	 * @return Je physischer Datei mit mehreren Hardlinks alle ihre Pfade
+	 */
+	public Stream<List<File>> getHardLinks() {
+		group();
+		return IntStream.range(0, groupStarts.length - 1)
+				.mapToObj(this::physicalFiles)
+				.flatMap(List::stream)
+				.filter(links -> links.size() > 1)
+				.map(links -> links.stream().map(Path::toFile).toList());
+	}
+
+	/**
+	 * Fasst die Mitglieder einer Größengruppe anhand von Gerät und Inode nach
+	 * physischer Datei zusammen, ohne eine Datei erneut zu lesen. Dateien ohne
+	 * bekannte Identität bleiben eigene Dateien.
+	 */
+	private List<List<Path>> physicalFiles(int group) {
+		final Map<Identity, List<Path>> byIdentity = new LinkedHashMap<>();
+		final List<List<Path>> result = new ArrayList<>();
+		for (int member = groupStarts[group]; member < groupStarts[group + 1]; member++) {
+			final int entry = groupMembers[member];
+			if (devices[entry] == NO_DEVICE) {
+				result.add(List.of(path(entry)));
+			} else {
+				byIdentity.computeIfAbsent(new Identity(devices[entry], inodes[entry]), identity -> new ArrayList<>())
+						.add(path(entry));
+			}
+		}
+		result.addAll(byIdentity.values());
+		return result;
+	}
+
+	/**
+	 * Liefert alle Dateien des Index mit Größe und Identität, einschließlich
+	 * der Größen mit nur einer Datei.
+	 */
+	synchronized Stream<IndexedFile> files() {
+		return IntStream.range(0, count)
+				.mapToObj(entry -> new IndexedFile(path(entry), sizes[entry], Identity.of(devices[entry], inodes[entry])))
+				.toList()
+				.stream();
+	}
+
+	/**
+	 * Erzeugt eine Map aller Dateien nach Größe, einschließlich der Größen mit
+	 * nur einer Datei.
+	 */
+	<T> Map<Long, List<T>> toMap(Function<Path, T> mapper) {
+		final Map<Long, List<T>> result = new HashMap<>();
+		for (int entry = 0; entry < count; entry++) {
+			result.computeIfAbsent(sizes[entry], size -> new ArrayList<>()).add(mapper.apply(path(entry)));
+		}
+		return result;
+	}
+
+	/**
+	 * Berechnet einmalig die Gruppen gleicher Größe: Zunächst wird je Größe
+	 * gezählt, dann erhält jede Größe mit mindestens zwei Dateien einen
+	 * zusammenhängenden Bereich in groupMembers. Die Zähltabelle wächst mit
+	 * der Anzahl verschiedener Größen, nicht mit der Anzahl der Dateien.
+	 */
+	private synchronized void group() {
+		if (groupStarts != null) {
+			return;
+		}
+		final LongIntMap counts = new LongIntMap(INITIAL_CAPACITY);
+		for (int entry = 0; entry < count; entry++) {
+			counts.increment(sizes[entry]);
+		}
+
+		final LongIntMap positions = new LongIntMap(counts.size());
+		final int[] starts = new int[counts.size() + 1];
+		int groups = 0;
+		int memberCount = 0;
+		for (int entry = 0; entry < count; entry++) {
+			final int occurrences = counts.get(sizes[entry]);
+			if (occurrences > 1 && positions.get(sizes[entry]) == 0) {
+				starts[groups++] = memberCount;
+				positions.put(sizes[entry], memberCount + 1);
+				memberCount += occurrences;
+			}
+		}
+		starts[groups] = memberCount;
+
+		final int[] members = new int[memberCount];
+		for (int entry = 0; entry < count; entry++) {
+			final int position = positions.get(sizes[entry]);
+			if (position > 0) {
+				members[position - 1] = entry;
+				positions.put(sizes[entry], position + 1);
+			}
+		}
+		groupMembers = members;
+		groupStarts = Arrays.copyOf(starts, groups + 1);
+	}
+
+	/**
+	 * Hashtabelle mit offener Adressierung von primitiven long-Schlüsseln auf
+	 * int-Werte. Nicht vorhandene Schlüssel haben den Wert 0.
+	 */
+	private static final class LongIntMap {
+		private long[] keys;
+		private int[] values;
+		private boolean[] used;
+		private int size;
+
+		LongIntMap(int expected) {
+			int capacity = Integer.highestOneBit(Math.max(4, expected) * 2 - 1) << 1;
+			keys = new long[capacity];
+			values = new int[capacity];
+			used = new boolean[capacity];
+		}
+
+		int size() {
+			return size;
+		}
+
+		private int slot(long key) {
+			final int mask = keys.length - 1;
+			int slot = (int) (key ^ (key >>> 32)) * 0x9E3779B9 & mask;
+			while (used[slot] && keys[slot] != key) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		int get(long key) {
+			return values[slot(key)];
+		}
+
+		void put(long key, int value) {
+			final int slot = slot(key);
+			if (!used[slot]) {
+				used[slot] = true;
+				keys[slot] = key;
+				size++;
+			}
+			values[slot] = value;
+			if (size * 2 > keys.length) {
+				resize();
+			}
+		}
+
+		void increment(long key) {
+			put(key, get(key) + 1);
+		}
+
+		private void resize() {
+			final long[] oldKeys = keys;
+			final int[] oldValues = values;
+			final boolean[] oldUsed = used;
+			keys = new long[oldKeys.length * 2];
+			values = new int[oldKeys.length * 2];
+			used = new boolean[oldKeys.length * 2];
+			size = 0;
+			for (int slot = 0; slot < oldKeys.length; slot++) {
+				if (oldUsed[slot]) {
+					put(oldKeys[slot], oldValues[slot]);
+				}
+			}
+		}
+	}
+}
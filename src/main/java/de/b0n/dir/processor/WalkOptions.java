@@ -0,0 +1,247 @@
+package de.b0n.dir.processor;
+
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unveränderliche Einstellungen für das Durchsuchen eines Verzeichnisbaums
+ * durch den DuplicateLengthFinder. Jede with-Methode liefert eine geänderte
+ * Kopie.
+ *
+ * Ein- und Ausschlussmuster verwenden die Syntax von
+ * {@link FileSystem#getPathMatcher(String)}, also glob:muster oder
+ * regex:muster; ohne Präfix wird glob angenommen. Ein Muster trifft einen
+ * Eintrag, wenn es dessen Namen oder dessen Pfad relativ zum Startverzeichnis
+ * trifft.
+ */
+public final class WalkOptions {
+	/**
+	 * Standardeinstellungen: symbolischen Links wird gefolgt, Dateisystemgrenzen
+	 * werden überschritten, alle Dateien werden aufgenommen.
+	 */
+	public static final WalkOptions DEFAULT = new WalkOptions(true, false, 0L, Long.MAX_VALUE, List.of(), List.of());
+
+	private static final String GLOB = "glob:";
+	private static final String REGEX = "regex:";
+
+	private final boolean followLinks;
+	private final boolean sameFileStore;
+	private final long minSize;
+	private final long maxSize;
+	private final List<String> includes;
+	private final List<String> excludes;
+
+	private WalkOptions(boolean followLinks, boolean sameFileStore, long minSize, long maxSize,
+			List<String> includes, List<String> excludes) {
+		this.followLinks = followLinks;
+		this.sameFileStore = sameFileStore;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.includes = includes;
+		this.excludes = excludes;
+	}
+
+	/**
+	 * Legt fest, ob symbolischen Links gefolgt wird. Wird ihnen gefolgt, werden
+	 * Zyklen anhand des fileKey der Verzeichnisse erkannt und nicht erneut
+	 * betreten. Andernfalls werden symbolische Links übersprungen.
+	 *
+	 * @param followLinks
+	 *            true, um symbolischen Links zu folgen
+	 * @return Geänderte Einstellungen
+	 */
+	public WalkOptions withFollowLinks(boolean followLinks) {
+		return new WalkOptions(followLinks, sameFileStore, minSize, maxSize, includes, excludes);
+	}
+
+	/**
+	 * Legt fest, ob nur Verzeichnisse auf demselben Dateisystem wie das
+	 * Startverzeichnis durchsucht werden, vergleichbar mit find -xdev.
+	 *
+	 * @param sameFileStore
+	 *            true, um Dateisystemgrenzen nicht zu überschreiten
+	 * @return Geänderte Einstellungen
+	 */
+	public WalkOptions withSameFileStore(boolean sameFileStore) {
+		return new WalkOptions(followLinks, sameFileStore, minSize, maxSize, includes, excludes);
+	}
+
+	/**
+	 * Legt die Mindestgröße aufgenommener Dateien fest.
+	 *
+	 * @param minSize
+	 *            Mindestgröße in Bytes, einschließlich
+	 * @return Geänderte Einstellungen
+	 */
+	public WalkOptions withMinSize(long minSize) {
+		if (minSize < 0) {
+			throw new IllegalArgumentException("minSize may not be negative.");
+		}
+		if (minSize > maxSize) {
+			throw new IllegalArgumentException("minSize may not exceed maxSize.");
+		}
+		return new WalkOptions(followLinks, sameFileStore, minSize, maxSize, includes, excludes);
+	}
+
+	/**
+	 * Legt die Höchstgröße aufgenommener Dateien fest.
+	 *
+	 * @param maxSize
+	 *            Höchstgröße in Bytes, einschließlich
+	 * @return Geänderte Einstellungen
+	 */
+	public WalkOptions withMaxSize(long maxSize) {
+		if (maxSize < minSize) {
+			throw new IllegalArgumentException("maxSize may not be less than minSize.");
+		}
+		return new WalkOptions(followLinks, sameFileStore, minSize, maxSize, includes, excludes);
+	}
+
+	/**
+	 * Fügt ein Einschlussmuster hinzu. Sind Einschlussmuster vorhanden, werden
+	 * nur Dateien aufgenommen, die mindestens eines davon treffen. Verzeichnisse
+	 * werden unabhängig davon durchsucht.
+	 *
+	 * @param pattern
+	 *            Muster der Form glob:muster oder regex:muster
+	 * @return Geänderte Einstellungen
+	 */
+	public WalkOptions withInclude(String pattern) {
+		return new WalkOptions(followLinks, sameFileStore, minSize, maxSize, append(includes, pattern), excludes);
+	}
+
+	/**
+	 * Fügt ein Ausschlussmuster hinzu. Getroffene Dateien werden nicht
+	 * aufgenommen, getroffene Verzeichnisse werden nicht gelesen.
+	 *
+	 * @param pattern
+	 *            Muster der Form glob:muster oder regex:muster
+	 * @return Geänderte Einstellungen
+	 */
+	public WalkOptions withExclude(String pattern) {
+		return new WalkOptions(followLinks, sameFileStore, minSize, maxSize, includes, append(excludes, pattern));
+	}
+
+	private static List<String> append(List<String> patterns, String pattern) {
+		if (pattern == null) {
+			throw new IllegalArgumentException("pattern may not be null.");
+		}
+		final String syntaxAndPattern = pattern.startsWith(GLOB) || pattern.startsWith(REGEX) ? pattern : GLOB + pattern;
+		FileSystems.getDefault().getPathMatcher(syntaxAndPattern);
+		final List<String> appended = new ArrayList<>(patterns);
+		appended.add(syntaxAndPattern);
+		return List.copyOf(appended);
+	}
+
+	/**
+	 * @return true, wenn symbolischen Links gefolgt wird
+	 */
+	public boolean isFollowLinks() {
+		return followLinks;
+	}
+
+	/**
+	 * @return true, wenn Dateisystemgrenzen nicht überschritten werden
+	 */
+	public boolean isSameFileStore() {
+		return sameFileStore;
+	}
+
+	/**
+	 * @return Mindestgröße aufgenommener Dateien in Bytes
+	 */
+	public long getMinSize() {
+		return minSize;
+	}
+
+	/**
+	 * @return Höchstgröße aufgenommener Dateien in Bytes
+	 */
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return Einschlussmuster einschließlich Syntaxpräfix
+	 */
+	public List<String> getIncludes() {
+		return includes;
+	}
+
+	/**
+	 * @return Ausschlussmuster einschließlich Syntaxpräfix
+	 */
+	public List<String> getExcludes() {
+		return excludes;
+	}
+
+	/**
+	 * Liefert alle Einstellungen in einer festen Form, etwa für den Kopf eines
+	 * ScanCheckpoint.
+	 */
+	@Override
+	public String toString() {
+		return "followLinks=" + followLinks + ", sameFileStore=" + sameFileStore + ", minSize=" + minSize
+				+ ", maxSize=" + maxSize + ", includes=" + includes + ", excludes=" + excludes;
+	}
+
+	/**
+	 * Übersetzt die Muster für das Dateisystem des Startverzeichnisses.
+	 */
+	Filter filter(Path root) {
+		return new Filter(root, matchers(root.getFileSystem(), includes), matchers(root.getFileSystem(), excludes));
+	}
+
+	private static List<PathMatcher> matchers(FileSystem fileSystem, List<String> patterns) {
+		return patterns.stream().map(fileSystem::getPathMatcher).toList();
+	}
+
+	/**
+	 * Auf ein Startverzeichnis angewandte Filter eines Durchlaufs.
+	 */
+	final class Filter {
+		private final Path root;
+		private final List<PathMatcher> includeMatchers;
+		private final List<PathMatcher> excludeMatchers;
+
+		private Filter(Path root, List<PathMatcher> includeMatchers, List<PathMatcher> excludeMatchers) {
+			this.root = root;
+			this.includeMatchers = includeMatchers;
+			this.excludeMatchers = excludeMatchers;
+		}
+
+		/**
+		 * @return true, wenn das Verzeichnis gelesen werden soll
+		 */
+		boolean acceptsDirectory(Path directory) {
+			return !matchesAny(excludeMatchers, directory);
+		}
+
+		/**
+		 * @return true, wenn die Datei in den Index aufgenommen werden soll
+		 */
+		boolean acceptsFile(Path file, long size) {
+			return size >= minSize && size <= maxSize
+					&& (includeMatchers.isEmpty() || matchesAny(includeMatchers, file))
+					&& !matchesAny(excludeMatchers, file);
+		}
+
+		private boolean matchesAny(List<PathMatcher> matchers, Path path) {
+			if (matchers.isEmpty()) {
+				return false;
+			}
+			final Path name = path.getFileName();
+			final Path relative = root.relativize(path);
+			for (PathMatcher matcher : matchers) {
+				if ((name != null && matcher.matches(name)) || matcher.matches(relative)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
@@ -1,20 +1,61 @@
 package de.b0n.dir;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.b0n.dir.processor.DuplicateLengthFinderCallback;
+import de.b0n.dir.processor.ScanExecutor;
+import de.b0n.dir.processor.ScanMetrics;
+import de.b0n.dir.processor.WalkOptions;
 
 public class DupFinderConsoleTest extends de.b0n.dir.Test {
 	private static final String PATH_FILE = "src/test/resources/Test1.txt";
 	private static final String PATH_EMPTY_FOLDER = "src/test/resources/emptyDirectory";
+	private static final String PATH_SAME_SIZE_FOLDER = "src/test/resources/noDuplicates";
+	private static final String PATH_DUPLICATE_FOLDER = "src/test/resources/duplicateTree";
+	private static final String USAGE = "\r\n Benutzung: DupFinder [Optionen] <Verzeichnis>...\r\n<Verzeichnis> = Verzeichnis in dem rekursiv nach Duplikaten gesucht wird, bei mehreren auch zwischen den Verzeichnissen"
+			+ "\r\n--cache=<Datei> = Hashwerte zwischen Läufen in <Datei> speichern und Inhalte per SHA-256 vergleichen"
+			+ "\r\n--prefilter=<true|false> = Dateien gleicher Größe vorab anhand von Anfang und Ende aufteilen, false spart die zusätzlichen Zugriffe etwa auf Bandlaufwerken (Standard: true, mit --cache false, damit jede Datei einmal vollständig gehasht und gespeichert wird)"
+			+ "\r\n--follow-links=<true|false> = Symbolischen Links folgen, Zyklen werden übersprungen (Standard: true)"
+			+ "\r\n--same-filesystem=<true|false> = Nur das Dateisystem des <Verzeichnis> durchsuchen (Standard: false)"
+			+ "\r\n--include=<Muster> = Nur Dateien aufnehmen, deren Name oder Pfad das Muster trifft (glob: oder regex:, mehrfach möglich)"
+			+ "\r\n--exclude=<Muster> = Dateien und Verzeichnisse auslassen, deren Name oder Pfad das Muster trifft (mehrfach möglich)"
+			+ "\r\n--min-size=<Bytes> = Nur Dateien ab dieser Größe aufnehmen"
+			+ "\r\n--max-size=<Bytes> = Nur Dateien bis zu dieser Größe aufnehmen"
+			+ "\r\n--walk-threads=<Anzahl> = Threads für das Durchsuchen der Verzeichnisse (Standard: Anzahl Prozessoren)"
+			+ "\r\n--compare-threads=<Anzahl> = Threads für den Inhaltsvergleich, größte Einsparung zuerst (Standard: Anzahl Prozessoren)"
+			+ "\r\n--device-limit=[<Pfad>=]<Anzahl> = Gleichzeitige Lesevorgänge auf dem Gerät von <Pfad> oder allen Geräten begrenzen (mehrfach möglich)"
+			+ "\r\n--virtual-threads=<true|false> = Dateien beim blockweisen Vergleich auf virtuellen Threads lesen, etwa für NFS (Standard: false, nicht mit --async-reads oder --cache kombinierbar)"
+			+ "\r\n--async-reads=<Anzahl> = Dateien beim blockweisen Vergleich asynchron lesen, mit höchstens <Anzahl> ausstehenden Lesevorgängen je Gruppe, nicht mit --virtual-threads oder --cache kombinierbar"
+			+ "\r\n--progress=<Sekunden> = Fortschritt mit geschätzter Restdauer alle <Sekunden> ausgeben, 0 schaltet die Ausgabe ab (Standard: 10)"
+			+ "\r\n--buffer-memory=<MB> = Obergrenze des Speichers für Lesepuffer beim blockweisen Vergleich (Standard: 256, nicht mit --cache kombinierbar)"
+			+ "\r\n--time-limit=<Sekunden> = Suche nach <Sekunden> beenden und bis dahin bestätigte Dubletten ausgeben"
+			+ "\r\n--max-bytes=<Bytes> = Suche beenden, sobald mehr als <Bytes> gelesen wurden"
+			+ "\r\n--max-files=<Anzahl> = Suche beenden, sobald mehr als <Anzahl> Dateien geöffnet wurden"
+			+ "\r\n--checkpoint=<Datei> = Fortschritt in <Datei> sichern und eine abgebrochene Suche daraus fortsetzen, nach vollständiger Suche wird <Datei> gelöscht"
+			+ "\r\n--reference=<Datei> = Statt nach Dubletten nach Dateien suchen, die im Referenzbestand in <Datei> bereits vorhanden sind, nur mit --reference-tree, --manifest, --include, --exclude, --min-size, --max-size, --follow-links und --same-filesystem kombinierbar"
+			+ "\r\n--reference-tree=<Verzeichnis> = <Verzeichnis> vorher in den Referenzbestand aufnehmen, unveränderte Dateien werden nicht erneut gelesen (mehrfach möglich)"
+			+ "\r\n--manifest=<Datei> = SHA-256-Hashwerte im Format von sha256sum aus <Datei> in den Referenzbestand übernehmen (mehrfach möglich)"
+			+ "\r\n--watch=<true|false> = Verzeichnisse nach der Suche überwachen und Änderungen der Dublettengruppen bis zum Abbruch ausgeben (Standard: false, nur mit --include, --exclude, --min-size, --max-size, --follow-links und --same-filesystem kombinierbar)"
+			+ "\r\n--format=<summary|jsonl|csv|nul> = Jede Dublettengruppe sofort als JSON Lines, CSV oder als flache Liste NUL-getrennter Pfade für xargs -0 ausgeben, Statusmeldungen dann auf System.err (Standard: summary)"
+			+ "\r\n--output=<Datei> = Dublettengruppen im gewählten --format in <Datei> statt auf System.out schreiben";
 
 	private PrintStream printStream;
 	private ByteArrayOutputStream byteArrayOutputStream;
@@ -30,7 +71,7 @@ public class DupFinderConsoleTest extends de.b0n.dir.Test {
 		System.setErr(printStream);
 		DupFinderConsole.main(new String[] {});
 		assertEquals(
-				"FEHLER: Parameter <Verzeichnis> fehlt.\r\n Benutzung: DupFinder <Verzeichnis>\r\n<Verzeichnis> = Verzeichnis in dem rekursiv nach Duplikaten gesucht wird",
+				"FEHLER: Parameter <Verzeichnis> fehlt." + USAGE,
 				byteArrayOutputStream.toString(StandardCharsets.UTF_8).trim());
 	}
 
@@ -39,7 +80,7 @@ public class DupFinderConsoleTest extends de.b0n.dir.Test {
 		System.setErr(printStream);
 		DupFinderConsole.main(new String[] {PATH_FILE});
 		assertEquals(
-				"FEHLER: Parameter <Verzeichnis> ist kein Verzeichnis.\r\n Benutzung: DupFinder <Verzeichnis>\r\n<Verzeichnis> = Verzeichnis in dem rekursiv nach Duplikaten gesucht wird",
+				"FEHLER: Parameter <Verzeichnis> ist kein Verzeichnis." + USAGE,
 				byteArrayOutputStream.toString(StandardCharsets.UTF_8).trim());
 	}
 
@@ -52,4 +93,391 @@ public class DupFinderConsoleTest extends de.b0n.dir.Test {
     	assertTrue(byteArrayOutputStream.toString(StandardCharsets.UTF_8).isEmpty());
     	directory.delete();
 	}
+
+	@Test
+	public void testSameDirectoryTwice() {
+		System.setOut(printStream);
+		DupFinderConsole.main(new String[] {PATH_DUPLICATE_FOLDER, PATH_DUPLICATE_FOLDER});
+		final String output = byteArrayOutputStream.toString(StandardCharsets.UTF_8);
+		assertTrue(output.contains("Duplicate size: 91"));
+		assertFalse(output.contains("Duplicate size across roots"));
+	}
+
+	@Test
+	public void testMultipleDirectories() {
+		System.setOut(printStream);
+		DupFinderConsole.main(new String[] {PATH_DUPLICATE_FOLDER, PATH_DUPLICATE_FOLDER + "/subdirectory"});
+		final String output = byteArrayOutputStream.toString(StandardCharsets.UTF_8);
+		assertTrue(output.contains("Duplicate size: 91"));
+		assertTrue(output.contains("Duplicate size across roots: 91"));
+	}
+
+	@Test
+	public void testLabelsDuplicatesOfTwoRootsWithTheirRoot(@TempDir Path tempDir) throws IOException {
+		final Path first = Files.createDirectory(tempDir.resolve("first"));
+		final Path second = Files.createDirectory(tempDir.resolve("second"));
+		final Path a = Files.writeString(first.resolve("a.txt"), "same content");
+		final Path b = Files.writeString(second.resolve("b.txt"), "same content");
+
+		System.setOut(printStream);
+		DupFinderConsole.main(new String[] {first.toString(), second.toString()});
+		final String output = byteArrayOutputStream.toString(StandardCharsets.UTF_8);
+		assertTrue(output.contains("  " + first.toAbsolutePath() + ": " + a), output);
+		assertTrue(output.contains("  " + second.toAbsolutePath() + ": " + b), output);
+
+		final Path csv = tempDir.resolve("groups.csv");
+		DupFinderConsole.main(new String[] {"--format=csv", "--output=" + csv, first.toString(), second.toString()});
+		final List<String> lines = Files.readAllLines(csv);
+		assertEquals("group,files,length,hash,root,path", lines.get(0));
+		assertTrue(lines.contains("1,2,12,," + first.toAbsolutePath() + "," + a), lines.toString());
+		assertTrue(lines.contains("1,2,12,," + second.toAbsolutePath() + "," + b), lines.toString());
+	}
+
+	@Test
+	public void testInvalidSecondDirectory() {
+		System.setErr(printStream);
+		DupFinderConsole.main(new String[] {PATH_DUPLICATE_FOLDER, PATH_FILE});
+		assertEquals(
+				"FEHLER: Parameter <Verzeichnis> ist kein Verzeichnis." + USAGE,
+				byteArrayOutputStream.toString(StandardCharsets.UTF_8).trim());
+	}
+
+	@Test
+	public void testUnknownOption() {
+		System.setErr(printStream);
+		DupFinderConsole.main(new String[] {"--unknown=1", PATH_SAME_SIZE_FOLDER});
+		assertEquals(
+				"FEHLER: Unbekannte Option: --unknown=1" + USAGE,
+				byteArrayOutputStream.toString(StandardCharsets.UTF_8).trim());
+	}
+
+	@Test
+	public void testCacheOption(@TempDir Path tempDir) {
+		final Path cache = tempDir.resolve("hashes.cache");
+		System.setOut(printStream);
+		DupFinderConsole.main(new String[] {"--cache=" + cache, PATH_DUPLICATE_FOLDER});
+		DupFinderConsole.main(new String[] {"--cache=" + cache, PATH_DUPLICATE_FOLDER});
+		assertTrue(Files.isRegularFile(cache));
+		final String output = byteArrayOutputStream.toString(StandardCharsets.UTF_8);
+		assertEquals(2, output.split("Duplicate size: 91", -1).length - 1);
+	}
+
+	@Test
+	public void testCachedRerunOpensNoFiles(@TempDir Path tempDir) throws IOException {
+		final byte[] content = new byte[200 * 1024];
+		new Random(7).nextBytes(content);
+		final Path directory = Files.createDirectory(tempDir.resolve("files"));
+		Files.write(directory.resolve("a.bin"), content);
+		Files.write(directory.resolve("b.bin"), content);
+		content[0]++;
+		Files.write(directory.resolve("c.bin"), content);
+		final Path cache = tempDir.resolve("hashes.cache");
+		System.setOut(printStream);
+		DupFinderConsole.main(new String[] {"--cache=" + cache, "--progress=0", directory.toString()});
+		byteArrayOutputStream.reset();
+		DupFinderConsole.main(new String[] {"--cache=" + cache, "--progress=0", directory.toString()});
+		final String output = byteArrayOutputStream.toString(StandardCharsets.UTF_8);
+		assertTrue(output.contains("read 0 bytes from 0 opened files"), output);
+		assertTrue(output.contains("Duplicate size: " + content.length), output);
+	}
+
+	@Test
+	public void testReferenceOption(@TempDir Path tempDir) {
+		System.setOut(printStream);
+		final Path reference = tempDir.resolve("reference.idx");
+		DupFinderConsole.main(new String[] {"--reference=" + reference, "--reference-tree=" + PATH_DUPLICATE_FOLDER + "/subdirectory",
+				PATH_DUPLICATE_FOLDER});
+		assertTrue(Files.isRegularFile(reference));
+		final String output = byteArrayOutputStream.toString(StandardCharsets.UTF_8);
+		assertTrue(output.contains("Hashed 1 reference files"));
+		assertTrue(output.contains("Known files: 1, known size: 91"));
+	}
+
+	@Test
+	public void testReferenceRequired() {
+		System.setErr(printStream);
+		DupFinderConsole.main(new String[] {"--manifest=SHA256SUMS", PATH_SAME_SIZE_FOLDER});
+		assertEquals(
+				"FEHLER: Optionen --reference-tree und --manifest erfordern --reference." + USAGE,
+				byteArrayOutputStream.toString(StandardCharsets.UTF_8).trim());
+	}
+
+	@Test
+	public void testReferenceExcludesSearchOptions(@TempDir Path tempDir) {
+		System.setErr(printStream);
+		final Path reference = tempDir.resolve("reference.idx");
+		for (String option : new String[] {"--cache=" + tempDir.resolve("cache"), "--checkpoint=" + tempDir.resolve("checkpoint"),
+				"--time-limit=1", "--max-bytes=1", "--max-files=1", "--device-limit=1", "--format=jsonl",
+				"--walk-threads=1", "--compare-threads=1", "--virtual-threads=true", "--async-reads=4",
+				"--buffer-memory=1", "--prefilter=false", "--progress=0", "--watch=false"}) {
+			byteArrayOutputStream.reset();
+			DupFinderConsole.main(new String[] {"--reference=" + reference, option, PATH_SAME_SIZE_FOLDER});
+			assertEquals(
+					"FEHLER: Option --reference kann nur mit --reference-tree, --manifest, --include, --exclude, --min-size, --max-size, --follow-links und --same-filesystem kombiniert werden." + USAGE,
+					byteArrayOutputStream.toString(StandardCharsets.UTF_8).trim(), option);
+		}
+		assertFalse(Files.exists(reference));
+	}
+
+	@Test
+	public void testConflictingReadOptions(@TempDir Path tempDir) {
+		System.setErr(printStream);
+		DupFinderConsole.main(new String[] {"--virtual-threads=true", "--async-reads=4", PATH_SAME_SIZE_FOLDER});
+		assertEquals(
+				"FEHLER: Optionen --virtual-threads und --async-reads können nicht kombiniert werden." + USAGE,
+				byteArrayOutputStream.toString(StandardCharsets.UTF_8).trim());
+
+		final Path cache = tempDir.resolve("cache");
+		for (String option : new String[] {"--virtual-threads=true", "--async-reads=4", "--buffer-memory=1"}) {
+			byteArrayOutputStream.reset();
+			DupFinderConsole.main(new String[] {"--cache=" + cache, option, PATH_SAME_SIZE_FOLDER});
+			assertEquals(
+					"FEHLER: Option --cache kann nicht mit --virtual-threads, --async-reads oder --buffer-memory kombiniert werden." + USAGE,
+					byteArrayOutputStream.toString(StandardCharsets.UTF_8).trim(), option);
+		}
+		assertFalse(Files.exists(cache));
+	}
+
+	@Test
+	public void testWatchExcludesOtherOptions(@TempDir Path tempDir) {
+		System.setErr(printStream);
+		final Path cache = tempDir.resolve("cache");
+		for (String option : new String[] {"--cache=" + cache, "--checkpoint=" + tempDir.resolve("checkpoint"),
+				"--format=jsonl", "--time-limit=1", "--max-bytes=1", "--max-files=1", "--device-limit=1",
+				"--prefilter=false", "--virtual-threads=true", "--async-reads=4", "--buffer-memory=1", "--walk-threads=1",
+				"--compare-threads=1", "--progress=0", "--reference=" + tempDir.resolve("reference.idx")}) {
+			byteArrayOutputStream.reset();
+			DupFinderConsole.main(new String[] {"--watch=true", option, PATH_SAME_SIZE_FOLDER});
+			assertEquals(
+					"FEHLER: Option --watch kann nur mit --include, --exclude, --min-size, --max-size, --follow-links und --same-filesystem kombiniert werden." + USAGE,
+					byteArrayOutputStream.toString(StandardCharsets.UTF_8).trim(), option);
+		}
+		assertFalse(Files.exists(cache));
+	}
+
+	@Test
+	public void testWatchOption() throws InterruptedException {
+		System.setOut(printStream);
+		final Thread watch = new Thread(() -> DupFinderConsole.main(new String[] {"--watch=true", PATH_DUPLICATE_FOLDER}));
+		watch.start();
+		final long end = System.currentTimeMillis() + 20_000L;
+		while (!byteArrayOutputStream.toString(StandardCharsets.UTF_8).contains("Watching")
+				&& System.currentTimeMillis() < end) {
+			Thread.sleep(10);
+		}
+		watch.interrupt();
+		watch.join(20_000L);
+		assertFalse(watch.isAlive());
+		final String output = byteArrayOutputStream.toString(StandardCharsets.UTF_8);
+		assertTrue(output.contains("Group created: "));
+		assertTrue(output.contains(", 2 files of 91 bytes"));
+		assertTrue(output.contains("Watching 2 directories with 1 groups"));
+	}
+
+	@Test
+	public void testJsonLinesFormat() {
+		final ByteArrayOutputStream status = new ByteArrayOutputStream();
+		System.setOut(printStream);
+		System.setErr(new PrintStream(status));
+		DupFinderConsole.main(new String[] {"--format=jsonl", "--progress=0", PATH_DUPLICATE_FOLDER});
+		final String output = byteArrayOutputStream.toString(StandardCharsets.UTF_8);
+		assertTrue(output.startsWith("{\"files\":2,\"length\":91,\"hash\":null,\"paths\":[\""));
+		assertTrue(output.endsWith("\"]}\n"));
+		assertFalse(output.contains("Duplicate size"));
+		assertTrue(status.toString(StandardCharsets.UTF_8).contains("Duplicate size: 91"));
+	}
+
+	@Test
+	public void testCsvOutputOption(@TempDir Path tempDir) throws IOException {
+		System.setOut(printStream);
+		final Path output = tempDir.resolve("groups.csv");
+		DupFinderConsole.main(new String[] {"--format=csv", "--output=" + output, PATH_DUPLICATE_FOLDER});
+		assertTrue(byteArrayOutputStream.toString(StandardCharsets.UTF_8).contains("Duplicate size: 91"));
+		final List<String> lines = Files.readAllLines(output);
+		assertEquals(3, lines.size());
+		assertEquals("group,files,length,hash,root,path", lines.get(0));
+		assertTrue(lines.get(1).startsWith("1,2,91,,"));
+	}
+
+	@Test
+	public void testOutputRequiresFormat() {
+		System.setErr(printStream);
+		DupFinderConsole.main(new String[] {"--output=groups.csv", PATH_SAME_SIZE_FOLDER});
+		assertEquals(
+				"FEHLER: Option --output erfordert --format." + USAGE,
+				byteArrayOutputStream.toString(StandardCharsets.UTF_8).trim());
+	}
+
+	@Test
+	public void testInvalidFormat() {
+		System.setErr(printStream);
+		DupFinderConsole.main(new String[] {"--format=xml", PATH_SAME_SIZE_FOLDER});
+		assertEquals(
+				"FEHLER: Ungültiger Wert für Option: --format=xml" + USAGE,
+				byteArrayOutputStream.toString(StandardCharsets.UTF_8).trim());
+	}
+
+	@Test
+	public void testInvalidOptionValue() {
+		System.setErr(printStream);
+		DupFinderConsole.main(new String[] {"--follow-links=maybe", PATH_SAME_SIZE_FOLDER});
+		assertEquals(
+				"FEHLER: Ungültiger Wert für Option: --follow-links=maybe" + USAGE,
+				byteArrayOutputStream.toString(StandardCharsets.UTF_8).trim());
+	}
+
+	@Test
+	public void testWalkOptions() {
+		System.setOut(printStream);
+		DupFinderConsole.main(new String[] {"--follow-links=false", "--same-filesystem=true", PATH_DUPLICATE_FOLDER});
+		assertTrue(byteArrayOutputStream.toString(StandardCharsets.UTF_8).contains("Duplicate size: 91"));
+	}
+
+	@Test
+	public void testFilterOptions() {
+		System.setOut(printStream);
+		DupFinderConsole.main(new String[] {"--exclude=subdirectory", "--min-size=1", PATH_DUPLICATE_FOLDER});
+		DupFinderConsole.main(new String[] {"--include=*.none", PATH_DUPLICATE_FOLDER});
+		final String output = byteArrayOutputStream.toString(StandardCharsets.UTF_8);
+		assertTrue(output.contains("Duplicate size: 0"));
+	}
+
+	@Test
+	public void testInvalidSizeOption() {
+		System.setErr(printStream);
+		DupFinderConsole.main(new String[] {"--min-size=10", "--max-size=5", PATH_SAME_SIZE_FOLDER});
+		assertEquals(
+				"FEHLER: Ungültiger Wert für Option: --max-size=5" + USAGE,
+				byteArrayOutputStream.toString(StandardCharsets.UTF_8).trim());
+	}
+
+	@Test
+	public void testThreadOptions() {
+		System.setOut(printStream);
+		DupFinderConsole.main(new String[] {"--walk-threads=1", "--compare-threads=2", PATH_DUPLICATE_FOLDER});
+		assertTrue(byteArrayOutputStream.toString(StandardCharsets.UTF_8).contains("Duplicate size: 91"));
+	}
+
+	@Test
+	public void testInvalidThreadOption() {
+		System.setErr(printStream);
+		DupFinderConsole.main(new String[] {"--compare-threads=0", PATH_SAME_SIZE_FOLDER});
+		assertEquals(
+				"FEHLER: Ungültiger Wert für Option: --compare-threads=0" + USAGE,
+				byteArrayOutputStream.toString(StandardCharsets.UTF_8).trim());
+	}
+
+	@Test
+	public void testDeviceLimitOption() {
+		System.setOut(printStream);
+		DupFinderConsole.main(new String[] {"--device-limit=4", "--device-limit=" + PATH_DUPLICATE_FOLDER + "=1", PATH_DUPLICATE_FOLDER});
+		assertTrue(byteArrayOutputStream.toString(StandardCharsets.UTF_8).contains("Duplicate size: 91"));
+	}
+
+	@Test
+	public void testVirtualThreadsOption() {
+		System.setOut(printStream);
+		DupFinderConsole.main(new String[] {"--virtual-threads=true", PATH_DUPLICATE_FOLDER});
+		assertTrue(byteArrayOutputStream.toString(StandardCharsets.UTF_8).contains("Duplicate size: 91"));
+	}
+
+	@Test
+	public void testPrefilterOption() {
+		System.setOut(printStream);
+		DupFinderConsole.main(new String[] {"--prefilter=false", PATH_DUPLICATE_FOLDER});
+		assertTrue(byteArrayOutputStream.toString(StandardCharsets.UTF_8).contains("Duplicate size: 91"));
+	}
+
+	@Test
+	public void testInvalidPrefilterOption() {
+		System.setErr(printStream);
+		DupFinderConsole.main(new String[] {"--prefilter=maybe", PATH_DUPLICATE_FOLDER});
+		assertEquals("FEHLER: Ungültiger Wert für Option: --prefilter=maybe" + USAGE,
+				byteArrayOutputStream.toString(StandardCharsets.UTF_8).trim());
+	}
+
+	@Test
+	public void testAsyncReadsOption() {
+		System.setOut(printStream);
+		DupFinderConsole.main(new String[] {"--async-reads=16", PATH_DUPLICATE_FOLDER});
+		assertTrue(byteArrayOutputStream.toString(StandardCharsets.UTF_8).contains("Duplicate size: 91"));
+	}
+
+	@Test
+	public void testProgressOption() {
+		System.setOut(printStream);
+		DupFinderConsole.main(new String[] {"--progress=0", PATH_DUPLICATE_FOLDER});
+		final String output = byteArrayOutputStream.toString(StandardCharsets.UTF_8);
+		assertTrue(output.contains("Duplicate size: 91"));
+		assertTrue(output.contains("Walked "));
+		assertTrue(output.contains("Compared "));
+	}
+
+	@Test
+	public void testInvalidProgressOption() {
+		System.setErr(printStream);
+		DupFinderConsole.main(new String[] {"--progress=-1", PATH_SAME_SIZE_FOLDER});
+		assertEquals(
+				"FEHLER: Ungültiger Wert für Option: --progress=-1" + USAGE,
+				byteArrayOutputStream.toString(StandardCharsets.UTF_8).trim());
+	}
+
+	@Test
+	public void testBufferMemoryOption() {
+		System.setOut(printStream);
+		DupFinderConsole.main(new String[] {"--buffer-memory=1", PATH_DUPLICATE_FOLDER});
+		assertTrue(byteArrayOutputStream.toString(StandardCharsets.UTF_8).contains("Duplicate size: 91"));
+	}
+
+	@Test
+	public void testMaxFilesOption() {
+		System.setOut(printStream);
+		DupFinderConsole.main(new String[] {"--compare-threads=1", "--max-files=1", PATH_DUPLICATE_FOLDER});
+		final String output = byteArrayOutputStream.toString(StandardCharsets.UTF_8);
+		assertTrue(output.contains("Stopped early (FILES_OPENED): 0 directories not walked, "));
+		assertTrue(output.contains("Program end: "));
+	}
+
+	@Test
+	public void testTimeLimitOption() {
+		System.setOut(printStream);
+		DupFinderConsole.main(new String[] {"--time-limit=3600", PATH_DUPLICATE_FOLDER});
+		final String output = byteArrayOutputStream.toString(StandardCharsets.UTF_8);
+		assertTrue(output.contains("Duplicate size: 91"));
+		assertFalse(output.contains("Stopped early"));
+	}
+
+	@Test
+	public void testInvalidBudgetOption() {
+		System.setErr(printStream);
+		DupFinderConsole.main(new String[] {"--max-bytes=0", PATH_DUPLICATE_FOLDER});
+		assertEquals("FEHLER: Ungültiger Wert für Option: --max-bytes=0" + USAGE,
+				byteArrayOutputStream.toString(StandardCharsets.UTF_8).trim());
+	}
+
+	@Test
+	public void testCheckpointOption(@TempDir Path tempDir) {
+		final Path checkpoint = tempDir.resolve("checkpoint");
+		System.setOut(printStream);
+		DupFinderConsole.main(new String[] {"--compare-threads=1", "--max-files=1", "--checkpoint=" + checkpoint, PATH_DUPLICATE_FOLDER});
+		assertTrue(byteArrayOutputStream.toString(StandardCharsets.UTF_8).contains("Stopped early (FILES_OPENED)"));
+		assertTrue(Files.exists(checkpoint));
+
+		byteArrayOutputStream.reset();
+		DupFinderConsole.main(new String[] {"--checkpoint=" + checkpoint, PATH_DUPLICATE_FOLDER});
+		final String output = byteArrayOutputStream.toString(StandardCharsets.UTF_8);
+		assertTrue(output.contains("Resuming from checkpoint: "));
+		assertTrue(output.contains("Duplicate size: 91"));
+		assertFalse(Files.exists(checkpoint));
+	}
+
+	@Test
+	public void testProgressLine() {
+		final ScanMetrics metrics = new ScanMetrics();
+		assertNull(DupFinderConsole.progress(metrics.snapshot()));
+		try (ScanExecutor executor = new ScanExecutor(1, 1, metrics)) {
+			executor.getIndex(Path.of(PATH_DUPLICATE_FOLDER), new DuplicateLengthFinderCallback() {}, WalkOptions.DEFAULT);
+		}
+		assertTrue(DupFinderConsole.progress(metrics.snapshot()).startsWith("Progress: walking, "));
+	}
 }
@@ -0,0 +1,94 @@
+package de.b0n.dir.processor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class AppendLogTest {
+	private static final int MAGIC = 0x44465445;
+	private static final int VERSION = 1;
+
+	private static long load(AppendLog log, List<String> values) throws IOException {
+		return log.load(input -> assertEquals("header", input.readUTF()), (type, input) -> {
+			if (type != 1) {
+				return false;
+			}
+			values.add(input.readUTF());
+			return true;
+		});
+	}
+
+	private static void append(AppendLog log, String value) throws IOException {
+		log.append(AppendLog.serialize(target -> {
+			target.writeByte(1);
+			target.writeUTF(value);
+		}));
+	}
+
+	@Test
+	public void appendsAndLoadsRecords(@TempDir Path tempDir) throws IOException {
+		final Path file = tempDir.resolve("log");
+		try (AppendLog log = new AppendLog(file, MAGIC, VERSION, "test log")) {
+			assertEquals(0L, load(log, new ArrayList<>()));
+			log.rewrite(header -> header.writeUTF("header"), records -> {});
+			log.openForAppend();
+			append(log, "a");
+			append(log, "b");
+		}
+
+		final List<String> values = new ArrayList<>();
+		assertEquals(2L, load(new AppendLog(file, MAGIC, VERSION, "test log"), values));
+		assertEquals(List.of("a", "b"), values);
+	}
+
+	@Test
+	public void dropsIncompleteLastRecord(@TempDir Path tempDir) throws IOException {
+		final Path file = tempDir.resolve("log");
+		try (AppendLog log = new AppendLog(file, MAGIC, VERSION, "test log")) {
+			log.rewrite(header -> header.writeUTF("header"), records -> {});
+			log.openForAppend();
+			append(log, "a");
+			append(log, "b");
+		}
+		final byte[] content = Files.readAllBytes(file);
+		Files.write(file, Arrays.copyOf(content, content.length - 1));
+
+		final List<String> values = new ArrayList<>();
+		assertEquals(-1L, load(new AppendLog(file, MAGIC, VERSION, "test log"), values));
+		assertEquals(List.of("a"), values);
+	}
+
+	@Test
+	public void rejectsOtherLogs(@TempDir Path tempDir) throws IOException {
+		final Path file = tempDir.resolve("log");
+		new AppendLog(file, MAGIC, VERSION, "test log").rewrite(header -> header.writeUTF("header"), records -> {});
+
+		assertThrows(IOException.class, () -> load(new AppendLog(file, MAGIC + 1, VERSION, "other log"), new ArrayList<>()));
+		assertThrows(IOException.class, () -> load(new AppendLog(file, MAGIC, VERSION + 1, "test log"), new ArrayList<>()));
+	}
+
+	@Test
+	public void rejectsAppendAfterClose(@TempDir Path tempDir) throws IOException {
+		final AppendLog log = new AppendLog(tempDir.resolve("log"), MAGIC, VERSION, "test log");
+		log.openForAppend();
+		log.close();
+		assertFalse(log.isOpen());
+		assertThrows(IllegalStateException.class, () -> append(log, "a"));
+	}
+
+	@Test
+	public void compactsLogsWithManyObsoleteRecords() {
+		assertTrue(AppendLog.needsRewrite(0L, 0L));
+		assertTrue(AppendLog.needsRewrite(-1L, 10L));
+		assertFalse(AppendLog.needsRewrite(20L, 10L));
+		assertTrue(AppendLog.needsRewrite(21L, 10L));
+	}
+}
@@ -0,0 +1,116 @@
+package de.b0n.dir.processor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class BufferPoolTest {
+
+	@Test
+	public void invalidMaxBytes() {
+		assertThrows(IllegalArgumentException.class, () -> new BufferPool(BufferPool.MIN_BLOCK_SIZE - 1));
+	}
+
+	@Test
+	public void keepsDesiredBlockSizeWithinBudget() {
+		final BufferPool pool = new BufferPool(1024 * 1024);
+		try (BufferPool.Reservation reservation = pool.reserve(64 * 1024, 4)) {
+			assertEquals(64 * 1024, reservation.getBlockSize());
+			assertEquals(64 * 1024, reservation.buffer().capacity());
+		}
+	}
+
+	@Test
+	public void shrinksBlockSizeWithConcurrentReaders() {
+		final BufferPool pool = new BufferPool(1024 * 1024);
+		try (BufferPool.Reservation first = pool.reserve(64 * 1024, 8)) {
+			assertEquals(64 * 1024, first.getBlockSize());
+			try (BufferPool.Reservation second = pool.reserve(1024 * 1024, 8)) {
+				assertEquals(64 * 1024, second.getBlockSize());
+			}
+		}
+		assertTrue(pool.getPeakBytes() <= pool.getMaxBytes());
+	}
+
+	@Test
+	public void reusesReturnedBuffers() {
+		final BufferPool pool = new BufferPool(1024 * 1024, true);
+		final ByteBuffer buffer;
+		try (BufferPool.Reservation reservation = pool.reserve(4096, 1)) {
+			buffer = reservation.buffer();
+			assertTrue(buffer.isDirect());
+			buffer.put((byte) 1);
+		}
+		try (BufferPool.Reservation reservation = pool.reserve(4096, 1)) {
+			final ByteBuffer reused = reservation.buffer();
+			assertSame(buffer, reused);
+			assertEquals(0, reused.position());
+		}
+	}
+
+	@Test
+	public void groupLargerThanBudgetGetsBlocksBelowSmallestSize() {
+		final BufferPool pool = new BufferPool(4 * BufferPool.MIN_BLOCK_SIZE);
+		try (BufferPool.Reservation reservation = pool.reserve(4096, 10)) {
+			assertEquals(128, reservation.getBlockSize());
+			for (int i = 0; i < 10; i++) {
+				assertEquals(128, reservation.buffer().capacity());
+			}
+		}
+		try (BufferPool.Reservation reservation = pool.reserve(4096, 1)) {
+			assertEquals(4096 / 2, reservation.getBlockSize());
+		}
+		assertTrue(pool.getPeakBytes() <= pool.getMaxBytes());
+		assertThrows(IllegalArgumentException.class, () -> pool.reserve(1, (int) pool.getMaxBytes() + 1));
+	}
+
+	@Test
+	public void exhaustedBudgetWaitsForRelease() throws Exception {
+		final BufferPool pool = new BufferPool(BufferPool.MIN_BLOCK_SIZE);
+		final CompletableFuture<Integer> waiting;
+		try (BufferPool.Reservation reservation = pool.reserve(4096, 1)) {
+			assertEquals(BufferPool.MIN_BLOCK_SIZE, reservation.getBlockSize());
+			reservation.buffer();
+			waiting = CompletableFuture.supplyAsync(() -> {
+				try (BufferPool.Reservation next = pool.reserve(4096, 1)) {
+					next.buffer();
+					return next.getBlockSize();
+				}
+			});
+			Thread.sleep(200);
+			assertFalse(waiting.isDone());
+		}
+		assertEquals(BufferPool.MIN_BLOCK_SIZE, waiting.get(10, TimeUnit.SECONDS));
+		assertEquals(BufferPool.MIN_BLOCK_SIZE, pool.getPeakBytes());
+	}
+
+	@Test
+	public void concurrentReservationsStayWithinBudget() throws Exception {
+		final BufferPool pool = new BufferPool(8 * BufferPool.MIN_BLOCK_SIZE);
+		final List<CompletableFuture<Void>> rounds = new ArrayList<>();
+		try (ExecutorService executor = Executors.newFixedThreadPool(16)) {
+			for (int i = 0; i < 200; i++) {
+				final int readers = 1 + i % 40;
+				rounds.add(CompletableFuture.runAsync(() -> {
+					try (BufferPool.Reservation reservation = pool.reserve(64 * 1024, readers)) {
+						for (int j = 0; j < readers; j++) {
+							assertEquals(reservation.getBlockSize(), reservation.buffer().capacity());
+						}
+						Thread.yield();
+					}
+				}, executor));
+			}
+			CompletableFuture.allOf(rounds.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+		}
+		assertTrue(pool.getPeakBytes() > 0);
+		assertTrue(pool.getPeakBytes() <= pool.getMaxBytes(), "peak " + pool.getPeakBytes());
+	}
+}
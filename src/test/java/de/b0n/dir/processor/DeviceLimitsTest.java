@@ -0,0 +1,98 @@
+package de.b0n.dir.processor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DeviceLimitsTest {
+
+	@Test
+	public void invalidLimits() {
+		assertThrows(IllegalArgumentException.class, () -> new DeviceLimits(0));
+		assertThrows(IllegalArgumentException.class, () -> new DeviceLimits().withDefaultLimit(0));
+		assertThrows(IllegalArgumentException.class, () -> new DeviceLimits().withLimit(null, 1));
+		assertThrows(IllegalArgumentException.class, () -> new DeviceLimits().withLimit(Path.of("."), 0));
+		assertThrows(IllegalArgumentException.class, () -> new DeviceLimits().withLimit(Path.of("src/test/resourcesInvalid"), 1));
+	}
+
+	@Test
+	public void filesOnOneDeviceSharePermits(@TempDir Path tempDir) throws IOException {
+		final File first = Files.write(tempDir.resolve("first"), new byte[1]).toFile();
+		final File second = Files.write(tempDir.resolve("second"), new byte[1]).toFile();
+		final DeviceLimits limits = new DeviceLimits(8).withLimit(tempDir, 2);
+
+		final DeviceLimits.Location firstLocation = limits.locate(first);
+		final DeviceLimits.Location secondLocation = limits.locate(second);
+
+		assertEquals(firstLocation.device(), secondLocation.device());
+		assertNotEquals(firstLocation.inode(), secondLocation.inode());
+		assertSame(firstLocation.permits(), secondLocation.permits());
+		assertEquals(2, firstLocation.permits().availablePermits());
+	}
+
+	@Test
+	public void readsEachDeviceInLocalityOrder() {
+		final Semaphore first = new Semaphore(1);
+		final Semaphore second = new Semaphore(1);
+		final List<DeviceLimits.Location> locations = IntStream.range(0, 400)
+				.mapToObj(i -> new DeviceLimits.Location(i % 2, i, i % 2 == 0 ? first : second))
+				.toList();
+		final Queue<DeviceLimits.Location> read = new ConcurrentLinkedQueue<>();
+
+		final List<Long> result = new DeviceLimits(1).inOrder(locations, location -> location, location -> {
+			assertTrue(location.permits().tryAcquire(), "Device is read concurrently");
+			read.add(location);
+			Thread.yield();
+			location.permits().release();
+			return location.inode();
+		}, null);
+
+		assertEquals(locations.stream().map(DeviceLimits.Location::inode).toList(), result);
+		for (long device = 0; device < 2; device++) {
+			final long current = device;
+			assertEquals(locations.stream().filter(location -> location.device() == current).toList(),
+					read.stream().filter(location -> location.device() == current).toList());
+		}
+	}
+
+	@Test
+	public void readsFilesInInodeOrder(@TempDir Path tempDir) throws IOException {
+		final List<File> files = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			files.add(Files.write(tempDir.resolve("file" + i), new byte[] { (byte) i }).toFile());
+		}
+		final DeviceLimits limits = new DeviceLimits(1);
+		final List<FileReader> pack = FileReader.pack(files, null, FileReader.NO_MAPPING, limits);
+		final Queue<DeviceLimits.Location> read = new ConcurrentLinkedQueue<>();
+
+		limits.inOrder(pack, FileReader::getLocation, reader -> {
+			read.add(reader.getLocation());
+			return reader.read(1);
+		}, null);
+
+		final List<Long> inodes = read.stream().map(DeviceLimits.Location::inode).toList();
+		assertEquals(inodes.stream().sorted(Comparator.naturalOrder()).toList(), inodes);
+		assertEquals(files.size(), inodes.size());
+		pack.forEach(FileReader::clear);
+	}
+
+	@Test
+	public void unknownFileUsesDefaultLimit() {
+		final DeviceLimits.Location location = new DeviceLimits(3).locate(new File("src/test/resources/Testxxx1.txt"));
+		assertEquals(-1L, location.device());
+		assertEquals(3, location.permits().availablePermits());
+	}
+}
@@ -5,11 +5,16 @@ import static org.junit.jupiter.api.Assertions.*;
 import static java.util.List.of;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Serial;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 public class DuplicateContentFinderTest {
 
@@ -144,4 +149,400 @@ public class DuplicateContentFinderTest {
 		assertTrue(group1.get(0).getAbsolutePath().endsWith("Test1.txt") || group2.get(0).getAbsolutePath().endsWith("Test1.txt"));
 		assertTrue(group1.get(0).getAbsolutePath().endsWith("Test2.txt") || group2.get(0).getAbsolutePath().endsWith("Test2.txt"));
 	}
+
+	@Test
+	public void scanLargeFilesDifferingInLastByte(@TempDir Path tempDir) throws IOException {
+		final byte[] content = new byte[3 * CompareContentStrategy.MAX_BLOCK_SIZE + 17];
+		new Random(42).nextBytes(content);
+		final File original = Files.write(tempDir.resolve("original.bin"), content).toFile();
+		final File copy = Files.write(tempDir.resolve("copy.bin"), content).toFile();
+		content[content.length - 1]++;
+		final File modified = Files.write(tempDir.resolve("modified.bin"), content).toFile();
+
+		List<File> uniqueFiles = new ArrayList<>();
+		final List<List<File>> output = DuplicateContentFinder.getResult(of(original, modified, copy),
+				new FailingDuplicateContentFinderCallback() {
+					@Override
+					public void uniqueFile(File uniqueFile) {
+						uniqueFiles.add(uniqueFile);
+					}
+				}).toList();
+
+		assertEquals(1, output.size());
+		assertEquals(Set.of(original, copy), new HashSet<>(output.get(0)));
+		assertEquals(List.of(modified), uniqueFiles);
+	}
+
+	@Test
+	public void scanFilesOfDifferentLengthWithSamePrefix(@TempDir Path tempDir) throws IOException {
+		final byte[] content = new byte[CompareContentStrategy.MIN_BLOCK_SIZE * 2];
+		new Random(7).nextBytes(content);
+		final File longer = Files.write(tempDir.resolve("longer.bin"), content).toFile();
+		final File shorter = Files.write(tempDir.resolve("shorter.bin"), Arrays.copyOf(content, content.length - 1)).toFile();
+
+		final List<List<File>> output = DuplicateContentFinder.getResult(of(longer, shorter),
+				new DuplicateContentFinderCallback() {}).toList();
+
+		assertTrue(output.isEmpty());
+	}
+
+	@Test
+	public void noArgumentStrategy() {
+		assertThrows(IllegalArgumentException.class, () -> DuplicateContentFinder.getResult(of(
+				new File(PATH_FILE_1A),
+				new File(PATH_FILE_1B)), FAILING_DCF_CALLBACK, null));
+	}
+
+	@Test
+	public void scanDoubleDuplicateInputWithHashStrategies() {
+		for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+			final List<List<File>> output = DuplicateContentFinder.getResult(of(
+					new File(PATH_FILE_1A),
+					new File(PATH_FILE_2A),
+					new File(PATH_FILE_2B),
+					new File(PATH_FILE_1B)),
+					FAILING_DCF_CALLBACK,
+					new HashContentStrategy(algorithm)).toList();
+			assertEquals(2, output.size());
+			assertEquals(2, output.get(0).size());
+			assertEquals(2, output.get(1).size());
+			assertEquals(output.get(0).get(0).getName(), output.get(0).get(1).getName());
+		}
+	}
+
+	@Test
+	public void scanFailingInputWithHashStrategy() {
+		List<File> failFiles = new ArrayList<>();
+		final List<List<File>> output = DuplicateContentFinder.getResult(of(
+				new File("src/test/resources/Testxxx1.txt"),
+				new File(PATH_FILE_1A),
+				new File(PATH_FILE_1B)),
+				new FailingDuplicateContentFinderCallback() {
+					@Override
+					public void failedFile(File failedFile) {
+						failFiles.add(failedFile);
+					}
+				},
+				new HashContentStrategy(HashAlgorithm.SHA_256)).toList();
+		assertEquals(1, failFiles.size());
+		assertEquals(1, output.size());
+	}
+
+	@Test
+	public void scanGroupLargerThanOpenFileBudget(@TempDir Path tempDir) throws IOException {
+		final byte[] content = new byte[CompareContentStrategy.MIN_BLOCK_SIZE * 20];
+		new Random(13).nextBytes(content);
+		final List<File> copies = new ArrayList<>();
+		for (int i = 0; i < 30; i++) {
+			copies.add(Files.write(tempDir.resolve("copy" + i + ".bin"), content).toFile());
+		}
+		content[content.length - 1]++;
+		final File modified = Files.write(tempDir.resolve("modified.bin"), content).toFile();
+		final List<File> input = new ArrayList<>(copies);
+		input.add(modified);
+
+		final List<File> uniqueFiles = new ArrayList<>();
+		final List<List<File>> output = DuplicateContentFinder.getResult(input,
+				new FailingDuplicateContentFinderCallback() {
+					@Override
+					public void uniqueFile(File uniqueFile) {
+						uniqueFiles.add(uniqueFile);
+					}
+				},
+				new CompareContentStrategy(new OpenFileBudget(4))).toList();
+
+		assertEquals(1, output.size());
+		assertEquals(new HashSet<>(copies), new HashSet<>(output.get(0)));
+		assertEquals(List.of(modified), uniqueFiles);
+	}
+
+	@Test
+	public void scanMappedFilesDifferingInLastByte(@TempDir Path tempDir) throws IOException {
+		final byte[] content = new byte[2 * CompareContentStrategy.MAX_BLOCK_SIZE + 5];
+		new Random(17).nextBytes(content);
+		final File original = Files.write(tempDir.resolve("original.bin"), content).toFile();
+		final File copy = Files.write(tempDir.resolve("copy.bin"), content).toFile();
+		content[content.length - 1]++;
+		final File modified = Files.write(tempDir.resolve("modified.bin"), content).toFile();
+
+		final List<List<File>> output = DuplicateContentFinder.getResult(of(original, modified, copy),
+				new DuplicateContentFinderCallback() {},
+				new CompareContentStrategy().withMapThreshold(0L)).toList();
+
+		assertEquals(1, output.size());
+		assertEquals(Set.of(original, copy), new HashSet<>(output.get(0)));
+	}
+
+	@Test
+	public void groupsCarryLengthAndIdentity() {
+		final DuplicateGroup compared = DuplicateContentFinder.getGroups(of(
+				new File(PATH_FILE_1A),
+				new File(PATH_FILE_1B)), FAILING_DCF_CALLBACK, new CompareContentStrategy()).findFirst().orElseThrow();
+		assertEquals(new File(PATH_FILE_1A).length(), compared.getLength());
+		assertEquals(compared.getLength(), compared.getWaste());
+		assertTrue(compared.getIdentity().isEmpty());
+
+		final DuplicateGroup hashed = DuplicateContentFinder.getGroups(of(
+				new File(PATH_FILE_1A),
+				new File(PATH_FILE_1B)), FAILING_DCF_CALLBACK, new HashContentStrategy(HashAlgorithm.SHA_256)).findFirst().orElseThrow();
+		assertEquals(compared.getLength(), hashed.getLength());
+		assertEquals(HashAlgorithm.SHA_256, hashed.getIdentity().orElseThrow().getAlgorithm());
+	}
+
+	@Test
+	public void publishPushesEveryGroup() {
+		final Queue<DuplicateGroup> groups = new ConcurrentLinkedQueue<>();
+		final boolean complete = DuplicateContentFinder.publish(Stream.of(
+				of(new File(PATH_FILE_1A), new File(PATH_FILE_1B)),
+				of(new File(PATH_FILE_2A), new File(PATH_FILE_2B))),
+				new CompareContentStrategy(),
+				new SinkAdapter() {
+					@Override
+					public boolean accept(DuplicateGroup group) {
+						groups.add(group);
+						return true;
+					}
+				});
+		assertTrue(complete);
+		assertEquals(2, groups.size());
+	}
+
+	@Test
+	public void publishStopsWhenLimitIsReached() {
+		final Queue<DuplicateGroup> groups = new ConcurrentLinkedQueue<>();
+		final boolean complete = DuplicateContentFinder.publish(Stream.of(
+				of(new File(PATH_FILE_1A), new File(PATH_FILE_1B)),
+				of(new File(PATH_FILE_2A), new File(PATH_FILE_2B))),				new CompareContentStrategy(),
+				DuplicateGroupSink.limit(new SinkAdapter() {
+					@Override
+					public boolean accept(DuplicateGroup group) {
+						groups.add(group);
+						return true;
+					}
+				}, 1, Long.MAX_VALUE));
+		assertFalse(complete);
+		assertEquals(1, groups.size());
+	}
+
+	@Test
+	public void publishInvalidArguments() {
+		final DuplicateGroupSink sink = group -> true;
+		assertThrows(IllegalArgumentException.class, () -> DuplicateContentFinder.publish(null, new CompareContentStrategy(), sink));
+		assertThrows(IllegalArgumentException.class, () -> DuplicateContentFinder.publish(Stream.empty(), null, sink));
+		assertThrows(IllegalArgumentException.class, () -> DuplicateContentFinder.publish(Stream.empty(), new CompareContentStrategy(), null));
+		assertThrows(IllegalArgumentException.class, () -> DuplicateGroupSink.limit(sink, 0, 1));
+	}
+
+	@Test
+	public void scanWithDeviceLimits() {
+		final DeviceLimits limits = new DeviceLimits(1);
+		for (ContentStrategy strategy : List.<ContentStrategy>of(
+				new CompareContentStrategy().withDeviceLimits(limits),
+				new HashContentStrategy(HashAlgorithm.MURMUR3_128).withDeviceLimits(limits))) {
+			final List<File> failFiles = new ArrayList<>();
+			final List<List<File>> output = DuplicateContentFinder.getResult(of(
+					new File(PATH_FILE_1A),
+					new File(PATH_FILE_2A),
+					new File("src/test/resources/Testxxx1.txt"),
+					new File(PATH_FILE_2B),
+					new File(PATH_FILE_1B)),
+					new FailingDuplicateContentFinderCallback() {
+						@Override
+						public void failedFile(File failedFile) {
+							failFiles.add(failedFile);
+						}
+					},
+					strategy).toList();
+			assertEquals(2, output.size());
+			assertEquals(1, failFiles.size());
+		}
+	}
+
+	@Test
+	public void scanGroupLargerThanOpenFileBudgetOnVirtualThreads(@TempDir Path tempDir) throws IOException {
+		final byte[] content = new byte[CompareContentStrategy.MIN_BLOCK_SIZE * 20];
+		new Random(19).nextBytes(content);
+		final List<File> copies = new ArrayList<>();
+		for (int i = 0; i < 30; i++) {
+			copies.add(Files.write(tempDir.resolve("copy" + i + ".bin"), content).toFile());
+		}
+		content[0]++;
+		final File modified = Files.write(tempDir.resolve("modified.bin"), content).toFile();
+		final List<File> input = new ArrayList<>(copies);
+		input.add(modified);
+		input.add(new File("src/test/resources/Testxxx1.txt"));
+
+		final List<File> uniqueFiles = new ArrayList<>();
+		final List<File> failFiles = new ArrayList<>();
+		final List<List<File>> output = DuplicateContentFinder.getResult(input,
+				new DuplicateContentFinderCallback() {
+					@Override
+					public void uniqueFile(File uniqueFile) {
+						uniqueFiles.add(uniqueFile);
+					}
+
+					@Override
+					public void failedFile(File failedFile) {
+						failFiles.add(failedFile);
+					}
+				},
+				new CompareContentStrategy(new OpenFileBudget(4)).withVirtualThreads(true)).toList();
+
+		assertEquals(1, output.size());
+		assertEquals(new HashSet<>(copies), new HashSet<>(output.get(0)));
+		assertEquals(List.of(modified), uniqueFiles);
+		assertEquals(1, failFiles.size());
+	}
+
+	@Test
+	public void scanGroupLargerThanOpenFileBudgetAsynchronously(@TempDir Path tempDir) throws IOException {
+		final byte[] content = new byte[CompareContentStrategy.MIN_BLOCK_SIZE * 20];
+		new Random(23).nextBytes(content);
+		final List<File> copies = new ArrayList<>();
+		for (int i = 0; i < 30; i++) {
+			copies.add(Files.write(tempDir.resolve("copy" + i + ".bin"), content).toFile());
+		}
+		content[0]++;
+		final File modified = Files.write(tempDir.resolve("modified.bin"), content).toFile();
+		final List<File> input = new ArrayList<>(copies);
+		input.add(modified);
+		input.add(new File("src/test/resources/Testxxx1.txt"));
+
+		final List<File> uniqueFiles = new ArrayList<>();
+		final List<File> failFiles = new ArrayList<>();
+		final List<List<File>> output = DuplicateContentFinder.getResult(input,
+				new DuplicateContentFinderCallback() {
+					@Override
+					public void uniqueFile(File uniqueFile) {
+						uniqueFiles.add(uniqueFile);
+					}
+
+					@Override
+					public void failedFile(File failedFile) {
+						failFiles.add(failedFile);
+					}
+				},
+				new CompareContentStrategy(new OpenFileBudget(4)).withAsynchronousReads(3)).toList();
+
+		assertEquals(1, output.size());
+		assertEquals(new HashSet<>(copies), new HashSet<>(output.get(0)));
+		assertEquals(List.of(modified), uniqueFiles);
+		assertEquals(1, failFiles.size());
+	}
+
+	@Test
+	public void scanGroupLargerThanBufferPool(@TempDir Path tempDir) throws IOException {
+		final byte[] content = new byte[CompareContentStrategy.MIN_BLOCK_SIZE * 20];
+		new Random(29).nextBytes(content);
+		final List<File> copies = new ArrayList<>();
+		for (int i = 0; i < 30; i++) {
+			copies.add(Files.write(tempDir.resolve("copy" + i + ".bin"), content).toFile());
+		}
+		content[content.length - 1]++;
+		final File modified = Files.write(tempDir.resolve("modified.bin"), content).toFile();
+		final List<File> input = new ArrayList<>(copies);
+		input.add(modified);
+
+		final BufferPool bufferPool = new BufferPool(8 * 1024);
+		for (CompareContentStrategy strategy : List.of(
+				new CompareContentStrategy().withBufferPool(bufferPool),
+				new CompareContentStrategy().withBufferPool(new BufferPool(64 * 1024, true)).withAsynchronousReads(4))) {
+			final List<File> uniqueFiles = new ArrayList<>();
+			final List<List<File>> output = DuplicateContentFinder.getResult(input,
+					new DuplicateContentFinderCallback() {
+						@Override
+						public void uniqueFile(File uniqueFile) {
+							uniqueFiles.add(uniqueFile);
+						}
+					}, strategy).toList();
+
+			assertEquals(1, output.size());
+			assertEquals(new HashSet<>(copies), new HashSet<>(output.get(0)));
+			assertEquals(List.of(modified), uniqueFiles);
+		}
+		assertTrue(bufferPool.getPeakBytes() <= bufferPool.getMaxBytes());
+	}
+
+	@Test
+	public void scanGroupWithMoreFilesThanBufferPoolBytes(@TempDir Path tempDir) throws IOException {
+		final BufferPool bufferPool = new BufferPool(BufferPool.MIN_BLOCK_SIZE);
+		final byte[] content = new byte[64];
+		new Random(31).nextBytes(content);
+		final List<File> copies = new ArrayList<>();
+		for (int i = 0; i < bufferPool.getMaxBytes() + 100; i++) {
+			copies.add(Files.write(tempDir.resolve("copy" + i + ".bin"), content).toFile());
+		}
+		content[0]++;
+		final File modified = Files.write(tempDir.resolve("modified.bin"), content).toFile();
+		final List<File> input = new ArrayList<>(copies);
+		input.add(modified);
+
+		final List<File> uniqueFiles = new ArrayList<>();
+		final List<List<File>> output = DuplicateContentFinder.getResult(input,
+				new DuplicateContentFinderCallback() {
+					@Override
+					public void uniqueFile(File uniqueFile) {
+						uniqueFiles.add(uniqueFile);
+					}
+				}, new CompareContentStrategy().withBufferPool(bufferPool)).toList();
+
+		assertEquals(1, output.size());
+		assertEquals(new HashSet<>(copies), new HashSet<>(output.get(0)));
+		assertEquals(List.of(modified), uniqueFiles);
+		assertTrue(bufferPool.getPeakBytes() <= bufferPool.getMaxBytes());
+	}
+
+	@Test
+	public void conflictingReadModes() {
+		final CompareContentStrategy strategy = new CompareContentStrategy();
+		assertThrows(IllegalArgumentException.class, () -> strategy.withVirtualThreads(true).withAsynchronousReads(4));
+		assertThrows(IllegalArgumentException.class, () -> strategy.withAsynchronousReads(4).withVirtualThreads(true));
+		assertNotNull(strategy.withVirtualThreads(true).withAsynchronousReads(0));
+		assertNotNull(strategy.withAsynchronousReads(4).withVirtualThreads(false));
+	}
+
+	@Test
+	public void scanStopsWhenBudgetIsExhausted(@TempDir Path tempDir) throws IOException {
+		final byte[] content = new byte[CompareContentStrategy.MIN_BLOCK_SIZE * 20];
+		final List<File> input = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			input.add(Files.write(tempDir.resolve("copy" + i + ".bin"), content).toFile());
+		}
+
+		final ScanMetrics metrics = new ScanMetrics();
+		final ScanBudget budget = new ScanBudget(metrics).withMaxBytesRead(1);
+		final List<File> unresolvedFiles = new ArrayList<>();
+		final List<List<File>> output = DuplicateContentFinder.getResult(input, new FailingDuplicateContentFinderCallback() {
+			@Override
+			public void unresolvedFile(File unresolvedFile) {
+				unresolvedFiles.add(unresolvedFile);
+			}
+		}, new CompareContentStrategy().withBudget(budget)).toList();
+
+		assertTrue(output.isEmpty());
+		assertEquals(new HashSet<>(input), new HashSet<>(unresolvedFiles));
+		assertEquals(3L * CompareContentStrategy.MIN_BLOCK_SIZE, metrics.snapshot().bytesRead());
+		assertEquals(0L, metrics.snapshot().openFiles());
+		assertEquals(Optional.of(ScanBudget.Reason.BYTES_READ), budget.getReason());
+	}
+
+	@Test
+	public void hashStopsWhenBudgetIsCancelled() {
+		final ScanBudget budget = new ScanBudget(new ScanMetrics());
+		budget.cancel();
+		final List<File> input = of(new File(PATH_FILE_1A), new File(PATH_FILE_1B), new File(PATH_FILE_2A));
+		final List<File> unresolvedFiles = new ArrayList<>();
+		final List<List<File>> output = DuplicateContentFinder.getResult(input, new FailingDuplicateContentFinderCallback() {
+			@Override
+			public void unresolvedFile(File unresolvedFile) {
+				unresolvedFiles.add(unresolvedFile);
+			}
+		}, new HashContentStrategy(HashAlgorithm.MURMUR3_128).withBudget(budget)).toList();
+
+		assertTrue(output.isEmpty());
+		assertEquals(new HashSet<>(input), new HashSet<>(unresolvedFiles));
+	}
+
+	private abstract static class SinkAdapter extends FailingDuplicateContentFinderCallback implements DuplicateGroupSink {
+	}
 }
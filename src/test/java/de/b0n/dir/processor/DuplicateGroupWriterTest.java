@@ -0,0 +1,117 @@
+package de.b0n.dir.processor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class DuplicateGroupWriterTest {
+	private static final ContentHash HASH = HashAlgorithm.SHA_256.hash("content".getBytes());
+	private static final DuplicateGroup GROUP = new DuplicateGroup(7,
+			List.of(new File("a/plain.txt"), new File("b/with \"quote\", comma\nand newline.txt")), HASH);
+	private static final DuplicateGroup UNHASHED = new DuplicateGroup(3, List.of(new File("c"), new File("d")), null);
+
+	private static String write(DuplicateGroupWriter.Format format, DuplicateGroup... groups) throws IOException {
+		return write(format, null, groups);
+	}
+
+	private static String write(DuplicateGroupWriter.Format format, ScanRoots roots, DuplicateGroup... groups)
+			throws IOException {
+		final StringWriter target = new StringWriter();
+		try (DuplicateGroupWriter writer = new DuplicateGroupWriter(target, format, roots)) {
+			for (DuplicateGroup group : groups) {
+				assertTrue(writer.accept(group));
+			}
+			assertEquals(groups.length, writer.getGroupCount());
+		}
+		return target.toString();
+	}
+
+	@Test
+	public void invalidArguments() {
+		assertThrows(IllegalArgumentException.class, () -> new DuplicateGroupWriter(null, DuplicateGroupWriter.Format.CSV));
+		assertThrows(IllegalArgumentException.class, () -> new DuplicateGroupWriter(new StringWriter(), null));
+	}
+
+	@Test
+	public void writesJsonLines() throws IOException {
+		assertEquals("{\"files\":2,\"length\":7,\"hash\":\"" + HASH + "\",\"paths\":[\"a" + File.separator
+				+ "plain.txt\",\"b" + File.separator + "with \\\"quote\\\", comma\\nand newline.txt\"],\"roots\":[null,null]}\n"
+				+ "{\"files\":2,\"length\":3,\"hash\":null,\"paths\":[\"c\",\"d\"],\"roots\":[null,null]}\n",
+				write(DuplicateGroupWriter.Format.JSON_LINES, GROUP, UNHASHED));
+	}
+
+	@Test
+	public void writesCsv() throws IOException {
+		assertEquals("group,files,length,hash,root,path\r\n"
+				+ "1,2,7," + HASH + ",,a" + File.separator + "plain.txt\r\n"
+				+ "1,2,7," + HASH + ",,\"b" + File.separator + "with \"\"quote\"\", comma\nand newline.txt\"\r\n"
+				+ "2,2,3,,,c\r\n"
+				+ "2,2,3,,,d\r\n",
+				write(DuplicateGroupWriter.Format.CSV, GROUP, UNHASHED));
+	}
+
+	@Test
+	public void labelsFilesOfTwoRootsWithTheirRoot() throws IOException {
+		final ScanRoots roots = new ScanRoots(List.of(Path.of("a"), Path.of("b")));
+		final String a = Path.of("a").toAbsolutePath().toString();
+		final String b = Path.of("b").toAbsolutePath().toString();
+		final DuplicateGroup group = new DuplicateGroup(7, List.of(new File(a, "plain.txt"), new File(b, "copy.txt"),
+				new File("c")), HASH);
+
+		assertEquals("group,files,length,hash,root,path\r\n"
+				+ "1,3,7," + HASH + "," + a + "," + new File(a, "plain.txt") + "\r\n"
+				+ "1,3,7," + HASH + "," + b + "," + new File(b, "copy.txt") + "\r\n"
+				+ "1,3,7," + HASH + ",,c\r\n",
+				write(DuplicateGroupWriter.Format.CSV, roots, group));
+		final String json = write(DuplicateGroupWriter.Format.JSON_LINES, roots, group);
+		assertTrue(json.endsWith(",\"roots\":[\"" + a.replace("\\", "\\\\") + "\",\"" + b.replace("\\", "\\\\")
+				+ "\",null]}\n"), json);
+	}
+
+	@Test
+	public void writesNulSeparatedPaths() throws IOException {
+		assertEquals("c\0d\0c\0d\0", write(DuplicateGroupWriter.Format.NUL, UNHASHED, UNHASHED));
+	}
+
+	@Test
+	public void nulOutputSplitsIntoPathArgumentsLikeXargs() throws IOException {
+		final String output = write(DuplicateGroupWriter.Format.NUL, GROUP, UNHASHED);
+
+		// xargs -0 beendet jedes Argument am NUL, ein leeres Argument entsteht aus zwei NUL in Folge
+		assertTrue(output.endsWith("\0"));
+		final List<String> arguments = List.of(output.substring(0, output.length() - 1).split("\0", -1));
+		assertEquals(List.of(GROUP.getFiles().get(0).getPath(), GROUP.getFiles().get(1).getPath(), "c", "d"), arguments);
+	}
+
+	@Test
+	public void stopsSearchWhenWritingFails() {
+		final DuplicateGroupWriter writer = new DuplicateGroupWriter(new Writer() {
+			@Override
+			public void write(char[] buffer, int offset, int length) throws IOException {
+				throw new IOException("disk full");
+			}
+
+			@Override
+			public void flush() throws IOException {
+				throw new IOException("disk full");
+			}
+
+			@Override
+			public void close() {
+			}
+		}, DuplicateGroupWriter.Format.NUL);
+		boolean accepted = true;
+		for (int i = 0; i < 10_000 && accepted; i++) {
+			accepted = writer.accept(UNHASHED);
+		}
+		assertFalse(accepted);
+		assertThrows(IOException.class, writer::close);
+	}
+}
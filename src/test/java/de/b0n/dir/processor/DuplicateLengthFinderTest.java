@@ -5,12 +5,19 @@ import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.b0n.dir.processor.DuplicateLengthFinderCallback.SkipReason;
 
 public class DuplicateLengthFinderTest extends de.b0n.dir.Test {
 	private static final String PATH_SAME_SIZE_FILES_IN_TREE_FOLDER = "src/test/resources/duplicateTree";
@@ -29,7 +36,7 @@ public class DuplicateLengthFinderTest extends de.b0n.dir.Test {
 	@Test
 	public void noArgumentDirectory() {
 		try {
-			DuplicateLengthFinder.getResult(null);
+			DuplicateLengthFinder.getResult((File) null);
 			fail("Missing Parameter must be notified");
 		} catch (IllegalArgumentException e){
 			// Expected Exception
@@ -53,7 +60,7 @@ public class DuplicateLengthFinderTest extends de.b0n.dir.Test {
 	@Test
 	public void noArgumentDirectoryButCallback() {
 		try {
-			DuplicateLengthFinder.getResult(null, FAILING_DLF_CALLBACK);
+			DuplicateLengthFinder.getResult((File) null, FAILING_DLF_CALLBACK);
 			fail("Missing Parameter must be notified");
 		} catch (IllegalArgumentException e){
 			// Expected Exception
@@ -218,4 +225,200 @@ public class DuplicateLengthFinderTest extends de.b0n.dir.Test {
 		assertEquals(6, elementsIterator.next().size());
 		assertEquals(1, elementsIterator.next().size());
 	}
+
+	@Test
+	public void noArgumentPath() {
+		assertThrows(IllegalArgumentException.class, () -> DuplicateLengthFinder.getResult((Path) null));
+	}
+
+	@Test
+	public void scanDuplicatesInBiggerTreeWithPath() {
+		final Map<Long, List<Path>> result = DuplicateLengthFinder.getResult(Path.of(PATH_PLENTY_SAME_SIZE_FOLDER));
+		final Map<Long, List<File>> expected = DuplicateLengthFinder.getResult(new File(PATH_PLENTY_SAME_SIZE_FOLDER));
+		assertEquals(expected.keySet(), result.keySet());
+		for (Map.Entry<Long, List<Path>> entry : result.entrySet()) {
+			assertEquals(expected.get(entry.getKey()).size(), entry.getValue().size());
+			for (Path path : entry.getValue()) {
+				assertTrue(path.isAbsolute());
+				assertEquals(entry.getKey().longValue(), path.toFile().length());
+			}
+		}
+	}
+
+	@Test
+	public void scanReportsUnreadableEntry(@TempDir Path tempDir) throws IOException {
+		final Path link = Files.createSymbolicLink(tempDir.resolve("dangling"), tempDir.resolve("missing"));
+		final List<String> unidentified = new ArrayList<>();
+		final Map<Long, List<Path>> result = DuplicateLengthFinder.getResult(tempDir, new DuplicateLengthFinderCallback() {
+			@Override
+			public void unidentifiedFileObject(String file) {
+				unidentified.add(file);
+			}
+		});
+		assertTrue(result.isEmpty());
+		assertEquals(List.of(link.toString()), unidentified);
+	}
+
+	@Test
+	public void scanSkipsSymbolicLinkCycle(@TempDir Path tempDir) throws IOException {
+		final Path subdirectory = Files.createDirectory(tempDir.resolve("subdirectory"));
+		Files.write(subdirectory.resolve("a.txt"), "content".getBytes());
+		Files.write(tempDir.resolve("b.txt"), "content".getBytes());
+		final Path loop = Files.createSymbolicLink(subdirectory.resolve("loop"), tempDir);
+		final List<String> skipped = new ArrayList<>();
+		final SizeIndex index = DuplicateLengthFinder.getIndex(tempDir, new DuplicateLengthFinderCallback() {
+			@Override
+			public void skippedSubtree(String path, SkipReason reason) {
+				assertEquals(SkipReason.CYCLE, reason);
+				skipped.add(path);
+			}
+		}, WalkOptions.DEFAULT);
+		assertEquals(2, index.getFileCount());
+		assertEquals(List.of(loop.toString()), skipped);
+	}
+
+	@Test
+	public void scanWithoutFollowingLinks(@TempDir Path tempDir) throws IOException {
+		final Path subdirectory = Files.createDirectory(tempDir.resolve("subdirectory"));
+		Files.write(subdirectory.resolve("a.txt"), "content".getBytes());
+		final Path linkedDirectory = Files.createSymbolicLink(tempDir.resolve("linkedDirectory"), subdirectory);
+		final Path linkedFile = Files.createSymbolicLink(tempDir.resolve("linkedFile"), subdirectory.resolve("a.txt"));
+		final List<String> skipped = new ArrayList<>();
+		final SizeIndex index = DuplicateLengthFinder.getIndex(tempDir, new DuplicateLengthFinderCallback() {
+			@Override
+			public void skippedSubtree(String path, SkipReason reason) {
+				assertEquals(SkipReason.SYMBOLIC_LINK, reason);
+				skipped.add(path);
+			}
+		}, WalkOptions.DEFAULT.withFollowLinks(false));
+		assertEquals(1, index.getFileCount());
+		assertEquals(Set.of(linkedDirectory.toString(), linkedFile.toString()), new HashSet<>(skipped));
+	}
+
+	@Test
+	public void scanStopsWhenBudgetIsExhausted(@TempDir Path tempDir) throws IOException {
+		final Path subdirectory = Files.createDirectory(tempDir.resolve("subdirectory"));
+		Files.write(subdirectory.resolve("a.txt"), "content".getBytes());
+		Files.write(tempDir.resolve("b.txt"), "content".getBytes());
+		final ScanBudget budget = new ScanBudget(new ScanMetrics());
+		assertEquals(2, DuplicateLengthFinder.getIndex(tempDir, new DuplicateLengthFinderCallback() {}, WalkOptions.DEFAULT, budget)
+				.getFileCount());
+
+		budget.cancel();
+		final List<String> skipped = new ArrayList<>();
+		final SizeIndex index = DuplicateLengthFinder.getIndex(tempDir, new DuplicateLengthFinderCallback() {
+			@Override
+			public void skippedSubtree(String path, SkipReason reason) {
+				assertEquals(SkipReason.BUDGET, reason);
+				skipped.add(path);
+			}
+		}, WalkOptions.DEFAULT, budget);
+		assertEquals(0, index.getFileCount());
+		assertEquals(List.of(tempDir.toAbsolutePath().toString()), skipped);
+	}
+
+	@Test
+	public void scanMultipleRoots() {
+		final SizeIndex index = DuplicateLengthFinder.getIndex(
+				List.of(Path.of(PATH_NO_SAME_SIZE_FOLDER), Path.of(PATH_SAME_SIZE_FOLDER)),
+				new DuplicateLengthFinderCallback() {}, WalkOptions.DEFAULT);
+		assertEquals(DuplicateLengthFinder.getIndex(Path.of(PATH_NO_SAME_SIZE_FOLDER)).getFileCount()
+				+ DuplicateLengthFinder.getIndex(Path.of(PATH_SAME_SIZE_FOLDER)).getFileCount(), index.getFileCount());
+	}
+
+	@Test
+	public void scanNestedRootsOnce() {
+		final List<String> skipped = new ArrayList<>();
+		final Map<Long, List<Path>> result = DuplicateLengthFinder.getResult(
+				List.of(Path.of(PATH_SAME_SIZE_FILES_IN_TREE_FOLDER), Path.of(PATH_NO_SAME_SIZE_FOLDER),
+						Path.of(PATH_SAME_SIZE_FILES_IN_TREE_FOLDER)),
+				new DuplicateLengthFinderCallback() {
+					@Override
+					public void skippedSubtree(String path, SkipReason reason) {
+						assertEquals(SkipReason.ALREADY_WALKED, reason);
+						skipped.add(path);
+					}
+				});
+		assertEquals(DuplicateLengthFinder.getResult(Path.of(PATH_SAME_SIZE_FILES_IN_TREE_FOLDER)), result);
+		assertEquals(List.of(Path.of(PATH_NO_SAME_SIZE_FOLDER).toAbsolutePath().toString(),
+				Path.of(PATH_SAME_SIZE_FILES_IN_TREE_FOLDER).toAbsolutePath().toString()), skipped);
+	}
+
+	@Test
+	public void scanLinkedRootOnce(@TempDir Path tempDir) throws IOException {
+		final Path directory = Files.createDirectory(tempDir.resolve("directory"));
+		Files.write(directory.resolve("a.txt"), "content".getBytes());
+		final Path link = tempDir.resolve("link");
+		try {
+			Files.createSymbolicLink(link, directory);
+		} catch (UnsupportedOperationException | IOException e) {
+			assumeTrue(false, "Symbolic links not supported");
+		}
+		final SizeIndex index = DuplicateLengthFinder.getIndex(List.of(directory, link), new DuplicateLengthFinderCallback() {},
+				WalkOptions.DEFAULT);
+		assertEquals(1, index.getFileCount());
+	}
+
+	@Test
+	public void noMultipleRoots() {
+		assertThrows(IllegalArgumentException.class,
+				() -> DuplicateLengthFinder.getIndex(List.of(), FAILING_DLF_CALLBACK, WalkOptions.DEFAULT));
+		assertThrows(IllegalArgumentException.class, () -> DuplicateLengthFinder
+				.getIndex(List.of(Path.of(PATH_SAME_SIZE_FOLDER), Path.of(PATH_FILE)), FAILING_DLF_CALLBACK, WalkOptions.DEFAULT));
+	}
+
+	@Test
+	public void scanOnSameFileStore() {
+		final SizeIndex index = DuplicateLengthFinder.getIndex(Path.of(PATH_SAME_SIZE_FILES_IN_TREE_FOLDER),
+				new DuplicateLengthFinderCallback() {
+					@Override
+					public void skippedSubtree(String path, SkipReason reason) {
+						fail("Test tree lies on one file store: " + path);
+					}
+				}, WalkOptions.DEFAULT.withSameFileStore(true));
+		assertEquals(DuplicateLengthFinder.getIndex(Path.of(PATH_SAME_SIZE_FILES_IN_TREE_FOLDER)).getFileCount(),
+				index.getFileCount());
+	}
+
+	@Test
+	public void noArgumentWalkOptions() {
+		assertThrows(IllegalArgumentException.class, () -> DuplicateLengthFinder.getIndex(
+				Path.of(PATH_SAME_SIZE_FILES_IN_TREE_FOLDER), FAILING_DLF_CALLBACK, null));
+	}
+
+	@Test
+	public void scanPrunesExcludedDirectories(@TempDir Path tempDir) throws IOException {
+		final Path git = Files.createDirectories(tempDir.resolve("project/.git"));
+		Files.write(git.resolve("object"), "content".getBytes());
+		Files.write(tempDir.resolve("project/a.txt"), "content".getBytes());
+		final List<File> entered = new ArrayList<>();
+		final Map<Long, List<Path>> result = DuplicateLengthFinder.getResult(tempDir, new DuplicateLengthFinderCallback() {
+			@Override
+			public void enteredNewDirectory(File directory) {
+				entered.add(directory);
+			}
+		}, WalkOptions.DEFAULT.withExclude(".git"));
+		assertEquals(Map.of(7L, List.of(tempDir.resolve("project/a.txt").toAbsolutePath())), result);
+		assertFalse(entered.contains(git.toAbsolutePath().toFile()));
+	}
+
+	@Test
+	public void scanAppliesIncludesAndSizeLimits(@TempDir Path tempDir) throws IOException {
+		Files.write(tempDir.resolve("small.txt"), new byte[10]);
+		Files.write(tempDir.resolve("medium.txt"), new byte[100]);
+		Files.write(tempDir.resolve("medium.bin"), new byte[100]);
+		Files.write(tempDir.resolve("large.txt"), new byte[1000]);
+		final Map<Long, List<Path>> result = DuplicateLengthFinder.getResult(tempDir, new DuplicateLengthFinderCallback() {},
+				WalkOptions.DEFAULT.withInclude("regex:.*\\.txt").withMinSize(11).withMaxSize(999));
+		assertEquals(Map.of(100L, List.of(tempDir.resolve("medium.txt").toAbsolutePath())), result);
+	}
+
+	@Test
+	public void invalidWalkOptions() {
+		assertThrows(IllegalArgumentException.class, () -> WalkOptions.DEFAULT.withMinSize(-1));
+		assertThrows(IllegalArgumentException.class, () -> WalkOptions.DEFAULT.withMaxSize(10).withMinSize(11));
+		assertThrows(IllegalArgumentException.class, () -> WalkOptions.DEFAULT.withInclude("regex:("));
+		assertThrows(IllegalArgumentException.class, () -> WalkOptions.DEFAULT.withExclude(null));
+		assertEquals(List.of("glob:*.txt"), WalkOptions.DEFAULT.withInclude("*.txt").getIncludes());
+	}
 }
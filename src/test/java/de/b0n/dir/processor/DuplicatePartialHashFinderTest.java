@@ -0,0 +1,83 @@
+package de.b0n.dir.processor;
+
+import static java.util.List.of;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DuplicatePartialHashFinderTest {
+
+	private static final String PATH_FILE_1A = "src/test/resources/Test1.txt";
+	private static final String PATH_FILE_1B = "src/test/resources/noDuplicates/Test1.txt";
+
+	private static final DuplicateContentFinderCallback FAILING_DCF_CALLBACK = new FailingDuplicateContentFinderCallback();
+
+	@Test
+	public void noArgumentInput() {
+		assertThrows(IllegalArgumentException.class, () -> DuplicatePartialHashFinder.getResult(null, FAILING_DCF_CALLBACK));
+	}
+
+	@Test
+	public void noArgumentCallback() {
+		assertThrows(IllegalArgumentException.class, () -> DuplicatePartialHashFinder.getResult(of(new File(PATH_FILE_1A)), null));
+	}
+
+	@Test
+	public void invalidSampleSize() {
+		assertThrows(IllegalArgumentException.class, () -> DuplicatePartialHashFinder.getResult(of(new File(PATH_FILE_1A)), 0, FAILING_DCF_CALLBACK));
+	}
+
+	@Test
+	public void smallFilesArePassedThrough() {
+		final List<List<File>> output = DuplicatePartialHashFinder.getResult(of(
+				new File(PATH_FILE_1A),
+				new File(PATH_FILE_1B)),
+				FAILING_DCF_CALLBACK).toList();
+		assertEquals(1, output.size());
+		assertEquals(2, output.get(0).size());
+	}
+
+	@Test
+	public void splitsOnDifferentTail(@TempDir Path tempDir) throws IOException {
+		final byte[] content = new byte[64 * 1024];
+		new Random(3).nextBytes(content);
+		final File original = Files.write(tempDir.resolve("original.bin"), content).toFile();
+		final File copy = Files.write(tempDir.resolve("copy.bin"), content).toFile();
+		content[content.length - 1]++;
+		final File modified = Files.write(tempDir.resolve("modified.bin"), content).toFile();
+
+		final List<File> uniqueFiles = new ArrayList<>();
+		final List<List<File>> output = DuplicatePartialHashFinder.getResult(of(original, copy, modified), 1024,
+				new FailingDuplicateContentFinderCallback() {
+					@Override
+					public void uniqueFile(File uniqueFile) {
+						uniqueFiles.add(uniqueFile);
+					}
+				}).toList();
+
+		assertEquals(1, output.size());
+		assertEquals(Set.of(original, copy), new HashSet<>(output.get(0)));
+		assertEquals(of(modified), uniqueFiles);
+	}
+
+	@Test
+	public void keepsFilesDifferingOnlyInTheMiddle(@TempDir Path tempDir) throws IOException {
+		final byte[] content = new byte[64 * 1024];
+		final File original = Files.write(tempDir.resolve("original.bin"), content).toFile();
+		content[content.length / 2] = 1;
+		final File modified = Files.write(tempDir.resolve("modified.bin"), content).toFile();
+
+		final List<List<File>> output = DuplicatePartialHashFinder.getResult(of(original, modified), 1024,
+				FAILING_DCF_CALLBACK).toList();
+
+		assertEquals(1, output.size());
+		assertEquals(2, output.get(0).size());
+	}
+}
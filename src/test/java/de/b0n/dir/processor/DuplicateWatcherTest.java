@@ -0,0 +1,176 @@
+package de.b0n.dir.processor;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DuplicateWatcherTest {
+	private static final long TIMEOUT_MILLIS = 20_000L;
+
+	private static final class RecordingCallback implements DuplicateWatcherCallback {
+		private final Queue<String> events = new ConcurrentLinkedQueue<>();
+
+		@Override
+		public void groupCreated(DuplicateGroup group) {
+			events.add("created " + group.getFiles().size());
+		}
+
+		@Override
+		public void groupChanged(DuplicateGroup group) {
+			events.add("changed " + group.getFiles().size());
+		}
+
+		@Override
+		public void groupRemoved(ContentHash identity) {
+			events.add("removed");
+		}
+	}
+
+	/**
+	 * Verarbeitet Ereignisse, bis die Bedingung erfüllt ist.
+	 */
+	private static void await(DuplicateWatcher watcher, BooleanSupplier condition) throws InterruptedException {
+		final long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.currentTimeMillis() < end, "Timeout waiting for watch events");
+			assertTrue(watcher.processEvents(Duration.ofMillis(100)));
+		}
+	}
+
+	@Test
+	public void invalidArguments(@TempDir Path tempDir) {
+		assertThrows(IllegalArgumentException.class, () -> DuplicateWatcher.open(null, WalkOptions.DEFAULT, new DuplicateWatcherCallback() {}));
+		assertThrows(IllegalArgumentException.class, () -> DuplicateWatcher.open(List.of(tempDir), null, new DuplicateWatcherCallback() {}));
+		assertThrows(IllegalArgumentException.class, () -> DuplicateWatcher.open(List.of(tempDir), WalkOptions.DEFAULT, null));
+	}
+
+	@Test
+	public void reportsInitialGroups() throws IOException {
+		final RecordingCallback callback = new RecordingCallback();
+		try (DuplicateWatcher watcher = DuplicateWatcher.open(List.of(Path.of("src/test/resources/duplicateTree")),
+				WalkOptions.DEFAULT, callback)) {
+			assertEquals(List.of("created 2"), List.copyOf(callback.events));
+			assertEquals(1, watcher.getGroups().size());
+			assertEquals(91, watcher.getGroups().get(0).getLength());
+			assertEquals(2, watcher.getDirectoryCount());
+		}
+	}
+
+	@Test
+	public void followsCreatedModifiedAndDeletedFiles(@TempDir Path tempDir) throws IOException, InterruptedException {
+		Files.writeString(tempDir.resolve("a.txt"), "content");
+		final RecordingCallback callback = new RecordingCallback();
+		try (DuplicateWatcher watcher = DuplicateWatcher.open(List.of(tempDir), WalkOptions.DEFAULT, callback)) {
+			assertTrue(watcher.getGroups().isEmpty());
+
+			Files.writeString(tempDir.resolve("b.txt"), "content");
+			await(watcher, () -> watcher.getGroups().size() == 1);
+			assertEquals("created 2", callback.events.poll());
+
+			final Path subdirectory = Files.createDirectory(tempDir.resolve("subdirectory"));
+			Files.writeString(subdirectory.resolve("c.txt"), "content");
+			await(watcher, () -> !watcher.getGroups().isEmpty() && watcher.getGroups().get(0).getFiles().size() == 3);
+			assertEquals(List.of(tempDir.resolve("a.txt").toFile(), tempDir.resolve("b.txt").toFile(),
+					subdirectory.resolve("c.txt").toFile()), watcher.getGroups().get(0).getFiles());
+
+			Files.writeString(tempDir.resolve("b.txt"), "changed");
+			Files.delete(subdirectory.resolve("c.txt"));
+			await(watcher, () -> watcher.getGroups().isEmpty());
+			assertTrue(callback.events.contains("removed"));
+			assertFalse(callback.events.contains("created 2"));
+		}
+	}
+
+	@Test
+	public void removesDeletedDirectories(@TempDir Path tempDir) throws IOException, InterruptedException {
+		final Path subdirectory = Files.createDirectory(tempDir.resolve("subdirectory"));
+		Files.writeString(tempDir.resolve("a.txt"), "content");
+		Files.writeString(subdirectory.resolve("b.txt"), "content");
+		final RecordingCallback callback = new RecordingCallback();
+		try (DuplicateWatcher watcher = DuplicateWatcher.open(List.of(tempDir), WalkOptions.DEFAULT, callback)) {
+			assertEquals(1, watcher.getGroups().size());
+			Files.delete(subdirectory.resolve("b.txt"));
+			Files.delete(subdirectory);
+			await(watcher, () -> watcher.getGroups().isEmpty());
+			assertEquals(List.of("created 2", "removed"), List.copyOf(callback.events));
+		}
+	}
+
+	@Test
+	public void collapsesHardLinks(@TempDir Path tempDir) throws IOException, InterruptedException {
+		final Path original = Files.writeString(tempDir.resolve("a.txt"), "content");
+		final Path link = Files.createLink(tempDir.resolve("b.txt"), original);
+		final RecordingCallback callback = new RecordingCallback();
+		try (DuplicateWatcher watcher = DuplicateWatcher.open(List.of(tempDir), WalkOptions.DEFAULT, callback)) {
+			assertTrue(watcher.getGroups().isEmpty());
+			assertEquals(List.of(List.of(original.toFile(), link.toFile())), watcher.getHardLinks());
+
+			final Path copy = Files.writeString(tempDir.resolve("c.txt"), "content");
+			await(watcher, () -> watcher.getGroups().size() == 1);
+			assertEquals(List.of(original.toFile(), copy.toFile()), watcher.getGroups().get(0).getFiles());
+			assertEquals(List.of("created 2"), List.copyOf(callback.events));
+
+			final Path secondLink = Files.createLink(tempDir.resolve("d.txt"), copy);
+			await(watcher, () -> watcher.getHardLinks().size() == 2);
+			assertEquals(List.of(original.toFile(), copy.toFile()), watcher.getGroups().get(0).getFiles());
+			assertTrue(watcher.getHardLinks().contains(List.of(copy.toFile(), secondLink.toFile())));
+			assertEquals(List.of("created 2"), List.copyOf(callback.events));
+		}
+	}
+
+	@Test
+	public void skipsLinkedDirectoryCreatedLater(@TempDir Path tempDir) throws IOException, InterruptedException {
+		final Path subdirectory = Files.createDirectory(tempDir.resolve("subdirectory"));
+		final Path original = Files.writeString(subdirectory.resolve("a.txt"), "content");
+		final Path copy = Files.writeString(tempDir.resolve("b.txt"), "content");
+		try (DuplicateWatcher watcher = DuplicateWatcher.open(List.of(tempDir), WalkOptions.DEFAULT,
+				new DuplicateWatcherCallback() {})) {
+			assertEquals(2, watcher.getDirectoryCount());
+
+			Files.createSymbolicLink(tempDir.resolve("link"), subdirectory);
+			final Path third = Files.writeString(tempDir.resolve("c.txt"), "content");
+			await(watcher, () -> watcher.getGroups().size() == 1 && watcher.getGroups().get(0).getFiles().size() == 3);
+			assertEquals(List.of(copy.toFile(), third.toFile(), original.toFile()), watcher.getGroups().get(0).getFiles());
+			assertEquals(2, watcher.getDirectoryCount());
+		}
+	}
+
+	@Test
+	public void stopsWhenClosed(@TempDir Path tempDir) throws IOException, InterruptedException {
+		final DuplicateWatcher watcher = DuplicateWatcher.open(List.of(tempDir), WalkOptions.DEFAULT,
+				new DuplicateWatcherCallback() {});
+		watcher.close();
+		assertFalse(watcher.processEvents(Duration.ofMillis(10)));
+	}
+
+	@Test
+	public void reportsUnreadableFiles(@TempDir Path tempDir) throws IOException {
+		final Path unreadable = tempDir.resolve("b.txt");
+		Files.writeString(tempDir.resolve("a.txt"), "content");
+		Files.writeString(unreadable, "content");
+		final Queue<File> failed = new ConcurrentLinkedQueue<>();
+		assumeTrue(unreadable.toFile().setReadable(false) && !unreadable.toFile().canRead(), "Files are readable for this user");
+		try (DuplicateWatcher watcher = DuplicateWatcher.open(List.of(tempDir), WalkOptions.DEFAULT,
+				new DuplicateWatcherCallback() {
+					@Override
+					public void failedFile(File failedFile) {
+						failed.add(failedFile);
+					}
+				})) {
+			assertEquals(List.of(unreadable.toFile()), List.copyOf(failed));
+			assertTrue(watcher.getGroups().isEmpty());
+		}
+	}
+}
@@ -13,4 +13,9 @@ public class FailingDuplicateContentFinderCallback implements DuplicateContentFi
 	public void failedFile(File failedFile) {
 		fail();
 	}
+
+	@Override
+	public void unresolvedFile(File unresolvedFile) {
+		fail();
+	}
 }
@@ -3,8 +3,16 @@ package de.b0n.dir.processor;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -87,4 +95,122 @@ public class FileStreamTest {
 		fileStream.clear();
 		fileStream.clear();
 	}
+
+	@Test
+	public void readBlocksWithValidFile() {
+		final FileReader fileStream = new FileReader(textFile);
+		final Block first = fileStream.read(64);
+		assertEquals(64, first.length());
+		final Block second = fileStream.read(64);
+		assertEquals(27, second.length());
+		assertSame(Block.FINISHED, fileStream.read(64));
+		fileStream.clear();
+	}
+
+	@Test
+	public void readBlockFromInvalidFile() {
+		final FileReader fileStream = new FileReader(new File(PATH_INVALID_FILE));
+		assertSame(Block.FAILING, fileStream.read(64));
+	}
+
+	@Test
+	public void equalBlocksFromEqualFiles() {
+		final FileReader first = new FileReader(textFile);
+		final FileReader second = new FileReader(new File("src/test/resources/noDuplicates/Test1.txt"));
+		assertEquals(first.read(128), second.read(128));
+		first.clear();
+		second.clear();
+	}
+
+	@Test
+	public void resumeReadsBeyondOpenFileBudget() {
+		final OpenFileBudget budget = new OpenFileBudget(2);
+		final List<FileReader> readers = FileReader.pack(Collections.nCopies(5, textFile), budget, FileReader.NO_MAPPING);
+		final Block expected = new FileReader(textFile).read(91);
+		for (FileReader reader : readers) {
+			assertEquals(30, reader.read(30).length());
+		}
+		for (FileReader reader : readers) {
+			assertEquals(61, reader.read(70).length());
+		}
+		for (FileReader reader : readers) {
+			assertSame(Block.FINISHED, reader.read(30));
+			reader.clear();
+		}
+		for (FileReader reader : readers) {
+			assertEquals(expected, reader.read(91));
+			reader.clear();
+		}
+	}
+
+	@Test
+	public void invalidBudget() {
+		assertThrows(IllegalArgumentException.class, () -> new OpenFileBudget(1));
+	}
+
+	@Test
+	public void readMappedBlocks() {
+		final FileReader mapped = new FileReader(textFile, null, 0L);
+		final FileReader streamed = new FileReader(textFile);
+		assertEquals(streamed.read(30), mapped.read(30));
+		assertEquals(streamed.read(70), mapped.read(70));
+		assertSame(Block.FINISHED, mapped.read(30));
+		mapped.clear();
+		streamed.clear();
+	}
+
+	@Test
+	public void readMappedBlockFromInvalidFile(@TempDir Path tempDir) throws IOException {
+		final File deleted = Files.write(tempDir.resolve("deleted.bin"), new byte[128]).toFile();
+		final FileReader fileStream = new FileReader(deleted, null, 0L);
+		assertTrue(fileStream.isMapped());
+		assertTrue(deleted.delete());
+		assertSame(Block.FAILING, fileStream.read(64));
+	}
+
+	@Test
+	public void readMappedBlockFromTruncatedFile(@TempDir Path tempDir) throws IOException {
+		final File truncated = Files.write(tempDir.resolve("truncated.bin"), new byte[4 * 1024 * 1024]).toFile();
+		final FileReader fileStream = new FileReader(truncated, null, 1024L * 1024L);
+		assertTrue(fileStream.isMapped());
+		assertEquals(64 * 1024, fileStream.read(64 * 1024).length());
+		try (RandomAccessFile file = new RandomAccessFile(truncated, "rw")) {
+			file.setLength(0L);
+		}
+		assertSame(Block.FAILING, fileStream.read(1024 * 1024));
+	}
+
+	@Test
+	public void readBlocksAsynchronouslyWithValidFile() {
+		final FileReader fileStream = new FileReader(textFile);
+		final FileReader blockingStream = new FileReader(textFile);
+		final Block first = fileStream.readAsync(64).join();
+		assertEquals(64, first.length());
+		assertEquals(blockingStream.read(64), first);
+		final Block second = fileStream.readAsync(64).join();
+		assertEquals(27, second.length());
+		assertSame(Block.FINISHED, fileStream.readAsync(64).join());
+		assertEquals(91, fileStream.getPosition());
+		fileStream.clear();
+		blockingStream.clear();
+	}
+
+	@Test
+	public void readBlockAsynchronouslyBeyondBudget() {
+		final OpenFileBudget budget = new OpenFileBudget(2);
+		final List<FileReader> readers = FileReader.pack(List.of(textFile, textFile, textFile), budget, FileReader.NO_MAPPING);
+		for (FileReader reader : readers) {
+			assertEquals(64, reader.readAsync(64).join().length());
+		}
+		for (FileReader reader : readers) {
+			assertEquals(27, reader.readAsync(64).join().length());
+			reader.clear();
+		}
+	}
+
+	@Test
+	public void readBlockAsynchronouslyFromInvalidFile() {
+		final FileReader fileStream = new FileReader(new File(PATH_INVALID_FILE));
+		assertSame(Block.FAILING, fileStream.readAsync(64).join());
+	}
 }
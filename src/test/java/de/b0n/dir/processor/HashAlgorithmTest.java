@@ -0,0 +1,83 @@
+package de.b0n.dir.processor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class HashAlgorithmTest {
+	private static final String PATH_FILE_1A = "src/test/resources/Test1.txt";
+	private static final String PATH_FILE_1B = "src/test/resources/noDuplicates/Test1.txt";
+	private static final String PATH_FILE_2A = "src/test/resources/Test2.txt";
+	private static final String QUICK_BROWN_FOX = "The quick brown fox jumps over the lazy dog";
+
+	@Test
+	public void murmur3KnownValues() {
+		assertEquals("00000000000000000000000000000000",
+				HashAlgorithm.MURMUR3_128.hash(new byte[0]).toString());
+		assertEquals("6c1b07bc7bbc4be347939ac4a93c437a",
+				HashAlgorithm.MURMUR3_128.hash(QUICK_BROWN_FOX.getBytes(StandardCharsets.US_ASCII)).toString());
+	}
+
+	@Test
+	public void sha256KnownValue() {
+		assertEquals("d7a8fbb307d7809469ca9abcb0082e4f8d5651e46d3cdb762d02d0bf37c9e592",
+				HashAlgorithm.SHA_256.hash(QUICK_BROWN_FOX.getBytes(StandardCharsets.US_ASCII)).toString());
+	}
+
+	@Test
+	public void murmur3StreamingMatchesSingleUpdate() {
+		final byte[] content = new byte[1000];
+		new Random(11).nextBytes(content);
+		final MessageDigest digest = HashAlgorithm.MURMUR3_128.newDigest();
+		int offset = 0;
+		for (int chunk = 1; offset < content.length; chunk = chunk * 2 + 1) {
+			final int length = Math.min(chunk, content.length - offset);
+			digest.update(content, offset, length);
+			offset += length;
+		}
+		digest.update((byte) 42);
+		final byte[] expected = new byte[content.length + 1];
+		System.arraycopy(content, 0, expected, 0, content.length);
+		expected[content.length] = 42;
+		assertEquals(HashAlgorithm.MURMUR3_128.hash(expected), new ContentHash(HashAlgorithm.MURMUR3_128, digest.digest()));
+	}
+
+	@Test
+	public void hashEqualFiles() throws IOException {
+		for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+			assertEquals(algorithm.hash(new File(PATH_FILE_1A)), algorithm.hash(new File(PATH_FILE_1B)));
+			assertNotEquals(algorithm.hash(new File(PATH_FILE_1A)), algorithm.hash(new File(PATH_FILE_2A)));
+		}
+	}
+
+	@Test
+	public void hashFileMatchesHashContent(@TempDir Path tempDir) throws IOException {
+		final byte[] content = new byte[700 * 1024 + 3];
+		new Random(5).nextBytes(content);
+		final File file = Files.write(tempDir.resolve("content.bin"), content).toFile();
+		for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+			assertEquals(algorithm.hash(content), algorithm.hash(file));
+		}
+	}
+
+	@Test
+	public void parseFormattedHash() throws IOException {
+		final ContentHash hash = HashAlgorithm.SHA_256.hash(new File(PATH_FILE_1A));
+		assertEquals(hash, ContentHash.parse(HashAlgorithm.SHA_256, hash.toString()));
+		assertNotEquals(hash, ContentHash.parse(HashAlgorithm.MURMUR3_128, hash.toString()));
+	}
+
+	@Test
+	public void hashInvalidFile() {
+		assertThrows(IOException.class, () -> HashAlgorithm.SHA_256.hash(new File("src/test/resources/Testxxx1.txt")));
+	}
+}
@@ -0,0 +1,124 @@
+package de.b0n.dir.processor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class HashCacheTest {
+
+	@Test
+	public void noArgumentLog() {
+		assertThrows(IllegalArgumentException.class, () -> HashCache.open(null));
+	}
+
+	@Test
+	public void reuseHashOfUnchangedFile(@TempDir Path tempDir) throws IOException {
+		final Path log = tempDir.resolve("hashes.cache");
+		final Path path = Files.writeString(tempDir.resolve("file.txt"), "original");
+		final File file = path.toFile();
+		final FileTime modified = Files.getLastModifiedTime(path);
+		final ContentHash original;
+		try (HashCache cache = HashCache.open(log)) {
+			original = cache.computeIfAbsent(file, HashAlgorithm.SHA_256);
+			assertEquals(HashAlgorithm.SHA_256.hash(file), original);
+		}
+
+		// gleiche Größe und Änderungszeit: Der gespeicherte Hash muss verwendet werden
+		Files.writeString(path, "modified");
+		Files.setLastModifiedTime(path, modified);
+		try (HashCache cache = HashCache.open(log)) {
+			assertEquals(1, cache.size());
+			assertEquals(original, cache.computeIfAbsent(file, HashAlgorithm.SHA_256));
+			assertEquals(HashAlgorithm.MURMUR3_128.hash("modified".getBytes(StandardCharsets.US_ASCII)),
+					cache.computeIfAbsent(file, HashAlgorithm.MURMUR3_128));
+		}
+	}
+
+	@Test
+	public void rehashChangedFile(@TempDir Path tempDir) throws IOException {
+		final Path log = tempDir.resolve("hashes.cache");
+		final Path path = Files.writeString(tempDir.resolve("file.txt"), "original");
+		final File file = path.toFile();
+		try (HashCache cache = HashCache.open(log)) {
+			cache.computeIfAbsent(file, HashAlgorithm.SHA_256);
+		}
+
+		Files.writeString(path, "modified");
+		Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 2000));
+		try (HashCache cache = HashCache.open(log)) {
+			assertEquals(HashAlgorithm.SHA_256.hash("modified".getBytes(StandardCharsets.US_ASCII)),
+					cache.computeIfAbsent(file, HashAlgorithm.SHA_256));
+			assertEquals(1, cache.size());
+		}
+	}
+
+	@Test
+	public void compactionDropsReplacedAndStaleEntries(@TempDir Path tempDir) throws IOException {
+		final Path log = tempDir.resolve("hashes.cache");
+		final Path changing = Files.writeString(tempDir.resolve("changing.txt"), "version 0");
+		final Path deleted = Files.writeString(tempDir.resolve("deleted.txt"), "deleted");
+		try (HashCache cache = HashCache.open(log)) {
+			cache.computeIfAbsent(changing.toFile(), HashAlgorithm.SHA_256);
+			cache.computeIfAbsent(deleted.toFile(), HashAlgorithm.SHA_256);
+		}
+		final long initialLength = Files.size(log);
+		Files.delete(deleted);
+
+		final FileTime modified = Files.getLastModifiedTime(changing);
+		for (int version = 1; version <= 4; version++) {
+			Files.writeString(changing, "version " + version);
+			Files.setLastModifiedTime(changing, FileTime.fromMillis(modified.toMillis() + version * 2000L));
+			try (HashCache cache = HashCache.open(log)) {
+				cache.computeIfAbsent(changing.toFile(), HashAlgorithm.SHA_256);
+			}
+		}
+
+		try (HashCache cache = HashCache.open(log)) {
+			assertEquals(1, cache.size());
+			assertEquals(HashAlgorithm.SHA_256.hash("version 4".getBytes(StandardCharsets.US_ASCII)),
+					cache.computeIfAbsent(changing.toFile(), HashAlgorithm.SHA_256));
+		}
+		assertTrue(Files.size(log) < initialLength);
+	}
+
+	@Test
+	public void ignoreTruncatedRecord(@TempDir Path tempDir) throws IOException {
+		final Path log = tempDir.resolve("hashes.cache");
+		final File first = Files.writeString(tempDir.resolve("first.txt"), "first").toFile();
+		final File second = Files.writeString(tempDir.resolve("second.txt"), "second").toFile();
+		try (HashCache cache = HashCache.open(log)) {
+			cache.computeIfAbsent(first, HashAlgorithm.SHA_256);
+		}
+		Files.write(log, new byte[] {0, 1, 2}, StandardOpenOption.APPEND);
+
+		try (HashCache cache = HashCache.open(log)) {
+			assertEquals(1, cache.size());
+			cache.computeIfAbsent(second, HashAlgorithm.SHA_256);
+		}
+		try (HashCache cache = HashCache.open(log)) {
+			assertEquals(2, cache.size());
+		}
+	}
+
+	@Test
+	public void rejectForeignFile(@TempDir Path tempDir) throws IOException {
+		final Path log = Files.writeString(tempDir.resolve("foreign.txt"), "no hash cache at all");
+		assertThrows(IOException.class, () -> HashCache.open(log));
+	}
+
+	@Test
+	public void failOnUnreadableFile(@TempDir Path tempDir) throws IOException {
+		try (HashCache cache = HashCache.open(tempDir.resolve("hashes.cache"))) {
+			assertThrows(IOException.class, () -> cache.computeIfAbsent(tempDir.resolve("missing.txt").toFile(), HashAlgorithm.SHA_256));
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package de.b0n.dir.processor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PartialHashContentStrategyTest {
+	private final Queue<Set<File>> compared = new ConcurrentLinkedQueue<>();
+	private final ContentStrategy recording = new ContentStrategy() {
+		@Override
+		public Stream<DuplicateGroup> getResult(Collection<File> input, DuplicateContentFinderCallback callback) {
+			compared.add(Set.copyOf(input));
+			return new CompareContentStrategy().getResult(input, callback);
+		}
+	};
+
+	private File original;
+	private File copy;
+	private File modified;
+
+	@BeforeEach
+	public void setUp(@TempDir Path tempDir) throws IOException {
+		final byte[] content = new byte[64 * 1024];
+		new Random(5).nextBytes(content);
+		original = Files.write(tempDir.resolve("original.bin"), content).toFile();
+		copy = Files.write(tempDir.resolve("copy.bin"), content).toFile();
+		content[0]++;
+		modified = Files.write(tempDir.resolve("modified.bin"), content).toFile();
+	}
+
+	@Test
+	public void invalidArguments() {
+		assertThrows(IllegalArgumentException.class, () -> new PartialHashContentStrategy(null));
+		assertThrows(IllegalArgumentException.class, () -> new PartialHashContentStrategy(recording).withSampleSize(0));
+		assertThrows(IllegalArgumentException.class, () -> new PartialHashContentStrategy(recording).withMetrics(null));
+		assertThrows(IllegalArgumentException.class, () -> new PartialHashContentStrategy(recording).withBudget(null));
+	}
+
+	@Test
+	public void prefilterCountsOpenedFilesAndReadBytes() {
+		final ScanMetrics metrics = new ScanMetrics();
+		DuplicatePartialHashFinder.getResult(List.of(original, copy, modified), 1024,
+				new DuplicateContentFinderCallback() {}, metrics, null).toList();
+
+		final ScanMetrics.Snapshot snapshot = metrics.snapshot();
+		assertEquals(3, snapshot.filesOpened());
+		assertEquals(0, snapshot.openFiles());
+		assertEquals(3 * 2 * 1024, snapshot.bytesRead());
+	}
+
+	@Test
+	public void cachedGroupSkipsSamples(@TempDir Path tempDir) throws IOException {
+		try (HashCache cache = HashCache.open(tempDir.resolve("hashes.cache"))) {
+			final HashContentStrategy hashing = new HashContentStrategy(HashAlgorithm.SHA_256).withCache(cache);
+			for (File file : List.of(original, copy, modified)) {
+				cache.computeIfAbsent(file, HashAlgorithm.SHA_256);
+			}
+			final ScanMetrics metrics = new ScanMetrics();
+			final List<DuplicateGroup> groups = new PartialHashContentStrategy(hashing.withMetrics(metrics))
+					.withMetrics(metrics)
+					.getResult(List.of(original, copy, modified), new DuplicateContentFinderCallback() {})
+					.toList();
+
+			assertEquals(1, groups.size());
+			assertEquals(Set.of(original, copy), Set.copyOf(groups.get(0).getFiles()));
+			assertEquals(0, metrics.snapshot().filesOpened());
+			assertEquals(0, metrics.snapshot().bytesRead());
+		}
+	}
+
+	@Test
+	public void exhaustedBudgetLeavesFilesUnresolved() {
+		final ScanBudget budget = new ScanBudget(new ScanMetrics());
+		budget.cancel();
+		final Queue<File> unresolvedFiles = new ConcurrentLinkedQueue<>();
+		final List<DuplicateGroup> groups = DuplicateContentFinder.getGroups(List.of(original, copy, modified),
+				new FailingDuplicateContentFinderCallback() {
+					@Override
+					public void unresolvedFile(File unresolvedFile) {
+						unresolvedFiles.add(unresolvedFile);
+					}
+				}, new PartialHashContentStrategy(recording).withSampleSize(1024).withBudget(budget)).toList();
+
+		assertTrue(groups.isEmpty());
+		assertEquals(Set.of(original, copy, modified), Set.copyOf(unresolvedFiles));
+		assertTrue(compared.isEmpty());
+		assertEquals(0, budget.getMetrics().snapshot().filesOpened());
+	}
+
+	@Test
+	public void prefilterPassesOnlyMatchingSamples() {
+		final Queue<File> uniqueFiles = new ConcurrentLinkedQueue<>();
+		final List<DuplicateGroup> groups = DuplicateContentFinder.getGroups(List.of(original, copy, modified),
+				new FailingDuplicateContentFinderCallback() {
+					@Override
+					public void uniqueFile(File uniqueFile) {
+						uniqueFiles.add(uniqueFile);
+					}
+				}, new PartialHashContentStrategy(recording).withSampleSize(1024)).toList();
+
+		assertEquals(1, groups.size());
+		assertEquals(Set.of(original, copy), Set.copyOf(groups.get(0).getFiles()));
+		assertEquals(List.of(modified), List.copyOf(uniqueFiles));
+		assertEquals(List.of(Set.of(original, copy)), List.copyOf(compared));
+	}
+
+	@Test
+	public void withoutPrefilterStrategyReadsAllFiles() {
+		final Queue<File> uniqueFiles = new ConcurrentLinkedQueue<>();
+		final List<DuplicateGroup> groups = DuplicateContentFinder.getGroups(List.of(original, copy, modified),
+				new FailingDuplicateContentFinderCallback() {
+					@Override
+					public void uniqueFile(File uniqueFile) {
+						uniqueFiles.add(uniqueFile);
+					}
+				}, recording).toList();
+
+		assertEquals(1, groups.size());
+		assertEquals(Set.of(original, copy), Set.copyOf(groups.get(0).getFiles()));
+		assertEquals(List.of(modified), List.copyOf(uniqueFiles));
+		assertEquals(List.of(Set.of(original, copy, modified)), List.copyOf(compared));
+	}
+}
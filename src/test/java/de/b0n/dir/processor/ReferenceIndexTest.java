@@ -0,0 +1,129 @@
+package de.b0n.dir.processor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ReferenceIndexTest {
+
+	private static Path createReference(Path tempDir) throws IOException {
+		final Path reference = Files.createDirectory(tempDir.resolve("reference"));
+		Files.writeString(reference.resolve("a.txt"), "content");
+		Files.writeString(Files.createDirectory(reference.resolve("sub")).resolve("b.txt"), "other content");
+		return reference;
+	}
+
+	@Test
+	public void invalidArguments(@TempDir Path tempDir) throws IOException {
+		assertThrows(IllegalArgumentException.class, () -> ReferenceIndex.open(null));
+		try (ReferenceIndex index = ReferenceIndex.open(tempDir.resolve("reference.idx"))) {
+			assertThrows(IllegalArgumentException.class, () -> index.importManifest(null));
+			assertThrows(IllegalArgumentException.class, () -> index.match(tempDir, WalkOptions.DEFAULT, null));
+		}
+	}
+
+	@Test
+	public void findsOnlyTargetFilesWithKnownContent(@TempDir Path tempDir) throws IOException {
+		final Path reference = createReference(tempDir);
+		final Path target = Files.createDirectory(tempDir.resolve("target"));
+		Files.writeString(target.resolve("known.txt"), "content");
+		Files.writeString(target.resolve("sameSize.txt"), "contenX");
+		Files.writeString(target.resolve("otherSize.txt"), "unknown content");
+
+		try (ReferenceIndex index = ReferenceIndex.open(tempDir.resolve("reference.idx"))) {
+			assertEquals(2, index.add(reference));
+			final List<File> unique = new ArrayList<>();
+			final List<ReferenceIndex.Match> matches = index.match(target, WalkOptions.DEFAULT,
+					new DuplicateContentFinderCallback() {
+						@Override
+						public void uniqueFile(File uniqueFile) {
+							unique.add(uniqueFile);
+						}
+					}).toList();
+			assertEquals(1, matches.size());
+			assertEquals(target.resolve("known.txt").toAbsolutePath().toFile(), matches.get(0).file());
+			assertEquals(7, matches.get(0).length());
+			assertEquals(List.of(reference.resolve("a.txt").toAbsolutePath().toString()), matches.get(0).references());
+			assertEquals(2, unique.size());
+		}
+	}
+
+	@Test
+	public void doesNotMatchReferenceWithItself(@TempDir Path tempDir) throws IOException {
+		final Path reference = createReference(tempDir);
+		try (ReferenceIndex index = ReferenceIndex.open(tempDir.resolve("reference.idx"))) {
+			index.add(reference);
+			assertEquals(0, index.match(reference, WalkOptions.DEFAULT, new DuplicateContentFinderCallback() {}).count());
+		}
+	}
+
+	@Test
+	public void reopensWithoutHashingUnchangedFiles(@TempDir Path tempDir) throws IOException {
+		final Path reference = createReference(tempDir);
+		final Path log = tempDir.resolve("reference.idx");
+		try (ReferenceIndex index = ReferenceIndex.open(log)) {
+			assertEquals(2, index.add(reference));
+		}
+		try (ReferenceIndex index = ReferenceIndex.open(log)) {
+			assertEquals(2, index.size());
+			assertEquals(0, index.add(reference));
+			Files.delete(reference.resolve("a.txt"));
+			assertEquals(0, index.add(reference));
+			assertEquals(1, index.size());
+		}
+		try (ReferenceIndex index = ReferenceIndex.open(log)) {
+			assertEquals(1, index.size());
+		}
+	}
+
+	@Test
+	public void importsManifest(@TempDir Path tempDir) throws IOException {
+		final Path target = Files.createDirectory(tempDir.resolve("target"));
+		Files.writeString(target.resolve("known.txt"), "content");
+		final String hash = HashAlgorithm.SHA_256.hash("content".getBytes()).toString();
+		final Path manifest = tempDir.resolve("SHA256SUMS");
+		Files.writeString(manifest, hash + "  archive/a.txt\n\n\\" + hash + " *archive/back\\\\slash.txt\n");
+
+		try (ReferenceIndex index = ReferenceIndex.open(tempDir.resolve("reference.idx"))) {
+			assertEquals(2, index.importManifest(manifest));
+			final List<ReferenceIndex.Match> matches = index
+					.match(target, WalkOptions.DEFAULT, new DuplicateContentFinderCallback() {}).toList();
+			assertEquals(1, matches.size());
+			assertEquals(List.of(tempDir.resolve("archive/a.txt").toAbsolutePath().toString(),
+					tempDir.resolve("archive/back\\slash.txt").toAbsolutePath().toString()), matches.get(0).references());
+		}
+	}
+
+	@Test
+	public void rejectsInvalidManifest(@TempDir Path tempDir) throws IOException {
+		final Path manifest = tempDir.resolve("SHA256SUMS");
+		Files.writeString(manifest, "not a hash  a.txt\n");
+		try (ReferenceIndex index = ReferenceIndex.open(tempDir.resolve("reference.idx"))) {
+			assertThrows(IOException.class, () -> index.importManifest(manifest));
+		}
+	}
+
+	@Test
+	public void discardsIncompleteLastEntry(@TempDir Path tempDir) throws IOException {
+		final Path reference = createReference(tempDir);
+		final Path log = tempDir.resolve("reference.idx");
+		try (ReferenceIndex index = ReferenceIndex.open(log)) {
+			index.add(reference);
+		}
+		final byte[] content = Files.readAllBytes(log);
+		Files.write(log, Arrays.copyOf(content, content.length - 3));
+		try (ReferenceIndex index = ReferenceIndex.open(log)) {
+			assertEquals(1, index.size());
+			assertEquals(1, index.add(reference));
+		}
+	}
+}
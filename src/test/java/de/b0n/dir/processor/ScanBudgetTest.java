@@ -0,0 +1,72 @@
+package de.b0n.dir.processor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+public class ScanBudgetTest {
+
+	@Test
+	public void invalidArguments() {
+		assertThrows(IllegalArgumentException.class, () -> new ScanBudget(null));
+		final ScanBudget budget = new ScanBudget(new ScanMetrics());
+		assertThrows(IllegalArgumentException.class, () -> budget.withTimeLimit(null));
+		assertThrows(IllegalArgumentException.class, () -> budget.withTimeLimit(Duration.ofSeconds(-1)));
+		assertThrows(IllegalArgumentException.class, () -> budget.withMaxBytesRead(0));
+		assertThrows(IllegalArgumentException.class, () -> budget.withMaxFilesOpened(0));
+	}
+
+	@Test
+	public void unlimitedUntilCancelled() {
+		final ScanBudget budget = new ScanBudget(new ScanMetrics());
+		assertFalse(budget.isExhausted());
+		assertEquals(Optional.empty(), budget.getReason());
+		budget.cancel();
+		assertTrue(budget.isExhausted());
+		assertEquals(Optional.of(ScanBudget.Reason.CANCELLED), budget.getReason());
+	}
+
+	@Test
+	public void derivedBudgetsShareCancellation() {
+		final ScanBudget budget = new ScanBudget(new ScanMetrics());
+		final ScanBudget limited = budget.withMaxFilesOpened(10);
+		limited.cancel();
+		assertTrue(budget.isExhausted());
+	}
+
+	@Test
+	public void exhaustedByBytesRead() {
+		final ScanMetrics metrics = new ScanMetrics();
+		final ScanBudget budget = new ScanBudget(metrics).withMaxBytesRead(100);
+		metrics.read(100);
+		assertFalse(budget.isExhausted());
+		metrics.read(1);
+		assertTrue(budget.isExhausted());
+		assertEquals(Optional.of(ScanBudget.Reason.BYTES_READ), budget.getReason());
+	}
+
+	@Test
+	public void exhaustedByFilesOpened() {
+		final ScanMetrics metrics = new ScanMetrics();
+		final ScanBudget budget = new ScanBudget(metrics).withMaxFilesOpened(1);
+		metrics.fileOpened();
+		metrics.fileClosed();
+		assertFalse(budget.isExhausted());
+		metrics.fileOpened();
+		assertTrue(budget.isExhausted());
+		metrics.fileClosed();
+		assertTrue(budget.isExhausted());
+		assertEquals(Optional.of(ScanBudget.Reason.FILES_OPENED), budget.getReason());
+	}
+
+	@Test
+	public void exhaustedByTime() {
+		final ScanBudget budget = new ScanBudget(new ScanMetrics());
+		assertFalse(budget.withTimeLimit(Duration.ofHours(1)).isExhausted());
+		assertTrue(budget.withTimeLimit(Duration.ZERO).isExhausted());
+		assertEquals(Optional.of(ScanBudget.Reason.TIME), budget.getReason());
+	}
+}
@@ -0,0 +1,252 @@
+package de.b0n.dir.processor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ScanCheckpointTest {
+	private static final ContentStrategy FAILING_STRATEGY = (input, callback) -> {
+		fail("Resolved groups must not be compared again");
+		return null;
+	};
+
+	private static Path createTree(Path tempDir) throws IOException {
+		final Path root = Files.createDirectory(tempDir.resolve("tree"));
+		final Path subdirectory = Files.createDirectory(root.resolve("subdirectory"));
+		Files.write(root.resolve("a1"), new byte[100]);
+		Files.write(subdirectory.resolve("a2"), new byte[100]);
+		Files.write(root.resolve("b1"), new byte[] { 1, 2, 3 });
+		Files.write(subdirectory.resolve("b2"), new byte[] { 1, 2, 4 });
+		return root;
+	}
+
+	@Test
+	public void invalidArguments(@TempDir Path tempDir) {
+		assertThrows(IllegalArgumentException.class, () -> ScanCheckpoint.open(null, tempDir));
+		assertThrows(IllegalArgumentException.class, () -> ScanCheckpoint.open(tempDir.resolve("checkpoint"), (Path) null));
+		assertThrows(IllegalArgumentException.class, () -> ScanCheckpoint.open(tempDir.resolve("checkpoint"), List.of()));
+	}
+
+	@Test
+	public void rejectsOtherRoots(@TempDir Path tempDir) throws IOException {
+		final Path first = Files.createDirectory(tempDir.resolve("first"));
+		final Path second = Files.createDirectory(tempDir.resolve("second"));
+		final Path log = tempDir.resolve("checkpoint");
+		ScanCheckpoint.open(log, List.of(first, second)).close();
+		ScanCheckpoint.open(log, List.of(first, second)).close();
+		assertThrows(IOException.class, () -> ScanCheckpoint.open(log, first));
+		assertThrows(IOException.class, () -> ScanCheckpoint.open(log, List.of(second, first)));
+	}
+
+	@Test
+	public void resumesWalkWithoutReadingDirectories(@TempDir Path tempDir) throws IOException {
+		final Path root = createTree(tempDir);
+		final Path log = tempDir.resolve("checkpoint");
+		try (ScanCheckpoint checkpoint = ScanCheckpoint.open(log, root);
+				ScanExecutor executor = new ScanExecutor(1, 1)) {
+			assertEquals(4, executor.getIndex(root, new DuplicateLengthFinderCallback() {}, WalkOptions.DEFAULT, checkpoint)
+					.getFileCount());
+			assertEquals(2, checkpoint.getDirectoryCount());
+		}
+
+		try (ScanCheckpoint checkpoint = ScanCheckpoint.open(log, root);
+				ScanExecutor executor = new ScanExecutor(1, 1)) {
+			assertEquals(2, checkpoint.getDirectoryCount());
+			final SizeIndex index = executor.getIndex(root, new DuplicateLengthFinderCallback() {}, WalkOptions.DEFAULT, checkpoint);
+			assertEquals(4, index.getFileCount());
+			assertEquals(2, index.getCandidateGroupCount());
+		}
+	}
+
+	@Test
+	public void rewalksDirectoryWithRemovedFile(@TempDir Path tempDir) throws IOException {
+		final Path root = createTree(tempDir);
+		final Path log = tempDir.resolve("checkpoint");
+		try (ScanCheckpoint checkpoint = ScanCheckpoint.open(log, root)) {
+			DuplicateLengthFinder.getIndex(root, new DuplicateLengthFinderCallback() {}, WalkOptions.DEFAULT,
+					new ScanMetrics(), null, checkpoint);
+		}
+
+		Files.delete(root.resolve("subdirectory").resolve("b2"));
+		try (ScanCheckpoint checkpoint = ScanCheckpoint.open(log, root)) {
+			final SizeIndex index = DuplicateLengthFinder.getIndex(root, new DuplicateLengthFinderCallback() {},
+					WalkOptions.DEFAULT, new ScanMetrics(), null, checkpoint);
+			assertEquals(3, index.getFileCount());
+			assertEquals(1, index.getCandidateGroupCount());
+			assertEquals(2, checkpoint.getDirectoryCount());
+		}
+		try (ScanCheckpoint checkpoint = ScanCheckpoint.open(log, root)) {
+			assertEquals(1, checkpoint.getDirectory(root.resolve("subdirectory").toAbsolutePath()).files().size());
+		}
+	}
+
+	@Test
+	public void rewalksDirectoryWithModifiedFile(@TempDir Path tempDir) throws IOException {
+		final Path root = createTree(tempDir);
+		final Path log = tempDir.resolve("checkpoint");
+		try (ScanCheckpoint checkpoint = ScanCheckpoint.open(log, root)) {
+			DuplicateLengthFinder.getIndex(root, new DuplicateLengthFinderCallback() {}, WalkOptions.DEFAULT,
+					new ScanMetrics(), null, checkpoint);
+		}
+
+		final Path a2 = root.resolve("subdirectory").resolve("a2");
+		final FileTime directoryModified = Files.getLastModifiedTime(a2.getParent());
+		Files.write(a2, new byte[50]);
+		Files.setLastModifiedTime(a2.getParent(), directoryModified);
+		try (ScanCheckpoint checkpoint = ScanCheckpoint.open(log, root)) {
+			final SizeIndex index = DuplicateLengthFinder.getIndex(root, new DuplicateLengthFinderCallback() {},
+					WalkOptions.DEFAULT, new ScanMetrics(), null, checkpoint);
+			assertEquals(4, index.getFileCount());
+			assertEquals(1, index.getCandidateGroupCount());
+		}
+	}
+
+	@Test
+	public void continuesWalkAtFrontier(@TempDir Path tempDir) throws IOException {
+		final Path root = createTree(tempDir);
+		final Path log = tempDir.resolve("checkpoint");
+		final ScanBudget budget = new ScanBudget(new ScanMetrics());
+		try (ScanCheckpoint checkpoint = ScanCheckpoint.open(log, root)) {
+			DuplicateLengthFinder.getIndex(root, new DuplicateLengthFinderCallback() {
+				@Override
+				public void enteredNewDirectory(File directory) {
+					budget.cancel();
+				}
+			}, WalkOptions.DEFAULT, budget.getMetrics(), budget, checkpoint);
+			assertEquals(1, checkpoint.getDirectoryCount());
+		}
+
+		try (ScanCheckpoint checkpoint = ScanCheckpoint.open(log, root)) {
+			final List<File> entered = new ArrayList<>();
+			final SizeIndex index = DuplicateLengthFinder.getIndex(root, new DuplicateLengthFinderCallback() {
+				@Override
+				public void enteredNewDirectory(File directory) {
+					entered.add(directory);
+				}
+			}, WalkOptions.DEFAULT, new ScanMetrics(), null, checkpoint);
+			assertEquals(4, index.getFileCount());
+			assertEquals(2, entered.size());
+			assertEquals(2, checkpoint.getDirectoryCount());
+		}
+	}
+
+	@Test
+	public void replaysResolvedGroups(@TempDir Path tempDir) throws IOException {
+		final Path root = createTree(tempDir);
+		final Path log = tempDir.resolve("checkpoint");
+		final List<Long> lengths;
+		try (ScanCheckpoint checkpoint = ScanCheckpoint.open(log, root);
+				ScanExecutor executor = new ScanExecutor(1, 1)) {
+			final SizeIndex index = executor.getIndex(root, new DuplicateLengthFinderCallback() {}, WalkOptions.DEFAULT, checkpoint);
+			final Queue<DuplicateGroup> groups = new ConcurrentLinkedQueue<>();
+			assertTrue(executor.publish(index.getCandidatesByWaste(), new HashContentStrategy(HashAlgorithm.SHA_256),
+					group -> groups.add(group), checkpoint));
+			lengths = groups.stream().map(DuplicateGroup::getLength).toList();
+			assertEquals(List.of(100L), lengths);
+			assertEquals(2, checkpoint.getResolvedCount());
+		}
+
+		try (ScanCheckpoint checkpoint = ScanCheckpoint.open(log, root);
+				ScanExecutor executor = new ScanExecutor(1, 1)) {
+			final SizeIndex index = executor.getIndex(root, new DuplicateLengthFinderCallback() {}, WalkOptions.DEFAULT, checkpoint);
+			final Queue<DuplicateGroup> groups = new ConcurrentLinkedQueue<>();
+			assertTrue(executor.publish(index.getCandidatesByWaste(), FAILING_STRATEGY, group -> groups.add(group), checkpoint));
+			assertEquals(1, groups.size());
+			final DuplicateGroup group = groups.peek();
+			assertEquals(100L, group.getLength());
+			assertEquals(HashAlgorithm.SHA_256, group.getIdentity().orElseThrow().getAlgorithm());
+			assertEquals(Set.of(root.resolve("a1").toFile(), root.resolve("subdirectory").resolve("a2").toFile()),
+					new HashSet<>(group.getFiles()));
+		}
+	}
+
+	@Test
+	public void comparesModifiedGroupAgain(@TempDir Path tempDir) throws IOException {
+		final Path root = createTree(tempDir);
+		final Path log = tempDir.resolve("checkpoint");
+		try (ScanCheckpoint checkpoint = ScanCheckpoint.open(log, root);
+				ScanExecutor executor = new ScanExecutor(1, 1)) {
+			final SizeIndex index = executor.getIndex(root, new DuplicateLengthFinderCallback() {}, WalkOptions.DEFAULT, checkpoint);
+			assertTrue(executor.publish(index.getCandidatesByWaste(), new HashContentStrategy(HashAlgorithm.SHA_256),
+					group -> true, checkpoint));
+		}
+
+		final Path a2 = root.resolve("subdirectory").resolve("a2");
+		final FileTime modified = Files.getLastModifiedTime(a2);
+		final byte[] content = new byte[100];
+		content[0] = 1;
+		Files.write(a2, content);
+		Files.setLastModifiedTime(a2, FileTime.fromMillis(modified.toMillis() + 2000));
+		try (ScanCheckpoint checkpoint = ScanCheckpoint.open(log, root);
+				ScanExecutor executor = new ScanExecutor(1, 1)) {
+			final SizeIndex index = executor.getIndex(root, new DuplicateLengthFinderCallback() {}, WalkOptions.DEFAULT, checkpoint);
+			final Queue<DuplicateGroup> groups = new ConcurrentLinkedQueue<>();
+			assertTrue(executor.publish(index.getCandidatesByWaste(), new HashContentStrategy(HashAlgorithm.SHA_256),
+					group -> groups.add(group), checkpoint));
+			assertTrue(groups.isEmpty());
+		}
+	}
+
+	@Test
+	public void rejectsOtherWalkOptions(@TempDir Path tempDir) throws IOException {
+		final Path root = createTree(tempDir);
+		final Path log = tempDir.resolve("checkpoint");
+		final WalkOptions options = WalkOptions.DEFAULT.withMinSize(10L);
+		ScanCheckpoint.open(log, List.of(root), options).close();
+		ScanCheckpoint.open(log, List.of(root), options).close();
+		assertThrows(IOException.class, () -> ScanCheckpoint.open(log, root));
+		assertThrows(IOException.class, () -> ScanCheckpoint.open(log, List.of(root), options.withExclude("*.tmp")));
+	}
+
+	@Test
+	public void flushesAfterIntervalWithoutFurtherEntries(@TempDir Path tempDir) throws IOException, InterruptedException {
+		final Path root = createTree(tempDir);
+		final Path log = tempDir.resolve("checkpoint");
+		try (ScanCheckpoint checkpoint = ScanCheckpoint.open(log, List.of(root), WalkOptions.DEFAULT, Duration.ofMillis(20))) {
+			final long header = Files.size(log);
+			DuplicateLengthFinder.getIndex(root, new DuplicateLengthFinderCallback() {}, WalkOptions.DEFAULT,
+					new ScanMetrics(), null, checkpoint);
+			for (int i = 0; i < 500 && Files.size(log) == header; i++) {
+				Thread.sleep(10);
+			}
+			assertTrue(Files.size(log) > header);
+		}
+	}
+
+	@Test
+	public void discardsIncompleteLastEntry(@TempDir Path tempDir) throws IOException {
+		final Path root = createTree(tempDir);
+		final Path log = tempDir.resolve("checkpoint");
+		try (ScanCheckpoint checkpoint = ScanCheckpoint.open(log, root);
+				ScanExecutor executor = new ScanExecutor(1, 1)) {
+			executor.getIndex(root, new DuplicateLengthFinderCallback() {}, WalkOptions.DEFAULT, checkpoint);
+		}
+		final byte[] content = Files.readAllBytes(log);
+		Files.write(log, Arrays.copyOf(content, content.length - 3));
+
+		try (ScanCheckpoint checkpoint = ScanCheckpoint.open(log, root)) {
+			assertEquals(1, checkpoint.getDirectoryCount());
+		}
+		try (ScanCheckpoint checkpoint = ScanCheckpoint.open(log, root)) {
+			assertEquals(1, checkpoint.getDirectoryCount());
+		}
+	}
+
+	@Test
+	public void rejectsOtherRoot(@TempDir Path tempDir) throws IOException {
+		final Path root = createTree(tempDir);
+		final Path log = tempDir.resolve("checkpoint");
+		ScanCheckpoint.open(log, root).close();
+		assertThrows(IOException.class, () -> ScanCheckpoint.open(log, root.resolve("subdirectory")));
+	}
+}
@@ -0,0 +1,141 @@
+package de.b0n.dir.processor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ScanExecutorTest {
+	private static final String PATH_SAME_SIZE_FILES_IN_TREE_FOLDER = "src/test/resources/duplicateTree";
+
+	@Test
+	public void invalidThreadCounts() {
+		assertThrows(IllegalArgumentException.class, () -> new ScanExecutor(0, 1));
+		assertThrows(IllegalArgumentException.class, () -> new ScanExecutor(1, 0));
+	}
+
+	@Test
+	public void noArgumentsPublish() {
+		try (ScanExecutor executor = new ScanExecutor(1, 1)) {
+			final DuplicateGroupSink sink = group -> true;
+			assertThrows(IllegalArgumentException.class, () -> executor.publish((Stream<List<File>>) null, new CompareContentStrategy(), sink));
+			assertThrows(IllegalArgumentException.class, () -> executor.publish((SizeIndex) null, new CompareContentStrategy(), sink));
+			assertThrows(IllegalArgumentException.class, () -> executor.publish(new SizeIndex(), null, sink));
+			assertThrows(IllegalArgumentException.class, () -> executor.publish(List.<List<File>>of().stream(), null, sink));
+			assertThrows(IllegalArgumentException.class, () -> executor.publish(List.<List<File>>of().stream(), new CompareContentStrategy(), null));
+		}
+	}
+
+	@Test
+	public void indexMatchesLengthFinder() {
+		try (ScanExecutor executor = new ScanExecutor(2, 1)) {
+			final SizeIndex index = executor.getIndex(Path.of(PATH_SAME_SIZE_FILES_IN_TREE_FOLDER),
+					new DuplicateLengthFinderCallback() {}, WalkOptions.DEFAULT);
+			assertEquals(DuplicateLengthFinder.getIndex(Path.of(PATH_SAME_SIZE_FILES_IN_TREE_FOLDER)).getFileCount(),
+					index.getFileCount());
+		}
+	}
+
+	@Test
+	public void publishesLargestWasteFirst(@TempDir Path tempDir) throws IOException {
+		Files.write(tempDir.resolve("small1"), new byte[10]);
+		Files.write(tempDir.resolve("small2"), new byte[10]);
+		for (int i = 0; i < 3; i++) {
+			Files.write(tempDir.resolve("medium" + i), new byte[20]);
+		}
+		Files.write(tempDir.resolve("large1"), new byte[30]);
+		Files.write(tempDir.resolve("large2"), new byte[30]);
+
+		final Queue<Long> wastes = new ConcurrentLinkedQueue<>();
+		try (ScanExecutor executor = new ScanExecutor(1, 1)) {
+			final SizeIndex index = executor.getIndex(tempDir, new DuplicateLengthFinderCallback() {}, WalkOptions.DEFAULT);
+			assertTrue(executor.publish(index.getCandidatesByWaste(), new CompareContentStrategy(), group -> {
+				wastes.add(group.getWaste());
+				return true;
+			}));
+		}
+		assertEquals(List.of(40L, 30L, 10L), new ArrayList<>(wastes));
+	}
+
+	@Test
+	public void publishesIndexLargestWasteFirst(@TempDir Path tempDir) throws IOException {
+		Files.write(tempDir.resolve("small1"), new byte[10]);
+		Files.write(tempDir.resolve("small2"), new byte[10]);
+		for (int i = 0; i < 3; i++) {
+			Files.write(tempDir.resolve("medium" + i), new byte[20]);
+		}
+		Files.write(tempDir.resolve("large1"), new byte[30]);
+		Files.createLink(tempDir.resolve("large2"), tempDir.resolve("large1"));
+
+		final Queue<Long> wastes = new ConcurrentLinkedQueue<>();
+		try (ScanExecutor executor = new ScanExecutor(1, 1)) {
+			final SizeIndex index = executor.getIndex(tempDir, new DuplicateLengthFinderCallback() {}, WalkOptions.DEFAULT);
+			assertTrue(executor.publish(index, new CompareContentStrategy(), group -> {
+				wastes.add(group.getWaste());
+				return true;
+			}));
+			assertEquals(2 * 10L + 3 * 20L + 2 * 30L, executor.getMetrics().snapshot().candidateBytes());
+		}
+		assertEquals(List.of(40L, 10L), new ArrayList<>(wastes));
+	}
+
+	@Test
+	public void publishStopsOnSinkRequest(@TempDir Path tempDir) throws IOException {
+		for (int size = 1; size <= 5; size++) {
+			Files.write(tempDir.resolve("a" + size), new byte[size]);
+			Files.write(tempDir.resolve("b" + size), new byte[size]);
+		}
+
+		final Queue<DuplicateGroup> groups = new ConcurrentLinkedQueue<>();
+		try (ScanExecutor executor = new ScanExecutor(1, 1)) {
+			final SizeIndex index = executor.getIndex(tempDir, new DuplicateLengthFinderCallback() {}, WalkOptions.DEFAULT);
+			assertFalse(executor.publish(index.getCandidatesByWaste(), new CompareContentStrategy(), group -> {
+				groups.add(group);
+				return false;
+			}));
+		}
+		assertEquals(1, groups.size());
+		assertEquals(5L, groups.peek().getLength());
+	}
+
+	@Test
+	public void publishReportsUnresolvedGroupsWhenBudgetIsExhausted(@TempDir Path tempDir) throws IOException {
+		for (int size = 1; size <= 5; size++) {
+			Files.write(tempDir.resolve("a" + size), new byte[size]);
+			Files.write(tempDir.resolve("b" + size), new byte[size]);
+		}
+
+		final ScanBudget budget = new ScanBudget(new ScanMetrics());
+		final Queue<DuplicateGroup> groups = new ConcurrentLinkedQueue<>();
+		final Queue<File> unresolved = new ConcurrentLinkedQueue<>();
+		try (ScanExecutor executor = new ScanExecutor(1, 1, budget)) {
+			final SizeIndex index = executor.getIndex(tempDir, new DuplicateLengthFinderCallback() {}, WalkOptions.DEFAULT);
+			assertFalse(executor.publish(index, new CompareContentStrategy().withBudget(budget),
+					new DuplicateGroupSink() {
+						@Override
+						public boolean accept(DuplicateGroup group) {
+							groups.add(group);
+							budget.cancel();
+							return true;
+						}
+
+						@Override
+						public void unresolvedFile(File unresolvedFile) {
+							unresolved.add(unresolvedFile);
+						}
+					}));
+		}
+		assertEquals(1, groups.size());
+		assertEquals(5L, groups.peek().getLength());
+		assertEquals(8, unresolved.size());
+		assertTrue(unresolved.stream().allMatch(file -> file.length() < 5L));
+	}
+}
@@ -0,0 +1,124 @@
+package de.b0n.dir.processor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class ScanMetricsTest {
+
+	private static Path createTree(Path tempDir) throws IOException {
+		final Path subdirectory = Files.createDirectory(tempDir.resolve("subdirectory"));
+		Files.write(tempDir.resolve("a1"), new byte[100]);
+		Files.write(subdirectory.resolve("a2"), new byte[100]);
+		Files.write(tempDir.resolve("b1"), new byte[] { 1, 2, 3 });
+		Files.write(subdirectory.resolve("b2"), new byte[] { 1, 2, 4 });
+		Files.write(tempDir.resolve("unique"), new byte[7]);
+		return tempDir;
+	}
+
+	@Test
+	public void initialSnapshot() {
+		final ScanMetrics.Snapshot snapshot = new ScanMetrics().snapshot();
+		assertEquals(ScanMetrics.Phase.IDLE, snapshot.phase());
+		assertEquals(0L, snapshot.filesVisited());
+		assertEquals(Duration.ZERO, snapshot.walkTime());
+		assertEquals(0L, snapshot.filesPerSecond());
+		assertTrue(snapshot.estimatedRemaining().isEmpty());
+	}
+
+	@Test
+	public void countsWalk(@TempDir Path tempDir) throws IOException {
+		final ScanMetrics metrics = new ScanMetrics();
+		DuplicateLengthFinder.getIndex(createTree(tempDir), new DuplicateLengthFinderCallback() {}, WalkOptions.DEFAULT, metrics);
+		final ScanMetrics.Snapshot snapshot = metrics.snapshot();
+		assertEquals(2L, snapshot.directoriesVisited());
+		assertEquals(5L, snapshot.filesVisited());
+	}
+
+	@Test
+	public void countsCompare(@TempDir Path tempDir) throws IOException {
+		final ScanMetrics metrics = new ScanMetrics();
+		try (ScanExecutor executor = new ScanExecutor(1, 2, metrics)) {
+			final SizeIndex index = executor.getIndex(createTree(tempDir), new DuplicateLengthFinderCallback() {}, WalkOptions.DEFAULT);
+			assertEquals(ScanMetrics.Phase.WALK, metrics.getPhase());
+			executor.publish(index.getCandidatesByWaste(), new CompareContentStrategy().withMetrics(metrics), group -> true);
+		}
+		final ScanMetrics.Snapshot snapshot = metrics.snapshot();
+		assertEquals(ScanMetrics.Phase.FINISHED, snapshot.phase());
+		assertEquals(2L, snapshot.groupsResolved());
+		assertEquals(0L, snapshot.groupsInterrupted());
+		assertEquals(0L, snapshot.groupsPending());
+		assertEquals(206L, snapshot.candidateBytes());
+		assertEquals(206L, snapshot.resolvedBytes());
+		assertEquals(206L, snapshot.bytesRead());
+		assertEquals(4L, snapshot.filesOpened());
+		assertEquals(0L, snapshot.openFiles());
+		assertTrue(snapshot.comparisonRounds() >= 2L);
+		assertEquals(Duration.ZERO, snapshot.estimatedRemaining().orElseThrow());
+	}
+
+	@Test
+	public void countsInterruptedGroupsSeparately(@TempDir Path tempDir) throws IOException {
+		final byte[] content = new byte[100 * 1024];
+		Files.write(tempDir.resolve("a"), content);
+		Files.write(tempDir.resolve("b"), content);
+		final ScanBudget budget = new ScanBudget(new ScanMetrics()).withMaxFilesOpened(1);
+		try (ScanExecutor executor = new ScanExecutor(1, 1, budget)) {
+			final SizeIndex index = executor.getIndex(tempDir, new DuplicateLengthFinderCallback() {}, WalkOptions.DEFAULT);
+			assertFalse(executor.publish(index, new CompareContentStrategy().withBudget(budget), group -> true));
+		}
+		final ScanMetrics.Snapshot snapshot = budget.getMetrics().snapshot();
+		assertEquals(0L, snapshot.groupsResolved());
+		assertEquals(1L, snapshot.groupsInterrupted());
+		assertEquals(0L, snapshot.groupsPending());
+		assertEquals(0L, snapshot.resolvedBytes());
+	}
+
+	@Test
+	public void countsHashing(@TempDir Path tempDir) throws IOException {
+		final ScanMetrics metrics = new ScanMetrics();
+		final Path tree = createTree(tempDir);
+		final HashContentStrategy strategy = new HashContentStrategy(HashAlgorithm.MURMUR3_128).withMetrics(metrics);
+		assertEquals(1L, DuplicateContentFinder.getGroups(List.of(tree.resolve("a1").toFile(),
+				tree.resolve("subdirectory").resolve("a2").toFile()), new DuplicateContentFinderCallback() {}, strategy).count());
+		assertEquals(2L, metrics.snapshot().filesOpened());
+		assertEquals(0L, metrics.snapshot().openFiles());
+		assertEquals(200L, metrics.snapshot().bytesRead());
+	}
+
+	@Test
+	public void recordsPhaseEvents(@TempDir Path tempDir) throws IOException {
+		final Path recordingFile = tempDir.resolve("scan.jfr");
+		final Path tree = Files.createDirectory(tempDir.resolve("tree"));
+		createTree(tree);
+		try (Recording recording = new Recording()) {
+			recording.enable("de.b0n.dir.ScanPhase");
+			recording.start();
+			final ScanMetrics metrics = new ScanMetrics();
+			try (ScanExecutor executor = new ScanExecutor(1, 1, metrics)) {
+				final SizeIndex index = executor.getIndex(tree, new DuplicateLengthFinderCallback() {}, WalkOptions.DEFAULT);
+				executor.publish(index.getCandidatesByWaste(), new CompareContentStrategy().withMetrics(metrics), group -> true);
+			}
+			recording.stop();
+			recording.dump(recordingFile);
+		}
+		final List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile).stream()
+				.sorted(Comparator.comparing(RecordedEvent::getStartTime))
+				.toList();
+		assertEquals(List.of("WALK", "COMPARE"), events.stream().map(event -> event.getString("phase")).toList());
+		assertEquals(5L, events.get(0).getLong("files"));
+		assertEquals(206L, events.get(1).getLong("bytesRead"));
+	}
+}
@@ -0,0 +1,51 @@
+package de.b0n.dir.processor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+public class ScanRootsTest {
+	private static final Path TREE = Path.of("src/test/resources/duplicateTree");
+	private static final Path SUBDIRECTORY = TREE.resolve("subdirectory");
+	private static final Path OTHER = Path.of("src/test/resources/noDuplicates");
+
+	@Test
+	public void invalidRoots() {
+		assertThrows(IllegalArgumentException.class, () -> new ScanRoots(null));
+		assertThrows(IllegalArgumentException.class, () -> new ScanRoots(List.of()));
+	}
+
+	@Test
+	public void removesDuplicateRoots() {
+		final ScanRoots roots = new ScanRoots(List.of(TREE, OTHER, TREE.toAbsolutePath()));
+		assertEquals(List.of(TREE.toAbsolutePath(), OTHER.toAbsolutePath()), roots.getRoots());
+	}
+
+	@Test
+	public void assignsInnermostRoot() {
+		final ScanRoots roots = new ScanRoots(List.of(TREE, SUBDIRECTORY));
+		assertEquals(Optional.of(TREE.toAbsolutePath()), roots.rootOf(TREE.resolve("Test1.txt").toFile()));
+		assertEquals(Optional.of(SUBDIRECTORY.toAbsolutePath()), roots.rootOf(SUBDIRECTORY.resolve("Test2.txt").toFile()));
+		assertEquals(Optional.empty(), roots.rootOf(OTHER.resolve("Test1.txt").toFile()));
+	}
+
+	@Test
+	public void splitsGroupByRoot() {
+		final File first = TREE.resolve("Test1.txt").toFile();
+		final File second = SUBDIRECTORY.resolve("Test2.txt").toFile();
+		final DuplicateGroup group = new DuplicateGroup(91, List.of(second, first), null);
+
+		final ScanRoots roots = new ScanRoots(List.of(TREE, SUBDIRECTORY));
+		assertEquals(Map.of(TREE.toAbsolutePath(), List.of(first), SUBDIRECTORY.toAbsolutePath(), List.of(second)),
+				roots.byRoot(group));
+		assertEquals(List.of(TREE.toAbsolutePath(), SUBDIRECTORY.toAbsolutePath()), List.copyOf(roots.byRoot(group).keySet()));
+		assertTrue(roots.isCrossRoot(group));
+		assertFalse(new ScanRoots(List.of(TREE)).isCrossRoot(group));
+	}
+}
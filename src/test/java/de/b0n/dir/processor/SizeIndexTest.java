@@ -0,0 +1,143 @@
+package de.b0n.dir.processor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SizeIndexTest {
+	private static final String PATH_PLENTY_SAME_SIZE_FOLDER = "src/test/resources/";
+
+	@Test
+	public void groupsOnlySizesWithSeveralFiles() {
+		final SizeIndex index = new SizeIndex();
+		final int first = index.addDirectory(Path.of("/first"));
+		final int second = index.addDirectory(Path.of("/second"));
+		index.add(first, "a.txt", 10L);
+		index.add(second, "b.txt", 20L);
+		index.add(second, "c.txt", 10L);
+		index.add(first, "f.txt", 10L);
+		index.add(first, "d.txt", 30L);
+		index.add(second, "e.txt", 30L);
+
+		assertEquals(6, index.getFileCount());
+		assertEquals(2, index.getDirectoryCount());
+		assertEquals(2, index.getCandidateGroupCount());
+		final Set<Set<Path>> groups = new HashSet<>();
+		index.getCandidatePaths().forEach(group -> groups.add(new HashSet<>(group)));
+		assertEquals(Set.of(
+				Set.of(Path.of("/first/a.txt"), Path.of("/second/c.txt"), Path.of("/first/f.txt")),
+				Set.of(Path.of("/first/d.txt"), Path.of("/second/e.txt"))), groups);
+	}
+
+	@Test
+	public void rejectsFilesAfterGrouping() {
+		final SizeIndex index = new SizeIndex();
+		final int directory = index.addDirectory(Path.of("/"));
+		index.add(directory, "a.txt", 1L);
+		index.getCandidates();
+		assertThrows(IllegalStateException.class, () -> index.add(directory, "b.txt", 1L));
+	}
+
+	@Test
+	public void growsBeyondInitialCapacity() {
+		final SizeIndex index = new SizeIndex();
+		final int directory = index.addDirectory(Path.of("/many"));
+		for (int i = 0; i < 5000; i++) {
+			index.add(directory, "file" + i, i % 1000);
+		}
+		assertEquals(1000, index.getCandidateGroupCount());
+		index.getCandidatePaths().forEach(group -> {
+			assertEquals(5, group.size());
+			assertEquals(1, group.stream().map(path -> Integer.parseInt(path.getFileName().toString().substring(4)) % 1000).distinct().count());
+		});
+	}
+
+	@Test
+	public void indexMatchesResultOfLengthFinder() {
+		final SizeIndex index = DuplicateLengthFinder.getIndex(Path.of(PATH_PLENTY_SAME_SIZE_FOLDER));
+		final Map<Long, List<File>> result = DuplicateLengthFinder.getResult(new File(PATH_PLENTY_SAME_SIZE_FOLDER));
+		assertEquals(result.values().stream().mapToInt(List::size).sum(), index.getFileCount());
+		assertEquals(6, index.getDirectoryCount());
+		final Set<Set<File>> expected = new HashSet<>();
+		result.values().stream().filter(files -> files.size() > 1).forEach(files -> expected.add(new HashSet<>(files)));
+		final Set<Set<File>> groups = new HashSet<>();
+		index.getCandidates().forEach(group -> groups.add(new HashSet<>(group)));
+		assertEquals(expected, groups);
+	}
+
+	@Test
+	public void collapsesHardLinks(@TempDir Path tempDir) throws IOException {
+		final Path original = Files.write(tempDir.resolve("original.txt"), "content".getBytes());
+		final Path link = Files.createLink(tempDir.resolve("link.txt"), original);
+		final Path copy = Files.write(tempDir.resolve("copy.txt"), "content".getBytes());
+		final Path other = Files.write(tempDir.resolve("other.txt"), "Content".getBytes());
+
+		final SizeIndex index = DuplicateLengthFinder.getIndex(tempDir);
+
+		assertEquals(4, index.getFileCount());
+		final List<List<Path>> candidates = index.getCandidatePaths().toList();
+		assertEquals(1, candidates.size());
+		assertEquals(3, candidates.get(0).size());
+		assertTrue(candidates.get(0).containsAll(List.of(copy.toAbsolutePath(), other.toAbsolutePath())));
+		assertEquals(1, candidates.get(0).stream()
+				.filter(path -> path.equals(original.toAbsolutePath()) || path.equals(link.toAbsolutePath()))
+				.count());
+		final List<List<File>> hardLinks = index.getHardLinks().toList();
+		assertEquals(1, hardLinks.size());
+		assertEquals(Set.of(original.toAbsolutePath().toFile(), link.toAbsolutePath().toFile()), new HashSet<>(hardLinks.get(0)));
+	}
+
+	@Test
+	public void dropsGroupsConsistingOnlyOfHardLinks(@TempDir Path tempDir) throws IOException {
+		final Path original = Files.write(tempDir.resolve("original.txt"), "content".getBytes());
+		Files.createLink(tempDir.resolve("link.txt"), original);
+
+		final SizeIndex index = DuplicateLengthFinder.getIndex(tempDir);
+
+		assertEquals(1, index.getCandidateGroupCount());
+		assertEquals(0, index.getCandidates().count());
+		assertEquals(1, index.getHardLinks().count());
+	}
+
+	@Test
+	public void collapsesHardLinksByIdentityWithoutReadingFiles() {
+		final SizeIndex index = new SizeIndex();
+		final int directory = index.addDirectory(Path.of("/does-not-exist"));
+		index.add(directory, "a", 10L, 1L, 42L);
+		index.add(directory, "b", 10L, 1L, 42L);
+		index.add(directory, "c", 10L, 2L, 42L);
+		index.add(directory, "d", 10L, SizeIndex.NO_DEVICE, 0L);
+
+		final List<List<File>> candidates = index.getCandidates().toList();
+		assertEquals(1, candidates.size());
+		assertEquals(3, candidates.get(0).size());
+		assertEquals(List.of(List.of(new File("/does-not-exist/a"), new File("/does-not-exist/b"))),
+				index.getHardLinks().toList());
+	}
+
+	@Test
+	public void ordersCandidatesByWaste() {
+		final SizeIndex index = new SizeIndex();
+		final int directory = index.addDirectory(Path.of("/"));
+		index.add(directory, "a", 100L);
+		index.add(directory, "b", 100L);
+		index.add(directory, "c", 60L);
+		index.add(directory, "d", 60L);
+		index.add(directory, "e", 60L);
+		index.add(directory, "f", 1000L);
+		index.add(directory, "g", 10L);
+		index.add(directory, "h", 10L);
+
+		assertEquals(List.of(60L, 100L, 10L), index.getGroupsByWaste().stream().map(SizeIndex.Group::size).toList());
+		assertEquals(List.of(3, 2, 2), index.getCandidatesByWaste().map(List::size).toList());
+		assertEquals(List.of(new File("/c"), new File("/a"), new File("/g")),
+				index.getCandidatesByWaste().map(group -> group.get(0)).toList());
+	}
+}